@@ -17,9 +17,53 @@ repositories {
     mavenCentral()
 }
 
+java {
+    // the compiler uses the language features of Java 21, e.g., the pattern matching switches
+    toolchain {
+        languageVersion.set(JavaLanguageVersion.of(21))
+    }
+}
+
+tasks.withType<JavaCompile>().configureEach {
+    // some comments are not ASCII
+    options.encoding = "UTF-8"
+}
+
 sourceSets.main.get().java.srcDir("src")
 sourceSets.test.get().java.srcDir("test")
 
+// The runtime support classes (StdIn, StdOut) are copied next to the generated classes, which are Java 8 class files,
+// so they are compiled for Java 8 as well and the compiled programs still run on the JVMs older than the compiler's
+val runtime: SourceSet by sourceSets.creating {
+    java.setSrcDirs(listOf("src/main/java"))
+    java.include("compiler/Runtime/**")
+}
+sourceSets.main.get().java.exclude("**/compiler/Runtime/**")
+sourceSets.main.get().compileClasspath += runtime.output
+sourceSets.main.get().runtimeClasspath += runtime.output
+sourceSets.test.get().compileClasspath += runtime.output
+sourceSets.test.get().runtimeClasspath += runtime.output
+
+tasks.named<JavaCompile>("compileRuntimeJava") {
+    options.release.set(8)
+    // javac warns that the Java 8 target is deprecated
+    options.compilerArgs.add("-Xlint:-options")
+}
+
+tasks.jar {
+    from(runtime.output)
+}
+
+// JMH benchmarks of the compiler phases, run them with ./gradlew jmh
+val jmh: SourceSet by sourceSets.creating {
+    java.srcDir("jmh")
+    compileClasspath += sourceSets.main.get().output + runtime.output
+    runtimeClasspath += sourceSets.main.get().output + runtime.output
+}
+
+configurations["jmhImplementation"].extendsFrom(configurations.implementation.get())
+configurations["jmhRuntimeOnly"].extendsFrom(configurations.runtimeOnly.get())
+
 dependencies {
     // Use JUnit test framework.
     testImplementation("junit:junit:4.13.2")
@@ -29,8 +73,11 @@ dependencies {
     implementation("com.google.guava:guava:31.1-jre")
 
     implementation("org.ow2.asm:asm:9.8")
+    implementation("org.ow2.asm:asm-tree:9.8")
     implementation("org.jcommander:jcommander:2.0")
 
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
 }
 
 application {
@@ -38,6 +85,22 @@ application {
     mainClass.set("compiler.Compiler")
 }
 
+tasks.register<JavaExec>("jmh") {
+    description = "Runs the JMH benchmarks with the GC profiler, select some of them with -Pjmh.include=<regex>"
+    group = "verification"
+    classpath = jmh.runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    // the benchmarks read the sample programs relative to the project directory
+    workingDir = projectDir
+
+    val include = project.findProperty("jmh.include")?.toString() ?: "benchmarks\\..*"
+    val results = layout.buildDirectory.file("reports/jmh/results.json").get().asFile
+    args(include, "-prof", "gc", "-rf", "json", "-rff", results.path)
+    doFirst {
+        results.parentFile.mkdirs()
+    }
+}
+
 tasks.register<Zip>("packageSource") {
     dependsOn("test")
     archiveBaseName.set("${project.name}-source")
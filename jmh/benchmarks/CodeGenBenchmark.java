@@ -0,0 +1,42 @@
+package benchmarks;
+
+import compiler.Parser.ASTNodes.ASTNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/// Time to generate the bytecode of an analyzed and optimized AST.
+/// The classes are kept in memory (CodeGen.generateClasses) so that the disk doesn't show up in the results
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CodeGenBenchmark {
+
+    @State(Scope.Thread)
+    public static class AnalyzedProgram {
+        ASTNode root;
+
+        @Setup(Level.Invocation)
+        public void analyze(Sources sources) throws Exception {
+            root = Phases.optimize(Phases.analyze(Phases.parse(sources.source)));
+        }
+    }
+
+    @Benchmark
+    public Map<String, byte[]> generate(AnalyzedProgram program) throws Exception {
+        return Phases.generate(program.root);
+    }
+}
@@ -0,0 +1,55 @@
+package benchmarks;
+
+import compiler.Lexer.Lexer;
+import compiler.Lexer.ParallelLexer;
+import compiler.Lexer.Symbol;
+import compiler.Lexer.TokenBuffer;
+import compiler.Lexer.TokenTypes;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/// Time to turn the whole source into tokens with Lexer.getNextSymbol, from a String and from the UTF-8 file, and into a TokenBuffer on one or all the cores
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LexerBenchmark {
+
+    @Benchmark
+    public void lex(Sources sources, Blackhole blackhole) throws Exception {
+        lexAll(new Lexer(new StringReader(sources.source)), blackhole);
+    }
+
+    @Benchmark
+    public void lexFile(Sources sources, Blackhole blackhole) throws Exception {
+        lexAll(Lexer.open(sources.file), blackhole);
+    }
+
+    @Benchmark
+    public TokenBuffer tokenize(Sources sources) {
+        return new Lexer(new StringReader(sources.source)).tokenize();
+    }
+
+    @Benchmark
+    public TokenBuffer tokenizeParallel(Sources sources) throws Exception {
+        return new ParallelLexer().tokenize(sources.file);
+    }
+
+    private static void lexAll(Lexer lexer, Blackhole blackhole) throws Exception {
+        Symbol symbol;
+        do {
+            symbol = lexer.getNextSymbol();
+            blackhole.consume(symbol);
+        } while (symbol.type != TokenTypes.EOF);
+    }
+}
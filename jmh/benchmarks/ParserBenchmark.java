@@ -0,0 +1,89 @@
+package benchmarks;
+
+import compiler.Parser.ASTNodes.ASTNode;
+import compiler.Lexer.Lexer;
+import compiler.Parser.IncrementalParser;
+import compiler.Parser.Parser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/// Time to build the AST, the parser pulls its tokens from the lexer so this includes the time of LexerBenchmark
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParserBenchmark {
+
+    /// A source parsed once, and the offset of a digit in the middle of it that the edits replace
+    @State(Scope.Thread)
+    public static class Edits {
+        IncrementalParser parser;
+        int offset;
+        String digit = "1";
+
+        @Setup(Level.Trial)
+        public void parse(Sources sources) throws Exception {
+            parser = new IncrementalParser(sources.source);
+            offset = sources.source.length() / 2;
+            while (!Character.isDigit(sources.source.charAt(offset))) {
+                offset++;
+            }
+        }
+    }
+
+    /// A function whose statements are long operator chains, e.g., generated code
+    @State(Scope.Benchmark)
+    public static class Chains {
+        String source;
+
+        @Setup(Level.Trial)
+        public void generate() {
+            StringBuilder builder = new StringBuilder("fun main() {\n");
+            for (int statement = 0; statement < 100; statement++) {
+                builder.append("    x").append(statement).append(" int = a[0]");
+                for (int term = 1; term < 1000; term++) {
+                    builder.append(term % 2 == 0 ? " * " : " + ").append(term % 3 == 0 ? "f(" + term + ")" : String.valueOf(term));
+                }
+                builder.append(";\n");
+            }
+            source = builder.append("}\n").toString();
+        }
+    }
+
+    @Benchmark
+    public ASTNode parse(Sources sources) throws Exception {
+        return Phases.parse(sources.source);
+    }
+
+    /// Parse the declarations and the signatures of the functions, the bodies are skipped
+    @Benchmark
+    public ASTNode parseSignatures(Sources sources) throws Exception {
+        return new Parser(new Lexer(new StringReader(sources.source)).tokenize(), true).getAST();
+    }
+
+    /// Parse expressions of a thousand terms, the chains are parsed without recursing once per operator
+    @Benchmark
+    public ASTNode parseChains(Chains chains) throws Exception {
+        return Phases.parse(chains.source);
+    }
+
+    /// Parse again after a one-character edit, only the declaration that contains it is relexed and reparsed
+    @Benchmark
+    public ASTNode edit(Edits edits) throws Exception {
+        edits.digit = edits.digit.equals("1") ? "2" : "1";
+        return edits.parser.edit(edits.offset, 1, edits.digit);
+    }
+}
@@ -0,0 +1,147 @@
+package benchmarks;
+
+import com.sun.management.GarbageCollectionNotificationInfo;
+import compiler.Parser.ASTNodes.ASTNode;
+import compiler.Parser.FlatAST;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+
+/// Peak of the live heap while a program goes through the semantic analysis and the code generation, from the object tree
+/// and from a flat AST, reported as the peakLiveMegabytes counter. The live heap is sampled by full collections run back to back
+/// during the passes, so the time of this benchmark isn't the one of the passes.
+/// The passes on the flat AST decode the function bodies when they need them and drop them afterwards,
+/// so its peak is the arrays and the bodies in use instead of the whole tree
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = {"-XX:+UseSerialGC"})
+public class PeakMemoryBenchmark {
+
+    /// The counters reported by JMH next to the time of an invocation
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Counters {
+        public long peakLiveMegabytes;
+    }
+
+    /// Runs full collections while the passes run and keeps the highest heap used after one of them
+    @State(Scope.Thread)
+    public static class PeakHeap {
+        private final AtomicLong peak = new AtomicLong();
+        private final Set<String> heapPools = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(pool -> pool.getType() == MemoryType.HEAP)
+                .map(MemoryPoolMXBean::getName)
+                .collect(Collectors.toSet());
+        private final NotificationListener listener = (notification, handback) -> {
+            if (!notification.getType().equals(GarbageCollectionNotificationInfo.GARBAGE_COLLECTION_NOTIFICATION)) {
+                return;
+            }
+            GarbageCollectionNotificationInfo info = GarbageCollectionNotificationInfo.from((CompositeData) notification.getUserData());
+            // the old generation still has the garbage of the program after a minor collection
+            if (!info.getGcAction().equals("end of major GC")) {
+                return;
+            }
+            long live = 0;
+            for (Map.Entry<String, MemoryUsage> pool : info.getGcInfo().getMemoryUsageAfterGc().entrySet()) {
+                if (heapPools.contains(pool.getKey())) {
+                    live += pool.getValue().getUsed();
+                }
+            }
+            peak.accumulateAndGet(live, Math::max);
+        };
+
+        @Setup(Level.Iteration)
+        public void listen() {
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) collector).addNotificationListener(listener, null, null);
+            }
+        }
+
+        @TearDown(Level.Iteration)
+        public void stopListening() throws ListenerNotFoundException {
+            for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+                ((NotificationEmitter) collector).removeNotificationListener(listener);
+            }
+        }
+
+        /// Run the passes while sampling the live heap, from the live heap of their input, and report its peak to the counters
+        <T> T measure(Callable<T> passes, Counters counters) throws Exception {
+            System.gc();
+            peak.set(0);
+            AtomicBoolean sampling = new AtomicBoolean(true);
+            Thread sampler = new Thread(() -> {
+                while (sampling.get()) {
+                    System.gc();
+                }
+            });
+            sampler.setDaemon(true);
+            sampler.start();
+            try {
+                return passes.call();
+            } finally {
+                sampling.set(false);
+                sampler.join();
+                counters.peakLiveMegabytes = peak.get() >> 20;
+            }
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class ObjectTree {
+        ASTNode root;
+
+        @Setup(Level.Invocation)
+        public void parse(Sources sources) throws Exception {
+            root = Phases.parse(sources.source);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class FlatTree {
+        FlatAST ast;
+
+        @Setup(Level.Invocation)
+        public void parse(Sources sources) throws Exception {
+            ast = Phases.flatten(sources.source);
+        }
+    }
+
+    @Benchmark
+    public Map<String, byte[]> objectTree(ObjectTree tree, PeakHeap heap, Counters counters) throws Exception {
+        return heap.measure(() -> Phases.generate(Phases.analyze(tree.root)), counters);
+    }
+
+    @Benchmark
+    public Map<String, byte[]> flatAST(FlatTree tree, PeakHeap heap, Counters counters) throws Exception {
+        return heap.measure(() -> Phases.generate(Phases.analyze(tree.ast)), counters);
+    }
+}
@@ -0,0 +1,60 @@
+package benchmarks;
+
+import compiler.CodeGen.CodeGen;
+import compiler.Lexer.Lexer;
+import compiler.Optimization.ConstantFolding;
+import compiler.Parser.ASTNodes.ASTNode;
+import compiler.Parser.FlatAST;
+import compiler.Parser.Parser;
+import compiler.SemanticAnalysis.SemanticAnalysis;
+
+import java.io.StringReader;
+import java.util.Map;
+
+/// The compiler pipeline split in the same steps as Compiler, without the file system
+final class Phases {
+    static final String CLASS_NAME = "Benchmark";
+
+    private Phases() {
+    }
+
+    static ASTNode parse(String source) throws Exception {
+        Lexer lexer = new Lexer(new StringReader(source));
+        Parser parser = new Parser(lexer);
+        return parser.getAST();
+    }
+
+    static ASTNode analyze(ASTNode root) throws Exception {
+        SemanticAnalysis analyzer = new SemanticAnalysis();
+        analyzer.analyze(root);
+        return root;
+    }
+
+    static ASTNode optimize(ASTNode root) throws Exception {
+        ConstantFolding constantFolding = new ConstantFolding();
+        constantFolding.optimize(root);
+        return root;
+    }
+
+    static Map<String, byte[]> generate(ASTNode root) throws Exception {
+        CodeGen codeGen = new CodeGen("", CLASS_NAME);
+        return codeGen.generateClasses(root);
+    }
+
+    /// The flat AST of a source, its function bodies are parsed when it is encoded
+    static FlatAST flatten(String source) throws Exception {
+        Lexer lexer = new Lexer(new StringReader(source));
+        return FlatAST.of(new Parser(lexer.tokenize(), true).parseProgram());
+    }
+
+    static FlatAST analyze(FlatAST ast) throws Exception {
+        SemanticAnalysis analyzer = new SemanticAnalysis();
+        analyzer.analyze(ast);
+        return ast;
+    }
+
+    static Map<String, byte[]> generate(FlatAST ast) throws Exception {
+        CodeGen codeGen = new CodeGen("", CLASS_NAME);
+        return codeGen.generateClasses(ast);
+    }
+}
@@ -0,0 +1,40 @@
+package benchmarks;
+
+import compiler.Parser.ASTNodes.ASTNode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/// Time of SemanticAnalysis.analyze alone, the analysis annotates the AST so every invocation gets a freshly parsed one
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SemanticAnalysisBenchmark {
+
+    @State(Scope.Thread)
+    public static class ParsedProgram {
+        ASTNode root;
+
+        @Setup(Level.Invocation)
+        public void parse(Sources sources) throws Exception {
+            root = Phases.parse(sources.source);
+        }
+    }
+
+    @Benchmark
+    public ASTNode analyze(ParsedProgram program) throws Exception {
+        return Phases.analyze(program.root);
+    }
+}
@@ -0,0 +1,43 @@
+package benchmarks;
+
+import compiler.Generator.ProgramGenerator;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/// The programs compiled by the benchmarks: the small and medium ones are the samples of the repository,
+/// the huge one is generated so that the scaling of each phase shows up
+@State(Scope.Benchmark)
+public class Sources {
+    @Param({"small", "medium", "huge"})
+    public String size;
+
+    public String source;
+    // the same source in a temporary file, for the benchmarks that read it from the disk
+    public Path file;
+
+    @Setup(Level.Trial)
+    public void load() throws IOException {
+        source = switch (size) {
+            case "small" -> Files.readString(Path.of("tests/test.lang"));
+            case "medium" -> Files.readString(Path.of("code_example2025.txt"));
+            case "huge" -> hugeProgram();
+            default -> throw new IllegalArgumentException("Unknown input size: " + size);
+        };
+        file = Files.createTempFile("benchmark", ".lang");
+        file.toFile().deleteOnExit();
+        Files.writeString(file, source);
+    }
+
+    private static String hugeProgram() {
+        ProgramGenerator generator = new ProgramGenerator();
+        generator.lines = 100_000;
+        return generator.generate();
+    }
+}
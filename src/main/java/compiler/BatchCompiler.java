@@ -0,0 +1,265 @@
+package compiler;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import compiler.Diagnostics.Diagnostic;
+import compiler.Diagnostics.Diagnostic.Code;
+import compiler.Diagnostics.Diagnostics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/// Compiles many files at once, each file goes through the whole pipeline on its own task of a work-stealing pool.
+/// The compilations don't share any state, so the only synchronization is collecting the results, the class files are then
+/// checked for collisions in the order of the files, and written in parallel.
+public class BatchCompiler {
+	@Parameter(description = "Files or directories, the .lang files of the directories are compiled recursively", required = true)
+	public List<String> paths = new ArrayList<>();
+
+	@Parameter(names={"--out-dir", "-d"}, description = "Directory of the class files, they are written next to the sources by default")
+	public String outDir;
+	@Parameter(names={"--threads", "-j"}, description = "Number of files compiled in parallel")
+	public int threads = Runtime.getRuntime().availableProcessors();
+	@Parameter(names={"--unbuffered-output"}, description = "Make the compiled programs write directly to System.out instead of buffering their output")
+	public boolean unbufferedOutput = false;
+	@Parameter(names={"--no-constant-folding"}, description = "Generate the code of constant expressions as they are written instead of computing them at compile time")
+	public boolean noConstantFolding = false;
+	@Parameter(names={"--cache-dir"}, description = "Directory of the compilation cache, the sources that were already compiled with the same flags are not compiled again")
+	public String cacheDir;
+	@Parameter(names={"--cache-size"}, description = "Maximum size of the compilation cache in megabytes, the least recently used entries are removed first")
+	public long cacheSizeMegabytes = 256;
+
+	/// Outcome of the compilation of one file
+	public record FileResult(Path file, int exitCode, String diagnostics, long lines) {
+	}
+
+	/// A file to compile, with the directory of its class files relative to the output directory: the directories
+	/// below a directory given as argument are mirrored under the output directory, the files given as arguments go in it
+	public record Source(Path file, Path directory) {
+	}
+
+	public static void main(String[] args) {
+		BatchCompiler batchCompiler = new BatchCompiler();
+		try {
+			JCommander.newBuilder()
+					.addObject(batchCompiler)
+					.build()
+					.parse(args);
+		} catch (ParameterException e) {
+			e.usage();
+			System.exit(1);
+		}
+
+		int exitCode = batchCompiler.run(System.out, System.err);
+		if (exitCode != 0) {
+			System.exit(exitCode);
+		}
+	}
+
+	/// Compile all the files, print their diagnostics (in the order of the files) and the throughput.
+	/// Returns the highest exit code of the compilations
+	public int run(PrintStream output, PrintStream diagnostics) {
+		List<Source> files;
+		try {
+			files = collectSources();
+		} catch (IOException e) {
+			diagnostics.println(e.getMessage());
+			return 1;
+		}
+
+		long start = System.nanoTime();
+		List<FileResult> results;
+		try {
+			results = compileAll(files);
+		} catch (Exception e) {
+			e.printStackTrace(diagnostics);
+			return 1;
+		}
+		double seconds = (System.nanoTime() - start) / 1e9;
+
+		int exitCode = 0;
+		int failed = 0;
+		long lines = 0;
+		for (FileResult result : results) {
+			lines += result.lines();
+			if (result.exitCode() != 0) {
+				failed++;
+				exitCode = Math.max(exitCode, result.exitCode());
+				diagnostics.println(result.file() + ":");
+				diagnostics.print(result.diagnostics());
+			}
+		}
+
+		output.printf("Compiled %d files (%d lines) in %.3f s with %d threads: %.1f files/s, %.1f lines/s%n",
+				results.size(), lines, seconds, threads, results.size() / seconds, lines / seconds);
+		if (failed > 0) {
+			output.printf("%d of %d files failed%n", failed, results.size());
+		}
+		return exitCode;
+	}
+
+	/// Compile the files in parallel, the results are in the same order as the files. The class files are only written once
+	/// every file is compiled, a file that would overwrite a class file of an earlier file, e.g., a record with the same name
+	/// in the same output directory, fails instead
+	public List<FileResult> compileAll(List<Source> sources) throws Exception {
+		ForkJoinPool pool = new ForkJoinPool(threads);
+		try {
+			List<Callable<Compilation>> compilations = new ArrayList<>();
+			for (Source source : sources) {
+				compilations.add(() -> compileFile(source));
+			}
+			List<Compilation> compiled = new ArrayList<>();
+			for (Future<Compilation> future : pool.invokeAll(compilations)) {
+				compiled.add(future.get());
+			}
+
+			// in the order of the files, so the same file always wins
+			Map<Path, ClassFile> owners = new HashMap<>();
+			for (Compilation compilation : compiled) {
+				compilation.claimClassFiles(owners);
+			}
+
+			List<Callable<FileResult>> writes = new ArrayList<>();
+			for (Compilation compilation : compiled) {
+				writes.add(compilation::write);
+			}
+			List<FileResult> results = new ArrayList<>();
+			for (Future<FileResult> future : pool.invokeAll(writes)) {
+				results.add(future.get());
+			}
+			return results;
+		} finally {
+			pool.shutdown();
+		}
+	}
+
+	private Compilation compileFile(Source source) {
+		Compiler compiler = new Compiler();
+		compiler.file = source.file().toString();
+		if (outDir != null) {
+			String className = source.file().getFileName().toString().split("\\.")[0];
+			compiler.out = Path.of(outDir).resolve(source.directory()).resolve(className + ".class").toString();
+		}
+		compiler.unbufferedOutput = unbufferedOutput;
+		compiler.noConstantFolding = noConstantFolding;
+		compiler.cacheDir = cacheDir;
+		compiler.cacheSizeMegabytes = cacheSizeMegabytes;
+
+		Compilation compilation = new Compilation(source.file(), compiler);
+		try {
+			CompilationResult result = compiler.generateClasses();
+			for (Diagnostic diagnostic : result.diagnostics()) {
+				compilation.diagnostics.report(diagnostic);
+			}
+			compilation.classes = result.classes();
+			compilation.lines = result.lines();
+		} catch (RuntimeException | StackOverflowError e) {
+			// one broken file must not stop the others
+			compilation.crash = e;
+		}
+		return compilation;
+	}
+
+	/// A class file to write and the source it was compiled from
+	private record ClassFile(Path source, byte[] bytes) {
+	}
+
+	/// A compiled file whose classes are not written yet
+	private static final class Compilation {
+		private final Path file;
+		private final Compiler compiler;
+		private final Diagnostics diagnostics = new Diagnostics();
+		// null if the compilation failed
+		private Map<String, byte[]> classes;
+		private Throwable crash;
+		private long lines;
+		// the bytes of the class files this file writes, the ones an earlier file writes with the same bytes, e.g., the runtime classes, are left out
+		private final Map<String, byte[]> classFiles = new LinkedHashMap<>();
+
+		Compilation(Path file, Compiler compiler) {
+			this.file = file;
+			this.compiler = compiler;
+		}
+
+		/// Take the class files of this compilation that no earlier one writes, the compilation fails if one of them
+		/// is already written by another file with different bytes
+		void claimClassFiles(Map<Path, ClassFile> owners) {
+			if (classes == null || crash != null) {
+				return;
+			}
+
+			Map<Path, String> claimed = new LinkedHashMap<>();
+			for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+				Path path = compiler.classFile(entry.getKey()).toPath().toAbsolutePath().normalize();
+				ClassFile owner = owners.get(path);
+				if (owner == null) {
+					claimed.put(path, entry.getKey());
+				} else if (!Arrays.equals(owner.bytes(), entry.getValue())) {
+					diagnostics.error(Code.OUTPUT_ERROR, "The class file " + path + " of " + entry.getKey() + " is also generated by " + owner.source(), 0, 0);
+				}
+			}
+			if (diagnostics.hasErrors()) {
+				return;
+			}
+
+			for (Map.Entry<Path, String> entry : claimed.entrySet()) {
+				byte[] bytes = classes.get(entry.getValue());
+				owners.put(entry.getKey(), new ClassFile(file, bytes));
+				classFiles.put(entry.getValue(), bytes);
+			}
+		}
+
+		FileResult write() {
+			if (crash == null && !diagnostics.hasErrors()) {
+				try {
+					compiler.writeClassFiles(classFiles);
+				} catch (Exception e) {
+					diagnostics.error(e, Code.OUTPUT_ERROR, 0, 0);
+				}
+			}
+
+			ByteArrayOutputStream diagnosticsBytes = new ByteArrayOutputStream();
+			PrintStream output = new PrintStream(diagnosticsBytes, true, StandardCharsets.UTF_8);
+			diagnostics.print(output, file.toString());
+			if (crash != null) {
+				crash.printStackTrace(output);
+			}
+			int exitCode = crash != null ? 1 : diagnostics.exitCode();
+			return new FileResult(file, exitCode, diagnosticsBytes.toString(StandardCharsets.UTF_8), lines);
+		}
+	}
+
+	/// The files given as arguments, and the .lang files found in the directories given as arguments
+	private List<Source> collectSources() throws IOException {
+		List<Source> files = new ArrayList<>();
+		for (String path : paths) {
+			Path source = Path.of(path);
+			if (Files.isDirectory(source)) {
+				try (Stream<Path> walk = Files.walk(source)) {
+					walk.filter(Files::isRegularFile)
+							.filter(file -> file.getFileName().toString().endsWith(".lang"))
+							.sorted()
+							.forEach(file -> files.add(new Source(file, source.relativize(file.getParent()))));
+				}
+			} else {
+				files.add(new Source(source, Path.of("")));
+			}
+		}
+		return files;
+	}
+}
@@ -0,0 +1,361 @@
+package compiler.Cache;
+
+import compiler.Compiler;
+import compiler.Parser.FlatAST;
+import compiler.Runtime.StdOut;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemNotFoundException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/// On-disk cache of the generated classes, indexed by a hash of everything that can change them:
+/// the source bytes, the name of the main class, the code generation flags and the compiler itself.
+/// Each entry is one file holding all the classes of a program.
+/// The cache also holds the typed ASTs, indexed by the hash of the source and of the compiler only, so that another class name,
+/// other flags or another tool reading the typed tree can skip the lexer, the parser and the semantic analysis. The last modified time of the entries is the last time they were used,
+/// the least recently used entries are deleted when the cache grows over its maximum size.
+/// The entries are written to a temporary file and then moved in place, so several compilers can share the same directory.
+public class CompilationCache {
+	private static final String ENTRY_EXTENSION = ".classes";
+	private static final String TREE_EXTENSION = ".ast";
+	private static final String RUNTIME_PACKAGE = StdOut.class.getPackageName() + ".";
+	private static final Map<Path, CompilationCache> openCaches = new ConcurrentHashMap<>();
+	// the hash of the compiler's classes, empty if they couldn't be read
+	private static String compilerFingerprint;
+
+	private final Path directory;
+	// the size given to the last open of the directory, a compile server or a batch compiler can open it with another --cache-size
+	private long maxBytes;
+	// approximation of the size of the directory, it is recomputed before evicting since other processes may use the cache
+	private long currentBytes = -1;
+	private int hits;
+	private int misses;
+
+	public CompilationCache(Path directory, long maxBytes) {
+		this.directory = directory;
+		this.maxBytes = maxBytes;
+	}
+
+	/// Cache instance shared by all the compilations of this JVM that use the same directory.
+	/// Its maximum size becomes the given one, the entries stored from then on evict the cache down to it
+	public static CompilationCache open(Path directory, long maxBytes) {
+		CompilationCache cache = openCaches.computeIfAbsent(directory.toAbsolutePath().normalize(), dir -> new CompilationCache(dir, maxBytes));
+		cache.setMaxBytes(maxBytes);
+		return cache;
+	}
+
+	private synchronized void setMaxBytes(long maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/// Whether the classes of the compiler could be hashed. Without that the entries written by different builds of the compiler
+	/// can't be told apart, so the cache must not be used
+	public static boolean isAvailable() {
+		return !compilerFingerprint().isEmpty();
+	}
+
+	/// Compute the key of a compilation
+	public static String key(byte[] source, String className, boolean unbufferedOutput, boolean noConstantFolding) {
+		requireAvailable();
+		MessageDigest digest = sha256();
+		digest.update(compilerFingerprint().getBytes(StandardCharsets.UTF_8));
+		digest.update((className + "\0" + unbufferedOutput + "\0" + noConstantFolding + "\0").getBytes(StandardCharsets.UTF_8));
+		digest.update(source);
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	/// Compute the key of the typed AST of a source
+	public static String treeKey(byte[] source) {
+		requireAvailable();
+		MessageDigest digest = sha256();
+		digest.update(compilerFingerprint().getBytes(StandardCharsets.UTF_8));
+		digest.update("ast\0".getBytes(StandardCharsets.UTF_8));
+		digest.update(source);
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	/// Returns the classes stored for that key, or null if they are not in the cache
+	public Map<String, byte[]> get(String key) {
+		Path entry = entryPath(key, ENTRY_EXTENSION);
+		byte[] bytes;
+		try {
+			bytes = Files.readAllBytes(entry);
+			// mark the entry as recently used
+			Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+		} catch (IOException e) {
+			countMiss();
+			return null;
+		}
+
+		try {
+			Map<String, byte[]> classes = decode(bytes);
+			countHit();
+			return classes;
+		} catch (IOException e) {
+			// truncated or corrupted entry, compile the file again
+			deleteQuietly(entry);
+			countMiss();
+			return null;
+		}
+	}
+
+	/// Store the classes of a compilation, a failure to write the cache doesn't fail the compilation
+	public void put(String key, Map<String, byte[]> classes) {
+		try {
+			store(entryPath(key, ENTRY_EXTENSION), encode(classes));
+		} catch (IOException e) {
+			// the cache is only an optimization
+		}
+	}
+
+	/// Returns the typed AST stored for that key, or null if it is not in the cache. The entry is memory-mapped while it is read.
+	/// The lookups of the trees are not counted in the hits and the misses, which are the ones of the classes
+	public FlatAST getTree(String key) {
+		Path entry = entryPath(key, TREE_EXTENSION);
+		try (FileChannel channel = FileChannel.open(entry, StandardOpenOption.READ)) {
+			FlatAST tree = FlatAST.read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+			Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+			return tree;
+		} catch (NoSuchFileException e) {
+			return null;
+		} catch (IOException e) {
+			// truncated or corrupted entry, analyze the source again
+			deleteQuietly(entry);
+			return null;
+		}
+	}
+
+	/// Store the typed AST of a source, a failure to write the cache doesn't fail the compilation
+	public void putTree(String key, FlatAST tree) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream output = new DataOutputStream(new BufferedOutputStream(bytes));
+			tree.write(output);
+			output.flush();
+			store(entryPath(key, TREE_EXTENSION), bytes.toByteArray());
+		} catch (IOException e) {
+			// the cache is only an optimization
+		}
+	}
+
+	/// Write an entry to a temporary file and move it in place, then evict the old entries if the cache is too large
+	private void store(Path entry, byte[] bytes) throws IOException {
+		Files.createDirectories(directory);
+		Path temporary = Files.createTempFile(directory, entry.getFileName().toString(), ".tmp");
+		Files.write(temporary, bytes);
+		try {
+			Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			Files.move(temporary, entry, StandardCopyOption.REPLACE_EXISTING);
+		}
+
+		synchronized (this) {
+			if (currentBytes < 0) {
+				currentBytes = directorySize();
+			} else {
+				currentBytes += bytes.length;
+			}
+			if (currentBytes > maxBytes) {
+				evict();
+			}
+		}
+	}
+
+	public synchronized int getHits() {
+		return hits;
+	}
+
+	public synchronized int getMisses() {
+		return misses;
+	}
+
+	/// Delete the least recently used entries until the cache fits in its maximum size
+	private void evict() throws IOException {
+		List<Path> entries = listEntries();
+		entries.sort(Comparator.comparing(CompilationCache::lastModified));
+
+		long size = 0;
+		for (Path entry : entries) {
+			size += Files.size(entry);
+		}
+		for (Path entry : entries) {
+			if (size <= maxBytes) {
+				break;
+			}
+			size -= Files.size(entry);
+			deleteQuietly(entry);
+		}
+		currentBytes = size;
+	}
+
+	private long directorySize() throws IOException {
+		long size = 0;
+		for (Path entry : listEntries()) {
+			size += Files.size(entry);
+		}
+		return size;
+	}
+
+	private List<Path> listEntries() throws IOException {
+		try (Stream<Path> files = Files.list(directory)) {
+			return new ArrayList<>(files.filter(file -> {
+				String name = file.getFileName().toString();
+				return name.endsWith(ENTRY_EXTENSION) || name.endsWith(TREE_EXTENSION);
+			}).toList());
+		}
+	}
+
+	private Path entryPath(String key, String extension) {
+		return directory.resolve(key + extension);
+	}
+
+	private synchronized void countHit() {
+		hits++;
+	}
+
+	private synchronized void countMiss() {
+		misses++;
+	}
+
+	private static FileTime lastModified(Path entry) {
+		try {
+			return Files.getLastModifiedTime(entry);
+		} catch (IOException e) {
+			return FileTime.fromMillis(0);
+		}
+	}
+
+	private static void deleteQuietly(Path entry) {
+		try {
+			Files.deleteIfExists(entry);
+		} catch (IOException e) {
+			// another compiler may have removed it already
+		}
+	}
+
+	private static byte[] encode(Map<String, byte[]> classes) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(bytes);
+		output.writeInt(classes.size());
+		for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+			output.writeUTF(entry.getKey());
+			if (entry.getKey().startsWith(RUNTIME_PACKAGE)) {
+				// the runtime classes are the same for every program, they are copied from the compiler again when the entry is read
+				output.writeInt(-1);
+				continue;
+			}
+			output.writeInt(entry.getValue().length);
+			output.write(entry.getValue());
+		}
+		output.flush();
+		return bytes.toByteArray();
+	}
+
+	private static Map<String, byte[]> decode(byte[] bytes) throws IOException {
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(bytes));
+		int count = input.readInt();
+		Map<String, byte[]> classes = new LinkedHashMap<>();
+		for (int i = 0; i < count; i++) {
+			String name = input.readUTF();
+			int length = input.readInt();
+			if (length == -1 && name.startsWith(RUNTIME_PACKAGE)) {
+				classes.put(name, readRuntimeClass(name));
+				continue;
+			}
+			if (length < 0 || length > input.available()) {
+				throw new IOException("Invalid class length in the cache entry");
+			}
+			byte[] classBytes = new byte[length];
+			input.readFully(classBytes);
+			classes.put(name, classBytes);
+		}
+		if (input.available() != 0) {
+			throw new IOException("Unexpected data at the end of the cache entry");
+		}
+		return classes;
+	}
+
+	private static byte[] readRuntimeClass(String name) throws IOException {
+		try (InputStream inputStream = CompilationCache.class.getResourceAsStream("/" + name.replace('.', '/') + ".class")) {
+			if (inputStream == null) {
+				throw new IOException("Could not find the runtime class " + name);
+			}
+			return inputStream.readAllBytes();
+		}
+	}
+
+	/// Hash of the compiler's own classes, so that a new build of the compiler doesn't reuse the classes generated by the previous one
+	/// The hash is empty if the classes can't be read, e.g., when they aren't loaded from a directory or a jar
+	private static synchronized String compilerFingerprint() {
+		if (compilerFingerprint != null) {
+			return compilerFingerprint;
+		}
+
+		MessageDigest digest = sha256();
+		CodeSource codeSource = Compiler.class.getProtectionDomain().getCodeSource();
+		try {
+			if (codeSource == null || codeSource.getLocation() == null) {
+				throw new IOException("The location of the compiler classes is unknown");
+			}
+			Path location = Path.of(codeSource.getLocation().toURI());
+			if (Files.isDirectory(location)) {
+				try (Stream<Path> files = Files.walk(location.resolve("compiler"))) {
+					for (Path file : files.filter(Files::isRegularFile).sorted().toList()) {
+						digest.update(location.relativize(file).toString().getBytes(StandardCharsets.UTF_8));
+						digest.update(Files.readAllBytes(file));
+					}
+				}
+			} else {
+				digest.update(Files.readAllBytes(location));
+			}
+		} catch (IOException | URISyntaxException | SecurityException | IllegalArgumentException | FileSystemNotFoundException e) {
+			// nothing else identifies a build of the compiler: its version is missing from the builds that aren't packaged,
+			// and it doesn't change between the builds of a version
+			compilerFingerprint = "";
+			return compilerFingerprint;
+		}
+		compilerFingerprint = HexFormat.of().formatHex(digest.digest());
+		return compilerFingerprint;
+	}
+
+	private static void requireAvailable() {
+		if (!isAvailable()) {
+			throw new IllegalStateException("The classes of the compiler can't be read, the compilation cache can't be used");
+		}
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// every JVM has to provide SHA-256
+			throw new IllegalStateException(e);
+		}
+	}
+}
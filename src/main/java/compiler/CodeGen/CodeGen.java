@@ -19,6 +19,9 @@ import compiler.Parser.ASTNodes.Statements.Expressions.Terms.*;
 import compiler.Parser.ASTNodes.Statements.Statements.*;
 import compiler.Parser.ASTNodes.Types.NumType;
 import compiler.Parser.ASTNodes.Types.Type;
+import compiler.Parser.FlatAST;
+import compiler.Runtime.StdIn;
+import compiler.Runtime.StdOut;
 import compiler.SemanticAnalysis.Types.ArraySemType;
 import compiler.SemanticAnalysis.Types.FunctionSemType;
 import compiler.SemanticAnalysis.Types.RecordSemType;
@@ -28,28 +31,35 @@ import compiler.SemanticAnalysis.Visitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.Label;
 import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.tree.MethodNode;
 
-import java.io.FileNotFoundException;
+import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
 
 import static org.objectweb.asm.Opcodes.*;
 
 public class CodeGen implements Visitor<Void, SlotTable> {
 
-	final SemType intType = new SemType("int");
-	final SemType floatType = new SemType("float");
-	final SemType numType = new SemType("num");
-	final SemType numOrBoolType = new SemType("numOrBool");
-	final SemType stringType = new SemType("string");
-	final SemType boolType = new SemType("bool");
-	final SemType voidType = new SemType("void");
-	final SemType anyType = new SemType("any");
-	final SemType recType = new SemType("rec");
+	final SemType intType = SemType.INT;
+	final SemType floatType = SemType.FLOAT;
+	final SemType numType = SemType.NUM;
+	final SemType numOrBoolType = SemType.NUM_OR_BOOL;
+	final SemType stringType = SemType.STRING;
+	final SemType boolType = SemType.BOOL;
+	final SemType voidType = SemType.VOID;
+	final SemType anyType = SemType.ANY;
+	final SemType recType = SemType.REC;
 
 
 	private ClassWriter cw;
@@ -58,27 +68,75 @@ public class CodeGen implements Visitor<Void, SlotTable> {
 	private boolean isRecordMethod = false;
 	private String instanceName;
 	private boolean isMvTopLevel;
+	// shared with the generators of the functions, which can set it at the same time
+	private final AtomicBoolean usesStdIn;
+	private boolean bufferedOutput = true;
+	private boolean parallelFunctions = true;
 	private SlotTable slotTable;
 	private final Map<String, SemType> constantsAndGlobals;
+	private final Map<String, Object> constantValues;
 	private final LinkedHashMap<String, ClassWriter> structs;
+	private final LinkedHashMap<String, byte[]> generatedClasses;
 	private final String filePath;
 	private final String className;
 
+	// below this many functions, they are lowered one after the other on the calling thread
+	private static final int PARALLEL_FUNCTIONS = 8;
+
 	public CodeGen(String filePath, String className) {
 		this.slotTable = null;
+		this.usesStdIn = new AtomicBoolean(false);
 		this.constantsAndGlobals = new HashMap<>();
+		this.constantValues = new HashMap<>();
 		this.structs = new LinkedHashMap<>();
+		this.generatedClasses = new LinkedHashMap<>();
 		this.filePath = filePath;
 		this.className = className;
 	}
 
+	/// The generator of one function of the program, with its own method visitor and state, the tables of the program are only read from
+	private CodeGen(CodeGen program) {
+		this.usesStdIn = program.usesStdIn;
+		this.bufferedOutput = program.bufferedOutput;
+		this.constantsAndGlobals = program.constantsAndGlobals;
+		this.constantValues = program.constantValues;
+		this.structs = program.structs;
+		this.generatedClasses = program.generatedClasses;
+		this.filePath = program.filePath;
+		this.className = program.className;
+	}
+
+	/// Choose if the write functions go through the buffered StdOut runtime class (the default), or directly to System.out
+	public void setBufferedOutput(boolean bufferedOutput) {
+		this.bufferedOutput = bufferedOutput;
+	}
+
+	/// Choose if the functions are lowered concurrently (the default) or one after the other, the classes are the same either way
+	public void setParallelFunctions(boolean parallelFunctions) {
+		this.parallelFunctions = parallelFunctions;
+	}
+
 	public void generateCode(ASTNode root) throws Exception {
-		try {
-			root.accept(this, slotTable);
-		} catch (Exception e) {
-			e.printStackTrace();
-			System.exit(3);
-		}
+		generateClasses(root);
+		writeClassFiles();
+	}
+
+	/// Generate the bytecode of the program without writing it to disk.
+	/// The classes are indexed by their binary name, the main class is the one named after the output file
+	public Map<String, byte[]> generateClasses(ASTNode root) throws Exception {
+		root.accept(this, slotTable);
+		return generatedClasses;
+	}
+
+	/// Same as generateClasses, for a flat AST that went through the semantic analysis
+	public Map<String, byte[]> generateClasses(FlatAST ast) throws Exception {
+		ast.accept(this, slotTable);
+		return generatedClasses;
+	}
+
+	/// The classes generated by the last call to generateClasses or generateCode
+	public Map<String, byte[]> getGeneratedClasses() {
+		return generatedClasses;
 	}
 
 	@Override
@@ -98,40 +156,65 @@ public class CodeGen implements Visitor<Void, SlotTable> {
 		mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "main", "([Ljava/lang/String;)V", null, null);
 		mv.visitCode();
 
-		slotTable = new SlotTable(new AtomicReference<>(1), null);
+		slotTable = new SlotTable(new AtomicReference<>(1));
+
+		// everything in this main function is wrapped in a try-finally block, so that the buffered output is flushed even if the program crashes
+		Label tryStart = new Label();
+		Label tryEnd = new Label();
+		Label finallyHandler = new Label();
+		if (bufferedOutput) {
+			mv.visitTryCatchBlock(tryStart, tryEnd, finallyHandler, null);
+			mv.visitLabel(tryStart);
+		}
 
 		// define the constants, globals, records from the main function, i.e., static fields will have their value assigned from the main function
 		// first visit the constants
 		for (VariableDeclaration constant : program.getConstants()) {
-			constant.accept(this, slotTable);
+			generate(constant, slotTable);
 		}
 
 		for (RecordDefinition record : program.getRecords()) {
-			record.accept(this, slotTable);
+			generate(record, slotTable);
 		}
 
 		for (VariableDeclaration global : program.getGlobals()) {
-			global.accept(this, slotTable);
+			generate(global, slotTable);
 		}
 
 		// call the actual main function
 		mv.visitMethodInsn(INVOKESTATIC, className, "main", "()V", false);
 
-		mv.visitInsn(RETURN);
-		mv.visitMaxs(0, 0);
+		if (bufferedOutput) {
+			String stdOutName = org.objectweb.asm.Type.getInternalName(StdOut.class);
+			mv.visitLabel(tryEnd);
+			mv.visitMethodInsn(INVOKESTATIC, stdOutName, "flush", "()V", false);
+			mv.visitInsn(RETURN);
 
-		// slot number starts at 0 because there are no arguments
-		slotTable = new SlotTable(new AtomicReference<>(0), null);
+			// flush and rethrow the exception
+			mv.visitLabel(finallyHandler);
+			mv.visitMethodInsn(INVOKESTATIC, stdOutName, "flush", "()V", false);
+			mv.visitInsn(ATHROW);
+		} else {
+			mv.visitInsn(RETURN);
+		}
+		mv.visitMaxs(0, 0);
 
 		// actual main function
 		mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "main", "()V", null, null);
 		mv.visitCode();
 
-		isMvTopLevel = true;
-
-		// function declarations save and restore the method visitor
-		for (FunctionDefinition function : program.getFunctions()) {
-			function.accept(this, slotTable);
+		// the functions are lowered to method nodes first, then added to their class in the order of the program,
+		// so that the constant pools and the frames are the same as when the functions are generated one after the other
+		ArrayList<FunctionDefinition> functions = program.getFunctions();
+		MethodNode[] methods = lowerFunctions(functions);
+		for (int i = 0; i < functions.size(); i++) {
+			FunctionDefinition function = functions.get(i);
+			try {
+				// the frames of the method are computed when it is added to its class
+				addMethod(function, methods[i]);
+			} catch (RuntimeException e) {
+				throw positioned(e, function);
+			}
 		}
 
 		mv.visitInsn(RETURN); // return void from main
@@ -139,31 +222,78 @@ public class CodeGen implements Visitor<Void, SlotTable> {
 		mv.visitEnd();
 		cw.visitEnd();
 
-		byte[] bytearray = cw.toByteArray();
-		try (FileOutputStream outputStream = new FileOutputStream(filePath + className.toLowerCase() + ".class") ) {
-			outputStream.write(bytearray);
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-			System.exit(3);
-		};
+		generatedClasses.put(className, cw.toByteArray());
 
-		// iterate over the structs and store them in files
 		for (Map.Entry<String, ClassWriter> entry : structs.entrySet()) {
-			String structName = entry.getKey();
-			ClassWriter structCw = entry.getValue();
-
-			byte[] structByteArray = structCw.toByteArray();
-			try (FileOutputStream outputStream = new FileOutputStream(filePath + structName + ".class") ) {
-				outputStream.write(structByteArray);
-			} catch (FileNotFoundException e) {
-				e.printStackTrace();
-				System.exit(3);
-			};
+			generatedClasses.put(entry.getKey(), entry.getValue().toByteArray());
+		}
+
+		// the runtime support classes are only needed if the program uses them
+		if (usesStdIn.get()) {
+			addRuntimeClass(StdIn.class);
+		}
+		// StdIn also flushes the buffered output before reading, so that prompts are visible
+		if (bufferedOutput || usesStdIn.get()) {
+			addRuntimeClass(StdOut.class);
 		}
 
 		return null;
 	}
 
+	/// Generate the code of a declaration or of a statement, an error gets its position unless it already has the one of a statement in it
+	private void generate(ASTNode node, SlotTable localTable) throws Exception {
+		try {
+			node.accept(this, localTable);
+		} catch (CodeGenerationException e) {
+			throw e;
+		} catch (Exception e) {
+			throw positioned(e, node);
+		}
+	}
+
+	private static CodeGenerationException positioned(Exception error, ASTNode node) {
+		String message = error.getMessage() != null ? error.getMessage() : error.toString();
+		return new CodeGenerationException(message, node.line, node.column, error);
+	}
+
+	/// Add the bytecode of a runtime support class to the generated classes, so that it is shipped with the program
+	private void addRuntimeClass(Class<?> runtimeClass) throws IOException {
+		String internalName = org.objectweb.asm.Type.getInternalName(runtimeClass);
+		try (InputStream inputStream = runtimeClass.getResourceAsStream("/" + internalName + ".class")) {
+			if (inputStream == null) {
+				throw new IOException("Could not find the runtime class " + internalName);
+			}
+			generatedClasses.put(runtimeClass.getName(), inputStream.readAllBytes());
+		}
+	}
+
+	/// Write the generated classes next to each other, the runtime classes go in the directory matching their package
+	public void writeClassFiles() throws IOException {
+		writeClassFiles(generatedClasses);
+	}
+
+	/// Write classes generated for this program, e.g., by a previous compilation of the same source
+	public void writeClassFiles(Map<String, byte[]> classes) throws IOException {
+		for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+			File classFile = classFile(entry.getKey());
+			if (classFile.getParentFile() != null) {
+				classFile.getParentFile().mkdirs();
+			}
+
+			try (FileOutputStream outputStream = new FileOutputStream(classFile)) {
+				outputStream.write(entry.getValue());
+			}
+		}
+	}
+
+	/// The file a class is written to, the class of the program is named after the output file
+	public File classFile(String name) {
+		if (name.equals(className)) {
+			return new File(filePath + className.toLowerCase() + ".class");
+		}
+		return new File(filePath + name.replace('.', '/') + ".class");
+	}
+
 	@Override
 	public Void visitVariableDeclaration(VariableDeclaration variableDeclaration, SlotTable localTable) throws Exception {
 		// create the bytecode
@@ -174,22 +304,35 @@ public class CodeGen implements Visitor<Void, SlotTable> {
 				access |= ACC_FINAL;
 			}
 
+			// constants initialized with a literal get a ConstantValue attribute, and their value is inlined where they are used
+			Object constantValue = null;
+			Expression value = variableDeclaration.getValue();
+			while (value instanceof ParenthesesTerm parenthesesTerm) {
+				value = parenthesesTerm.getExpression();
+			}
+			if (isConstant && value instanceof ConstVal constVal) {
+				constantValue = constVal.getValue();
+			}
+
 			// if the variable declaration is global, declare it as a constant or a global
 			cw.visitField(access,
 					variableDeclaration.getName().lexeme,
 					variableDeclaration.semtype.fieldDescriptor(),
 					null, // no generic signature
-					null // no initial value
+					constantValue instanceof Boolean bool ? (Integer) (bool ? 1 : 0) : constantValue // booleans are stored as ints in the constant pool
 			).visitEnd();
 
-			loadVarDeclValue(variableDeclaration, slotTable);
+			if (constantValue != null) {
+				// no need to initialize the field from the main function, the JVM does it when the class is loaded
+				constantValues.put(variableDeclaration.getName().lexeme, constantValue);
+			} else {
+				loadVarDeclValue(variableDeclaration, slotTable);
 
-			mv.visitFieldInsn(PUTSTATIC, className, variableDeclaration.getName().lexeme, variableDeclaration.semtype.fieldDescriptor());
+				mv.visitFieldInsn(PUTSTATIC, className, variableDeclaration.getName().lexeme, variableDeclaration.semtype.fieldDescriptor());
+			}
 
 			// NOTE: Don't add to the local table because it's not a local variable!
 
-			variableDeclaration.semtype.setIsConstant(variableDeclaration.isConstant());
-			variableDeclaration.semtype.setGlobal(variableDeclaration.isGlobal());
 			constantsAndGlobals.put(variableDeclaration.getName().lexeme, variableDeclaration.semtype);
 
 		} else {
@@ -245,11 +388,12 @@ public class CodeGen implements Visitor<Void, SlotTable> {
 		// then store the results
 		switch (variableAssignment.getAccess()) {
 			case IdentifierAccess identifierAccess:
-				if (variableAssignment.semtype.isGlobal || variableAssignment.semtype.isConstant) {
+				int index = localTable.lookup(identifierAccess.getIdentifier().lexeme);
+				// if the identifier is a global, and it isn't redefined in the local scope, we need to store the field
+				if (constantsAndGlobals.containsKey(identifierAccess.getIdentifier().lexeme) && index == -1) {
 					SemType constSemType = constantsAndGlobals.get(identifierAccess.getIdentifier().lexeme);
 					mv.visitFieldInsn(PUTSTATIC, className, identifierAccess.getIdentifier().lexeme, constSemType.fieldDescriptor());
 				} else {
-					int index = localTable.lookup(identifierAccess.getIdentifier().lexeme);
 					if (index == -1) {
 						// unexpected error : the term should be in the slot table.
 						throw new RuntimeException("Unexpected error : the variable " + identifierAccess.getIdentifier().lexeme + " is not in the slot table.");
@@ -422,11 +566,11 @@ public class CodeGen implements Visitor<Void, SlotTable> {
 			int access = INVOKESTATIC;
 			String className = "java/lang/";
 
-			className += switch (recordDef.semtype.type) {
-				case "int" -> "Integer";
-				case "float" -> "Float";
-				case "bool" -> "Boolean";
-				case "string" -> "String";
+			className += switch (recordDef.semtype.kind) {
+				case INT -> "Integer";
+				case FLOAT -> "Float";
+				case BOOL -> "Boolean";
+				case STRING -> "String";
 				default -> "unknown";
 			};
 
@@ -601,49 +745,76 @@ public class CodeGen implements Visitor<Void, SlotTable> {
 
 	@Override
 	public Void visitFunctionDefinition(FunctionDefinition functionDefinition, SlotTable localTable) throws Exception {
+		addMethod(functionDefinition, new CodeGen(this).lowerFunction(functionDefinition));
+		return null;
+	}
 
-		MethodVisitor oldMv = mv;
-		ClassWriter oldCw = cw;
-		SlotTable funcTable = localTable;
-
-		// the main function is already defined, so we skip the function definition
-		if (!functionDefinition.getName().lexeme.equals("main")) {
-			isMvTopLevel = false;
-			isRecordMethod = functionDefinition.hasInstanceRef();
+	/// Lower the functions of the program, concurrently on the common fork-join pool when there are enough of them.
+	/// The first error in the order of the program is thrown once all the functions are lowered
+	private MethodNode[] lowerFunctions(ArrayList<FunctionDefinition> functions) throws Exception {
+		MethodNode[] methods = new MethodNode[functions.size()];
+		Exception[] errors = new Exception[functions.size()];
+		IntStream indices = IntStream.range(0, functions.size());
+		if (parallelFunctions && functions.size() >= PARALLEL_FUNCTIONS) {
+			indices = indices.parallel();
+		}
+		indices.forEach(i -> {
+			try {
+				methods[i] = new CodeGen(this).lowerFunction(functions.get(i));
+			} catch (CodeGenerationException e) {
+				errors[i] = e;
+			} catch (Exception e) {
+				errors[i] = positioned(e, functions.get(i));
+			}
+		});
 
-			if (isRecordMethod) {
-				String recordName = functionDefinition.getInstanceRef().getSymbol().lexeme;
-				cw = structs.get(recordName); // get the structure's cw
-				instanceName = functionDefinition.getInstanceName().lexeme;
+		for (Exception error : errors) {
+			if (error != null) {
+				throw error;
 			}
+		}
+		return methods;
+	}
 
-			// NOTE: The slots of other functions start at 0, I think it's because they don't have self, except for record methods
-			funcTable = new SlotTable(new AtomicReference<>(isRecordMethod ? 1 : 0), localTable);
+	/// Generate the code of a function in a method node, this generator must be the one of that function
+	private MethodNode lowerFunction(FunctionDefinition functionDefinition) throws Exception {
+		// the main function is the body of the main()V method of the program, the other functions are methods of their own
+		isMvTopLevel = functionDefinition.getName().lexeme.equals("main");
+		isRecordMethod = !isMvTopLevel && functionDefinition.hasInstanceRef();
 
-			// generate string for descriptor
-			FunctionSemType functionSemType = (FunctionSemType) functionDefinition.semtype;
-			String descriptor = functionSemType.asmType().getDescriptor();
+		if (isRecordMethod) {
+			instanceName = functionDefinition.getInstanceName().lexeme;
+		}
 
-			int access = ACC_PUBLIC;
-			if (!isRecordMethod) {
-				access |= ACC_STATIC;
-			}
+		// NOTE: The slots of other functions start at 0, I think it's because they don't have self, except for record methods
+		SlotTable localTable = new SlotTable(new AtomicReference<>(isRecordMethod ? 1 : 0));
 
-			mv = cw.visitMethod(access, functionDefinition.getName().lexeme, descriptor, null, null);
-			mv.visitCode();
+		// generate string for descriptor
+		String descriptor = "()V";
+		if (!isMvTopLevel) {
+			FunctionSemType functionSemType = (FunctionSemType) functionDefinition.semtype;
+			descriptor = functionSemType.asmType().getDescriptor();
+		}
+
+		int access = ACC_PUBLIC;
+		if (!isRecordMethod) {
+			access |= ACC_STATIC;
 		}
 
+		MethodNode method = new MethodNode(ASM9, access, functionDefinition.getName().lexeme, descriptor, null, null);
+		mv = method;
+		mv.visitCode();
+
 		// add the parameters to the slot table
 		for (ParamDefinition paramDefinition : functionDefinition.getParamDefinitions()) {
-			paramDefinition.accept(this, funcTable);
+			paramDefinition.accept(this, localTable);
 		}
 
 		// accept block (the block handles the return)
-		functionDefinition.getBlock().accept(this, funcTable);
-
-		// this isn't needed for the main function
-		if (!functionDefinition.getName().lexeme.equals("main")) {
+		functionDefinition.getBody().accept(this, localTable);
 
+		// the main()V method is ended once all the functions are added
+		if (!isMvTopLevel) {
 			if (functionDefinition.getRetSemType().equals(voidType)) {
 				// if there is no return statement, we need to return void
 				mv.visitInsn(RETURN);
@@ -651,14 +822,34 @@ public class CodeGen implements Visitor<Void, SlotTable> {
 
 			mv.visitEnd();
 			mv.visitMaxs(0, 0);
+		}
+		// the body of a flat AST is decoded again if another pass needs it
+		functionDefinition.releaseBody();
+		return method;
+	}
+
+	/// Add a lowered function to its class, the code of the main function goes in the main()V method, which is the current method visitor
+	private void addMethod(FunctionDefinition functionDefinition, MethodNode method) {
+		if (functionDefinition.getName().lexeme.equals("main")) {
+			method.accept(new MethodVisitor(ASM9, mv) {
+				@Override
+				public void visitCode() {
+				}
 
-			mv = oldMv;
-			cw = oldCw;
-			isRecordMethod = false;
-			instanceName = null;
-			isMvTopLevel = true;
+				@Override
+				public void visitMaxs(int maxStack, int maxLocals) {
+				}
+
+				@Override
+				public void visitEnd() {
+				}
+			});
+		} else if (functionDefinition.hasInstanceRef()) {
+			String recordName = functionDefinition.getInstanceRef().getSymbol().lexeme;
+			method.accept(structs.get(recordName)); // the structure's cw
+		} else {
+			method.accept(cw);
 		}
-		return null;
 	}
 
 	@Override
@@ -677,12 +868,12 @@ public class CodeGen implements Visitor<Void, SlotTable> {
 	@Override
 	public Void visitBlock(Block block, SlotTable localTable) throws Exception {
 		for (Statement stmt : block.getStatements()) {
-			stmt.accept(this, localTable);
+			generate(stmt, localTable);
 		}
 
 		ReturnStatement returnStatement = (ReturnStatement) block.getReturnStatement();
 		if (returnStatement != null) {
-			returnStatement.accept(this, localTable);
+			generate(returnStatement, localTable);
 		}
 		return null;
 	}
@@ -711,6 +902,11 @@ public class CodeGen implements Visitor<Void, SlotTable> {
 
 		// if the identifier is a constant or a global, and it isn't redefined in the local scope, we need to visit the field
 		if (constantsAndGlobals.containsKey(identLexeme) && index == -1) {
+			if (constantValues.containsKey(identLexeme)) {
+				pushConstant(constantValues.get(identLexeme));
+				return null;
+			}
+
 			SemType constSemType = constantsAndGlobals.get(identLexeme);
 			mv.visitFieldInsn(GETSTATIC, className, identLexeme, constSemType.fieldDescriptor());
 			return null;
@@ -863,30 +1059,24 @@ public class CodeGen implements Visitor<Void, SlotTable> {
 	}
 
 	private void handleReadCall(SemType version)  {
-		// to read we need to create a scanner object
-		mv.visitTypeInsn(NEW, "java/util/Scanner");
-		mv.visitInsn(DUP); // duplicate to get a ref on the stack
-
-		// java/lang/System.in:Ljava/io/InputStream;
-		mv.visitFieldInsn(GETSTATIC, "java/lang/System", "in", "Ljava/io/InputStream;");
-
-		// 7: invokespecial #15                 // Method java/util/Scanner."<init>":(Ljava/io/InputStream;)V
-		mv.visitMethodInsn(INVOKESPECIAL, "java/util/Scanner", "<init>", "(Ljava/io/InputStream;)V", false);
+		// the read functions are implemented in the StdIn runtime class, which keeps one buffered reader for the whole program
+		usesStdIn.set(true);
 
 		String versionDesc = "()" + version.fieldDescriptor();
 		String methodName;
-		switch (version.type) {
-			case "int" -> methodName = "nextInt";
-			case "float" -> methodName = "nextFloat";
-			case "string" -> methodName = "next";
-			default -> methodName = "nextLine";
+		switch (version.kind) {
+			case INT -> methodName = "readInt";
+			case FLOAT -> methodName = "readFloat";
+			default -> methodName = "readString";
 		}
-		// 12: invokevirtual #18   // Method java/util/Scanner.next:()Ljava/lang/String;
-		mv.visitMethodInsn(INVOKEVIRTUAL, "java/util/Scanner", methodName, versionDesc, false);
+		mv.visitMethodInsn(INVOKESTATIC, org.objectweb.asm.Type.getInternalName(StdIn.class), methodName, versionDesc, false);
 	}
 
 	private void handleWriteCall(FunctionCall functionCall, boolean addNewLine, boolean isFloat, SlotTable localTable) throws Exception {
-		mv.visitFieldInsn(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+		// StdOut has the same print/println methods as PrintStream, but they are static
+		if (!bufferedOutput) {
+			mv.visitFieldInsn(GETSTATIC, "java/lang/System", "out", "Ljava/io/PrintStream;");
+		}
 
 		StringBuilder functionDesc = new StringBuilder();
 		// the write methods have different type descriptors based on what gets passed in as argument
@@ -944,7 +1134,11 @@ public class CodeGen implements Visitor<Void, SlotTable> {
 			functionToCall += "ln";
 		}
 
-		mv.visitMethodInsn(INVOKEVIRTUAL, "java/io/PrintStream", functionToCall, descriptor, false);
+		if (bufferedOutput) {
+			mv.visitMethodInsn(INVOKESTATIC, org.objectweb.asm.Type.getInternalName(StdOut.class), functionToCall, descriptor, false);
+		} else {
+			mv.visitMethodInsn(INVOKEVIRTUAL, "java/io/PrintStream", functionToCall, descriptor, false);
+		}
 	}
 
 	@Override
@@ -968,7 +1162,7 @@ public class CodeGen implements Visitor<Void, SlotTable> {
 		// load the param on the stack
 		paramCall.getParamExpression().accept(this, localTable);
 //		implicitTypeConversion(paramCall.getParamExpression().semtype, paramCall.semtype);
-		if (paramCall.getParamExpression().semtype.toConvert) {
+		if (paramCall.getParamExpression().conversionNeeded) {
 			mv.visitInsn(I2F);
 		}
 		return null;
@@ -976,32 +1170,50 @@ public class CodeGen implements Visitor<Void, SlotTable> {
 
 	@Override
 	public Void visitBinaryExpression(BinaryExpression binaryExpression, SlotTable localTable) throws Exception {
-		Label endLabel = new Label();
-		binaryExpression.getLeftTerm().accept(this, localTable);
-		if (binaryExpression.getLeftTerm().semtype.toConvert) {
-			mv.visitInsn(I2F);
-		}
+		// the right term of an operator chain is the rest of the chain in parentheses (see Parser.parseExpression),
+		// the chain is generated in a loop so that a long one doesn't recurse once per operator:
+		// the left terms are pushed from the start of the chain, then the operators are applied from its end
+		ArrayDeque<BinaryExpression> chain = new ArrayDeque<>();
+		ArrayDeque<Label> endLabels = new ArrayDeque<>();
+		BinaryExpression current = binaryExpression;
+		while (true) {
+			Label endLabel = new Label();
+			current.getLeftTerm().accept(this, localTable);
+			if (current.getLeftTerm().conversionNeeded) {
+				mv.visitInsn(I2F);
+			}
 
-		if (binaryExpression.getLeftTerm().semtype.equals(boolType)) {
-			// this is the short-circuit evaluation for the and/or operators
-			mv.visitInsn(DUP);
-			mv.visitJumpInsn(binaryExpression.getOperator().getSymbol().type.equals(TokenTypes.AND) ? IFEQ : IFNE, endLabel);
-		}
+			if (current.getOperator().isBooleanOperator()) {
+				// this is the short-circuit evaluation for the and/or operators
+				mv.visitInsn(DUP);
+				mv.visitJumpInsn(current.getOperator().getSymbol().type.equals(TokenTypes.AND) ? IFEQ : IFNE, endLabel);
+			}
+			chain.push(current);
+			endLabels.push(endLabel);
 
-		binaryExpression.getRightTerm().accept(this, localTable);
-		if (binaryExpression.getRightTerm().semtype.toConvert) {
-			mv.visitInsn(I2F);
+			if (!(current.getRightTerm() instanceof ParenthesesTerm parenthesesTerm && parenthesesTerm.getExpression() instanceof BinaryExpression rest)) {
+				break;
+			}
+			current = rest;
 		}
-		opCodeGenerator op = new opCodeGenerator(binaryExpression, mv);
-		op.generateCode();
 
-		mv.visitLabel(endLabel);
+		current.getRightTerm().accept(this, localTable);
+		while (!chain.isEmpty()) {
+			BinaryExpression expression = chain.pop();
+			if (expression.getRightTerm().conversionNeeded) {
+				mv.visitInsn(I2F);
+			}
+			opCodeGenerator op = new opCodeGenerator(expression, mv);
+			op.generateCode();
+
+			mv.visitLabel(endLabels.pop());
+		}
 		return null;
 	}
 
 	@Override
 	public Void visitUnaryExpression(UnaryExpression unaryExpression, SlotTable localTable) throws Exception {
-		unaryExpression.getTerm().accept(this, slotTable);
+		unaryExpression.getTerm().accept(this, localTable);
 
 		UnaryOperator unaryOperator = unaryExpression.getOperator();
 		switch (unaryOperator.getOperator()) {
@@ -1053,17 +1265,17 @@ public class CodeGen implements Visitor<Void, SlotTable> {
 		String arrayElemDesc = arrayExpression.getType().symbol.lexeme;
 
 		// note: we can't use asm.Type.getOpcode because it doesn't support NEWARRAY
-		switch (arraySemType.getElementSemType().type) {
-			case "int":
+		switch (arraySemType.getElementSemType().kind) {
+			case INT:
 				mv.visitIntInsn(NEWARRAY, T_INT);
 				break;
-			case "float":
+			case FLOAT:
 				mv.visitIntInsn(NEWARRAY, T_FLOAT);
 				break;
-			case "bool":
+			case BOOL:
 				mv.visitIntInsn(NEWARRAY, T_BOOLEAN);
 				break;
-			case "string":
+			case STRING:
 				mv.visitTypeInsn(ANEWARRAY, "java/lang/String");
 				break;
 			default:
@@ -1076,11 +1288,26 @@ public class CodeGen implements Visitor<Void, SlotTable> {
 
 	@Override
 	public Void visitConstValue(ConstVal constVal, SlotTable localTable) throws Exception {
-		mv.visitLdcInsn(constVal.getValue());
+		pushConstant(constVal.getValue());
 
 		return null;
 	}
 
+	/// Load a constant value on the stack, using the short instructions for the small values instead of a LDC from the constant pool
+	private void pushConstant(Object value) {
+		switch (value) {
+			case Boolean bool -> mv.visitInsn(bool ? ICONST_1 : ICONST_0);
+			case Integer i when i >= -1 && i <= 5 -> mv.visitInsn(ICONST_0 + i);
+			case Integer i when i >= Byte.MIN_VALUE && i <= Byte.MAX_VALUE -> mv.visitIntInsn(BIPUSH, i);
+			case Integer i when i >= Short.MIN_VALUE && i <= Short.MAX_VALUE -> mv.visitIntInsn(SIPUSH, i);
+			// compare the bits so that -0.0 isn't replaced by 0.0
+			case Float f when Float.floatToRawIntBits(f) == Float.floatToRawIntBits(0f) -> mv.visitInsn(FCONST_0);
+			case Float f when f == 1f -> mv.visitInsn(FCONST_1);
+			case Float f when f == 2f -> mv.visitInsn(FCONST_2);
+			default -> mv.visitLdcInsn(value);
+		}
+	}
+
 	@Override
 	public Void visitParenthesesTerm(ParenthesesTerm parenthesesTerm, SlotTable localTable) throws Exception {
 		parenthesesTerm.getExpression().accept(this, localTable);
@@ -1171,8 +1398,9 @@ public class CodeGen implements Visitor<Void, SlotTable> {
 		Expression step = forLoop.getStep();
 
 		int loopVarIdx = localTable.lookup(varSymbol.lexeme);
-		if (loopVarIdx != -1 && step.semtype.equals(intType) && step instanceof ConstVal constStep && forLoop.semtype.equals(intType)) {
-			// since the loop var is a local variable and the step is a constant, we can use the iinc instruction
+		if (loopVarIdx != -1 && step.semtype.equals(intType) && step instanceof ConstVal constStep && forLoop.semtype.equals(intType)
+				&& (Integer) constStep.getSymbol().value >= Short.MIN_VALUE && (Integer) constStep.getSymbol().value <= Short.MAX_VALUE) {
+			// since the loop var is a local variable and the step is a constant (that fits in the increment of iinc), we can use the iinc instruction
 			mv.visitIincInsn(loopVarIdx, (Integer) constStep.getSymbol().value);
 		} else {
 			loadOrStoreVarFromSymbol(forLoop, localTable, varSymbol, forLoop.semtype, false);
@@ -0,0 +1,13 @@
+package compiler.CodeGen;
+
+/// An error of the code generation, at the position of the innermost statement or declaration whose code was being generated
+public class CodeGenerationException extends Exception {
+	public final int line;
+	public final int column;
+
+	public CodeGenerationException(String message, int line, int column, Throwable cause) {
+		super(message, cause);
+		this.line = line;
+		this.column = column;
+	}
+}
@@ -0,0 +1,45 @@
+package compiler.CodeGen;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.Map;
+
+/// Class loader that defines the classes generated by the code generator straight from their bytecode, without going through class files.
+/// The generated classes (including the copies of the runtime support classes) are defined by this loader before asking the parent,
+/// so every run gets fresh static fields, e.g., the output buffer of StdOut and the input stream of StdIn.
+public class ProgramClassLoader extends ClassLoader {
+	private final Map<String, byte[]> classes;
+
+	public ProgramClassLoader(Map<String, byte[]> classes) {
+		// the generated code only references the java.* classes besides its own
+		super("program", ClassLoader.getPlatformClassLoader());
+		this.classes = classes;
+	}
+
+	@Override
+	protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
+		synchronized (getClassLoadingLock(name)) {
+			Class<?> loadedClass = findLoadedClass(name);
+			if (loadedClass == null) {
+				byte[] bytes = classes.get(name);
+				if (bytes == null) {
+					return super.loadClass(name, resolve);
+				}
+				loadedClass = defineClass(name, bytes, 0, bytes.length);
+			}
+
+			if (resolve) {
+				resolveClass(loadedClass);
+			}
+			return loadedClass;
+		}
+	}
+
+	/// Call the main function of the class in the current thread, the exceptions thrown by the program are rethrown as is
+	public void runMain(String className, String[] args) throws Throwable {
+		Class<?> mainClass = loadClass(className);
+		MethodHandle main = MethodHandles.publicLookup().findStatic(mainClass, "main", MethodType.methodType(void.class, String[].class));
+		main.invokeExact(args);
+	}
+}
@@ -1,45 +1,91 @@
 package compiler.CodeGen;
 
-import compiler.SemanticAnalysis.SymbolTable;
-import compiler.SemanticAnalysis.Types.SemType;
-
-import java.util.HashMap;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.function.Supplier;
 
 public class SlotTable {
-	// same principle as the symbol table but with a currentSlot counter
+	// same principle as the symbol table but with a currentSlot counter:
+	// one open addressing table of the names pointing to their slot. The code generator creates one table per function
+	// and doesn't open scopes inside it, a declaration of a name that is already bound rebinds it to the new slot
+
+	private static final int NONE = -1;
 
-	private final SlotTable parent;
-	public final HashMap<String, Integer> slots;
 	public final AtomicReference<Integer> currentSlot;
-	private String localFunctionName;
 
-	public SlotTable(AtomicReference<Integer> currentSlot, SlotTable parent) {
-		this.parent = parent;
-		this.slots = new HashMap<>();
-		this.currentSlot = currentSlot;
-	}
+	// the names are never removed, so the probing doesn't need tombstones
+	private String[] names = new String[32];
+	private int[] slots = new int[32];
+	private int nameCount = 0;
 
-	public SlotTable getParent() {
-		return parent;
+	public SlotTable(AtomicReference<Integer> currentSlot) {
+		this.currentSlot = currentSlot;
 	}
 
 	public Integer addSlot(String name, org.objectweb.asm.Type type ) {
-		slots.put(name, currentSlot.get());
-		currentSlot.set(currentSlot.get() + type.getSize());
-		return currentSlot.get() - type.getSize();
+		int slot = currentSlot.get();
+		// slotOf can grow the arrays, so it is called before slots is read
+		int nameSlot = slotOf(name);
+		slots[nameSlot] = slot;
+		currentSlot.set(slot + type.getSize());
+		return slot;
 	}
 
 	public Integer lookup(String name) {
-		Integer slot = slots.get(name);
-		if (slot == null && parent != null) {
-			return parent.lookup(name);
+		int nameSlot = findSlot(name);
+		return nameSlot == NONE ? -1 : slots[nameSlot];
+	}
+
+	private int findSlot(String name) {
+		int mask = names.length - 1;
+		for (int i = hash(name) & mask; names[i] != null; i = (i + 1) & mask) {
+			if (names[i] == name || names[i].equals(name)) {
+				return i;
+			}
 		}
-		if (slot == null) {
-			return -1;
+		return NONE;
+	}
+
+	private int slotOf(String name) {
+		int nameSlot = findSlot(name);
+		if (nameSlot != NONE) {
+			return nameSlot;
 		}
-		return slot;
+
+		// at most half full, so that the probe sequences stay short
+		if (2 * (nameCount + 1) > names.length) {
+			grow();
+		}
+		int mask = names.length - 1;
+		nameSlot = hash(name) & mask;
+		while (names[nameSlot] != null) {
+			nameSlot = (nameSlot + 1) & mask;
+		}
+		names[nameSlot] = name;
+		nameCount++;
+		return nameSlot;
 	}
-}
 
+	private void grow() {
+		String[] oldNames = names;
+		int[] oldSlots = slots;
+		names = new String[oldNames.length * 2];
+		slots = new int[oldNames.length * 2];
+
+		int mask = names.length - 1;
+		for (int old = 0; old < oldNames.length; old++) {
+			if (oldNames[old] == null) {
+				continue;
+			}
+			int nameSlot = hash(oldNames[old]) & mask;
+			while (names[nameSlot] != null) {
+				nameSlot = (nameSlot + 1) & mask;
+			}
+			names[nameSlot] = oldNames[old];
+			slots[nameSlot] = oldSlots[old];
+		}
+	}
+
+	private static int hash(String name) {
+		int h = name.hashCode();
+		return h ^ (h >>> 16);
+	}
+}
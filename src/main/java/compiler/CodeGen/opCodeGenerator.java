@@ -21,11 +21,10 @@ public class opCodeGenerator {
     boolean isBool;
     boolean isObject = false;
 
-    SemType intType = new SemType("int");
-    SemType arrType = new SemType("array");
-    SemType floatType = new SemType("float");
-    SemType boolType = new SemType("bool");
-    SemType stringType = new SemType("string");
+    SemType intType = SemType.INT;
+    SemType floatType = SemType.FLOAT;
+    SemType boolType = SemType.BOOL;
+    SemType stringType = SemType.STRING;
 
     public opCodeGenerator(BinaryExpression binaryExpression, MethodVisitor mv) {
         this.expression = binaryExpression;
@@ -42,8 +41,8 @@ public class opCodeGenerator {
         // if left & right terms are type strings, set isObject to true
         if (
                 (expression.getLeftTerm().semtype.equals(stringType) && expression.getRightTerm().semtype.equals(stringType))
-                || (expression.getLeftTerm().semtype.type.equals("rec") && expression.getRightTerm().semtype.type.equals("rec"))
-                || (expression.getLeftTerm().semtype.type.equals("array") && expression.getRightTerm().semtype.type.equals("array"))
+                || (expression.getLeftTerm().semtype instanceof RecordSemType && expression.getRightTerm().semtype instanceof RecordSemType)
+                || (expression.getLeftTerm().semtype instanceof ArraySemType && expression.getRightTerm().semtype instanceof ArraySemType)
         ) {
             isObject = true;
         }
@@ -69,7 +68,7 @@ public class opCodeGenerator {
                 String descriptor = "(";
                 int access = INVOKEVIRTUAL;
 
-                if (expression.getLeftTerm().semtype.type.equals("array")) {
+                if (expression.getLeftTerm().semtype instanceof ArraySemType) {
                     path = "java/util/"; // java/util/Arrays
                     classname = "Arrays";
                     // make the descriptor for the array fit the element types
@@ -77,20 +76,20 @@ public class opCodeGenerator {
                     descriptor += "["+fieldDescriptor+"["+fieldDescriptor;
                     access = INVOKESTATIC;
                 } else {
-                    switch (expression.semtype.type) {
-                        case "int":
+                    switch (expression.semtype.kind) {
+                        case INT:
                             classname = "Integer";
                             descriptor += "I";
                             break;
-                        case "string":
+                        case STRING:
                             classname = "String";
                             descriptor += "Ljava/lang/Object;";
                             break;
-                        case "float":
+                        case FLOAT:
                             classname = "Float";
                             descriptor += "F";
                             break;
-                        case "array":
+                        case ARRAY:
                             path = "java/util/"; // java/util/Arrays
                             classname = "Arrays";
                             // make the descriptor for the array fit the element types
@@ -149,7 +148,9 @@ public class opCodeGenerator {
 
         if (isFloat) {
 //            mv.visitInsn(FSUB);
-            mv.visitInsn(FCMPG);
+            // fcmpg pushes 1 and fcmpl pushes -1 if one of the values is NaN, we pick the one that makes the comparison false (like in java)
+            String op = expression.getOperator().getOperator();
+            mv.visitInsn(op.equals(">") || op.equals(">=") ? FCMPL : FCMPG);
         }
 
 
@@ -250,7 +251,7 @@ public class opCodeGenerator {
 
     private int getGreaterThanOrEqual() {
         if (isFloat) {
-            return IFGT;
+            return IFGE;
         }
         return IF_ICMPGE;
     }
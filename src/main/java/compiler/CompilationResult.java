@@ -0,0 +1,24 @@
+package compiler;
+
+import compiler.Diagnostics.Diagnostic;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+
+/// The outcome of the compilation of a file: the generated classes by name (null if it failed), the diagnostics in source order
+/// and the exit code of the compiler: 0 on success, 1 for the input, 2 for the semantic analysis and 3 for the output.
+/// lines is the number of lines of the source, up to the lexical error if there is one
+public record CompilationResult(String file, Map<String, byte[]> classes, List<Diagnostic> diagnostics, int exitCode, long lines) {
+
+	public boolean isSuccess() {
+		return exitCode == 0;
+	}
+
+	/// Print the diagnostics, one per line
+	public void print(PrintStream out) {
+		for (Diagnostic diagnostic : diagnostics) {
+			out.println(diagnostic.format(file));
+		}
+	}
+}
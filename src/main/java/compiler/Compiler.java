@@ -5,17 +5,33 @@ package compiler;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.ParameterException;
+import compiler.Cache.CompilationCache;
 import compiler.CodeGen.CodeGen;
+import compiler.CodeGen.CodeGenerationException;
+import compiler.CodeGen.ProgramClassLoader;
+import compiler.Diagnostics.Diagnostic.Code;
+import compiler.Diagnostics.Diagnostics;
 import compiler.Lexer.Lexer;
+import compiler.Lexer.LexicalErrorException;
+import compiler.Lexer.ParallelLexer;
 import compiler.Lexer.Symbol;
+import compiler.Optimization.ConstantFolding;
 import compiler.Parser.ASTNodes.ASTNode;
+import compiler.Parser.ASTNodes.Program;
+import compiler.Parser.FlatAST;
 import compiler.Parser.Parser;
 import compiler.SemanticAnalysis.SemanticAnalysis;
 import com.beust.jcommander.Parameter;
 
 import java.io.File;
-import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.util.Arrays;
+import java.util.Map;
 
 
 public class Compiler {
@@ -26,7 +42,24 @@ public class Compiler {
 	public String out;
 	@Parameter(names={"--module", "-m"}, description = "Choose what module will be executed")
 	public String module;
-
+	@Parameter(names={"--unbuffered-output"}, description = "Make the compiled program write directly to System.out instead of buffering its output")
+	public boolean unbufferedOutput = false;
+	@Parameter(names={"--no-constant-folding"}, description = "Generate the code of constant expressions as they are written instead of computing them at compile time")
+	public boolean noConstantFolding = false;
+	@Parameter(names={"--sequential-codegen"}, description = "Generate the code of the functions one after the other instead of concurrently, the class files are the same")
+	public boolean sequentialCodegen = false;
+	@Parameter(names={"--run"}, description = "Run the compiled program in this JVM instead of writing the class files")
+	public boolean runInProcess = false;
+	@Parameter(names={"--cache-dir"}, description = "Directory of the compilation cache, a source that was already compiled with the same flags is not compiled again")
+	public String cacheDir;
+	@Parameter(names={"--cache-size"}, description = "Maximum size of the compilation cache in megabytes, the least recently used entries are removed first")
+	public long cacheSizeMegabytes = 256;
+
+	// number of lines of the source, taken from the position of the EOF token
+	private long lines;
+
+	// the operator chains are walked in loops, but the passes still recurse into the nested parentheses, blocks and calls
+	private static final String TOO_DEEP = "The program is nested too deeply to be compiled";
 
 	public static void main(String[] args) {
 
@@ -42,21 +75,31 @@ public class Compiler {
 			System.exit(1);
 		}
 
-		main.run();
+		int exitCode = main.run();
+		if (exitCode != 0) {
+			System.exit(exitCode);
+		}
 	}
 
-	public void run() {
+	/// Run the compiler with the arguments set in the fields and return its exit code, the process is never exited from here
+	public int run() {
 		try {
 			if (module != null) {
 				Module parsedModule = Module.fromFlag(module);
 				processModule(parsedModule, file);
+				return 0;
+			} else if (runInProcess) {
+				return runProgram();
 			} else {
-				runEverything(file);
+				return compile(System.err);
 			}
 
 		} catch (Exception e) {
 			System.err.println(e.getMessage());
-			System.exit(1);
+			return 1;
+		} catch (StackOverflowError e) {
+			System.err.println(TOO_DEEP);
+			return 1;
 		}
 	}
 
@@ -76,8 +119,7 @@ public class Compiler {
 	}
 
 	private void runLexer(String filepath) throws Exception {
-		FileReader reader = new FileReader(filepath);
-		Lexer lexer = new Lexer(reader);
+		Lexer lexer = Lexer.open(Path.of(filepath));
 
 		Symbol symbol;
 		do {
@@ -87,37 +129,290 @@ public class Compiler {
 	}
 	
 	private void runParser(String filepath) throws Exception {
-        FileReader reader = new FileReader(filepath);
-  		Lexer lexer = new Lexer(reader);	
+  		Lexer lexer = Lexer.open(Path.of(filepath));
         Parser parser = new Parser(lexer);
 		ASTNode root = parser.getAST();
 		System.out.println("AST: " + root.prettyPrint(0));
     }
 
-	private void runEverything(String filepath) throws Exception {
-		File f = new File(filepath);
+	/// Compile the file to class files, the errors are printed on the given stream instead of exiting the process.
+	/// Returns the exit code of the compiler: 0 on success, 1 for syntax errors, 2 for semantic errors and 3 for code generation errors
+	public int compile(PrintStream diagnostics) {
+		CompilationResult result = compile();
+		result.print(diagnostics);
+		return result.exitCode();
+	}
+
+	/// Compile the file to class files and return the classes and all the errors found, in source order, nothing is printed.
+	/// The parser and the semantic analysis go on after an error, so one compilation reports as many errors as it can
+	public CompilationResult compile() {
+		return compile(true);
+	}
+
+	/// Same as compile, except that the class files are not written, the classes are only in the result.
+	/// They are written with writeClassFiles, e.g., once the batch compiler checked that no other file generates the same class files
+	public CompilationResult generateClasses() {
+		return compile(false);
+	}
 
+	/// Write the classes of a compilation of this file next to each other, as compile does
+	public void writeClassFiles(Map<String, byte[]> classes) throws IOException {
+		createCodeGen(file).writeClassFiles(classes);
+	}
+
+	/// The file compile writes a class of this file to
+	public File classFile(String className) {
+		return createCodeGen(file).classFile(className);
+	}
 
+	private CompilationResult compile(boolean write) {
 		// If you are given the arguments "./tests/script.lang -o ./tests/test.class", it should
 		//save the test.class in the given argument ("./tests/test.class").
 
-		FileReader reader = new FileReader(filepath);
+		Diagnostics diagnostics = new Diagnostics();
+		CodeGen codeGen = createCodeGen(file);
+		// without a way to tell the builds of the compiler apart, the entries of another build could be reused
+		if (cacheDir == null || !CompilationCache.isAvailable()) {
+			if (generate(codeGen, null, null, diagnostics) && write) {
+				writeClassFiles(codeGen, codeGen.getGeneratedClasses(), diagnostics);
+			}
+			return result(codeGen.getGeneratedClasses(), diagnostics);
+		}
 
-		Lexer lexer = new Lexer(reader);
-		Parser parser = new Parser(lexer);
-		ASTNode root = parser.getAST();
-//		System.out.println("AST: " + root.prettyPrint(0));
+		// the source is read once, for the key of the cache and for the lexer, so that the cached classes always match their key
+		byte[] source;
+		try {
+			source = Files.readAllBytes(Path.of(file));
+		} catch (IOException e) {
+			diagnostics.error(Code.IO_ERROR, e.getMessage(), 0, 0);
+			return result(null, diagnostics);
+		}
+
+		CompilationCache cache = CompilationCache.open(Path.of(cacheDir), cacheSizeMegabytes * 1024 * 1024);
+		String cacheKey = CompilationCache.key(source, getClassName(), unbufferedOutput, noConstantFolding);
+		Map<String, byte[]> cachedClasses = cache.get(cacheKey);
+		if (cachedClasses != null) {
+			// the source isn't lexed, its lines are counted from the bytes that were read for the key
+			lines = countLines(source);
+			if (write) {
+				writeClassFiles(codeGen, cachedClasses, diagnostics);
+			}
+			return result(cachedClasses, diagnostics);
+		}
+
+		if (generate(codeGen, source, cache, diagnostics)) {
+			cache.put(cacheKey, codeGen.getGeneratedClasses());
+			if (write) {
+				writeClassFiles(codeGen, codeGen.getGeneratedClasses(), diagnostics);
+			}
+		}
+		return result(codeGen.getGeneratedClasses(), diagnostics);
+	}
+
+	private CompilationResult result(Map<String, byte[]> classes, Diagnostics diagnostics) {
+		return new CompilationResult(file, diagnostics.hasErrors() ? null : classes, diagnostics.getDiagnostics(), diagnostics.exitCode(), lines);
+	}
+
+	private void writeClassFiles(CodeGen codeGen, Map<String, byte[]> classes, Diagnostics diagnostics) {
+		try {
+			codeGen.writeClassFiles(classes);
+		} catch (Exception e) {
+			diagnostics.error(e, Code.OUTPUT_ERROR, 0, 0);
+		}
+	}
+
+	/// Lex, parse, analyze, optimize and generate the classes of the file with the given code generator, returns whether it succeeded.
+	/// The errors are reported to the diagnostics, the analysis only runs when there are no syntax errors.
+	/// The source is read from the file if it isn't given. With a cache, the typed tree of a source that was already analyzed is read
+	/// from the cache instead of being lexed, parsed and analyzed again, and the typed tree of a new source is stored in it
+	private boolean generate(CodeGen codeGen, byte[] source, CompilationCache cache, Diagnostics diagnostics) {
+		String treeKey = cache == null ? null : CompilationCache.treeKey(source);
+		ASTNode root = treeKey == null ? null : cachedTree(cache, treeKey);
+		if (root != null) {
+			lines = lineCount(root);
+		} else {
+			try {
+				if (source == null) {
+					root = parse(file, diagnostics);
+				} else {
+					root = parse(new Lexer(ByteBuffer.wrap(source)), diagnostics);
+				}
+			} catch (NoSuchFileException e) {
+				diagnostics.error(Code.IO_ERROR, e.getMessage() + " (No such file or directory)", 0, 0);
+				return false;
+			} catch (LexicalErrorException e) {
+				// the lexical errors stop the parser
+				lines = e.line;
+				diagnostics.error(e, Code.LEXICAL_ERROR, e.line, e.column);
+				return false;
+			} catch (Exception e) {
+				diagnostics.error(e, Code.LEXICAL_ERROR, 0, 0);
+				return false;
+			} catch (StackOverflowError e) {
+				diagnostics.error(Code.SYNTAX_ERROR, TOO_DEEP, 0, 0);
+				return false;
+			}
+			lines = lineCount(root);
+			if (diagnostics.hasErrors()) {
+				return false;
+			}
+
+			try {
+				SemanticAnalysis analyzer = new SemanticAnalysis();
+				analyzer.setDiagnostics(diagnostics);
+				analyzer.analyze(root);
+			} catch (Exception e) {
+				diagnostics.error(e, Code.SEMANTIC_ERROR, 0, 0);
+			} catch (StackOverflowError e) {
+				diagnostics.error(Code.SEMANTIC_ERROR, TOO_DEEP, 0, 0);
+			}
+			if (diagnostics.hasErrors()) {
+				return false;
+			}
+			if (cache != null) {
+				// stored before the constant folding, which depends on the flags
+				storeTree(cache, treeKey, (Program) root);
+			}
+		}
+
+		try {
+			optimize(root);
+			codeGen.generateClasses(root);
+		} catch (CodeGenerationException e) {
+			diagnostics.error(e, Code.CODE_GENERATION_ERROR, e.line, e.column);
+			return false;
+		} catch (Exception e) {
+			diagnostics.error(e, Code.CODE_GENERATION_ERROR, 0, 0);
+			return false;
+		} catch (StackOverflowError e) {
+			diagnostics.error(Code.CODE_GENERATION_ERROR, TOO_DEEP, 0, 0);
+			return false;
+		}
+		return true;
+	}
+
+	/// The program ends at the EOF token, which is at column 0 after a newline
+	private static long lineCount(ASTNode program) {
+		return program.column == 0 ? program.line - 1 : program.line;
+	}
+
+	private static long countLines(byte[] source) {
+		long lines = 0;
+		for (byte b : source) {
+			if (b == '\n') {
+				lines++;
+			}
+		}
+		if (source.length > 0 && source[source.length - 1] != '\n') {
+			lines++;
+		}
+		return lines;
+	}
+
+	private static ASTNode cachedTree(CompilationCache cache, String key) {
+		FlatAST tree = cache.getTree(key);
+		if (tree == null) {
+			return null;
+		}
+		try {
+			return tree.decode();
+		} catch (Exception | StackOverflowError e) {
+			// an entry that doesn't decode is analyzed again
+			return null;
+		}
+	}
+
+	private static void storeTree(CompilationCache cache, String key, Program program) {
+		try {
+			cache.putTree(key, FlatAST.of(program));
+		} catch (Exception | StackOverflowError e) {
+			// the cache is only an optimization, a tree too deep to be encoded isn't stored
+		}
+	}
+
+	private int runProgram() {
+		CodeGen codeGen = createCodeGen(file);
+		Diagnostics diagnostics = new Diagnostics();
+		if (!generate(codeGen, null, null, diagnostics)) {
+			CompilationResult result = result(null, diagnostics);
+			result.print(System.err);
+			return result.exitCode();
+		}
+
+		try {
+			new ProgramClassLoader(codeGen.getGeneratedClasses()).runMain(getClassName(), new String[0]);
+		} catch (Throwable e) {
+			// same output and exit code as the java launcher when the program crashes
+			System.err.print("Exception in thread \"main\" ");
+			e.printStackTrace();
+			return 1;
+		}
+		return 0;
+	}
+
+	/// Compile the file and return the bytecode of the generated classes indexed by their binary name, nothing is written to disk
+	public Map<String, byte[]> compileInMemory() throws Exception {
+		ASTNode root = analyze(file);
+		return createCodeGen(file).generateClasses(root);
+	}
+
+	/// Compile the file and call the main function of the program in this JVM, with the current System.in and System.out
+	public void runInMemory() throws Throwable {
+		new ProgramClassLoader(compileInMemory()).runMain(getClassName(), new String[0]);
+	}
+
+	/// The name of the main class, taken from the output file if there is one
+	public String getClassName() {
+		File f = new File(file);
+		String className = out == null ? f.getName() : new File(out).getName();
+		return className.split("\\.")[0];
+	}
+
+	/// Lex, parse, analyze and optimize the file, the errors are thrown instead of exiting the process
+	private ASTNode analyze(String filepath) throws Exception {
+		ASTNode root = parse(filepath, null);
 
 		SemanticAnalysis analyzer = new SemanticAnalysis();
-		analyzer.analyze(root, false);
+		analyzer.analyze(root);
+
+		optimize(root);
+		return root;
+	}
+
+	/// Parse the file, the syntax errors are reported to the diagnostics if there are some, otherwise the first one is thrown
+	private ASTNode parse(String filepath, Diagnostics diagnostics) throws Exception {
+		// the file is read as UTF-8 bytes, and the large ones are memory-mapped
+		Path path = Path.of(filepath);
+		if (Files.size(path) >= ParallelLexer.THRESHOLD && Runtime.getRuntime().availableProcessors() > 1) {
+			// the huge files are lexed on all the cores before they are parsed
+			Parser parser = new Parser(new ParallelLexer().tokenize(path));
+			parser.setDiagnostics(diagnostics);
+			return parser.getAST();
+		}
+		return parse(Lexer.open(path), diagnostics);
+	}
+
+	private ASTNode parse(Lexer lexer, Diagnostics diagnostics) throws Exception {
+		Parser parser = new Parser(lexer);
+		parser.setDiagnostics(diagnostics);
+		return parser.getAST();
+	}
 
+	private void optimize(ASTNode root) throws Exception {
+		if (!noConstantFolding) {
+			ConstantFolding constantFolding = new ConstantFolding();
+			constantFolding.optimize(root);
+		}
+	}
+
+	/// Create the code generator, the class files are written in the directory of the output file
+	private CodeGen createCodeGen(String filepath) {
+		File f = new File(filepath);
 		String filename = out == null ? f.getPath() : new File(out).getPath();
 //		System.out.println("filename = " + filename);
 
-		String className = out == null ? f.getName() : new File(out).getName();
-		String lowercaseClassname = className;
-
-		className = className.split("\\.")[0];
+		String lowercaseClassname = out == null ? f.getName() : new File(out).getName();
+		String className = getClassName();
 //		className = className.substring(0, 1).toUpperCase() + className.substring(1);
 //		System.out.println("className = " + className);
 
@@ -130,7 +425,9 @@ public class Compiler {
 //		System.out.println("outFilename = " + outFilename);
 
 		CodeGen codeGen = new CodeGen(outFilename, className);
-		codeGen.generateCode(root);
+		codeGen.setBufferedOutput(!unbufferedOutput);
+		codeGen.setParallelFunctions(!sequentialCodegen);
+		return codeGen;
 	}
 }
 
@@ -0,0 +1,67 @@
+package compiler.Diagnostics;
+
+import compiler.CodeGen.CodeGenerationException;
+import compiler.Lexer.LexicalErrorException;
+import compiler.Parser.SyntaxErrorException;
+import compiler.SemanticAnalysis.Errors.*;
+
+import java.io.IOException;
+
+/// A problem found in a source, at a line and column of it. The line is 0 when the problem isn't tied to a position, e.g., a missing file
+public record Diagnostic(Severity severity, Code code, String message, int line, int column) {
+
+	public enum Severity {
+		ERROR, WARNING
+	}
+
+	/// What went wrong, with the exit code of the compiler when it is an error: 1 for the input, 2 for the semantic analysis and 3 for the output
+	public enum Code {
+		IO_ERROR("IOError", 1),
+		LEXICAL_ERROR("LexicalError", 1),
+		SYNTAX_ERROR("SyntaxError", 1),
+		ARGUMENT_ERROR("ArgumentError", 2),
+		MISSING_CONDITION_ERROR("MissingConditionError", 2),
+		OPERATOR_ERROR("OperatorError", 2),
+		RECORD_ERROR("RecordError", 2),
+		RETURN_ERROR("ReturnError", 2),
+		SCOPE_ERROR("ScopeError", 2),
+		TYPE_ERROR("TypeError", 2),
+		SEMANTIC_ERROR("SemanticError", 2),
+		NO_MAIN("NoMain", 2),
+		CODE_GENERATION_ERROR("CodeGenerationError", 3),
+		OUTPUT_ERROR("OutputError", 3);
+
+		public final String label;
+		public final int exitCode;
+
+		Code(String label, int exitCode) {
+			this.label = label;
+			this.exitCode = exitCode;
+		}
+
+		/// The code of an error thrown by a phase, the errors the phases don't have a class for get the fallback code
+		public static Code of(Throwable error, Code fallback) {
+			return switch (error) {
+				case LexicalErrorException ignored -> LEXICAL_ERROR;
+				case SyntaxErrorException ignored -> SYNTAX_ERROR;
+				case ArgumentError ignored -> ARGUMENT_ERROR;
+				case MissingConditionError ignored -> MISSING_CONDITION_ERROR;
+				case OperatorError ignored -> OPERATOR_ERROR;
+				case RecordError ignored -> RECORD_ERROR;
+				case ReturnError ignored -> RETURN_ERROR;
+				case ScopeError ignored -> SCOPE_ERROR;
+				case TypeError ignored -> TYPE_ERROR;
+				case SemanticException ignored -> SEMANTIC_ERROR;
+				case CodeGenerationException ignored -> CODE_GENERATION_ERROR;
+				case IOException ignored -> IO_ERROR;
+				default -> fallback;
+			};
+		}
+	}
+
+	/// The diagnostic as the compiler prints it, e.g., "test.lang:3:5: error[TypeError]: ..."
+	public String format(String file) {
+		String position = line > 0 ? ":" + line + ":" + column : "";
+		return file + position + ": " + severity.name().toLowerCase() + "[" + code.label + "]: " + message;
+	}
+}
@@ -0,0 +1,71 @@
+package compiler.Diagnostics;
+
+import compiler.Diagnostics.Diagnostic.Code;
+import compiler.Diagnostics.Diagnostic.Severity;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/// Collects the diagnostics of a compilation. The parser and the semantic analysis report their errors to it and go on,
+/// so that one run reports as many errors as it can instead of stopping at the first one.
+/// The bodies of the functions are analyzed concurrently, so the reports are synchronized, and they are read back in source order
+public final class Diagnostics {
+	private final ArrayList<Diagnostic> diagnostics = new ArrayList<>();
+	private int errorCount = 0;
+
+	public synchronized void report(Diagnostic diagnostic) {
+		diagnostics.add(diagnostic);
+		if (diagnostic.severity() == Severity.ERROR) {
+			errorCount++;
+		}
+	}
+
+	public void error(Code code, String message, int line, int column) {
+		report(new Diagnostic(Severity.ERROR, code, message, line, column));
+	}
+
+	/// Report an error thrown by a phase, the errors the phases don't have a class for get the fallback code
+	public void error(Throwable error, Code fallback, int line, int column) {
+		String message = error.getMessage() != null ? error.getMessage() : error.toString();
+		error(Code.of(error, fallback), message, line, column);
+	}
+
+	public void warning(Code code, String message, int line, int column) {
+		report(new Diagnostic(Severity.WARNING, code, message, line, column));
+	}
+
+	public synchronized boolean hasErrors() {
+		return errorCount > 0;
+	}
+
+	public synchronized int getErrorCount() {
+		return errorCount;
+	}
+
+	/// The diagnostics sorted by position, the ones reported at the same position stay in the order they were reported
+	public synchronized List<Diagnostic> getDiagnostics() {
+		ArrayList<Diagnostic> sorted = new ArrayList<>(diagnostics);
+		sorted.sort(Comparator.comparingInt(Diagnostic::line).thenComparingInt(Diagnostic::column));
+		return sorted;
+	}
+
+	/// The exit code of the compiler, 0 without errors or the highest exit code of the errors
+	public synchronized int exitCode() {
+		int exitCode = 0;
+		for (Diagnostic diagnostic : diagnostics) {
+			if (diagnostic.severity() == Severity.ERROR) {
+				exitCode = Math.max(exitCode, diagnostic.code().exitCode);
+			}
+		}
+		return exitCode;
+	}
+
+	/// Print the diagnostics in source order, one per line
+	public void print(PrintStream out, String file) {
+		for (Diagnostic diagnostic : getDiagnostics()) {
+			out.println(diagnostic.format(file));
+		}
+	}
+}
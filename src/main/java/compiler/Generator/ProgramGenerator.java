@@ -0,0 +1,328 @@
+package compiler.Generator;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/// Generates valid programs of any size for the benchmarks and the stress tests.
+/// The programs are deterministic for a given seed, they pass the semantic analysis and they terminate quickly when they are run:
+/// the loops have constant bounds, and function k only calls function k / 2 in its return statement.
+/// The output is streamed, so programs of millions of lines don't need to fit in memory.
+public class ProgramGenerator {
+	private static final int ARRAY_SIZE = 16;
+	private static final String[] OPERATORS = {"+", "-", "*"};
+	private static final String[] COMPARISONS = {"==", "!=", "<", ">", "<=", ">="};
+
+	@Parameter(names={"--functions"}, description = "Number of functions, ignored when --lines is given")
+	public int functions = 100;
+	@Parameter(names={"--records"}, description = "Number of record types")
+	public int records = 10;
+	@Parameter(names={"--globals"}, description = "Number of global variables and constants")
+	public int globals = 20;
+	@Parameter(names={"--depth"}, description = "Nesting depth of the ifs and loops in the functions")
+	public int depth = 3;
+	@Parameter(names={"--expression-size"}, description = "Number of operands of the expressions")
+	public int expressionSize = 4;
+	@Parameter(names={"--block-size"}, description = "Number of statements in the function bodies and in the bodies of the ifs and loops")
+	public int blockSize = 4;
+	@Parameter(names={"--lines"}, description = "Generate functions until the program has about that many lines")
+	public long lines = 0;
+	@Parameter(names={"--seed"}, description = "Seed of the random choices")
+	public long seed = 42;
+	@Parameter(names={"--out", "-o"}, description = "Output file, the program is written on the standard output by default")
+	public String out;
+
+	private Random random;
+	private LineCountingWriter writer;
+	// names of the int variables that can be used at the current point of the function, one list per scope
+	private List<List<String>> scopes;
+	private int variableCount;
+
+	public static void main(String[] args) throws IOException {
+		ProgramGenerator generator = new ProgramGenerator();
+		try {
+			JCommander.newBuilder()
+					.addObject(generator)
+					.build()
+					.parse(args);
+		} catch (ParameterException e) {
+			e.usage();
+			System.exit(1);
+		}
+
+		Writer output = generator.out == null
+				? new OutputStreamWriter(System.out, StandardCharsets.UTF_8)
+				: new FileWriter(generator.out, StandardCharsets.UTF_8);
+		try (Writer bufferedOutput = new BufferedWriter(output, 1 << 16)) {
+			generator.generate(bufferedOutput);
+		}
+	}
+
+	/// Generate the program in a string, for the small programs
+	public String generate() {
+		StringWriter output = new StringWriter();
+		try {
+			generate(output);
+		} catch (IOException e) {
+			// a StringWriter doesn't throw
+			throw new IllegalStateException(e);
+		}
+		return output.toString();
+	}
+
+	/// Write the program, returns the number of lines written
+	public long generate(Writer output) throws IOException {
+		random = new Random(seed);
+		writer = new LineCountingWriter(output);
+
+		writer.write("$ Generated program, seed " + seed + "\n\n");
+		for (int i = 0; i < globals; i++) {
+			// one constant for two globals
+			if (i % 2 == 0) {
+				writer.write("final g" + i + " int = " + random.nextInt(100) + ";\n");
+			}
+		}
+		writer.write("\n");
+
+		for (int i = 0; i < records; i++) {
+			writer.write("Rec" + i + " rec {\n    a int;\n    b int;\n    name string;\n}\n\n");
+		}
+
+		for (int i = 0; i < globals; i++) {
+			if (i % 2 == 1) {
+				writer.write("g" + i + " int = " + random.nextInt(100) + ";\n");
+			}
+		}
+		writer.write("\n");
+
+		int functionCount = 0;
+		// the main function takes about 8 lines
+		while (lines > 0 ? writer.getLines() + 8 < lines : functionCount < functions) {
+			writeFunction(functionCount);
+			functionCount++;
+		}
+		writeMain(functionCount);
+
+		writer.flush();
+		return writer.getLines();
+	}
+
+	private void writeFunction(int index) throws IOException {
+		scopes = new ArrayList<>();
+		variableCount = 0;
+		openScope();
+		declare("n");
+
+		writer.write("fun f" + index + "(n int");
+		if (records > 0) {
+			writer.write(", r " + recordName(index));
+		}
+		writer.write(") int {\n");
+
+		writer.write("    acc int = n;\n");
+		declare("acc");
+		writer.write("    arr int[] = array [" + ARRAY_SIZE + "] of int;\n");
+		writeBlock(depth, 1, null);
+
+		writer.write("    return acc");
+		if (index > 0) {
+			// calling a function with a smaller index keeps the call depth logarithmic when the program runs
+			int callee = index / 2;
+			writer.write(" + f" + callee + "(n - 1");
+			if (records > 0) {
+				writer.write(", " + newRecord(callee));
+			}
+			writer.write(")");
+		}
+		writer.write(";\n}\n\n");
+	}
+
+	private void writeMain(int functionCount) throws IOException {
+		writer.write("fun main() {\n");
+		writer.write("    total int = 0;\n");
+		if (functionCount > 0) {
+			int last = functionCount - 1;
+			writer.write("    total = f" + last + "(8");
+			if (records > 0) {
+				writer.write(", " + newRecord(last));
+			}
+			writer.write(");\n");
+		}
+		writer.write("    writeln(total);\n");
+		writer.write("}\n");
+	}
+
+	/// Write blockSize statements, loopVariable is the variable of the innermost for loop (it is a valid array index)
+	private void writeBlock(int remainingDepth, int indentation, String loopVariable) throws IOException {
+		for (int i = 0; i < blockSize; i++) {
+			writeStatement(remainingDepth, indentation, loopVariable);
+		}
+	}
+
+	private void writeStatement(int remainingDepth, int indentation, String loopVariable) throws IOException {
+		String indent = "    ".repeat(indentation);
+		int choice = random.nextInt(remainingDepth > 0 ? 8 : 5);
+
+		switch (choice) {
+			case 0 -> {
+				String variable = "v" + variableCount++;
+				writer.write(indent + variable + " int = " + expression(loopVariable) + ";\n");
+				declare(variable);
+			}
+			case 1 -> writer.write(indent + "acc = " + expression(loopVariable) + ";\n");
+			case 2 -> {
+				String index = loopVariable != null ? loopVariable : String.valueOf(random.nextInt(ARRAY_SIZE));
+				writer.write(indent + "arr[" + index + "] = " + expression(loopVariable) + ";\n");
+			}
+			case 3 -> {
+				if (records > 0) {
+					writer.write(indent + "r." + (random.nextBoolean() ? "a" : "b") + " = " + expression(loopVariable) + ";\n");
+				} else {
+					writer.write(indent + "acc = acc + " + operand(loopVariable) + ";\n");
+				}
+			}
+			case 4 -> writer.write(indent + "acc = acc - (" + expression(loopVariable) + " % 97);\n");
+			case 5 -> {
+				writer.write(indent + "if (" + condition(loopVariable) + ") {\n");
+				writeNestedBlock(remainingDepth, indentation, loopVariable);
+				writer.write(indent + "} else {\n");
+				writeNestedBlock(remainingDepth, indentation, loopVariable);
+				writer.write(indent + "}\n");
+			}
+			case 6 -> {
+				String variable = "i" + variableCount++;
+				writer.write(indent + variable + " int;\n");
+				writer.write(indent + "for (" + variable + ", 0, " + ARRAY_SIZE + ", 1) {\n");
+				writeNestedBlock(remainingDepth, indentation, variable);
+				writer.write(indent + "}\n");
+			}
+			default -> {
+				String variable = "w" + variableCount++;
+				writer.write(indent + variable + " int = 3;\n");
+				writer.write(indent + "while (" + variable + " > 0) {\n");
+				writer.write(indent + "    " + variable + " = " + variable + " - 1;\n");
+				writeNestedBlock(remainingDepth, indentation, loopVariable);
+				writer.write(indent + "}\n");
+			}
+		}
+	}
+
+	private void writeNestedBlock(int remainingDepth, int indentation, String loopVariable) throws IOException {
+		openScope();
+		if (loopVariable != null) {
+			declare(loopVariable);
+		}
+		writeBlock(remainingDepth - 1, indentation + 1, loopVariable);
+		scopes.removeLast();
+	}
+
+	/// Random int expression with expressionSize operands, every operation is parenthesized since the language has no precedence
+	private String expression(String loopVariable) {
+		return expression(Math.max(1, expressionSize), loopVariable);
+	}
+
+	private String expression(int operands, String loopVariable) {
+		if (operands == 1) {
+			return operand(loopVariable);
+		}
+
+		int left = 1 + random.nextInt(operands - 1);
+		String leftExpression = expression(left, loopVariable);
+		if (random.nextInt(8) == 0) {
+			// division and modulo only by constants, so that the program can't divide by zero
+			return "(" + leftExpression + (random.nextBoolean() ? " / " : " % ") + (2 + random.nextInt(9)) + ")";
+		}
+		return "(" + leftExpression + " " + OPERATORS[random.nextInt(OPERATORS.length)] + " " + expression(operands - left, loopVariable) + ")";
+	}
+
+	private String condition(String loopVariable) {
+		String comparison = "(" + operand(loopVariable) + " " + COMPARISONS[random.nextInt(COMPARISONS.length)] + " " + operand(loopVariable) + ")";
+		if (random.nextBoolean()) {
+			return comparison;
+		}
+		String other = "(" + operand(loopVariable) + " " + COMPARISONS[random.nextInt(COMPARISONS.length)] + " " + operand(loopVariable) + ")";
+		return comparison + (random.nextBoolean() ? " && " : " || ") + other;
+	}
+
+	private String operand(String loopVariable) {
+		return switch (random.nextInt(6)) {
+			case 0 -> String.valueOf(random.nextInt(1000));
+			case 1 -> globals > 0 ? "g" + random.nextInt(globals) : "n";
+			case 2 -> records > 0 ? "r." + (random.nextBoolean() ? "a" : "b") : "acc";
+			case 3 -> "arr[" + (loopVariable != null ? loopVariable : String.valueOf(random.nextInt(ARRAY_SIZE))) + "]";
+			default -> {
+				List<String> variables = new ArrayList<>();
+				for (List<String> scope : scopes) {
+					variables.addAll(scope);
+				}
+				yield variables.get(random.nextInt(variables.size()));
+			}
+		};
+	}
+
+	private String recordName(int function) {
+		return "Rec" + (function % records);
+	}
+
+	private String newRecord(int function) {
+		return recordName(function) + "(" + random.nextInt(100) + ", " + random.nextInt(100) + ", \"f" + function + "\")";
+	}
+
+	private void openScope() {
+		scopes.add(new ArrayList<>());
+	}
+
+	private void declare(String variable) {
+		scopes.getLast().add(variable);
+	}
+
+	/// Writer that counts the lines written through it
+	private static class LineCountingWriter extends Writer {
+		private final Writer output;
+		private long lines;
+
+		LineCountingWriter(Writer output) {
+			this.output = output;
+		}
+
+		long getLines() {
+			return lines;
+		}
+
+		@Override
+		public void write(String text) throws IOException {
+			for (int i = 0; i < text.length(); i++) {
+				if (text.charAt(i) == '\n') {
+					lines++;
+				}
+			}
+			output.write(text);
+		}
+
+		@Override
+		public void write(char[] buffer, int offset, int length) throws IOException {
+			write(new String(buffer, offset, length));
+		}
+
+		@Override
+		public void flush() throws IOException {
+			output.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			output.close();
+		}
+	}
+}
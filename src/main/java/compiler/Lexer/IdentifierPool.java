@@ -0,0 +1,126 @@
+package compiler.Lexer;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ConcurrentMap;
+
+/// Interns the identifiers read by a lexer: a name is materialized as a String the first time it is read, and its next occurrences
+/// share that instance. The lookups compare the characters in the lexer's window, so a name that is already in the pool costs no allocation.
+/// The hashes are the ones of String.hashCode, computed by the lexer while it reads the name.
+public final class IdentifierPool {
+	private String[] names;
+	private int size;
+	// pool shared by the lexers of the chunks of one source, consulted when a name is new to this pool, or null
+	private final ConcurrentMap<String, String> shared;
+
+	public IdentifierPool() {
+		this(null);
+	}
+
+	/// Pool whose new names are looked up in a map shared with other pools, so that the lexers running in parallel on one source
+	/// agree on the instance of each name, while their lookups of known names stay local
+	public IdentifierPool(ConcurrentMap<String, String> shared) {
+		this.names = new String[256];
+		this.size = 0;
+		this.shared = shared;
+	}
+
+	/// The pooled instance of the name in chars[start, start + length)
+	public String intern(char[] chars, int start, int length, int hash) {
+		int mask = names.length - 1;
+		for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+			String name = names[i];
+			if (name == null) {
+				return add(i, new String(chars, start, length));
+			}
+			if (name.hashCode() == hash && name.length() == length && sameChars(name, chars, start)) {
+				return name;
+			}
+		}
+	}
+
+	/// The pooled instance of the ASCII name in bytes[start, start + length)
+	public String internAscii(byte[] bytes, int start, int length, int hash) {
+		int mask = names.length - 1;
+		for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+			String name = names[i];
+			if (name == null) {
+				return add(i, new String(bytes, start, length, StandardCharsets.ISO_8859_1));
+			}
+			if (name.hashCode() == hash && name.length() == length && sameBytes(name, bytes, start)) {
+				return name;
+			}
+		}
+	}
+
+	/// The pooled instance of the name
+	public String intern(String name) {
+		int hash = name.hashCode();
+		int mask = names.length - 1;
+		for (int i = spread(hash) & mask; ; i = (i + 1) & mask) {
+			String pooled = names[i];
+			if (pooled == null) {
+				return add(i, name);
+			}
+			if (pooled.hashCode() == hash && pooled.equals(name)) {
+				return pooled;
+			}
+		}
+	}
+
+	public int size() {
+		return size;
+	}
+
+	private String add(int index, String name) {
+		if (shared != null) {
+			String sharedName = shared.putIfAbsent(name, name);
+			if (sharedName != null) {
+				name = sharedName;
+			}
+		}
+		names[index] = name;
+		size++;
+		// at most half full, so that the probe sequences stay short
+		if (size * 2 > names.length) {
+			rehash();
+		}
+		return name;
+	}
+
+	private void rehash() {
+		String[] oldNames = names;
+		names = new String[oldNames.length * 2];
+		int mask = names.length - 1;
+		for (String name : oldNames) {
+			if (name != null) {
+				int i = spread(name.hashCode()) & mask;
+				while (names[i] != null) {
+					i = (i + 1) & mask;
+				}
+				names[i] = name;
+			}
+		}
+	}
+
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	private static boolean sameChars(String name, char[] chars, int start) {
+		for (int i = 0; i < name.length(); i++) {
+			if (name.charAt(i) != chars[start + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean sameBytes(String name, byte[] bytes, int start) {
+		for (int i = 0; i < name.length(); i++) {
+			if (name.charAt(i) != bytes[start + i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
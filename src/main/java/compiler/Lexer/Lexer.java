@@ -1,47 +1,361 @@
 package compiler.Lexer;
 
 import java.io.IOException;
-import java.io.PushbackReader;
 import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 public class Lexer {
+	private static final int BUFFER_SIZE = 1 << 16;
+	// the smaller files are read on the heap, mapping them costs more than reading them
+	private static final long MAP_THRESHOLD = 1 << 20;
+
+	// the keywords with their token types, the built-in functions are identifiers
+	private static final String[] KEYWORD_LIST = {
+			"final", "var", "rec", "int", "float", "bool", "string", "fun", "return", "void",
+			"if", "else", "for", "while", "array", "of", "free", "true", "false",
+	};
+	private static final TokenTypes[] KEYWORD_LIST_TYPES = {
+			TokenTypes.FINAL, TokenTypes.VAR, TokenTypes.REC, TokenTypes.INT, TokenTypes.FLOAT, TokenTypes.BOOL, TokenTypes.STRING,
+			TokenTypes.FUN, TokenTypes.RETURN, TokenTypes.VOID, TokenTypes.IF, TokenTypes.ELSE, TokenTypes.FOR, TokenTypes.WHILE,
+			TokenTypes.ARRAY, TokenTypes.OF, TokenTypes.FREE, TokenTypes.BOOL_TRUE, TokenTypes.BOOL_FALSE,
+	};
+	// perfect hash table of the keywords: every keyword has its own slot, found from its String.hashCode
+	private static final String[] KEYWORDS;
+	private static final TokenTypes[] KEYWORD_TYPES;
+	private static final int KEYWORD_SHIFT;
+
+	static {
+		// smallest table, then first shift, without collisions
+		int size = Integer.highestOneBit(KEYWORD_LIST.length) * 2;
+		int shift = 0;
+		while (hasKeywordCollision(size, shift)) {
+			shift++;
+			if (shift == 32) {
+				shift = 0;
+				size *= 2;
+			}
+		}
+
+		KEYWORD_SHIFT = shift;
+		KEYWORDS = new String[size];
+		KEYWORD_TYPES = new TokenTypes[size];
+		for (int i = 0; i < KEYWORD_LIST.length; i++) {
+			int index = keywordIndex(KEYWORD_LIST[i].hashCode());
+			KEYWORDS[index] = KEYWORD_LIST[i];
+			KEYWORD_TYPES[index] = KEYWORD_LIST_TYPES[i];
+		}
+	}
+
+	private static boolean hasKeywordCollision(int size, int shift) {
+		boolean[] used = new boolean[size];
+		for (String keyword : KEYWORD_LIST) {
+			int hash = keyword.hashCode();
+			int index = (hash ^ (hash >>> shift)) & (size - 1);
+			if (used[index]) {
+				return true;
+			}
+			used[index] = true;
+		}
+		return false;
+	}
 
-	private final PushbackReader input;
+	private final Reader input;
+	// window over the input, the characters from position to limit have not been read yet
+	private char[] buffer;
+	// UTF-8 input: the bytes that are not in the window yet (null when the input is a Reader), and the window over them.
+	// position and limit are then indices in the byte window
+	private final ByteBuffer source;
+	private byte[] bytes;
+	private int position;
+	private int limit;
+	// index in the window of the first character of the lexeme being built, or -1, the refills keep the lexeme in the window
+	private int lexemeStart;
+	// UTF-8 input: index of the first byte of the current character, and second half of a 4-byte character, or -1
+	private int currentIndex;
+	private int pendingLowSurrogate;
+	// the names of the identifiers and records, each name is one String instance
+	private final IdentifierPool identifiers;
 	private int currentChar;
+	// the last token that was read, the symbols are only created from these fields when they are asked for
+	private String tokenLexeme;
+	private int tokenLine;
+	private int tokenColumn;
+	private int tokenInt;
+	private float tokenFloat;
 	private int line;
 	private int column;
 
 	public Lexer(Reader input) {
-		this.input = new PushbackReader(input);
-		this.line = 1;
+		this(input, 1, 1);
+	}
+
+	/// Lexer over a part of a source, whose first character is at that line and column of the source.
+	/// The part must start outside of any token, e.g., at the first token of a declaration
+	public Lexer(Reader input, int firstLine, int firstColumn) {
+		this.input = input;
+		this.buffer = new char[BUFFER_SIZE];
+		this.source = null;
+		this.position = 0;
+		this.limit = 0;
+		this.lexemeStart = -1;
+		this.identifiers = new IdentifierPool();
+		this.line = firstLine;
+		this.column = firstColumn - 1;
+		this.currentChar = readChar();
+	}
+
+	/// Lex UTF-8 bytes directly, from the position to the limit of the buffer. The lines and columns count UTF-16 characters,
+	/// like with a Reader, and a malformed byte is read as one U+FFFD replacement character
+	public Lexer(ByteBuffer utf8) {
+		this(utf8, new IdentifierPool(), 1);
+	}
+
+	/// Lexer over a part of a UTF-8 source that starts at the beginning of the given line, the names are interned in the given pool
+	Lexer(ByteBuffer utf8, IdentifierPool identifiers, int firstLine) {
+		this.input = null;
+		if (utf8.hasArray()) {
+			// the bytes are already on the heap, they are the window
+			this.source = ByteBuffer.allocate(0);
+			this.bytes = utf8.array();
+			this.position = utf8.arrayOffset() + utf8.position();
+			this.limit = utf8.arrayOffset() + utf8.limit();
+		} else {
+			this.source = utf8.duplicate();
+			this.bytes = new byte[BUFFER_SIZE];
+			this.position = 0;
+			this.limit = 0;
+		}
+		this.currentIndex = position;
+		this.lexemeStart = -1;
+		this.pendingLowSurrogate = -1;
+		this.identifiers = identifiers;
+		this.line = firstLine;
 		this.column = 0;
 		this.currentChar = readChar();
 	}
 
+	/// Lexer over a UTF-8 source file, the large files are memory-mapped instead of being copied on the heap
+	public static Lexer open(Path path) throws IOException {
+		return new Lexer(readSource(path));
+	}
+
+	/// The bytes of a source file, mapped in memory for the large files
+	static ByteBuffer readSource(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			if (size < MAP_THRESHOLD) {
+				return ByteBuffer.wrap(Files.readAllBytes(path));
+			}
+			if (size > Integer.MAX_VALUE) {
+				throw new IOException(path + " is too large to be compiled (" + size + " bytes)");
+			}
+			// the mapping stays valid after the channel is closed
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+	}
+
 	/// Read the next character from the input
 	private int readChar() {
-		try {
-			int c = input.read();
-			if (c != -1) {
-				column++;
-				return c;
-			} else {
-				return -1; // EOF
-			}
-		} catch (IOException e) {
-			return -1; // we treat IO error like EOF I guess
+		if (source != null) {
+			return readUtf8Char();
+		}
+		if (position == limit && !fillBuffer()) {
+			return -1; // EOF
 		}
+		column++;
+		return buffer[position++];
 	}
 
 	/// Peek the next character without consuming it
 	private int peekChar() {
+		if (source != null) {
+			return peekUtf8Char();
+		}
+		if (position == limit && !fillBuffer()) {
+			return -1;
+		}
+		return buffer[position];
+	}
+
+	/// Read the next block of the input, returns false at the end of the input
+	private boolean fillBuffer() {
+		// the characters before the current lexeme (or before the current character when there is no lexeme) are not needed anymore,
+		// the current character is kept since a lexeme can start on it after a peek
+		int keep = lexemeStart >= 0 ? lexemeStart : Math.max(position - 1, 0);
+		if (keep > 0) {
+			System.arraycopy(buffer, keep, buffer, 0, limit - keep);
+			position -= keep;
+			limit -= keep;
+			if (lexemeStart >= 0) {
+				lexemeStart -= keep;
+			}
+		}
+		if (limit == buffer.length) {
+			// the lexeme is longer than the buffer
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+		}
+
 		try {
-			int c = input.read();
-			input.unread(c);
-			return c;
+			int read = input.read(buffer, limit, buffer.length - limit);
+			if (read <= 0) {
+				return false;
+			}
+			limit += read;
+			return true;
 		} catch (IOException e) {
+			return false; // we treat IO error like EOF I guess
+		}
+	}
+
+	/// Copy the next block of the UTF-8 input in the byte window, one bulk copy instead of one access to the mapping per byte
+	private void fillBytes() {
+		int keep = lexemeStart >= 0 ? lexemeStart : currentIndex;
+		if (keep > 0) {
+			System.arraycopy(bytes, keep, bytes, 0, limit - keep);
+			position -= keep;
+			limit -= keep;
+			currentIndex -= keep;
+			if (lexemeStart >= 0) {
+				lexemeStart -= keep;
+			}
+		}
+		if (limit == bytes.length) {
+			bytes = Arrays.copyOf(bytes, bytes.length * 2);
+		}
+
+		int read = Math.min(source.remaining(), bytes.length - limit);
+		source.get(bytes, limit, read);
+		limit += read;
+	}
+
+	/// Read the next UTF-16 character of the UTF-8 input, the characters outside the BMP are read as two surrogates
+	private int readUtf8Char() {
+		// ASCII, most of the characters of a program
+		if (limit - position >= 4 && bytes[position] >= 0 && pendingLowSurrogate < 0) {
+			currentIndex = position;
+			column++;
+			return bytes[position++];
+		}
+
+		if (pendingLowSurrogate >= 0) {
+			int low = pendingLowSurrogate;
+			pendingLowSurrogate = -1;
+			column++;
+			return low;
+		}
+
+		// a character is at most 4 bytes
+		if (limit - position < 4 && source.hasRemaining()) {
+			fillBytes();
+		}
+		currentIndex = position;
+		if (position == limit) {
+			return -1; // EOF
+		}
+		column++;
+
+		byte b = bytes[position];
+		if (b >= 0) {
+			position++;
+			return b;
+		}
+
+		int codePoint = decodeUtf8(position);
+		if (codePoint < 0) {
+			position++;
+			return '\uFFFD';
+		}
+		position += codePoint < 0x800 ? 2 : codePoint < 0x10000 ? 3 : 4;
+		if (Character.isSupplementaryCodePoint(codePoint)) {
+			pendingLowSurrogate = Character.lowSurrogate(codePoint);
+			return Character.highSurrogate(codePoint);
+		}
+		return codePoint;
+	}
+
+	private int peekUtf8Char() {
+		if (pendingLowSurrogate >= 0) {
+			return pendingLowSurrogate;
+		}
+		if (limit - position < 4 && source.hasRemaining()) {
+			fillBytes();
+		}
+		if (position == limit) {
 			return -1;
 		}
+
+		byte b = bytes[position];
+		if (b >= 0) {
+			return b;
+		}
+
+		int codePoint = decodeUtf8(position);
+		if (codePoint < 0) {
+			return '\uFFFD';
+		}
+		return Character.isSupplementaryCodePoint(codePoint) ? Character.highSurrogate(codePoint) : codePoint;
+	}
+
+	/// Decode the UTF-8 sequence that starts with a non-ASCII byte at the given index, returns -1 if it is malformed
+	private int decodeUtf8(int index) {
+		int lead = bytes[index] & 0xFF;
+		int length;
+		int codePoint;
+		if (lead >= 0xC2 && lead <= 0xDF) {
+			length = 2;
+			codePoint = lead & 0x1F;
+		} else if (lead >= 0xE0 && lead <= 0xEF) {
+			length = 3;
+			codePoint = lead & 0x0F;
+		} else if (lead >= 0xF0 && lead <= 0xF4) {
+			length = 4;
+			codePoint = lead & 0x07;
+		} else {
+			return -1;
+		}
+		if (index + length > limit) {
+			return -1;
+		}
+
+		for (int i = 1; i < length; i++) {
+			int next = bytes[index + i];
+			if ((next & 0xC0) != 0x80) {
+				return -1;
+			}
+			codePoint = (codePoint << 6) | (next & 0x3F);
+		}
+
+		// overlong encodings, surrogates, and code points after U+10FFFF
+		if (length == 3 && (codePoint < 0x800 || Character.isSurrogate((char) codePoint))) {
+			return -1;
+		}
+		if (length == 4 && (codePoint < 0x10000 || codePoint > Character.MAX_CODE_POINT)) {
+			return -1;
+		}
+		return codePoint;
+	}
+
+	/// Start a lexeme at the current character
+	private void startLexeme() {
+		lexemeStart = source != null ? currentIndex : position - 1;
+	}
+
+	/// Returns the characters read since startLexeme, without the current character
+	private String endLexeme() {
+		String lexeme;
+		if (source != null) {
+			lexeme = new String(bytes, lexemeStart, lexemeEnd() - lexemeStart, StandardCharsets.UTF_8);
+		} else {
+			lexeme = new String(buffer, lexemeStart, lexemeEnd() - lexemeStart);
+		}
+		lexemeStart = -1;
+		return lexeme;
 	}
 
 
@@ -92,11 +406,50 @@ public class Lexer {
 
 	/// Get the next symbol from the input
 	public Symbol getNextSymbol() throws Exception {
+		TokenTypes type = nextToken();
+		return new Symbol(type, tokenLexeme, tokenLine, tokenColumn, tokenValue(type));
+	}
+
+	/// Lex the whole input into a token buffer, without creating the symbols.
+	/// A lexical error is kept in the buffer after the last token, and it is thrown when the parser reaches it
+	public TokenBuffer tokenize() {
+		TokenBuffer tokens = new TokenBuffer();
+		tokenize(tokens, Integer.MAX_VALUE);
+		return tokens;
+	}
+
+	/// Append at most count tokens to the buffer, stops after the EOF token or at a lexical error
+	public void tokenize(TokenBuffer tokens, int count) {
+		for (int i = 0; i < count; i++) {
+			TokenTypes type;
+			try {
+				type = nextToken();
+			} catch (Exception e) {
+				tokens.setError(e);
+				return;
+			}
+			int number = switch (type) {
+				case INT_LITERAL -> tokenInt;
+				case FLOAT_LITERAL -> Float.floatToRawIntBits(tokenFloat);
+				default -> 0;
+			};
+			tokens.add(type, tokenLexeme, tokenLine, tokenColumn, number);
+			if (type == TokenTypes.EOF) {
+				return;
+			}
+		}
+	}
+
+	/// Read the next token, its lexeme and position are left in the token fields
+	private TokenTypes nextToken() throws Exception {
+		// a lexeme left unfinished by an error is dropped
+		lexemeStart = -1;
+
 		// We always skip the newlines and comments
 		skipWhitespaceAndComments();
 
 		if (currentChar == -1) {
-			return new Symbol(TokenTypes.EOF, "EOF", line, column);
+			return token(TokenTypes.EOF, "EOF", line, column);
 		}
 
 		// if c is a letter, read until it's not letter then check if it's keyword or identifier
@@ -112,67 +465,101 @@ public class Lexer {
 		}
 	}
 
+	private TokenTypes token(TokenTypes type, String lexeme, int line, int column) {
+		tokenLexeme = lexeme;
+		tokenLine = line;
+		tokenColumn = column;
+		return type;
+	}
+
+	/// Value of the symbol of the last token that was read
+	private Object tokenValue(TokenTypes type) {
+		return switch (type) {
+			case INT_LITERAL -> tokenInt;
+			case FLOAT_LITERAL -> tokenFloat;
+			case STRING_LITERAL -> tokenLexeme;
+			case BOOL_TRUE -> true;
+			case BOOL_FALSE -> false;
+			default -> null;
+		};
+	}
+
 	/// Build an identifier or a keyword
-	private Symbol buildIdentifierOrSymbol() {
-		StringBuilder str = new StringBuilder();
+	private TokenTypes buildIdentifierOrSymbol() {
 		int startLine = line;
 		int startColumn = column;
+		startLexeme();
+		int hash = 0;
+		boolean ascii = true;
 
-		// identifiers can start with a letter, a digit, or an underscore
+		// identifiers can start with a letter, a digit, or an underscore, the hash is the one of String.hashCode
 		while (Character.isLetterOrDigit(currentChar) || currentChar == '_') {
-			str.append((char) currentChar);
+			hash = 31 * hash + currentChar;
+			ascii &= currentChar < 0x80;
 			moveCurrentChar();
 		}
 
+		int start = lexemeStart;
+		int length = lexemeEnd() - start;
+
+		// the keywords are recognized on the characters of the window, without building a string
+		int keywordIndex = keywordIndex(hash);
+		String keyword = KEYWORDS[keywordIndex];
+		if (keyword != null && keyword.length() == length && isLexeme(keyword, start)) {
+			lexemeStart = -1;
+			return token(KEYWORD_TYPES[keywordIndex], keyword, startLine, startColumn);
+		}
+
+		String identifier;
+		if (source == null) {
+			identifier = identifiers.intern(buffer, start, length, hash);
+			lexemeStart = -1;
+		} else if (ascii) {
+			identifier = identifiers.internAscii(bytes, start, length, hash);
+			lexemeStart = -1;
+		} else {
+			identifier = identifiers.intern(endLexeme());
+		}
+
 		// If the first char is an uppercase letter, it's a record type
-		if (Character.isUpperCase(str.charAt(0))) {
-			return new Symbol(TokenTypes.RECORD, str.toString(), startLine, startColumn);
-		}
-
-		String identifier = str.toString();
-		return switch (identifier) {
-			case "final" -> new Symbol(TokenTypes.FINAL, identifier, startLine, startColumn);
-			case "var" -> new Symbol(TokenTypes.VAR, identifier, startLine, startColumn);
-			case "rec" -> new Symbol(TokenTypes.REC, identifier, startLine, startColumn);
-			case "int" -> new Symbol(TokenTypes.INT, identifier, startLine, startColumn);
-			case "float" -> new Symbol(TokenTypes.FLOAT, identifier, startLine, startColumn);
-			case "bool" -> new Symbol(TokenTypes.BOOL, identifier, startLine, startColumn);
-			case "string" -> new Symbol(TokenTypes.STRING, identifier, startLine, startColumn);
-			case "fun" -> new Symbol(TokenTypes.FUN, identifier, startLine, startColumn);
-			case "return" -> new Symbol(TokenTypes.RETURN, identifier, startLine, startColumn);
-			case "void" -> new Symbol(TokenTypes.VOID, identifier, startLine, startColumn);
-			case "if" -> new Symbol(TokenTypes.IF, identifier, startLine, startColumn);
-			case "else" -> new Symbol(TokenTypes.ELSE, identifier, startLine, startColumn);
-			case "for" -> new Symbol(TokenTypes.FOR, identifier, startLine, startColumn);
-			case "while" -> new Symbol(TokenTypes.WHILE, identifier, startLine, startColumn);
-			case "array" -> new Symbol(TokenTypes.ARRAY, identifier, startLine, startColumn);
-			case "of" -> new Symbol(TokenTypes.OF, identifier, startLine, startColumn);
-			case "free" -> new Symbol(TokenTypes.FREE, identifier, startLine, startColumn);
-			case "true" -> new Symbol(TokenTypes.BOOL_TRUE, identifier, startLine, startColumn, true);
-			case "false" -> new Symbol(TokenTypes.BOOL_FALSE, identifier, startLine, startColumn, false);
-//			case "chr" -> new Symbol(TokenTypes.CHR, identifier, startLine, startColumn);
-//			case "len" -> new Symbol(TokenTypes.LEN, identifier, startLine, startColumn);
-//			case "floor" -> new Symbol(TokenTypes.FLOOR, identifier, startLine, startColumn);
-//			case "readInt" -> new Symbol(TokenTypes.READ_INT, identifier, startLine, startColumn);
-//			case "readFloat" -> new Symbol(TokenTypes.READ_FLOAT, identifier, startLine, startColumn);
-//			case "readString" -> new Symbol(TokenTypes.READ_STRING, identifier, startLine, startColumn);
-//			case "writeInt" -> new Symbol(TokenTypes.WRITE_INT, identifier, startLine, startColumn);
-//			case "writeFloat" -> new Symbol(TokenTypes.WRITE_FLOAT, identifier, startLine, startColumn);
-//			case "write" -> new Symbol(TokenTypes.WRITE, identifier, startLine, startColumn);
-//			case "writeln" -> new Symbol(TokenTypes.WRITELN, identifier, startLine, startColumn);
-			default -> new Symbol(TokenTypes.IDENTIFIER, identifier, startLine, startColumn);
-		};
+		if (Character.isUpperCase(identifier.charAt(0))) {
+			return token(TokenTypes.RECORD, identifier, startLine, startColumn);
+		}
+		return token(TokenTypes.IDENTIFIER, identifier, startLine, startColumn);
+	}
+
+	/// Slot of the keyword table where a keyword with that hash would be
+	private static int keywordIndex(int hash) {
+		return (hash ^ (hash >>> KEYWORD_SHIFT)) & (KEYWORDS.length - 1);
+	}
+
+	/// Whether the lexeme that starts at that index of the window is the given ASCII word, the length is already checked
+	private boolean isLexeme(String word, int start) {
+		for (int i = 0; i < word.length(); i++) {
+			int c = source != null ? bytes[start + i] : buffer[start + i];
+			if (c != word.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/// Index in the window of the end of the lexeme, i.e., of the current character, or of the end of the input
+	private int lexemeEnd() {
+		if (source != null) {
+			return currentIndex;
+		}
+		return currentChar == -1 ? position : position - 1;
 	}
 
 	/// Build a number literal
-	private Symbol buildNumber() throws Exception {
-		StringBuilder lexeme = new StringBuilder();
+	private TokenTypes buildNumber() throws LexicalErrorException {
 		int startLine = line;
 		int startColumn = column;
 		boolean isFloat = false;
+		startLexeme();
 
 		while (Character.isDigit(currentChar)) {
-			lexeme.append((char) currentChar);
 			moveCurrentChar();
 		}
 
@@ -180,18 +567,18 @@ public class Lexer {
 		if (currentChar == '.' && peekChar() != -1 && Character.isDigit(peekChar())) {
 			isFloat = true;
 			do {
-				lexeme.append((char) currentChar);
 				moveCurrentChar();
 			} while (Character.isDigit(currentChar));
 		}
 
-		String numberStr = lexeme.toString();
+		String numberStr = endLexeme();
 		if (isFloat) {
 			try {
-				float value = Float.parseFloat(numberStr);
-				return new Symbol(TokenTypes.FLOAT_LITERAL, numberStr, startLine, column, value);
+				tokenFloat = Float.parseFloat(numberStr);
+				// the lexeme is the one of the value, e.g., ".50" is 0.5, so that the token buffers only have to store the value
+				return token(TokenTypes.FLOAT_LITERAL, Float.toString(tokenFloat), startLine, column);
 			} catch (NumberFormatException e) {
-				throw new Exception("Invalid float at line " + startLine + " column " + startColumn + ": " + numberStr);
+				throw new LexicalErrorException("Invalid float at line " + startLine + " column " + startColumn + ": " + numberStr, startLine, startColumn);
 			}
 		} else {
 			// remove leading zeros:
@@ -199,117 +586,116 @@ public class Lexer {
 			// so it shouldn't remove a single 0
 			numberStr = numberStr.replaceFirst("^0+(?!$)", "");
 			try {
-				int value = Integer.parseInt(numberStr);
-				return new Symbol(TokenTypes.INT_LITERAL, numberStr, startLine, column,  value);
+				tokenInt = Integer.parseInt(numberStr);
+				return token(TokenTypes.INT_LITERAL, numberStr, startLine, column);
 			} catch (NumberFormatException e) {
-				throw new Exception("Invalid integer at line " + startLine + " column " + startColumn + ": " + numberStr);
+				throw new LexicalErrorException("Invalid integer at line " + startLine + " column " + startColumn + ": " + numberStr, startLine, startColumn);
 			}
 		}
 	}
 
 
-	private Symbol buildSymbol() throws Exception {
+	private TokenTypes buildSymbol() throws LexicalErrorException {
 		switch (currentChar) {
 			case '+':
 				moveCurrentChar();
-				return new Symbol(TokenTypes.PLUS, "+", line, column);
+				return token(TokenTypes.PLUS, "+", line, column);
 			case '-':
 				moveCurrentChar();
-				return new Symbol(TokenTypes.MINUS, "-", line, column);
+				return token(TokenTypes.MINUS, "-", line, column);
 			case '*':
 				moveCurrentChar();
-				return new Symbol(TokenTypes.MULTIPLY, "*", line, column);
+				return token(TokenTypes.MULTIPLY, "*", line, column);
 			case '/':
 				moveCurrentChar();
-				return new Symbol(TokenTypes.DIVIDE, "/", line, column);
+				return token(TokenTypes.DIVIDE, "/", line, column);
 			case '%':
 				moveCurrentChar();
-				return new Symbol(TokenTypes.MODULO, "%", line, column);
+				return token(TokenTypes.MODULO, "%", line, column);
 			case '(':
 				moveCurrentChar();
-				return new Symbol(TokenTypes.LEFT_PAR, "(", line, column);
+				return token(TokenTypes.LEFT_PAR, "(", line, column);
 			case ')':
 				moveCurrentChar();
-				return new Symbol(TokenTypes.RIGHT_PAR, ")", line, column);
+				return token(TokenTypes.RIGHT_PAR, ")", line, column);
 			case '{':
 				moveCurrentChar();
-				return new Symbol(TokenTypes.LEFT_BRACKET, "{", line, column);
+				return token(TokenTypes.LEFT_BRACKET, "{", line, column);
 			case '}':
 				moveCurrentChar();
-				return new Symbol(TokenTypes.RIGHT_BRACKET, "}", line, column);
+				return token(TokenTypes.RIGHT_BRACKET, "}", line, column);
 			case ';':
 				moveCurrentChar();
-				return new Symbol(TokenTypes.SEMICOLON, ";", line, column);
+				return token(TokenTypes.SEMICOLON, ";", line, column);
 			case ',':
 				moveCurrentChar();
-				return new Symbol(TokenTypes.COMMA, ",", line, column);
+				return token(TokenTypes.COMMA, ",", line, column);
 			case '[':
 				moveCurrentChar();
-				return new Symbol(TokenTypes.LEFT_SQUARE_BRACKET, "[", line, column);
+				return token(TokenTypes.LEFT_SQUARE_BRACKET, "[", line, column);
 			case ']':
 				moveCurrentChar();
-				return new Symbol(TokenTypes.RIGHT_SQUARE_BRACKET, "]", line, column);
+				return token(TokenTypes.RIGHT_SQUARE_BRACKET, "]", line, column);
 			case '.':
 				moveCurrentChar();
-				return new Symbol(TokenTypes.DOT, ".", line, column);
+				return token(TokenTypes.DOT, ".", line, column);
 			case '=':
 				moveCurrentChar();
 				if (currentChar == '=') {
 					moveCurrentChar();
-					return new Symbol(TokenTypes.EQUAL_EQUAL, "==", line - 1, column);
+					return token(TokenTypes.EQUAL_EQUAL, "==", line - 1, column);
 				} else {
-					return new Symbol(TokenTypes.ASSIGN, "=", line, column);
+					return token(TokenTypes.ASSIGN, "=", line, column);
 				}
 			case '!':
 				moveCurrentChar();
 				if (currentChar == '=') {
 					moveCurrentChar();
-					return new Symbol(TokenTypes.NOT_EQUAL, "!=", line - 1, column);
+					return token(TokenTypes.NOT_EQUAL, "!=", line - 1, column);
 				} else {
-					return new Symbol(TokenTypes.NOT, "!", line, column);
+					return token(TokenTypes.NOT, "!", line, column);
 				}
 			case '<':
 				moveCurrentChar();
 				if (currentChar == '=') {
 					moveCurrentChar();
-					return new Symbol(TokenTypes.LESS_THAN_EQUAL, "<=", line - 1, column);
+					return token(TokenTypes.LESS_THAN_EQUAL, "<=", line - 1, column);
 				} else {
-					return new Symbol(TokenTypes.LESS_THAN, "<", line, column);
+					return token(TokenTypes.LESS_THAN, "<", line, column);
 				}
 			case '>':
 				moveCurrentChar();
 				if (currentChar == '=') {
 					moveCurrentChar();
-					return new Symbol(TokenTypes.GREATER_THAN_EQUAL, ">=", line - 1, column);
+					return token(TokenTypes.GREATER_THAN_EQUAL, ">=", line - 1, column);
 				} else {
-					return new Symbol(TokenTypes.GREATER_THAN, ">", line, column);
+					return token(TokenTypes.GREATER_THAN, ">", line, column);
 				}
 			case '&':
 				moveCurrentChar();
 				if (currentChar == '&') {
 					moveCurrentChar();
-					return new Symbol(TokenTypes.AND, "&&", line - 1, column);
+					return token(TokenTypes.AND, "&&", line - 1, column);
 				} else {
-					throw new Exception("Unexpected '&' at line " + line + ", column " + column);
+					throw new LexicalErrorException("Unexpected '&' at line " + line + ", column " + column, line, column);
 				}
 			case '|':
 				moveCurrentChar();
 				if (currentChar == '|') {
 					moveCurrentChar();
-					return new Symbol(TokenTypes.OR, "||", line - 1, column);
+					return token(TokenTypes.OR, "||", line - 1, column);
 				} else {
-					throw new Exception("Unexpected '|' at line " + line + ", column " + column);
+					throw new LexicalErrorException("Unexpected '|' at line " + line + ", column " + column, line, column);
 				}
 
 			default:
 				moveCurrentChar();
-				throw new Exception("Unknown character '"+currentChar+"' at line " + line + ", column " + column);
+				throw new LexicalErrorException("Unknown character '"+currentChar+"' at line " + line + ", column " + column, line, column);
 		}
 	}
 
 	/// Build a string literal
-	private Symbol buildString() {
-		StringBuilder lexeme = new StringBuilder();
+	private TokenTypes buildString() throws LexicalErrorException {
 		int startLine = line;
 		int startColumn = column;
 
@@ -319,20 +705,22 @@ public class Lexer {
 		if (currentChar == '"') {
 			// empty string
 			moveCurrentChar();
-			return new Symbol(TokenTypes.STRING_LITERAL, lexeme.toString(), startLine, startColumn, lexeme.toString());
+			return token(TokenTypes.STRING_LITERAL, "", startLine, startColumn);
 		}
 
+		startLexeme();
 		do {
 			if (currentChar == -1 || currentChar == '\n') {
-				throw new RuntimeException("Unterminated string at line " + startLine);
+				throw new LexicalErrorException("Unterminated string at line " + startLine, startLine, startColumn);
 			}
-			lexeme.append((char) currentChar);
 			moveCurrentChar();
 		} while (currentChar != '"');
 
+		String lexeme = endLexeme();
+
 		// consume closing quote "
 		moveCurrentChar();
 
-		return new Symbol(TokenTypes.STRING_LITERAL, lexeme.toString(), startLine, startColumn, lexeme.toString());
+		return token(TokenTypes.STRING_LITERAL, lexeme, startLine, startColumn);
 	}
 }
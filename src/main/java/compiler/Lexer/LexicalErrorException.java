@@ -0,0 +1,13 @@
+package compiler.Lexer;
+
+/// An error of the lexer, at the line and column of the character or the literal where it was found
+public class LexicalErrorException extends Exception {
+	public final int line;
+	public final int column;
+
+	public LexicalErrorException(String message, int line, int column) {
+		super(message);
+		this.line = line;
+		this.column = column;
+	}
+}
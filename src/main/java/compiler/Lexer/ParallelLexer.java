@@ -0,0 +1,156 @@
+package compiler.Lexer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/// Lexes a large UTF-8 source on several threads.
+/// The language has no block comments and a string literal can't contain a newline, so every line starts outside of any token,
+/// in the same state as the beginning of the file. The source is cut in chunks after newlines, each chunk is lexed on its own,
+/// and the token streams are concatenated with the lines of each chunk shifted by the number of lines before it.
+/// The result is the same as Lexer.tokenize on the whole source, including the first lexical error and its message.
+public final class ParallelLexer {
+	// the sources smaller than this are lexed faster by a single lexer
+	public static final long THRESHOLD = 16 << 20;
+	private static final int MIN_CHUNK_SIZE = 1 << 20;
+
+	private final ForkJoinPool pool;
+	private final int chunkSize;
+
+	public ParallelLexer() {
+		this(ForkJoinPool.commonPool(), 0);
+	}
+
+	/// Lexer that runs on the given pool, a chunk size of 0 picks one from the size of the source and the parallelism of the pool
+	public ParallelLexer(ForkJoinPool pool, int chunkSize) {
+		this.pool = pool;
+		this.chunkSize = chunkSize;
+	}
+
+	public TokenBuffer tokenize(Path path) throws IOException {
+		return tokenize(Lexer.readSource(path));
+	}
+
+	/// Lex the bytes from the position to the limit of the buffer
+	public TokenBuffer tokenize(ByteBuffer utf8) {
+		List<ByteBuffer> chunks = split(utf8);
+		ConcurrentMap<String, String> names = new ConcurrentHashMap<>();
+		if (chunks.size() == 1) {
+			return new Lexer(utf8, new IdentifierPool(names), 1).tokenize();
+		}
+
+		List<Callable<TokenBuffer>> tasks = new ArrayList<>();
+		for (ByteBuffer chunk : chunks) {
+			// every chunk is lexed as if it was the start of the file, the lines are fixed when the tokens are concatenated
+			tasks.add(() -> new Lexer(chunk, new IdentifierPool(names), 1).tokenize());
+		}
+		List<TokenBuffer> chunkTokens = new ArrayList<>();
+		for (Future<TokenBuffer> result : pool.invokeAll(tasks)) {
+			chunkTokens.add(join(result));
+		}
+
+		// keep the chunks up to the first lexical error, without the EOF tokens of all the chunks but the last one
+		List<TokenBuffer> parts = new ArrayList<>();
+		List<Integer> counts = new ArrayList<>();
+		List<Integer> lineOffsets = new ArrayList<>();
+		int lineOffset = 0;
+		for (int i = 0; i < chunks.size(); i++) {
+			TokenBuffer tokens = chunkTokens.get(i);
+			if (tokens.getError() != null) {
+				// lex the chunk again from its real first line, so that the error message has the right line
+				tokens = new Lexer(chunks.get(i), new IdentifierPool(names), lineOffset + 1).tokenize();
+				parts.add(tokens);
+				counts.add(tokens.size());
+				lineOffsets.add(0);
+				break;
+			}
+
+			boolean last = i == chunks.size() - 1;
+			parts.add(tokens);
+			counts.add(last ? tokens.size() : tokens.size() - 1);
+			lineOffsets.add(lineOffset);
+			// the EOF token of a chunk is on the line after its last newline
+			lineOffset += tokens.line(tokens.size() - 1) - 1;
+		}
+
+		return concatenate(parts, counts, lineOffsets);
+	}
+
+	/// Cut the source after the newlines that are the closest to multiples of the chunk size
+	private List<ByteBuffer> split(ByteBuffer utf8) {
+		int start = utf8.position();
+		int end = utf8.limit();
+		int size = chunkSize > 0
+				? chunkSize
+				// a few chunks per thread, so that a slow chunk doesn't leave the other threads idle
+				: Math.max(MIN_CHUNK_SIZE, (end - start) / (pool.getParallelism() * 4));
+
+		List<ByteBuffer> chunks = new ArrayList<>();
+		while (start < end) {
+			int chunkEnd = start + size;
+			if (chunkEnd >= end) {
+				chunkEnd = end;
+			} else {
+				while (chunkEnd < end && utf8.get(chunkEnd - 1) != '\n') {
+					chunkEnd++;
+				}
+			}
+			chunks.add(utf8.slice(start, chunkEnd - start));
+			start = chunkEnd;
+		}
+		if (chunks.isEmpty()) {
+			chunks.add(utf8.slice(start, 0));
+		}
+		return chunks;
+	}
+
+	private TokenBuffer concatenate(List<TokenBuffer> parts, List<Integer> counts, List<Integer> lineOffsets) {
+		int size = 0;
+		int textCount = 0;
+		int[] tokenStarts = new int[parts.size()];
+		int[] textStarts = new int[parts.size()];
+		for (int i = 0; i < parts.size(); i++) {
+			tokenStarts[i] = size;
+			textStarts[i] = textCount;
+			size += counts.get(i);
+			textCount += parts.get(i).textCount();
+		}
+
+		TokenBuffer tokens = TokenBuffer.withCapacity(size, textCount);
+		List<Callable<Void>> copies = new ArrayList<>();
+		for (int i = 0; i < parts.size(); i++) {
+			int part = i;
+			copies.add(() -> {
+				tokens.copyFrom(parts.get(part), counts.get(part), lineOffsets.get(part), tokenStarts[part], textStarts[part]);
+				return null;
+			});
+		}
+		for (Future<Void> copy : pool.invokeAll(copies)) {
+			join(copy);
+		}
+
+		tokens.completeCopy(size, textCount, parts);
+		tokens.setError(parts.getLast().getError());
+		return tokens;
+	}
+
+	private static <T> T join(Future<T> future) {
+		try {
+			return future.get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			// the lexer reports its errors in the token buffer, anything else is a bug
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+}
@@ -0,0 +1,218 @@
+package compiler.Lexer;
+
+import java.util.Arrays;
+import java.util.List;
+
+/// Token stream stored as parallel arrays instead of one Symbol per token: the kinds are in a byte[], the positions in int[]s,
+/// and the payload of a token is either the value of an int literal, the raw bits of a float literal, or the index of its text
+/// (identifiers, records and strings). The other tokens always have the same lexeme for a kind, so it is stored once.
+/// The symbols are only created by symbol(index), when the parser puts a token in the AST or in an error message.
+public final class TokenBuffer {
+	private static final TokenTypes[] TYPES = TokenTypes.values();
+
+	private byte[] kinds;
+	private int[] lines;
+	private int[] columns;
+	private int[] payloads;
+	private int size;
+	private String[] texts;
+	private int textCount;
+	// lexeme of the tokens whose lexeme only depends on their kind
+	private final String[] kindLexemes;
+	// the lexical error that stopped the lexer after the last token, or null
+	private Exception error;
+
+	public TokenBuffer() {
+		this(1024);
+	}
+
+	public TokenBuffer(int capacity) {
+		this(Math.max(capacity, 16), Math.max(capacity, 16) / 2);
+	}
+
+	private TokenBuffer(int capacity, int textCapacity) {
+		this.kinds = new byte[capacity];
+		this.lines = new int[capacity];
+		this.columns = new int[capacity];
+		this.payloads = new int[capacity];
+		this.texts = new String[Math.max(textCapacity, 1)];
+		this.kindLexemes = new String[TYPES.length];
+	}
+
+	/// Buffer with room for exactly that many tokens and texts, filled by copyFrom
+	static TokenBuffer withCapacity(int tokens, int texts) {
+		return new TokenBuffer(tokens, texts);
+	}
+
+	/// Append a token, number is the value of an int literal or the raw bits of a float literal, and is ignored for the other tokens
+	public void add(TokenTypes type, String lexeme, int line, int column, int number) {
+		if (size == kinds.length) {
+			int capacity = kinds.length * 2;
+			kinds = Arrays.copyOf(kinds, capacity);
+			lines = Arrays.copyOf(lines, capacity);
+			columns = Arrays.copyOf(columns, capacity);
+			payloads = Arrays.copyOf(payloads, capacity);
+		}
+
+		kinds[size] = (byte) type.ordinal();
+		lines[size] = line;
+		columns[size] = column;
+		switch (type) {
+			case INT_LITERAL, FLOAT_LITERAL -> payloads[size] = number;
+			case IDENTIFIER, RECORD, STRING_LITERAL -> payloads[size] = addText(lexeme);
+			default -> kindLexemes[type.ordinal()] = lexeme;
+		}
+		size++;
+	}
+
+	private int addText(String text) {
+		if (textCount == texts.length) {
+			texts = Arrays.copyOf(texts, texts.length * 2);
+		}
+		texts[textCount] = text;
+		return textCount++;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public TokenTypes type(int index) {
+		return TYPES[kinds[index]];
+	}
+
+	public int line(int index) {
+		return lines[index];
+	}
+
+	public int column(int index) {
+		return columns[index];
+	}
+
+	public String lexeme(int index) {
+		TokenTypes type = type(index);
+		return switch (type) {
+			case INT_LITERAL -> String.valueOf(payloads[index]);
+			// the lexer gives the float literals the lexeme of their value, like the int literals
+			case FLOAT_LITERAL -> Float.toString(Float.intBitsToFloat(payloads[index]));
+			case IDENTIFIER, RECORD, STRING_LITERAL -> texts[payloads[index]];
+			default -> kindLexemes[type.ordinal()];
+		};
+	}
+
+	/// The value of the literals, same as Symbol.value
+	public Object value(int index) {
+		return switch (type(index)) {
+			case INT_LITERAL -> payloads[index];
+			case FLOAT_LITERAL -> Float.intBitsToFloat(payloads[index]);
+			case STRING_LITERAL -> texts[payloads[index]];
+			case BOOL_TRUE -> true;
+			case BOOL_FALSE -> false;
+			default -> null;
+		};
+	}
+
+	/// Create the symbol of a token, equal to the one the lexer returns from getNextSymbol
+	public Symbol symbol(int index) {
+		return new Symbol(type(index), lexeme(index), lines[index], columns[index], value(index));
+	}
+
+	/// The error that stopped the lexer after the last token, or null if the lexer reached the end of the input
+	public Exception getError() {
+		return error;
+	}
+
+	void setError(Exception error) {
+		this.error = error;
+	}
+
+	int textCount() {
+		return textCount;
+	}
+
+	/// Copy the first count tokens of a chunk of the source at the given token and text indices, with their lines shifted by lineOffset.
+	/// Several chunks can be copied at the same time since each one has its own range of the arrays, the counts are set afterwards
+	void copyFrom(TokenBuffer chunk, int count, int lineOffset, int tokenStart, int textStart) {
+		copyTokens(chunk, 0, count, tokenStart, lineOffset, textStart);
+		System.arraycopy(chunk.texts, 0, texts, textStart, chunk.textCount);
+	}
+
+	/// Set the number of tokens and texts and the lexemes of the kinds once the chunks are copied
+	void completeCopy(int size, int textCount, Iterable<TokenBuffer> chunks) {
+		this.size = size;
+		this.textCount = textCount;
+		for (TokenBuffer chunk : chunks) {
+			for (int kind = 0; kind < kindLexemes.length; kind++) {
+				if (kindLexemes[kind] == null) {
+					kindLexemes[kind] = chunk.kindLexemes[kind];
+				}
+			}
+		}
+	}
+
+	private static boolean hasText(byte kind) {
+		return switch (TYPES[kind]) {
+			case IDENTIFIER, RECORD, STRING_LITERAL -> true;
+			default -> false;
+		};
+	}
+
+	/// Move a token, e.g., the EOF of a relexed part of a source to the token that follows that part in the source
+	public void setPosition(int index, int line, int column) {
+		lines[index] = line;
+		columns[index] = column;
+	}
+
+	/// New buffer with the tokens [from, to) replaced by the first count tokens of the replacement,
+	/// the lines of the tokens after the replaced ones are shifted by lineDelta
+	public TokenBuffer replace(int from, int to, TokenBuffer replacement, int count, int lineDelta) {
+		int tail = size - to;
+		int size = from + count + tail;
+		// the texts of the tokens before from are the first ones, since they are added in the order of the tokens
+		int textsBefore = firstText(from);
+		int textsAfter = textCount - firstText(to);
+		TokenBuffer tokens = new TokenBuffer(size, textsBefore + replacement.textCount + textsAfter);
+
+		tokens.copyTokens(this, 0, from, 0, 0, 0);
+		System.arraycopy(texts, 0, tokens.texts, 0, textsBefore);
+		tokens.copyTokens(replacement, 0, count, from, 0, textsBefore);
+		System.arraycopy(replacement.texts, 0, tokens.texts, textsBefore, replacement.textCount);
+		int textStart = textsBefore + replacement.textCount;
+		int textCount = textStart + textsAfter;
+		tokens.copyTokens(this, to, tail, from + count, lineDelta, textStart - firstText(to));
+		System.arraycopy(texts, this.textCount - textsAfter, tokens.texts, textStart, textsAfter);
+
+		tokens.completeCopy(size, textCount, List.of(this, replacement));
+		tokens.error = error;
+		return tokens;
+	}
+
+	/// Index of the text of the first token with a text from that index on, or the number of texts
+	private int firstText(int index) {
+		for (int i = index; i < size; i++) {
+			if (hasText(kinds[i])) {
+				return payloads[i];
+			}
+		}
+		return textCount;
+	}
+
+	/// Copy count tokens of a buffer from start to tokenStart, the lines are shifted by lineOffset and the text indices by textOffset
+	private void copyTokens(TokenBuffer from, int start, int count, int tokenStart, int lineOffset, int textOffset) {
+		System.arraycopy(from.kinds, start, kinds, tokenStart, count);
+		System.arraycopy(from.columns, start, columns, tokenStart, count);
+		for (int i = 0; i < count; i++) {
+			lines[tokenStart + i] = from.lines[start + i] + lineOffset;
+			int payload = from.payloads[start + i];
+			payloads[tokenStart + i] = hasText(from.kinds[start + i]) ? payload + textOffset : payload;
+		}
+	}
+
+	/// Remove all the tokens, the arrays are kept for the next ones
+	public void clear() {
+		Arrays.fill(texts, 0, textCount, null);
+		size = 0;
+		textCount = 0;
+		error = null;
+	}
+}
@@ -0,0 +1,466 @@
+package compiler.Optimization;
+
+import compiler.Lexer.Symbol;
+import compiler.Lexer.TokenTypes;
+import compiler.Parser.ASTNodes.ASTNode;
+import compiler.Parser.ASTNodes.Block;
+import compiler.Parser.ASTNodes.Program;
+import compiler.Parser.ASTNodes.Statements.Expressions.Access.ArrayAccess;
+import compiler.Parser.ASTNodes.Statements.Expressions.Access.IdentifierAccess;
+import compiler.Parser.ASTNodes.Statements.Expressions.Access.RecordAccess;
+import compiler.Parser.ASTNodes.Statements.Expressions.Expressions.ArrayExpression;
+import compiler.Parser.ASTNodes.Statements.Expressions.Expressions.BinaryExpression;
+import compiler.Parser.ASTNodes.Statements.Expressions.Expressions.Expression;
+import compiler.Parser.ASTNodes.Statements.Expressions.Expressions.UnaryExpression;
+import compiler.Parser.ASTNodes.Statements.Expressions.Operators.BinaryOperator;
+import compiler.Parser.ASTNodes.Statements.Expressions.Operators.UnaryOperator;
+import compiler.Parser.ASTNodes.Statements.Expressions.Terms.*;
+import compiler.Parser.ASTNodes.Statements.Statements.*;
+import compiler.Parser.ASTNodes.Types.NumType;
+import compiler.Parser.ASTNodes.Types.Type;
+import compiler.SemanticAnalysis.Types.SemType;
+import compiler.SemanticAnalysis.Visitor;
+
+import java.util.ArrayDeque;
+
+/// Optimization pass that runs between the semantic analysis and the code generation.
+/// It rewrites the typed AST so that:
+/// - operations on constant values are computed at compile time (e.g., "3 * 4" becomes "12"),
+/// - the final constants of scalar types are replaced by their value where they are used,
+/// - the boolean operators with a constant operand are simplified (e.g., "true && x" becomes "x").
+///
+/// Every visit method returns the node that should replace the visited node in its parent (often the node itself).
+/// The folding follows what the generated bytecode would do at runtime: ints are promoted to floats when the other operand is a float,
+/// int overflows wrap around, and divisions (or modulos) of ints by zero are not folded so that they still throw at runtime.
+public class ConstantFolding implements Visitor<ASTNode, ConstantTable> {
+
+	public ConstantFolding() {
+	}
+
+	public void optimize(ASTNode rootNode) throws Exception {
+		rootNode.accept(this, new ConstantTable(null));
+	}
+
+	@Override
+	public ASTNode visitProgram(Program program, ConstantTable table) throws Exception {
+		// the constants are visited in order, so a constant can use the value of the constants defined before it
+		for (VariableDeclaration constant : program.getConstants()) {
+			constant.accept(this, table);
+		}
+
+		for (VariableDeclaration global : program.getGlobals()) {
+			global.accept(this, table);
+		}
+
+		for (FunctionDefinition function : program.getFunctions()) {
+			function.accept(this, table);
+		}
+		return program;
+	}
+
+	@Override
+	public ASTNode visitVariableDeclaration(VariableDeclaration variableDeclaration, ConstantTable table) throws Exception {
+		if (variableDeclaration.hasValue()) {
+			variableDeclaration.setValue(fold(variableDeclaration.getValue(), table));
+		}
+
+		String name = variableDeclaration.getName().lexeme;
+		// only the scalar constants are propagated, records and arrays are references that must stay shared
+		if (variableDeclaration.isConstant() && variableDeclaration.getValue() instanceof ConstVal constVal && !variableDeclaration.getType().isList()) {
+			table.addConstant(name, constVal);
+		} else {
+			// the variable is declared after the value is folded, so "x int = x + 1;" still uses the constant x on the right
+			table.shadow(name);
+		}
+		return variableDeclaration;
+	}
+
+	@Override
+	public ASTNode visitFunctionDefinition(FunctionDefinition functionDefinition, ConstantTable table) throws Exception {
+		ConstantTable localTable = new ConstantTable(table);
+
+		if (functionDefinition.hasInstanceRef()) {
+			localTable.shadow(functionDefinition.getInstanceName().lexeme);
+		}
+		for (ParamDefinition paramDefinition : functionDefinition.getParamDefinitions()) {
+			paramDefinition.accept(this, localTable);
+		}
+
+		functionDefinition.getBody().accept(this, localTable);
+		return functionDefinition;
+	}
+
+	@Override
+	public ASTNode visitParamDefinition(ParamDefinition paramDefinition, ConstantTable table) throws Exception {
+		table.shadow(paramDefinition.getIdentifier().lexeme);
+		return paramDefinition;
+	}
+
+	@Override
+	public ASTNode visitBlock(Block block, ConstantTable table) throws Exception {
+		// like in the semantic analysis and the code generation, blocks don't create a new scope
+		for (Statement statement : block.getStatements()) {
+			statement.accept(this, table);
+		}
+		if (block.getReturnStatement() != null) {
+			block.getReturnStatement().accept(this, table);
+		}
+		return block;
+	}
+
+	@Override
+	public ASTNode visitReturnStatement(ReturnStatement returnStatement, ConstantTable table) throws Exception {
+		if (returnStatement.getExpression() != null) {
+			returnStatement.setExpression(fold(returnStatement.getExpression(), table));
+		}
+		return returnStatement;
+	}
+
+	@Override
+	public ASTNode visitVariableAssignment(VariableAssignment variableAssignment, ConstantTable table) throws Exception {
+		// the access is where the value is stored, only the indices inside it can be folded
+		variableAssignment.getAccess().accept(this, table);
+		variableAssignment.setExpression(fold(variableAssignment.getExpression(), table));
+		return variableAssignment;
+	}
+
+	@Override
+	public ASTNode visitIfStatement(IfStatement ifStatement, ConstantTable table) throws Exception {
+		ifStatement.setCondition(fold(ifStatement.getCondition(), table));
+		ifStatement.getThenBlock().accept(this, table);
+		if (ifStatement.isElse()) {
+			ifStatement.getElseBlock().accept(this, table);
+		}
+		return ifStatement;
+	}
+
+	@Override
+	public ASTNode visitWhileLoop(WhileLoop whileLoop, ConstantTable table) throws Exception {
+		whileLoop.setCondition(fold(whileLoop.getCondition(), table));
+		whileLoop.getBlock().accept(this, table);
+		return whileLoop;
+	}
+
+	@Override
+	public ASTNode visitForLoop(ForLoop forLoop, ConstantTable table) throws Exception {
+		forLoop.startExpr = fold(forLoop.getStart(), table);
+		forLoop.endExpr = fold(forLoop.getEnd(), table);
+		forLoop.stepExpr = fold(forLoop.getStep(), table);
+		forLoop.getBlock().accept(this, table);
+		return forLoop;
+	}
+
+	@Override
+	public ASTNode visitFreeStatement(FreeStatement freeStatement, ConstantTable table) throws Exception {
+		return freeStatement;
+	}
+
+	@Override
+	public ASTNode visitRecordDefinition(RecordDefinition recordDefinition, ConstantTable table) throws Exception {
+		return recordDefinition;
+	}
+
+	@Override
+	public ASTNode visitRecordFieldDefinition(RecordFieldDefinition recordFieldDefinition, ConstantTable table) throws Exception {
+		return recordFieldDefinition;
+	}
+
+	@Override
+	public ASTNode visitStatement(Statement statement, ConstantTable table) throws Exception {
+		throw new RuntimeException("this should never be called");
+	}
+
+	@Override
+	public ASTNode visitIdentifierAccess(IdentifierAccess identifierAccess, ConstantTable table) throws Exception {
+		if (identifierAccess.willStore) {
+			return identifierAccess;
+		}
+
+		ConstVal constant = table.lookup(identifierAccess.getIdentifier().lexeme);
+		if (constant == null) {
+			return identifierAccess;
+		}
+		return constant(constant.getValue(), identifierAccess);
+	}
+
+	@Override
+	public ASTNode visitArrayAccess(ArrayAccess arrayAccess, ConstantTable table) throws Exception {
+		// the head is an access to an array (or a string), it is never replaced by a value, but it can contain other indices
+		arrayAccess.getHeadAccess().accept(this, table);
+		arrayAccess.setIndexExpression(fold(arrayAccess.getIndexExpression(), table));
+		return arrayAccess;
+	}
+
+	@Override
+	public ASTNode visitRecordAccess(RecordAccess recordAccess, ConstantTable table) throws Exception {
+		recordAccess.getHeadAccess().accept(this, table);
+		return recordAccess;
+	}
+
+	@Override
+	public ASTNode visitArrayExpression(ArrayExpression arrayExpression, ConstantTable table) throws Exception {
+		arrayExpression.setSizeExpression(fold(arrayExpression.getSizeExpression(), table));
+		return arrayExpression;
+	}
+
+	@Override
+	public ASTNode visitFunctionCall(FunctionCall functionCall, ConstantTable table) throws Exception {
+		for (ParamCall paramCall : functionCall.getParameters()) {
+			paramCall.accept(this, table);
+		}
+		return functionCall;
+	}
+
+	@Override
+	public ASTNode visitRecordInstantiation(NewRecord newRecord, ConstantTable table) throws Exception {
+		for (ParamCall paramCall : newRecord.getTerms()) {
+			paramCall.accept(this, table);
+		}
+		return newRecord;
+	}
+
+	@Override
+	public ASTNode visitParamCall(ParamCall paramCall, ConstantTable table) throws Exception {
+		paramCall.setParamExpression(fold(paramCall.getParamExpression(), table));
+		return paramCall;
+	}
+
+	@Override
+	public ASTNode visitParenthesesTerm(ParenthesesTerm parenthesesTerm, ConstantTable table) throws Exception {
+		return foldParentheses(parenthesesTerm, fold(parenthesesTerm.getExpression(), table));
+	}
+
+	/// The parentheses around a folded expression, or the constant that replaces them
+	private Term foldParentheses(ParenthesesTerm parenthesesTerm, Expression expression) {
+		if (expression instanceof ConstVal constVal) {
+			return constant(constVal.getValue(), parenthesesTerm);
+		}
+
+		parenthesesTerm.setExpression(expression);
+		return parenthesesTerm;
+	}
+
+	@Override
+	public ASTNode visitConstValue(ConstVal constVal, ConstantTable table) throws Exception {
+		return constVal;
+	}
+
+	@Override
+	public ASTNode visitUnaryExpression(UnaryExpression unaryExpression, ConstantTable table) throws Exception {
+		Term term = foldTerm(unaryExpression.getTerm(), table);
+		unaryExpression.setTerm(term);
+
+		if (!(term instanceof ConstVal constVal)) {
+			return unaryExpression;
+		}
+
+		Object value = constVal.getValue();
+		Object result = switch (unaryExpression.getOperator().getOperator()) {
+			case "-" -> value instanceof Integer i ? (Object) (-i) : (Object) (-(Float) value);
+			case "!" -> !(Boolean) value;
+			default -> null;
+		};
+
+		return result == null ? unaryExpression : constant(result, unaryExpression);
+	}
+
+	@Override
+	public ASTNode visitBinaryExpression(BinaryExpression binaryExpression, ConstantTable table) throws Exception {
+		// the right term of an operator chain is the rest of the chain in parentheses (see Parser.parseExpression),
+		// the chain is folded in a loop so that a long one doesn't recurse once per operator
+		ArrayDeque<BinaryExpression> chain = new ArrayDeque<>();
+		BinaryExpression current = binaryExpression;
+		while (true) {
+			current.setLeftTerm(foldTerm(current.getLeftTerm(), table));
+			chain.push(current);
+			if (!(current.getRightTerm() instanceof ParenthesesTerm parenthesesTerm && parenthesesTerm.getExpression() instanceof BinaryExpression rest)) {
+				break;
+			}
+			current = rest;
+		}
+
+		Term right = foldTerm(current.getRightTerm(), table);
+		while (true) {
+			BinaryExpression expression = chain.pop();
+			Expression folded = foldBinaryExpression(expression, expression.getLeftTerm(), right);
+			if (chain.isEmpty()) {
+				return folded;
+			}
+			right = foldParentheses((ParenthesesTerm) chain.peek().getRightTerm(), folded);
+		}
+	}
+
+	private Expression foldBinaryExpression(BinaryExpression binaryExpression, Term left, Term right) {
+		binaryExpression.setRightTerm(right);
+
+		BinaryOperator operator = binaryExpression.getOperator();
+		if (operator.isBooleanOperator()) {
+			return simplifyBooleanOperation(binaryExpression, left, right);
+		}
+
+		if (left instanceof ConstVal leftVal && right instanceof ConstVal rightVal) {
+			Object result = evaluate(operator.getOperator(), leftVal.getValue(), rightVal.getValue());
+			if (result != null) {
+				return constant(result, binaryExpression);
+			}
+		}
+		return binaryExpression;
+	}
+
+	/// Simplify "&&" and "||" when one of the terms is a constant, while keeping the short-circuit evaluation:
+	/// the right term is only dropped if it wasn't going to be evaluated anyway, and the left term is only dropped if evaluating it has no side effects.
+	private Expression simplifyBooleanOperation(BinaryExpression binaryExpression, Term left, Term right) {
+		boolean isAnd = binaryExpression.getOperator().getSymbol().type == TokenTypes.AND;
+
+		if (left instanceof ConstVal leftVal) {
+			boolean leftValue = (Boolean) leftVal.getValue();
+			// true && x -> x, false || x -> x
+			// false && x -> false, true || x -> true
+			return leftValue == isAnd ? right : constant(leftValue, binaryExpression);
+		}
+
+		if (right instanceof ConstVal rightVal) {
+			boolean rightValue = (Boolean) rightVal.getValue();
+			if (rightValue == isAnd) {
+				// x && true -> x, x || false -> x
+				return left;
+			}
+			if (hasNoSideEffects(left)) {
+				// x && false -> false, x || true -> true
+				return constant(rightValue, binaryExpression);
+			}
+		}
+		return binaryExpression;
+	}
+
+	/// Compute the result of the binary operation on two constant values, returns null if it can't (or shouldn't) be computed at compile time
+	private Object evaluate(String operator, Object left, Object right) {
+		if (left instanceof Integer l && right instanceof Integer r) {
+			return switch (operator) {
+				case "+" -> l + r;
+				case "-" -> l - r;
+				case "*" -> l * r;
+				// keep the division by zero for the runtime, where it throws an ArithmeticException
+				case "/" -> r == 0 ? null : l / r;
+				case "%" -> r == 0 ? null : l % r;
+				case "<" -> l < r;
+				case "<=" -> l <= r;
+				case ">" -> l > r;
+				case ">=" -> l >= r;
+				case "==" -> l.intValue() == r.intValue();
+				case "!=" -> l.intValue() != r.intValue();
+				default -> null;
+			};
+		}
+
+		if (isNumber(left) && isNumber(right)) {
+			// if one of the terms is an int, it is converted to a float (like with I2F)
+			float l = ((Number) left).floatValue();
+			float r = ((Number) right).floatValue();
+			return switch (operator) {
+				case "+" -> l + r;
+				case "-" -> l - r;
+				case "*" -> l * r;
+				case "/" -> l / r;
+				case "%" -> l % r;
+				case "<" -> l < r;
+				case "<=" -> l <= r;
+				case ">" -> l > r;
+				case ">=" -> l >= r;
+				case "==" -> l == r;
+				case "!=" -> l != r;
+				default -> null;
+			};
+		}
+
+		if (left instanceof Boolean l && right instanceof Boolean r) {
+			return switch (operator) {
+				case "==" -> l.booleanValue() == r.booleanValue();
+				case "!=" -> l.booleanValue() != r.booleanValue();
+				default -> null;
+			};
+		}
+
+		if (left instanceof String l && right instanceof String r) {
+			return switch (operator) {
+				case "+" -> l.concat(r);
+				case "==" -> l.equals(r);
+				case "!=" -> !l.equals(r);
+				default -> null;
+			};
+		}
+
+		return null;
+	}
+
+	private boolean isNumber(Object value) {
+		return value instanceof Integer || value instanceof Float;
+	}
+
+	private boolean hasNoSideEffects(Expression expression) {
+		if (expression instanceof ParenthesesTerm parenthesesTerm) {
+			return hasNoSideEffects(parenthesesTerm.getExpression());
+		}
+		return expression instanceof ConstVal || expression instanceof IdentifierAccess;
+	}
+
+	/// Create the constant value that replaces the given node.
+	/// The node keeps its int to float conversion flag, so that the code generator converts the value where it converted the node before.
+	private ConstVal constant(Object value, ASTNode replacedNode) {
+		TokenTypes tokenType;
+		String type;
+		switch (value) {
+			case Integer ignored -> {
+				tokenType = TokenTypes.INT_LITERAL;
+				type = "int";
+			}
+			case Float ignored -> {
+				tokenType = TokenTypes.FLOAT_LITERAL;
+				type = "float";
+			}
+			case Boolean bool -> {
+				tokenType = bool ? TokenTypes.BOOL_TRUE : TokenTypes.BOOL_FALSE;
+				type = "bool";
+			}
+			default -> {
+				tokenType = TokenTypes.STRING_LITERAL;
+				type = "string";
+			}
+		}
+
+		Symbol symbol = new Symbol(tokenType, String.valueOf(value), replacedNode.line, replacedNode.column, value);
+		ConstVal constVal = new ConstVal(value, symbol, replacedNode.line, replacedNode.column);
+
+		constVal.semtype = SemType.named(type);
+		constVal.conversionNeeded = replacedNode instanceof Expression expression && expression.conversionNeeded;
+		return constVal;
+	}
+
+	private Expression fold(Expression expression, ConstantTable table) throws Exception {
+		return (Expression) expression.accept(this, table);
+	}
+
+	private Term foldTerm(Term term, ConstantTable table) throws Exception {
+		return (Term) term.accept(this, table);
+	}
+
+	@Override
+	public ASTNode visitBinaryOperator(BinaryOperator binaryOperator, ConstantTable table) throws Exception {
+		return binaryOperator;
+	}
+
+	@Override
+	public ASTNode visitUnaryOperator(UnaryOperator unaryOperator, ConstantTable table) throws Exception {
+		return unaryOperator;
+	}
+
+	@Override
+	public ASTNode visitType(Type type, ConstantTable table) throws Exception {
+		return type;
+	}
+
+	@Override
+	public ASTNode visitNumType(NumType numType, ConstantTable table) throws Exception {
+		return numType;
+	}
+}
@@ -0,0 +1,41 @@
+package compiler.Optimization;
+
+import compiler.Parser.ASTNodes.Statements.Expressions.Terms.ConstVal;
+
+import java.util.HashMap;
+
+public class ConstantTable {
+	// same principle as the symbol table, but it only holds the final constants whose value is known at compile time
+
+	private final ConstantTable parent;
+	private final HashMap<String, ConstVal> constants;
+
+	public ConstantTable(ConstantTable parent) {
+		this.parent = parent;
+		this.constants = new HashMap<>();
+	}
+
+	public ConstantTable getParent() {
+		return parent;
+	}
+
+	public void addConstant(String name, ConstVal value) {
+		constants.put(name, value);
+	}
+
+	/// Hide the constants of the parent tables with that name, e.g., when a parameter or a local variable has the same name as a constant
+	public void shadow(String name) {
+		constants.put(name, null);
+	}
+
+	/// Returns the value of the constant, or null if the name isn't a constant (or if it is shadowed by a variable)
+	public ConstVal lookup(String name) {
+		if (constants.containsKey(name)) {
+			return constants.get(name);
+		}
+		if (parent != null) {
+			return parent.lookup(name);
+		}
+		return null;
+	}
+}
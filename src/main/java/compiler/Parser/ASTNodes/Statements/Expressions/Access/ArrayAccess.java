@@ -9,7 +9,7 @@ import compiler.SemanticAnalysis.Visitor;
 public class ArrayAccess extends Access {
 
     private final Access headAccess;
-    private final Expression indexExpression;
+    private Expression indexExpression;
 
     public ArrayAccess(Access head, Expression index, int line, int column) {
         super(line, column);
@@ -25,6 +25,10 @@ public class ArrayAccess extends Access {
         return indexExpression;
     }
 
+    public void setIndexExpression(Expression indexExpression) {
+        this.indexExpression = indexExpression;
+    }
+
     @Override
     public String toString() {
         return (
@@ -12,7 +12,7 @@ public class ArrayExpression extends Expression {
     // a[11]
 
     // ArrayExpression -> "array" "[" "intval" "]" "of" Type ";" .
-    private final Expression sizeExpression;
+    private Expression sizeExpression;
     private final Type type;
 //    private final Symbol identifier;
 
@@ -30,6 +30,10 @@ public class ArrayExpression extends Expression {
         return sizeExpression;
     }
 
+    public void setSizeExpression(Expression sizeExpression) {
+        this.sizeExpression = sizeExpression;
+    }
+
     public Type getType() {
         return type;
     }
@@ -10,9 +10,9 @@ import compiler.SemanticAnalysis.Visitor;
 
 
 public class BinaryExpression extends Expression {
-    private final Term leftTerm;
+    private Term leftTerm;
     private final BinaryOperator operator;
-    private final Term rightTerm;
+    private Term rightTerm;
 
     public BinaryExpression(Term leftTerm, BinaryOperator operator, Term rightTerm, int line, int column) {
         super(line, column);
@@ -34,6 +34,14 @@ public class BinaryExpression extends Expression {
         return rightTerm;
     }
 
+    public void setLeftTerm(Term leftTerm) {
+        this.leftTerm = leftTerm;
+    }
+
+    public void setRightTerm(Term rightTerm) {
+        this.rightTerm = rightTerm;
+    }
+
     @Override
     public String toString() {
         return "BinaryExpression [leftTerm=" + leftTerm + ", operator=" + operator + ", rightTerm=" + rightTerm + "]";
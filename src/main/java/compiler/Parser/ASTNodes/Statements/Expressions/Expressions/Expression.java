@@ -14,4 +14,6 @@ public abstract class Expression extends Statement {
 
 	public boolean canBeStaticallyEval = false;
 	public Object staticValue = null;
+	// the int value of the expression is converted to a float where it is used
+	public boolean conversionNeeded = false;
 }
@@ -11,7 +11,7 @@ import compiler.SemanticAnalysis.Visitor;
 public class UnaryExpression extends Expression {
 
     private final UnaryOperator operator;
-    private final Term term;
+    private Term term;
 
     public UnaryExpression(UnaryOperator operator, Term term, int line, int column) {
         super(line, column);
@@ -28,6 +28,10 @@ public class UnaryExpression extends Expression {
         return term;
     }
 
+    public void setTerm(Term term) {
+        this.term = term;
+    }
+
     @Override
     public String toString() {
         return "UnaryExpression [operator=" + operator + ", term=" + term + "]";
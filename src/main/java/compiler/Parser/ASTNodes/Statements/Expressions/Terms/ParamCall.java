@@ -7,7 +7,7 @@ import compiler.SemanticAnalysis.Types.SemType;
 import compiler.SemanticAnalysis.Visitor;
 
 public class ParamCall extends Term {
-	private final Expression paramExpression;
+	private Expression paramExpression;
 	private final Integer paramIndex;
 
 	public ParamCall(Expression paramExpression, Integer paramIndex, int line, int column) {
@@ -21,6 +21,10 @@ public class ParamCall extends Term {
 		return paramExpression;
 	}
 
+	public void setParamExpression(Expression paramExpression) {
+		this.paramExpression = paramExpression;
+	}
+
 	public Integer getParamIndex() {
 		return paramIndex;
 	}
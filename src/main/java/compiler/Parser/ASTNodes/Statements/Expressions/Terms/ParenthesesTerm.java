@@ -7,7 +7,7 @@ import compiler.SemanticAnalysis.Types.SemType;
 import compiler.SemanticAnalysis.Visitor;
 
 public class ParenthesesTerm extends Term {
-    private final Expression expression;
+    private Expression expression;
 
     public ParenthesesTerm(Expression expression, int line, int column) {
         super(line, column);
@@ -19,6 +19,10 @@ public class ParenthesesTerm extends Term {
         return expression;
     }
 
+    public void setExpression(Expression expression) {
+        this.expression = expression;
+    }
+
     @Override
     public String toString() {
         return "ParenthesesTerm [expression=" + expression + "]";
@@ -10,6 +10,8 @@ import compiler.SemanticAnalysis.Types.SemType;
 import compiler.SemanticAnalysis.Visitor;
 
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.function.Consumer;
 
 public class FunctionDefinition extends Statement {
 
@@ -21,7 +23,11 @@ public class FunctionDefinition extends Statement {
 	private SemType retSemType;
 	private ArrayList<SemType> paramTypes;
 	private final ArrayList<ParamDefinition> paramDefinitions;
-	private final Block block;
+	private volatile Block block;
+	// parses the body the first time it is needed, when the parser skipped it, or null
+	private Callable<Block> bodyParser;
+	// saves a body before releaseBody drops it, null when the body is kept
+	private Consumer<Block> bodyRelease;
 	private final boolean voidReturnType;
 
 	public FunctionDefinition(Symbol name, Type returnType, ArrayList<ParamDefinition> paramDefinitions, Block block, int line, int column) {
@@ -81,8 +87,55 @@ public class FunctionDefinition extends Statement {
 		return paramDefinitions;
 	}
 
+	/// The body of the function, parsed on the first call when the parser skipped it, its syntax errors are thrown then
+	public Block getBody() throws Exception {
+		Block body = block;
+		if (body == null && bodyParser != null) {
+			synchronized (this) {
+				if (block == null) {
+					block = bodyParser.call();
+					if (bodyRelease == null) {
+						bodyParser = null;
+					}
+				}
+				body = block;
+			}
+		}
+		return body;
+	}
+
+	/// Same as getBody, for the callers that can't handle a syntax error in a skipped body
 	public Block getBlock() {
-		return block;
+		try {
+			return getBody();
+		} catch (Exception e) {
+			throw new IllegalStateException("The body of the function " + name.lexeme + " can't be parsed: " + e.getMessage(), e);
+		}
+	}
+
+	/// Parse the body only when it is needed, for the parsers that skip the bodies of the functions
+	public void setBodyParser(Callable<Block> bodyParser) {
+		this.bodyParser = bodyParser;
+	}
+
+	/// Same as setBodyParser, and releaseBody drops the body once a pass is done with it, the body is parsed again the next time it is needed.
+	/// release is called with the body before it is dropped, e.g., to store what the pass set on its nodes
+	public void setBodyParser(Callable<Block> bodyParser, Consumer<Block> release) {
+		this.bodyParser = bodyParser;
+		this.bodyRelease = release;
+	}
+
+	/// Drop the body if it can be parsed again, so that only the bodies that are in use are in memory, the other bodies are kept
+	public synchronized void releaseBody() {
+		if (bodyRelease != null && block != null) {
+			bodyRelease.accept(block);
+			block = null;
+		}
+	}
+
+	/// Whether the body is parsed, i.e., it wasn't skipped or it was already needed
+	public boolean isBodyParsed() {
+		return block != null;
 	}
 
 	public boolean hasInstanceRef() {
@@ -108,7 +161,7 @@ public class FunctionDefinition extends Statement {
 			paramStr.setLength(paramStr.length() - 2); // Remove the last comma and space
 		}
 		String returnTypeStr = voidReturnType ? "void" : returnType.toString();
-		return "Function, " + name.lexeme + ", " + name.type + ", " + returnTypeStr + ", [" + paramStr + "], " + block.toString();
+		return "Function, " + name.lexeme + ", " + name.type + ", " + returnTypeStr + ", [" + paramStr + "], " + getBlock().toString();
 	}
 
 	@Override
@@ -127,7 +180,7 @@ public class FunctionDefinition extends Statement {
 		}
 
 		sb.append("  ".repeat(indent + 1)).append("Body:\n");
-		sb.append(block.prettyPrint(indent + 2));
+		sb.append(getBlock().prettyPrint(indent + 2));
 
 		return sb.toString();
 	}
@@ -9,7 +9,7 @@ import compiler.SemanticAnalysis.Visitor;
 
 public class IfStatement extends Statement {
 
-    private final Expression condition;
+    private Expression condition;
     private final Block thenSBlock;
     private final boolean isElse;
     private Block elseBlock; // can be null if there is no else statement
@@ -35,6 +35,10 @@ public class IfStatement extends Statement {
         return condition;
     }
 
+    public void setCondition(Expression condition) {
+        this.condition = condition;
+    }
+
     public Block getThenBlock() {
         return thenSBlock;
     }
@@ -8,7 +8,7 @@ import compiler.SemanticAnalysis.Visitor;
 
 public class ReturnStatement extends Statement {
 
-    private final Expression expression;
+    private Expression expression;
 
     public ReturnStatement(Expression expression, int line, int column) {
         super(line, column);
@@ -20,6 +20,10 @@ public class ReturnStatement extends Statement {
         return expression;
     }
 
+    public void setExpression(Expression expression) {
+        this.expression = expression;
+    }
+
     @Override
     public String toString() {
         return "ReturnStatement [expression=" + expression + "]";
@@ -8,7 +8,7 @@ import compiler.SemanticAnalysis.Visitor;
 
 public class VariableAssignment extends Statement {
 	private final Access access;
-	private final Expression expression;
+	private Expression expression;
 
 
 	public VariableAssignment(Access access, Expression expression, int line, int column) {
@@ -26,6 +26,10 @@ public class VariableAssignment extends Statement {
 		return expression;
 	}
 
+	public void setExpression(Expression expression) {
+		this.expression = expression;
+	}
+
 	@Override
 	public String toString() {
 		return "VariableAssigment [access=" + access + ", expression=" + expression + "]";
@@ -51,6 +51,10 @@ public class VariableDeclaration extends Statement {
 		return value;
 	}
 
+	public void setValue(Expression value) {
+		this.value = value;
+	}
+
 	public boolean hasValue() {
 		return value != null;
 	}
@@ -9,7 +9,7 @@ import compiler.SemanticAnalysis.Types.SemType;
 import compiler.SemanticAnalysis.Visitor;
 
 public class WhileLoop extends Statement {
-	private final Expression condition;
+	private Expression condition;
 	private final Block block;
 
 	public WhileLoop(Expression condition, Block block, int line, int column) {
@@ -23,6 +23,10 @@ public class WhileLoop extends Statement {
 		return condition;
 	}
 
+	public void setCondition(Expression condition) {
+		this.condition = condition;
+	}
+
 	public Block getBlock() {
 		return block;
 	}
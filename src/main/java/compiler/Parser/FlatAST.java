@@ -0,0 +1,1210 @@
+package compiler.Parser;
+
+import compiler.Lexer.Symbol;
+import compiler.Lexer.TokenTypes;
+import compiler.Parser.ASTNodes.ASTNode;
+import compiler.Parser.ASTNodes.Block;
+import compiler.Parser.ASTNodes.Program;
+import compiler.Parser.ASTNodes.Statements.Expressions.Access.Access;
+import compiler.Parser.ASTNodes.Statements.Expressions.Access.ArrayAccess;
+import compiler.Parser.ASTNodes.Statements.Expressions.Access.IdentifierAccess;
+import compiler.Parser.ASTNodes.Statements.Expressions.Access.RecordAccess;
+import compiler.Parser.ASTNodes.Statements.Expressions.Expressions.ArrayExpression;
+import compiler.Parser.ASTNodes.Statements.Expressions.Expressions.BinaryExpression;
+import compiler.Parser.ASTNodes.Statements.Expressions.Expressions.Expression;
+import compiler.Parser.ASTNodes.Statements.Expressions.Expressions.UnaryExpression;
+import compiler.Parser.ASTNodes.Statements.Expressions.Operators.BinaryOperator;
+import compiler.Parser.ASTNodes.Statements.Expressions.Operators.UnaryOperator;
+import compiler.Parser.ASTNodes.Statements.Expressions.Terms.ConstVal;
+import compiler.Parser.ASTNodes.Statements.Expressions.Terms.FunctionCall;
+import compiler.Parser.ASTNodes.Statements.Expressions.Terms.NewRecord;
+import compiler.Parser.ASTNodes.Statements.Expressions.Terms.ParamCall;
+import compiler.Parser.ASTNodes.Statements.Expressions.Terms.ParenthesesTerm;
+import compiler.Parser.ASTNodes.Statements.Expressions.Terms.Term;
+import compiler.Parser.ASTNodes.Statements.Statements.ForLoop;
+import compiler.Parser.ASTNodes.Statements.Statements.FreeStatement;
+import compiler.Parser.ASTNodes.Statements.Statements.FunctionDefinition;
+import compiler.Parser.ASTNodes.Statements.Statements.IfStatement;
+import compiler.Parser.ASTNodes.Statements.Statements.ParamDefinition;
+import compiler.Parser.ASTNodes.Statements.Statements.RecordDefinition;
+import compiler.Parser.ASTNodes.Statements.Statements.RecordFieldDefinition;
+import compiler.Parser.ASTNodes.Statements.Statements.ReturnStatement;
+import compiler.Parser.ASTNodes.Statements.Statements.Statement;
+import compiler.Parser.ASTNodes.Statements.Statements.VariableAssignment;
+import compiler.Parser.ASTNodes.Statements.Statements.VariableDeclaration;
+import compiler.Parser.ASTNodes.Statements.Statements.WhileLoop;
+import compiler.Parser.ASTNodes.Types.NumType;
+import compiler.Parser.ASTNodes.Types.Type;
+import compiler.SemanticAnalysis.Types.ArraySemType;
+import compiler.SemanticAnalysis.Types.FunctionSemType;
+import compiler.SemanticAnalysis.Types.RecordSemType;
+import compiler.SemanticAnalysis.Types.SemType;
+import compiler.SemanticAnalysis.Types.TypeTable;
+import compiler.SemanticAnalysis.Visitor;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/// AST stored in primitive arrays instead of one object per node, for the programs that are kept in memory between the passes.
+/// The nodes are in pre-order: the children of a node follow it, and end(node) is the index after its subtree,
+/// so the first child of a node is node + 1 and the sibling after a child is end(child). A missing child, e.g., the else block of an if,
+/// is a NONE node. The symbol of a node is stored in the node, with its text in a table of strings and its position taken from the node,
+/// the few symbols that are at another position are in a side table. The semantic types are in an array parallel to the nodes.
+/// The passes are Visitors on the node objects: a Cursor walks the arrays and decodes the subtree it is on for a visitor,
+/// then the types that the visitor set are stored back in the arrays. The bodies of the functions are decoded when the visitor
+/// needs them, and the passes release each one when they are done with it, so only the bodies in use are in memory.
+public final class FlatAST {
+    public enum Kind {
+        NONE, PROGRAM, BLOCK, STATEMENT, FOR_LOOP, FREE, FUNCTION, IF, PARAM, RECORD, FIELD, RETURN, ASSIGNMENT, DECLARATION, WHILE,
+        ARRAY_ACCESS, IDENTIFIER_ACCESS, RECORD_ACCESS, ARRAY_EXPRESSION, BINARY_EXPRESSION, UNARY_EXPRESSION,
+        BINARY_OPERATOR, UNARY_OPERATOR, CONST_VAL, FUNCTION_CALL, NEW_RECORD, PARAM_CALL, PARENTHESES, TYPE, NUM_TYPE
+    }
+
+    private static final Kind[] KINDS = Kind.values();
+    private static final TokenTypes[] TOKEN_TYPES = TokenTypes.values();
+
+    // flags of the nodes, the meaning of the low bits depends on the kind
+    private static final int CONSTANT = 1;
+    private static final int GLOBAL = 2;
+    private static final int CONVERSION_NEEDED = 4;
+    private static final int INSTANCE_REF = 1;
+    private static final int VOID_RETURN = 2;
+    private static final int LIST = 1;
+    private static final int FLOAT = 2;
+    private static final int WILL_STORE = 1;
+    // the symbol of the node is in the side table, since it isn't at the position of the node
+    private static final int MOVED_SYMBOL = 0x40;
+    // marks a column or a subtree size that is in a wide map
+    private static final char WIDE = Character.MAX_VALUE;
+    // start of the binary format written by write, with its version in the last byte
+    private static final int MAGIC = 0x464C5403;
+    // most bytes of a varint of the binary format, 7 bits per byte
+    private static final int VARINT_BYTES = 5;
+    // fewest bytes of a node and of a side symbol in the binary format, each number takes at least one byte
+    private static final int MIN_NODE_BYTES = 3 * Byte.BYTES + 4;
+    private static final int MIN_SIDE_BYTES = Byte.BYTES + 4;
+    // tags of the types in the binary format
+    private static final byte BASIC_TYPE = 0;
+    private static final byte ARRAY_TYPE = 1;
+    private static final byte FUNCTION_TYPE = 2;
+    private static final byte RECORD_TYPE = 3;
+
+    private byte[] kinds;
+    private byte[] flags;
+    private byte[] symbolKinds;
+    private int[] lines;
+    // the columns and the sizes of the subtrees that don't fit in a char are in the wide maps
+    private char[] columns;
+    private char[] sizes;
+    private final HashMap<Integer, Integer> wideColumns = new HashMap<>();
+    private final HashMap<Integer, Integer> wideSizes = new HashMap<>();
+    // index of the text of the symbol of the node, the program stores its number of constants here
+    private int[] payloads;
+    // null until a node has a type
+    private SemType[] types;
+    private int size;
+
+    // symbols that aren't at the position of their node, sorted by node: the moved symbols, then the instance names of the methods
+    private int[] sideNodes;
+    private byte[] sideKinds;
+    private int[] sideTexts;
+    private int[] sideLines;
+    private int[] sideColumns;
+    private int sideCount;
+
+    private String[] texts;
+    private int textCount;
+    // index of each text while the tree is encoded, null afterwards
+    private HashMap<String, Integer> textIndices;
+
+    private FlatAST(int capacity) {
+        kinds = new byte[capacity];
+        flags = new byte[capacity];
+        symbolKinds = new byte[capacity];
+        lines = new int[capacity];
+        columns = new char[capacity];
+        sizes = new char[capacity];
+        payloads = new int[capacity];
+        sideNodes = new int[capacity];
+        sideKinds = new byte[capacity];
+        sideTexts = new int[capacity];
+        sideLines = new int[capacity];
+        sideColumns = new int[capacity];
+        texts = new String[capacity];
+        textIndices = new HashMap<>();
+    }
+
+    /// Encode a program with the types of its nodes, the skipped function bodies are parsed and their syntax errors are thrown.
+    /// The parameters, arguments and fields must be numbered in their order, like the parser does
+    public static FlatAST of(Program program) throws Exception {
+        FlatAST ast = new FlatAST(1024);
+        ast.encode(program);
+        ast.textIndices = null;
+        ast.trim();
+        return ast;
+    }
+
+    /// Number of nodes, the missing children included
+    public int size() {
+        return size;
+    }
+
+    /// Number of bytes of the arrays, without the strings and the types that they reference
+    public long sizeInBytes() {
+        long nodes = (long) size * (3 * Byte.BYTES + 2 * Character.BYTES + 2 * Integer.BYTES + (types == null ? 0 : Integer.BYTES));
+        long side = (long) sideCount * (Byte.BYTES + 4 * Integer.BYTES);
+        return nodes + side + (long) textCount * Integer.BYTES;
+    }
+
+    /// Decode the whole tree
+    public Program decode() throws Exception {
+        return (Program) decode(0, false);
+    }
+
+    /// Decode the tree without the bodies of the functions, which are decoded the first time they are needed, like the bodies skipped by the parser
+    public Program program() throws Exception {
+        return (Program) decode(0, true);
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    /// Run a visitor on the program, the bodies of the functions are decoded when the visitor needs them.
+    /// The visitor must not replace nodes, the types it sets are stored in the tree
+    public <R, T> R accept(Visitor<R, T> visitor, T table) throws Exception {
+        return cursor().accept(visitor, table);
+    }
+
+    /// Store the types and the flags that the passes set on the nodes of a decoded tree, the tree must have the same shape as the encoded one
+    public void record(Program program) {
+        record(program, 0);
+    }
+
+    /// Write the arrays, the texts and the types of the tree in the binary format read by read(ByteBuffer).
+    /// The numbers are written as varints, the lines as the difference with the line of the previous node, so most of them take one byte.
+    /// The types shared by several nodes are written once and are shared again when the tree is read, and their names are in the table of texts
+    public void write(DataOutputStream output) throws IOException {
+        output.writeInt(MAGIC);
+        // the nodes are put in a buffer first, writing them one value at a time in the stream is several times slower
+        ByteBuffer nodes = ByteBuffer.allocate(VARINT_BYTES + size * (3 * Byte.BYTES + 4 * VARINT_BYTES));
+        putVarint(nodes, size);
+        nodes.put(kinds, 0, size).put(flags, 0, size).put(symbolKinds, 0, size);
+        int previousLine = 0;
+        for (int i = 0; i < size; i++) {
+            putVarint(nodes, zigZag(lines[i] - previousLine));
+            previousLine = lines[i];
+            putVarint(nodes, columns[i]);
+            putVarint(nodes, sizes[i]);
+            putVarint(nodes, payloads[i]);
+        }
+        output.write(nodes.array(), 0, nodes.position());
+        writeWide(output, wideColumns);
+        writeWide(output, wideSizes);
+
+        ByteBuffer side = ByteBuffer.allocate(VARINT_BYTES + sideCount * (Byte.BYTES + 4 * VARINT_BYTES));
+        putVarint(side, sideCount);
+        side.put(sideKinds, 0, sideCount);
+        int previousNode = 0;
+        for (int i = 0; i < sideCount; i++) {
+            // the side symbols are sorted by node
+            putVarint(side, sideNodes[i] - previousNode);
+            previousNode = sideNodes[i];
+            putVarint(side, sideTexts[i]);
+            putVarint(side, zigZag(sideLines[i] - lines[sideNodes[i]]));
+            putVarint(side, sideColumns[i]);
+        }
+        output.write(side.array(), 0, side.position());
+
+        IdentityHashMap<SemType, Integer> indices = new IdentityHashMap<>();
+        ArrayList<SemType> ordered = new ArrayList<>();
+        if (types != null) {
+            for (int i = 0; i < size; i++) {
+                number(types[i], indices, ordered);
+            }
+        }
+        // the names of the types are almost always texts of the nodes already, the others are added after them
+        HashMap<String, Integer> textIndices = new HashMap<>();
+        ArrayList<String> allTexts = new ArrayList<>(Arrays.asList(texts).subList(0, textCount));
+        for (int i = 0; i < textCount; i++) {
+            textIndices.putIfAbsent(texts[i], i);
+        }
+        for (SemType type : ordered) {
+            for (String name : namesOf(type)) {
+                if (textIndices.putIfAbsent(name, allTexts.size()) == null) {
+                    allTexts.add(name);
+                }
+            }
+        }
+
+        writeVarint(output, allTexts.size());
+        for (String text : allTexts) {
+            writeString(output, text);
+        }
+        writeTypes(output, indices, ordered, textIndices);
+    }
+
+    /// Read a tree written by write, e.g., from a memory-mapped file, an IOException is thrown if the data is truncated or corrupted
+    public static FlatAST read(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a flat AST");
+            }
+            FlatAST ast = new FlatAST(0);
+            ast.textIndices = null;
+            int size = checkedCount(buffer, getVarint(buffer), MIN_NODE_BYTES);
+            ast.size = size;
+            ast.kinds = bytes(buffer, size);
+            ast.flags = bytes(buffer, size);
+            ast.symbolKinds = bytes(buffer, size);
+            ast.lines = new int[size];
+            ast.columns = new char[size];
+            ast.sizes = new char[size];
+            ast.payloads = new int[size];
+            int line = 0;
+            for (int i = 0; i < size; i++) {
+                line += unZigZag(getVarint(buffer));
+                ast.lines[i] = line;
+                ast.columns[i] = getChar(buffer);
+                ast.sizes[i] = getChar(buffer);
+                ast.payloads[i] = getVarint(buffer);
+            }
+            readWide(buffer, ast.wideColumns);
+            readWide(buffer, ast.wideSizes);
+
+            int sideCount = checkedCount(buffer, getVarint(buffer), MIN_SIDE_BYTES);
+            ast.sideCount = sideCount;
+            ast.sideKinds = bytes(buffer, sideCount);
+            ast.sideNodes = new int[sideCount];
+            ast.sideTexts = new int[sideCount];
+            ast.sideLines = new int[sideCount];
+            ast.sideColumns = new int[sideCount];
+            int node = 0;
+            for (int i = 0; i < sideCount; i++) {
+                node += getVarint(buffer);
+                ast.sideNodes[i] = node;
+                ast.sideTexts[i] = getVarint(buffer);
+                ast.sideLines[i] = ast.lines[node] + unZigZag(getVarint(buffer));
+                ast.sideColumns[i] = getVarint(buffer);
+            }
+
+            int textCount = checkedCount(buffer, getVarint(buffer), Byte.BYTES);
+            ast.textCount = textCount;
+            ast.texts = new String[textCount];
+            for (int i = 0; i < textCount; i++) {
+                ast.texts[i] = readString(buffer);
+            }
+            ast.readTypes(buffer);
+            if (buffer.hasRemaining()) {
+                throw new IOException("Unexpected data after the flat AST");
+            }
+            return ast;
+        } catch (BufferUnderflowException | IllegalArgumentException | IndexOutOfBoundsException | ClassCastException e) {
+            throw new IOException("Truncated or corrupted flat AST", e);
+        }
+    }
+
+    /// Moves on the nodes of the tree, starting at the root
+    public final class Cursor {
+        private int node;
+        private int[] parents = new int[16];
+        private int depth;
+
+        private Cursor() {
+        }
+
+        public int index() {
+            return node;
+        }
+
+        public Kind kind() {
+            return KINDS[kinds[node]];
+        }
+
+        public int line() {
+            return lines[node];
+        }
+
+        public int column() {
+            return FlatAST.this.column(node);
+        }
+
+        /// The symbol of the node, e.g., the name of a function or the operator of a BinaryOperator, or null
+        public Symbol symbol() {
+            return symbolOf(node);
+        }
+
+        public SemType type() {
+            return types == null ? null : types[node];
+        }
+
+        public void setType(SemType type) {
+            setTypeOf(node, type);
+        }
+
+        public int childCount() {
+            return children(node).length;
+        }
+
+        /// Move to the first child of the node, returns false and stays on the node if it has no children
+        public boolean firstChild() {
+            if (node + 1 == end(node)) {
+                return false;
+            }
+            if (depth == parents.length) {
+                parents = Arrays.copyOf(parents, depth * 2);
+            }
+            parents[depth++] = node;
+            node++;
+            return true;
+        }
+
+        /// Move to the next child of the parent, returns false and stays on the node if it is the last one
+        public boolean nextSibling() {
+            if (depth == 0 || end(node) == end(parents[depth - 1])) {
+                return false;
+            }
+            node = end(node);
+            return true;
+        }
+
+        /// Move to the parent of the node, returns false on the root
+        public boolean parent() {
+            if (depth == 0) {
+                return false;
+            }
+            node = parents[--depth];
+            return true;
+        }
+
+        /// Decode the subtree of the node, or null on a missing child
+        public ASTNode node() throws Exception {
+            return decode(node, false);
+        }
+
+        /// Decode the subtree of the node and run the visitor on it, then store the types that it set.
+        /// The bodies of the functions are decoded when the visitor needs them, and the visitor must not replace nodes
+        public <R, T> R accept(Visitor<R, T> visitor, T table) throws Exception {
+            ASTNode decoded = decode(node, true);
+            R result = decoded.accept(visitor, table);
+            record(decoded, node);
+            return result;
+        }
+    }
+
+    private void encode(ASTNode node) throws Exception {
+        int index = size;
+        grow();
+        size++;
+        if (node == null) {
+            kinds[index] = (byte) Kind.NONE.ordinal();
+            setEnd(index, size);
+            return;
+        }
+
+        kinds[index] = (byte) kindOf(node).ordinal();
+        lines[index] = node.line;
+        setColumn(index, node.column);
+        setTypeOf(index, node.semtype);
+        int nodeFlags = flagsOf(node);
+        Symbol symbol = symbolOf(node);
+        if (symbol != null) {
+            symbolKinds[index] = (byte) symbol.type.ordinal();
+            payloads[index] = text(symbol.lexeme);
+            if (symbol.line != node.line || symbol.column != node.column) {
+                nodeFlags |= MOVED_SYMBOL;
+                addSideSymbol(index, symbol);
+            }
+        }
+        if (node instanceof FunctionDefinition function && function.hasInstanceRef()) {
+            addSideSymbol(index, function.getInstanceName());
+        }
+        if (node instanceof Program program) {
+            payloads[index] = program.getConstants().size();
+        }
+        flags[index] = (byte) nodeFlags;
+
+        List<ASTNode> children = children(node, true);
+        checkIndices(node, children);
+        for (ASTNode child : children) {
+            encode(child);
+        }
+        setEnd(index, size);
+    }
+
+    /// The bodies of the functions are released by the passes concurrently, the array of types is created on the first one
+    private synchronized void recordBody(Block block, int index) {
+        record(block, index);
+    }
+
+    /// Store the types and flags of a decoded subtree, the bodies that weren't decoded are skipped
+    private void record(ASTNode node, int index) {
+        if (node == null) {
+            return;
+        }
+        if (KINDS[kinds[index]] != kindOf(node)) {
+            throw new IllegalStateException("The " + node.getClass().getSimpleName() + " at line " + node.line + ", column " + node.column + " doesn't match the encoded " + KINDS[kinds[index]]);
+        }
+        setTypeOf(index, node.semtype);
+        flags[index] = (byte) (flagsOf(node) | (flags[index] & MOVED_SYMBOL));
+        int child = index + 1;
+        for (ASTNode childNode : children(node, false)) {
+            record(childNode, child);
+            child = end(child);
+        }
+    }
+
+    private void setTypeOf(int node, SemType type) {
+        if (types == null) {
+            if (type == null) {
+                return;
+            }
+            types = new SemType[kinds.length];
+        }
+        types[node] = type;
+    }
+
+    private int column(int node) {
+        return columns[node] != WIDE ? columns[node] : wideColumns.get(node);
+    }
+
+    private void setColumn(int node, int column) {
+        if (column >= 0 && column < WIDE) {
+            columns[node] = (char) column;
+        } else {
+            columns[node] = WIDE;
+            wideColumns.put(node, column);
+        }
+    }
+
+    /// Index of the node after the subtree of the node
+    private int end(int node) {
+        return node + (sizes[node] != WIDE ? sizes[node] : wideSizes.get(node));
+    }
+
+    private void setEnd(int node, int end) {
+        int subtreeSize = end - node;
+        if (subtreeSize < WIDE) {
+            sizes[node] = (char) subtreeSize;
+        } else {
+            sizes[node] = WIDE;
+            wideSizes.put(node, subtreeSize);
+        }
+    }
+
+    private static Kind kindOf(ASTNode node) {
+        return switch (node) {
+            case Program ignored -> Kind.PROGRAM;
+            case Block ignored -> Kind.BLOCK;
+            case ForLoop ignored -> Kind.FOR_LOOP;
+            case FreeStatement ignored -> Kind.FREE;
+            case FunctionDefinition ignored -> Kind.FUNCTION;
+            case IfStatement ignored -> Kind.IF;
+            case ParamDefinition ignored -> Kind.PARAM;
+            case RecordDefinition ignored -> Kind.RECORD;
+            case RecordFieldDefinition ignored -> Kind.FIELD;
+            case ReturnStatement ignored -> Kind.RETURN;
+            case VariableAssignment ignored -> Kind.ASSIGNMENT;
+            case VariableDeclaration ignored -> Kind.DECLARATION;
+            case WhileLoop ignored -> Kind.WHILE;
+            case ArrayAccess ignored -> Kind.ARRAY_ACCESS;
+            case IdentifierAccess ignored -> Kind.IDENTIFIER_ACCESS;
+            case RecordAccess ignored -> Kind.RECORD_ACCESS;
+            case ArrayExpression ignored -> Kind.ARRAY_EXPRESSION;
+            case BinaryExpression ignored -> Kind.BINARY_EXPRESSION;
+            case UnaryExpression ignored -> Kind.UNARY_EXPRESSION;
+            case ConstVal ignored -> Kind.CONST_VAL;
+            case FunctionCall ignored -> Kind.FUNCTION_CALL;
+            case NewRecord ignored -> Kind.NEW_RECORD;
+            case ParamCall ignored -> Kind.PARAM_CALL;
+            case ParenthesesTerm ignored -> Kind.PARENTHESES;
+            case BinaryOperator ignored -> Kind.BINARY_OPERATOR;
+            case UnaryOperator ignored -> Kind.UNARY_OPERATOR;
+            case NumType ignored -> Kind.NUM_TYPE;
+            case Type ignored -> Kind.TYPE;
+            case Statement statement when statement.getClass() == Statement.class -> Kind.STATEMENT;
+            default -> throw new IllegalArgumentException("Unknown AST node " + node.getClass().getName());
+        };
+    }
+
+    private static int flagsOf(ASTNode node) {
+        return switch (node) {
+            case VariableDeclaration declaration -> (declaration.isConstant() ? CONSTANT : 0)
+                    | (declaration.isGlobal() ? GLOBAL : 0)
+                    | (declaration.conversionNeeded ? CONVERSION_NEEDED : 0);
+            case FunctionDefinition function -> (function.hasInstanceRef() ? INSTANCE_REF : 0) | (function.isVoidReturnType() ? VOID_RETURN : 0);
+            case Access access -> (access.willStore ? WILL_STORE : 0) | (access.conversionNeeded ? CONVERSION_NEEDED : 0);
+            case NumType numType -> (numType.isList ? LIST : 0) | (numType.isFloat() ? FLOAT : 0);
+            case Type type -> type.isList ? LIST : 0;
+            case Expression expression -> expression.conversionNeeded ? CONVERSION_NEEDED : 0;
+            default -> 0;
+        };
+    }
+
+    private static Symbol symbolOf(ASTNode node) {
+        return switch (node) {
+            case FunctionDefinition function -> function.getName();
+            case ForLoop forLoop -> forLoop.getVariable();
+            case ParamDefinition param -> param.getIdentifier();
+            case RecordDefinition record -> record.getIdentifier();
+            case RecordFieldDefinition field -> field.getIdentifier();
+            case VariableDeclaration declaration -> declaration.getName();
+            case IdentifierAccess access -> access.getIdentifier();
+            case RecordAccess access -> access.getIdentifier();
+            case BinaryOperator operator -> operator.getSymbol();
+            case UnaryOperator operator -> operator.getSymbol();
+            case ConstVal constVal -> constVal.getSymbol();
+            case FunctionCall call -> call.getIdentifier();
+            case NewRecord newRecord -> newRecord.getIdentifier();
+            case Type type -> type.getSymbol();
+            default -> null;
+        };
+    }
+
+    /// The children of a node in the order of the encoding, null for a missing child.
+    /// A function body that wasn't parsed is parsed if parseBodies is true, and is null otherwise
+    private static List<ASTNode> children(ASTNode node, boolean parseBodies) {
+        ArrayList<ASTNode> children = new ArrayList<>();
+        switch (node) {
+            case Program program -> {
+                children.addAll(program.getConstants());
+                children.addAll(program.getRecords());
+                children.addAll(program.getGlobals());
+                children.addAll(program.getFunctions());
+            }
+            case Block block -> {
+                children.addAll(block.getStatements());
+                children.add(block.getReturnStatement());
+            }
+            case ForLoop forLoop -> children.addAll(Arrays.asList(forLoop.getStart(), forLoop.getEnd(), forLoop.getStep(), forLoop.getBlock()));
+            case FreeStatement free -> children.add(free.getIdentifierAccess());
+            case FunctionDefinition function -> {
+                if (function.hasInstanceRef()) {
+                    children.add(function.getInstanceRef());
+                }
+                if (!function.isVoidReturnType()) {
+                    children.add(function.getReturnType());
+                }
+                children.addAll(function.getParamDefinitions());
+                children.add(parseBodies || function.isBodyParsed() ? function.getBlock() : null);
+            }
+            case IfStatement ifStatement -> children.addAll(Arrays.asList(ifStatement.getCondition(), ifStatement.getThenBlock(), ifStatement.getElseBlock()));
+            case ParamDefinition param -> children.add(param.getType());
+            case RecordDefinition record -> children.addAll(record.getFields());
+            case RecordFieldDefinition field -> children.add(field.getType());
+            case ReturnStatement returnStatement -> children.add(returnStatement.getExpression());
+            case VariableAssignment assignment -> children.addAll(Arrays.asList(assignment.getAccess(), assignment.getExpression()));
+            case VariableDeclaration declaration -> children.addAll(Arrays.asList(declaration.getType(), declaration.getValue()));
+            case WhileLoop whileLoop -> children.addAll(Arrays.asList(whileLoop.getCondition(), whileLoop.getBlock()));
+            case ArrayAccess access -> children.addAll(Arrays.asList(access.getHeadAccess(), access.getIndexExpression()));
+            case RecordAccess access -> children.add(access.getHeadAccess());
+            case ArrayExpression array -> children.addAll(Arrays.asList(array.getSizeExpression(), array.getType()));
+            case BinaryExpression binary -> children.addAll(Arrays.asList(binary.getLeftTerm(), binary.getOperator(), binary.getRightTerm()));
+            case UnaryExpression unary -> children.addAll(Arrays.asList(unary.getOperator(), unary.getTerm()));
+            case FunctionCall call -> {
+                children.add(call.recordAccess);
+                children.addAll(call.getParameters());
+            }
+            case NewRecord newRecord -> children.addAll(newRecord.getTerms());
+            case ParamCall param -> children.add(param.getParamExpression());
+            case ParenthesesTerm parentheses -> children.add(parentheses.getExpression());
+            default -> {
+            }
+        }
+        return children;
+    }
+
+    /// The index of a parameter, an argument or a field is its position in its parent, it isn't stored
+    private static void checkIndices(ASTNode node, List<ASTNode> children) {
+        int position = 0;
+        for (ASTNode child : children) {
+            Integer index = switch (child) {
+                case ParamDefinition param -> param.getParamIndex();
+                case ParamCall param -> param.getParamIndex();
+                case RecordFieldDefinition field -> field.getFieldIndex();
+                case null, default -> null;
+            };
+            if (index != null && index != position++) {
+                throw new IllegalArgumentException("The " + child.getClass().getSimpleName() + " at line " + child.line + ", column " + child.column
+                        + " has the index " + index + " in the " + node.getClass().getSimpleName() + ", instead of its position " + (position - 1));
+            }
+        }
+    }
+
+    /// Decode the subtree of a node, the function bodies are decoded when they are needed if lazyBodies is true
+    private ASTNode decode(int node, boolean lazyBodies) throws Exception {
+        Kind kind = KINDS[kinds[node]];
+        if (kind == Kind.NONE) {
+            return null;
+        }
+        int line = lines[node];
+        int column = column(node);
+        Symbol symbol = symbolOf(node);
+        int nodeFlags = flags[node];
+        int[] children = children(node);
+
+        ASTNode decoded = switch (kind) {
+            case PROGRAM -> {
+                ArrayList<VariableDeclaration> constants = new ArrayList<>();
+                ArrayList<RecordDefinition> records = new ArrayList<>();
+                ArrayList<VariableDeclaration> globals = new ArrayList<>();
+                ArrayList<FunctionDefinition> functions = new ArrayList<>();
+                for (int i = 0; i < children.length; i++) {
+                    ASTNode child = decode(children[i], lazyBodies);
+                    boolean constant = i < payloads[node];
+                    switch (child) {
+                        case VariableDeclaration declaration when constant -> constants.add(declaration);
+                        case RecordDefinition record -> records.add(record);
+                        case VariableDeclaration declaration -> globals.add(declaration);
+                        default -> functions.add((FunctionDefinition) child);
+                    }
+                }
+                yield new Program(constants, records, globals, functions, line, column);
+            }
+            case BLOCK -> {
+                ArrayList<Statement> statements = new ArrayList<>();
+                for (int i = 0; i < children.length - 1; i++) {
+                    statements.add((Statement) decode(children[i], lazyBodies));
+                }
+                yield new Block(statements, (Statement) decode(children[children.length - 1], lazyBodies), line, column);
+            }
+            case STATEMENT -> new Statement(line, column);
+            case FOR_LOOP -> new ForLoop(symbol, expression(children[0]), expression(children[1]), expression(children[2]),
+                    (Block) decode(children[3], lazyBodies), line, column);
+            case FREE -> new FreeStatement((IdentifierAccess) decode(children[0], lazyBodies), line, column);
+            case FUNCTION -> function(node, symbol, nodeFlags, children, lazyBodies);
+            case IF -> new IfStatement(expression(children[0]), (Block) decode(children[1], lazyBodies), (Block) decode(children[2], lazyBodies), line, column);
+            case PARAM -> param(node, positionInParent(node));
+            case FIELD -> field(node, positionInParent(node));
+            case PARAM_CALL -> paramCall(node, positionInParent(node));
+            case RECORD -> {
+                ArrayList<RecordFieldDefinition> fields = new ArrayList<>();
+                for (int i = 0; i < children.length; i++) {
+                    fields.add(field(children[i], i));
+                }
+                yield new RecordDefinition(symbol, fields, line, column);
+            }
+            case RETURN -> new ReturnStatement(expression(children[0]), line, column);
+            case ASSIGNMENT -> new VariableAssignment((Access) decode(children[0], lazyBodies), expression(children[1]), line, column);
+            case DECLARATION -> {
+                VariableDeclaration declaration = new VariableDeclaration(symbol, (Type) decode(children[0], lazyBodies), expression(children[1]),
+                        (nodeFlags & CONSTANT) != 0, (nodeFlags & GLOBAL) != 0, line, column);
+                declaration.conversionNeeded = (nodeFlags & CONVERSION_NEEDED) != 0;
+                yield declaration;
+            }
+            case WHILE -> new WhileLoop(expression(children[0]), (Block) decode(children[1], lazyBodies), line, column);
+            case ARRAY_ACCESS -> new ArrayAccess((Access) decode(children[0], lazyBodies), expression(children[1]), line, column);
+            case IDENTIFIER_ACCESS -> new IdentifierAccess(symbol, line, column);
+            case RECORD_ACCESS -> new RecordAccess((Access) decode(children[0], lazyBodies), symbol, line, column);
+            case ARRAY_EXPRESSION -> new ArrayExpression(expression(children[0]), (Type) decode(children[1], lazyBodies), line, column);
+            case BINARY_EXPRESSION -> new BinaryExpression((Term) decode(children[0], lazyBodies), (BinaryOperator) decode(children[1], lazyBodies),
+                    (Term) decode(children[2], lazyBodies), line, column);
+            case UNARY_EXPRESSION -> new UnaryExpression((UnaryOperator) decode(children[0], lazyBodies), (Term) decode(children[1], lazyBodies), line, column);
+            case BINARY_OPERATOR -> new BinaryOperator(symbol, line, column);
+            case UNARY_OPERATOR -> new UnaryOperator(symbol, line, column);
+            case CONST_VAL -> new ConstVal(symbol.value, symbol, line, column);
+            case FUNCTION_CALL -> {
+                FunctionCall call = new FunctionCall(symbol, paramCalls(children, 1), line, column);
+                Access recordAccess = (Access) decode(children[0], lazyBodies);
+                if (recordAccess != null) {
+                    call.setRecordAccess(recordAccess);
+                }
+                yield call;
+            }
+            case NEW_RECORD -> new NewRecord(symbol, paramCalls(children, 0), line, column);
+            case PARENTHESES -> new ParenthesesTerm(expression(children[0]), line, column);
+            case TYPE -> new Type(symbol, (nodeFlags & LIST) != 0, line, column);
+            case NUM_TYPE -> {
+                NumType numType = new NumType(symbol, (nodeFlags & FLOAT) != 0);
+                numType.isList = (nodeFlags & LIST) != 0;
+                yield numType;
+            }
+            case NONE -> throw new IllegalStateException();
+        };
+
+        setPosition(decoded, node);
+        if (decoded instanceof Access access) {
+            access.willStore = (nodeFlags & WILL_STORE) != 0;
+        }
+        if (decoded instanceof Expression expression) {
+            expression.conversionNeeded = (nodeFlags & CONVERSION_NEEDED) != 0;
+        }
+        return decoded;
+    }
+
+    private FunctionDefinition function(int node, Symbol name, int nodeFlags, int[] children, boolean lazyBodies) throws Exception {
+        int child = 0;
+        Type instanceRef = null;
+        if ((nodeFlags & INSTANCE_REF) != 0) {
+            instanceRef = (Type) decode(children[child++], lazyBodies);
+        }
+        Type returnType = null;
+        if ((nodeFlags & VOID_RETURN) == 0) {
+            returnType = (Type) decode(children[child++], lazyBodies);
+        }
+        ArrayList<ParamDefinition> params = new ArrayList<>();
+        for (int i = 0; child < children.length - 1; i++) {
+            params.add(param(children[child++], i));
+        }
+
+        int body = children[child];
+        Block block = lazyBodies ? null : (Block) decode(body, false);
+        FunctionDefinition function = instanceRef != null
+                ? new FunctionDefinition(sideSymbol(node, (flags[node] & MOVED_SYMBOL) != 0 ? 1 : 0), instanceRef, name, returnType, params, block, lines[node], column(node))
+                : new FunctionDefinition(name, returnType, params, block, lines[node], column(node));
+        if (lazyBodies) {
+            // a pass releases each body once it is done with it, the types it set are stored first
+            function.setBodyParser(() -> (Block) decode(body, false), decoded -> recordBody(decoded, body));
+        }
+        // the semantic analysis keeps the return and parameter types of the function type on the definition
+        if (types != null && types[node] instanceof FunctionSemType functionType) {
+            function.setRetSemType(functionType.getRetType());
+            function.setParamTypes(new ArrayList<>(Arrays.asList(functionType.getParamSemTypes())));
+        }
+        return function;
+    }
+
+    private Expression expression(int node) throws Exception {
+        return (Expression) decode(node, false);
+    }
+
+    private ArrayList<ParamCall> paramCalls(int[] children, int from) throws Exception {
+        ArrayList<ParamCall> params = new ArrayList<>();
+        for (int i = from; i < children.length; i++) {
+            params.add(paramCall(children[i], i - from));
+        }
+        return params;
+    }
+
+    // the parameters, the arguments and the fields are decoded with their index, which is their position among the children of their kind
+
+    private ParamDefinition param(int node, int index) throws Exception {
+        ParamDefinition param = new ParamDefinition(symbolOf(node), (Type) decode(node + 1, false), index, lines[node], column(node));
+        setPosition(param, node);
+        return param;
+    }
+
+    private RecordFieldDefinition field(int node, int index) throws Exception {
+        RecordFieldDefinition field = new RecordFieldDefinition(symbolOf(node), (Type) decode(node + 1, false), index, lines[node], column(node));
+        setPosition(field, node);
+        return field;
+    }
+
+    private ParamCall paramCall(int node, int index) throws Exception {
+        ParamCall param = new ParamCall(expression(node + 1), index, lines[node], column(node));
+        setPosition(param, node);
+        return param;
+    }
+
+    /// Number of nodes of the same kind before the node among the children of its parent, for the nodes decoded without their parent
+    private int positionInParent(int node) {
+        // the parent is the closest node before this one whose subtree contains it
+        int parent = node - 1;
+        while (end(parent) <= node) {
+            parent--;
+        }
+        int position = 0;
+        for (int child = parent + 1; child < node; child = end(child)) {
+            if (kinds[child] == kinds[node]) {
+                position++;
+            }
+        }
+        return position;
+    }
+
+    /// Set the position and the type of a decoded node, the constructors of some nodes take their position from their symbol
+    private void setPosition(ASTNode decoded, int node) {
+        decoded.line = lines[node];
+        decoded.column = column(node);
+        decoded.semtype = types == null ? null : types[node];
+    }
+
+    private int[] children(int node) {
+        int count = 0;
+        for (int child = node + 1; child < end(node); child = end(child)) {
+            count++;
+        }
+        int[] children = new int[count];
+        int i = 0;
+        for (int child = node + 1; child < end(node); child = end(child)) {
+            children[i++] = child;
+        }
+        return children;
+    }
+
+    /// The symbol of a node, or null for the kinds of nodes without a symbol
+    private Symbol symbolOf(int node) {
+        return switch (KINDS[kinds[node]]) {
+            case FUNCTION, FOR_LOOP, PARAM, RECORD, FIELD, DECLARATION, IDENTIFIER_ACCESS, RECORD_ACCESS,
+                 BINARY_OPERATOR, UNARY_OPERATOR, CONST_VAL, FUNCTION_CALL, NEW_RECORD, TYPE, NUM_TYPE -> (flags[node] & MOVED_SYMBOL) != 0
+                    ? sideSymbol(node, 0)
+                    : symbol(symbolKinds[node], payloads[node], lines[node], column(node));
+            default -> null;
+        };
+    }
+
+    /// The symbol at that rank among the symbols of the node in the side table
+    private Symbol sideSymbol(int node, int rank) {
+        int low = 0;
+        int high = sideCount;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (sideNodes[middle] < node) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        int entry = low + rank;
+        return symbol(sideKinds[entry], sideTexts[entry], sideLines[entry], sideColumns[entry]);
+    }
+
+    private Symbol symbol(byte kind, int text, int line, int column) {
+        TokenTypes type = TOKEN_TYPES[kind];
+        String lexeme = texts[text];
+        return new Symbol(type, lexeme, line, column, value(type, lexeme));
+    }
+
+    /// The value of a literal from its lexeme, same as the one set by the lexer and the constant folding
+    private static Object value(TokenTypes type, String lexeme) {
+        return switch (type) {
+            case INT_LITERAL -> Integer.parseInt(lexeme);
+            case FLOAT_LITERAL -> Float.parseFloat(lexeme);
+            case STRING_LITERAL -> lexeme;
+            case BOOL_TRUE -> true;
+            case BOOL_FALSE -> false;
+            default -> null;
+        };
+    }
+
+    private int text(String lexeme) {
+        Integer text = textIndices.get(lexeme);
+        if (text == null) {
+            if (textCount == texts.length) {
+                texts = Arrays.copyOf(texts, textCount * 2);
+            }
+            text = textCount;
+            texts[textCount++] = lexeme;
+            textIndices.put(lexeme, text);
+        }
+        return text;
+    }
+
+    private void addSideSymbol(int node, Symbol symbol) {
+        if (sideCount == sideNodes.length) {
+            int capacity = sideCount * 2;
+            sideNodes = Arrays.copyOf(sideNodes, capacity);
+            sideKinds = Arrays.copyOf(sideKinds, capacity);
+            sideTexts = Arrays.copyOf(sideTexts, capacity);
+            sideLines = Arrays.copyOf(sideLines, capacity);
+            sideColumns = Arrays.copyOf(sideColumns, capacity);
+        }
+        sideNodes[sideCount] = node;
+        sideKinds[sideCount] = (byte) symbol.type.ordinal();
+        sideTexts[sideCount] = text(symbol.lexeme);
+        sideLines[sideCount] = symbol.line;
+        sideColumns[sideCount] = symbol.column;
+        sideCount++;
+    }
+
+    /// The types are numbered in the order they are first reached from the nodes, the element and the signature types of a type before it,
+    /// except for the fields of the records, which are written after all the types since a record can reference itself through them.
+    /// A missing type is written as 0 and the others as their index plus one
+    private void writeTypes(DataOutputStream output, IdentityHashMap<SemType, Integer> indices, ArrayList<SemType> ordered,
+                            HashMap<String, Integer> textIndices) throws IOException {
+        output.writeBoolean(types != null);
+        if (types == null) {
+            return;
+        }
+
+        writeVarint(output, ordered.size());
+        for (SemType type : ordered) {
+            switch (type) {
+                case ArraySemType array -> {
+                    output.writeByte(ARRAY_TYPE);
+                    writeVarint(output, indexOf(indices, array.getElementSemType()));
+                }
+                case FunctionSemType function -> {
+                    output.writeByte(FUNCTION_TYPE);
+                    writeVarint(output, indexOf(indices, function.getRetType()));
+                    writeVarint(output, function.getParamSemTypes().length);
+                    for (SemType param : function.getParamSemTypes()) {
+                        writeVarint(output, indexOf(indices, param));
+                    }
+                }
+                case RecordSemType record -> {
+                    output.writeByte(RECORD_TYPE);
+                    writeVarint(output, textIndices.get(record.identifier));
+                }
+                default -> {
+                    output.writeByte(BASIC_TYPE);
+                    writeVarint(output, textIndices.get(type.type));
+                }
+            }
+        }
+        for (SemType type : ordered) {
+            if (type instanceof RecordSemType record) {
+                writeVarint(output, record.fields.size());
+                for (Map.Entry<String, SemType> field : record.fields.entrySet()) {
+                    writeVarint(output, textIndices.get(field.getKey()));
+                    writeVarint(output, indexOf(indices, field.getValue()));
+                }
+            }
+        }
+
+        // the types of the nodes are put in a buffer first, like the nodes
+        ByteBuffer nodeTypes = ByteBuffer.allocate(size * VARINT_BYTES);
+        for (int i = 0; i < size; i++) {
+            putVarint(nodeTypes, indexOf(indices, types[i]));
+        }
+        output.write(nodeTypes.array(), 0, nodeTypes.position());
+    }
+
+    /// The names a type is written with: its own name, and the names of the fields of a record
+    private static List<String> namesOf(SemType type) {
+        return switch (type) {
+            case ArraySemType ignored -> List.of();
+            case FunctionSemType ignored -> List.of();
+            case RecordSemType record -> {
+                ArrayList<String> names = new ArrayList<>();
+                names.add(record.identifier);
+                names.addAll(record.fields.keySet());
+                yield names;
+            }
+            default -> List.of(type.type);
+        };
+    }
+
+    private static void number(SemType type, IdentityHashMap<SemType, Integer> indices, ArrayList<SemType> ordered) {
+        if (type == null || indices.containsKey(type)) {
+            return;
+        }
+        if (type instanceof RecordSemType record) {
+            // numbered before its fields, which may be the record itself
+            indices.put(record, ordered.size());
+            ordered.add(record);
+            for (SemType field : record.fields.values()) {
+                number(field, indices, ordered);
+            }
+            return;
+        }
+        switch (type) {
+            case ArraySemType array -> number(array.getElementSemType(), indices, ordered);
+            case FunctionSemType function -> {
+                number(function.getRetType(), indices, ordered);
+                for (SemType param : function.getParamSemTypes()) {
+                    number(param, indices, ordered);
+                }
+            }
+            default -> {
+            }
+        }
+        indices.put(type, ordered.size());
+        ordered.add(type);
+    }
+
+    private void readTypes(ByteBuffer buffer) throws IOException {
+        if (buffer.get() == 0) {
+            return;
+        }
+        // the types are read back as the canonical instances, the records and the functions of the tree in their own table
+        TypeTable typeTable = new TypeTable();
+        SemType[] table = new SemType[checkedCount(buffer, getVarint(buffer), 2 * Byte.BYTES)];
+        for (int i = 0; i < table.length; i++) {
+            byte tag = buffer.get();
+            table[i] = switch (tag) {
+                case ARRAY_TYPE -> ArraySemType.of(requiredType(table, getVarint(buffer), i));
+                case FUNCTION_TYPE -> {
+                    SemType returnType = requiredType(table, getVarint(buffer), i);
+                    SemType[] params = new SemType[checkedCount(buffer, getVarint(buffer), Byte.BYTES)];
+                    for (int param = 0; param < params.length; param++) {
+                        params[param] = requiredType(table, getVarint(buffer), i);
+                    }
+                    yield typeTable.function(returnType, params);
+                }
+                case RECORD_TYPE -> typeTable.record(textAt(buffer));
+                case BASIC_TYPE -> SemType.named(textAt(buffer));
+                default -> throw new IOException("Unknown type tag " + tag);
+            };
+        }
+        for (SemType type : table) {
+            if (type instanceof RecordSemType record) {
+                int fields = checkedCount(buffer, getVarint(buffer), 2 * Byte.BYTES);
+                for (int field = 0; field < fields; field++) {
+                    record.fields.put(textAt(buffer), typeAt(table, getVarint(buffer), table.length));
+                }
+            }
+        }
+
+        types = new SemType[size];
+        for (int i = 0; i < size; i++) {
+            types[i] = typeAt(table, getVarint(buffer), table.length);
+        }
+    }
+
+    /// The text whose index is the next number of the buffer
+    private String textAt(ByteBuffer buffer) throws IOException {
+        int index = getVarint(buffer);
+        if (index < 0 || index >= textCount) {
+            throw new IOException("Invalid text index " + index);
+        }
+        return texts[index];
+    }
+
+    // a missing type is written as 0, the others as their index plus one
+    private static int indexOf(IdentityHashMap<SemType, Integer> indices, SemType type) {
+        return type == null ? 0 : indices.get(type) + 1;
+    }
+
+    /// The type written as that number, which must be one of the types before the limit, or null for 0
+    private static SemType typeAt(SemType[] table, int number, int limit) throws IOException {
+        if (number == 0) {
+            return null;
+        }
+        int index = number - 1;
+        if (index < 0 || index >= limit) {
+            throw new IOException("Invalid type index " + index);
+        }
+        return table[index];
+    }
+
+    /// The type written as that number for the types that can't be missing, e.g., the element type of an array
+    private static SemType requiredType(SemType[] table, int number, int limit) throws IOException {
+        SemType type = typeAt(table, number, limit);
+        if (type == null) {
+            throw new IOException("Missing type at index " + (number - 1));
+        }
+        return type;
+    }
+
+    private static void writeWide(DataOutputStream output, HashMap<Integer, Integer> wide) throws IOException {
+        writeVarint(output, wide.size());
+        for (Map.Entry<Integer, Integer> entry : wide.entrySet()) {
+            writeVarint(output, entry.getKey());
+            writeVarint(output, entry.getValue());
+        }
+    }
+
+    private static void readWide(ByteBuffer buffer, HashMap<Integer, Integer> wide) throws IOException {
+        int count = checkedCount(buffer, getVarint(buffer), 2 * Byte.BYTES);
+        for (int i = 0; i < count; i++) {
+            wide.put(getVarint(buffer), getVarint(buffer));
+        }
+    }
+
+    // the strings are not written with writeUTF, which is limited to 64 KB
+    private static void writeString(DataOutputStream output, String text) throws IOException {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        writeVarint(output, bytes.length);
+        output.write(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) throws IOException {
+        return new String(bytes(buffer, checkedCount(buffer, getVarint(buffer), Byte.BYTES)), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] bytes(ByteBuffer buffer, int count) {
+        byte[] bytes = new byte[count];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /// Put the 32 bits of the value, 7 bits per byte from the lowest ones, the high bit of a byte is set when more bytes follow.
+    /// The values below 128 take one byte, the negative ones take five
+    private static void putVarint(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    private static void writeVarint(DataOutputStream output, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            output.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.writeByte(value);
+    }
+
+    private static int getVarint(ByteBuffer buffer) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IOException("Invalid varint in the flat AST");
+    }
+
+    private static char getChar(ByteBuffer buffer) throws IOException {
+        int value = getVarint(buffer);
+        if (value < 0 || value > Character.MAX_VALUE) {
+            throw new IOException("Invalid column or size " + value + " in the flat AST");
+        }
+        return (char) value;
+    }
+
+    /// The small negative differences, e.g., of the lines, are mapped to small positive numbers so that their varints are short
+    private static int zigZag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    private static int unZigZag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /// Check a count read from the buffer against the remaining bytes, so that a corrupted count doesn't allocate a huge array
+    private static int checkedCount(ByteBuffer buffer, int count, int bytesPerElement) throws IOException {
+        if (count < 0 || (long) count * bytesPerElement > buffer.remaining()) {
+            throw new IOException("Invalid count " + count + " in the flat AST");
+        }
+        return count;
+    }
+
+    private void grow() {
+        if (size == kinds.length) {
+            int capacity = size * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            flags = Arrays.copyOf(flags, capacity);
+            symbolKinds = Arrays.copyOf(symbolKinds, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            columns = Arrays.copyOf(columns, capacity);
+            sizes = Arrays.copyOf(sizes, capacity);
+            payloads = Arrays.copyOf(payloads, capacity);
+            if (types != null) {
+                types = Arrays.copyOf(types, capacity);
+            }
+        }
+    }
+
+    private void trim() {
+        kinds = Arrays.copyOf(kinds, size);
+        flags = Arrays.copyOf(flags, size);
+        symbolKinds = Arrays.copyOf(symbolKinds, size);
+        lines = Arrays.copyOf(lines, size);
+        columns = Arrays.copyOf(columns, size);
+        sizes = Arrays.copyOf(sizes, size);
+        payloads = Arrays.copyOf(payloads, size);
+        if (types != null) {
+            types = Arrays.copyOf(types, size);
+        }
+        sideNodes = Arrays.copyOf(sideNodes, sideCount);
+        sideKinds = Arrays.copyOf(sideKinds, sideCount);
+        sideTexts = Arrays.copyOf(sideTexts, sideCount);
+        sideLines = Arrays.copyOf(sideLines, sideCount);
+        sideColumns = Arrays.copyOf(sideColumns, sideCount);
+        texts = Arrays.copyOf(texts, textCount);
+    }
+}
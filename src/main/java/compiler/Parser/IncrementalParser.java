@@ -0,0 +1,229 @@
+package compiler.Parser;
+
+import compiler.Lexer.Lexer;
+import compiler.Lexer.TokenBuffer;
+import compiler.Parser.ASTNodes.Program;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+
+/// Parses a source again after each text edit, by relexing and reparsing only the top-level declaration (constant, record,
+/// global variable, or function) that contains the edit. The tokens of the previous parse are kept: the tokens of the declaration
+/// are replaced and the lines of the tokens after it are shifted.
+/// The passes rewrite the AST they are given (types, conversions, folded constants), so the nodes of an AST are never reused:
+/// each edit returns a new AST whose declarations are parsed from the tokens, with the function bodies parsed when they are needed.
+/// The result is always the one of a full parse of the edited source, the edits that can't be confined to one declaration
+/// and the edits that leave an error in it parse the whole source again.
+public class IncrementalParser {
+    // the kinds of top-level declarations, in the order of the program
+    private static final int CONSTANTS = 0;
+    private static final int RECORDS = 1;
+    private static final int GLOBALS = 2;
+    private static final int FUNCTIONS = 3;
+
+    private String source;
+    private TokenBuffer tokens;
+    // null when the last parse failed
+    private Program program;
+    // number of declarations of each kind
+    private int[] declarationCounts;
+    // index of the first token and offset in the source of each top-level declaration, in the order of the source.
+    // The text between two declarations (whitespaces and comments) belongs to the first one
+    private int[] starts;
+    private int[] offsets;
+    private int fullParses;
+
+    /// Parse the whole source, an error is thrown like with a Parser, and the next edit then parses the whole source again
+    public IncrementalParser(String source) throws Exception {
+        this.source = source;
+        parseAll();
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public TokenBuffer getTokens() {
+        return tokens;
+    }
+
+    /// The AST of the last parse, the same one as the last edit returned
+    public Program getProgram() {
+        return program;
+    }
+
+    /// Number of times the whole source was parsed, the first parse included
+    public int getFullParses() {
+        return fullParses;
+    }
+
+    /// Replace the removedLength characters at offset with the inserted text, and return a new AST of the edited source.
+    /// The syntax and lexical errors are thrown like with a Parser
+    public Program edit(int offset, int removedLength, String insertedText) throws Exception {
+        Objects.checkFromIndexSize(offset, removedLength, source.length());
+        String previous = source;
+        source = previous.substring(0, offset) + insertedText + previous.substring(offset + removedLength);
+
+        if (program == null || !reparseDeclaration(previous, offset, removedLength, insertedText)) {
+            parseAll();
+        }
+        return program;
+    }
+
+    private void parseAll() throws Exception {
+        program = null;
+        fullParses++;
+        TokenBuffer allTokens = new Lexer(new StringReader(source)).tokenize();
+        Parser parser = new Parser(allTokens);
+        parser.declarationStarts = new ArrayList<>();
+        Program parsed = parser.parseProgram();
+
+        tokens = allTokens;
+        starts = parser.declarationStarts.stream().mapToInt(Integer::intValue).toArray();
+        offsets = new int[starts.length];
+        locate(0, starts.length, 0, 1);
+        declarationCounts = new int[]{parsed.getConstants().size(), parsed.getRecords().size(), parsed.getGlobals().size(), parsed.getFunctions().size()};
+        program = parsed;
+    }
+
+    /// Relex and reparse the declaration that contains the edit, returns false when the whole source has to be parsed again
+    private boolean reparseDeclaration(String previous, int offset, int removedLength, String insertedText) {
+        int declaration = declarationAt(offset);
+        if (declaration < 0) {
+            // the edit is before the first declaration
+            return false;
+        }
+        boolean last = declaration == starts.length - 1;
+        int end = last ? previous.length() : offsets[declaration + 1];
+        if (offset + removedLength > end) {
+            // the edit spans several declarations
+            return false;
+        }
+
+        int start = offsets[declaration];
+        int newEnd = end + insertedText.length() - removedLength;
+        int lineDelta = newlines(insertedText, 0, insertedText.length()) - newlines(previous, offset, offset + removedLength);
+        int firstToken = starts[declaration];
+        int startLine = tokens.line(firstToken);
+        int startColumn = tokens.column(firstToken);
+        int nextToken = last ? tokens.size() - 1 : starts[declaration + 1];
+        if (!last && newEnd - source.lastIndexOf('\n', newEnd - 1) != tokens.column(nextToken)) {
+            // the next declaration moved on its line, and so did the tokens after it on that line
+            return false;
+        }
+
+        // the declaration starts outside of any token, at the same position as before the edit
+        Lexer lexer = new Lexer(new StringReader(source.substring(start, newEnd)), startLine, startColumn);
+        TokenBuffer region = lexer.tokenize();
+        if (region.getError() != null || !balanced(region)) {
+            // an unclosed bracket takes the declarations after it in a full parse
+            return false;
+        }
+        int regionEnd = region.size() - 1;
+        if (!last) {
+            // the parser reads the position of the token after a declaration, e.g., for the block of a function
+            region.setPosition(regionEnd, tokens.line(nextToken) + lineDelta, tokens.column(nextToken));
+        }
+
+        int category = CONSTANTS;
+        int categoryEnd = declarationCounts[CONSTANTS];
+        while (categoryEnd <= declaration) {
+            category++;
+            categoryEnd += declarationCounts[category];
+        }
+
+        TokenBuffer edited = last
+                ? tokens.replace(firstToken, tokens.size(), region, region.size(), 0)
+                : tokens.replace(firstToken, nextToken, region, regionEnd, lineDelta);
+        int added;
+        Program editedProgram;
+        try {
+            Parser parser = new Parser(region);
+            parser.declarationStarts = new ArrayList<>();
+            // the declaration can become several declarations of the same kind, or none
+            switch (category) {
+                case CONSTANTS -> parser.parseConstants();
+                case RECORDS -> parser.parseRecords();
+                case GLOBALS -> parser.parseGlobalDeclarations();
+                case FUNCTIONS -> parser.parseFunctions();
+            }
+            if (!parser.atEnd()) {
+                // the declaration became another kind of declaration
+                return false;
+            }
+            added = parser.declarationStarts.size();
+            // the other declarations parsed before, only their function bodies are skipped
+            editedProgram = new Parser(edited, true).parseProgram();
+
+            int[] editedStarts = new int[starts.length - 1 + added];
+            int[] editedOffsets = new int[editedStarts.length];
+            System.arraycopy(starts, 0, editedStarts, 0, declaration);
+            System.arraycopy(offsets, 0, editedOffsets, 0, declaration);
+            for (int i = 0; i < added; i++) {
+                editedStarts[declaration + i] = firstToken + parser.declarationStarts.get(i);
+            }
+            int tokenDelta = edited.size() - tokens.size();
+            int offsetDelta = newEnd - end;
+            for (int i = declaration + 1; i < starts.length; i++) {
+                editedStarts[i - 1 + added] = starts[i] + tokenDelta;
+                editedOffsets[i - 1 + added] = offsets[i] + offsetDelta;
+            }
+            starts = editedStarts;
+            offsets = editedOffsets;
+        } catch (Exception e) {
+            // the error is thrown by the full parse, with its position in the whole source
+            return false;
+        }
+
+        tokens = edited;
+        locate(declaration, declaration + added, start - startColumn + 1, startLine);
+        declarationCounts[category] += added - 1;
+        program = editedProgram;
+        return true;
+    }
+
+    /// Index of the declaration whose text contains the offset, or -1 if the offset is before the first declaration
+    private int declarationAt(int offset) {
+        int index = Arrays.binarySearch(offsets, offset);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    /// Set the offsets of the declarations [from, to) from the positions of their first tokens,
+    /// lineStart is the offset of the start of the line, the first declaration is on that line or after it
+    private void locate(int from, int to, int lineStart, int line) {
+        for (int i = from; i < to; i++) {
+            int declarationLine = tokens.line(starts[i]);
+            while (line < declarationLine) {
+                lineStart = source.indexOf('\n', lineStart) + 1;
+                line++;
+            }
+            offsets[i] = lineStart + tokens.column(starts[i]) - 1;
+        }
+    }
+
+    /// Whether every bracket of the tokens is closed, and closes an opened bracket
+    private static boolean balanced(TokenBuffer region) {
+        int depth = 0;
+        for (int i = 0; i < region.size() && depth >= 0; i++) {
+            switch (region.type(i)) {
+                case LEFT_BRACKET -> depth++;
+                case RIGHT_BRACKET -> depth--;
+                default -> {
+                }
+            }
+        }
+        return depth == 0;
+    }
+
+    private static int newlines(String text, int start, int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+}
@@ -1,7 +1,10 @@
 package compiler.Parser;
 
+import compiler.Diagnostics.Diagnostic.Code;
+import compiler.Diagnostics.Diagnostics;
 import compiler.Lexer.Lexer;
 import compiler.Lexer.Symbol;
+import compiler.Lexer.TokenBuffer;
 import compiler.Lexer.TokenTypes;
 import compiler.Parser.ASTNodes.ASTNode;
 import compiler.Parser.ASTNodes.Block;
@@ -20,52 +23,197 @@ import compiler.Parser.ASTNodes.Types.Type;
 import java.util.ArrayList;
 
 public class Parser {
+    // number of tokens lexed at a time when the parser reads from a lexer
+    private static final int LEXER_WINDOW = 4096;
 
     Lexer lexer;
-    Symbol lookAheadSymbol;
-
+    // the tokens are read through a cursor, the lookahead is the token at the cursor
+    TokenBuffer tokens;
+    int cursor;
+    // index of the first token of each top-level declaration, only recorded when it isn't null and the tokens were already lexed
+    ArrayList<Integer> declarationStarts;
+    // skip the bodies of the functions, they are parsed from their tokens when they are needed
+    private final boolean lazyBodies;
+    // the syntax errors are reported to it instead of thrown, null to throw the first one
+    private Diagnostics diagnostics;
+    // number of "{" left open before the cursor, the parser goes back to the depth of a statement after a syntax error in it
+    private int bracketDepth = 0;
+    private int lastErrorLine = -1;
+    private int lastErrorColumn = -1;
+
+    /// Parse the tokens of the lexer as they are lexed, only a window of tokens is kept in memory
     public Parser(Lexer lexer) throws Exception {
         this.lexer = lexer;
-        lookAheadSymbol = lexer.getNextSymbol();
+        this.lazyBodies = false;
+        this.tokens = new TokenBuffer(LEXER_WINDOW);
+        this.cursor = 0;
+        fillTokens();
     }
 
-    /// Returns the root of the AST
-    public ASTNode getAST() {
-        try {
-            return parseProgram();
-        } catch (SyntaxErrorException e) {
-//            System.err.println("Syntax Error: " + e.getMessage());
-            e.printStackTrace();
-            System.exit(1);
-        }
-        catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
+    /// Parse tokens that were already lexed
+    public Parser(TokenBuffer tokens) throws Exception {
+        this(tokens, false);
+    }
+
+    /// Parse tokens that were already lexed, with lazyBodies the bodies of the functions are only matched by their brackets,
+    /// and each one is parsed the first time FunctionDefinition.getBody is called, e.g., for the tools that only need the signatures.
+    /// A syntax error in a body is then thrown by getBody
+    public Parser(TokenBuffer tokens, boolean lazyBodies) throws Exception {
+        this.tokens = tokens;
+        this.lazyBodies = lazyBodies;
+        this.cursor = 0;
+        if (tokens.size() == 0) {
+            throw tokens.getError();
         }
-        return null;
+    }
+
+    /// Returns the root of the AST, a SyntaxErrorException is thrown at the first syntax error unless the errors go to diagnostics
+    public ASTNode getAST() throws Exception {
+        return parseProgram();
+    }
+
+    /// Report the syntax errors to the diagnostics instead of throwing the first one. After an error, the parser skips
+    /// the rest of the statement or declaration and goes on with the next one, which is left out of the tree.
+    /// The lexical errors are still thrown, the tokens after them are unknown
+    public void setDiagnostics(Diagnostics diagnostics) {
+        this.diagnostics = diagnostics;
     }
 
     public Symbol match(TokenTypes token) throws Exception {
-        if (lookAheadSymbol.type == token) {
-            Symbol matchedSymbol = lookAheadSymbol;
-            lookAheadSymbol = lexer.getNextSymbol();
-            return matchedSymbol;
-        } else {
+        checkLookAhead(token);
+        Symbol matchedSymbol = tokens.symbol(cursor);
+        advance();
+        return matchedSymbol;
+    }
+
+    /// Same as match, for the tokens that aren't kept in the AST, no symbol is created
+    public void consume(TokenTypes token) throws Exception {
+        checkLookAhead(token);
+        advance();
+    }
+
+    private void checkLookAhead(TokenTypes token) throws SyntaxErrorException {
+        if (lookAheadType() != token) {
             throw new SyntaxErrorException(
                 "Syntax Error: Expected " +
                 token +
                 " but found " +
-                lookAheadSymbol.lexeme +
+                lookAheadLexeme() +
                 " of type " +
-                lookAheadSymbol.type +
+                lookAheadType() +
                 " at line " +
-                lookAheadSymbol.line +
+                lookAheadLine() +
                 ", column " +
-                lookAheadSymbol.column
+                lookAheadColumn(),
+                lookAheadLine(),
+                lookAheadColumn()
             );
         }
     }
 
+    private void advance() throws Exception {
+        switch (tokens.type(cursor)) {
+            // the lexer keeps returning EOF at the end of the input
+            case EOF -> {
+                return;
+            }
+            case LEFT_BRACKET -> bracketDepth++;
+            case RIGHT_BRACKET -> bracketDepth--;
+            default -> {
+            }
+        }
+        cursor++;
+        if (cursor == tokens.size()) {
+            if (tokens.getError() != null || lexer == null) {
+                // the next token is a lexical error
+                throw tokens.getError();
+            }
+            fillTokens();
+        }
+    }
+
+    /// Replace the window of tokens with the next ones from the lexer, the parser never goes back to the previous tokens
+    private void fillTokens() throws Exception {
+        tokens.clear();
+        cursor = 0;
+        lexer.tokenize(tokens, LEXER_WINDOW);
+        if (tokens.size() == 0) {
+            // a lexical error on the next token
+            throw tokens.getError();
+        }
+    }
+
+    /// Report a syntax error and skip to the end of the statement or declaration that has it, which started at the given bracket depth.
+    /// Without diagnostics the error is thrown
+    private void recover(SyntaxErrorException error, int depth) throws Exception {
+        if (diagnostics == null) {
+            throw error;
+        }
+        // an error found again at the same token, e.g., the "}" missing at the end of the input, is reported once
+        if (error.line != lastErrorLine || error.column != lastErrorColumn) {
+            diagnostics.error(error, Code.SYNTAX_ERROR, error.line, error.column);
+            lastErrorLine = error.line;
+            lastErrorColumn = error.column;
+        }
+
+        // stop after the ";" that ends the statement or the "}" that closes the blocks opened in it, or before the "}" that
+        // closes the enclosing block, a stray "}" outside of the blocks is skipped
+        while (lookAheadType() != TokenTypes.EOF) {
+            if (bracketDepth <= depth) {
+                switch (lookAheadType()) {
+                    case SEMICOLON -> {
+                        advance();
+                        return;
+                    }
+                    case RIGHT_BRACKET -> {
+                        if (depth > 0) {
+                            return;
+                        }
+                        advance();
+                        bracketDepth = 0;
+                        return;
+                    }
+                    case FUN -> {
+                        return;
+                    }
+                    default -> {
+                    }
+                }
+            } else if (bracketDepth == depth + 1 && lookAheadType() == TokenTypes.RIGHT_BRACKET) {
+                advance();
+                return;
+            }
+            advance();
+        }
+    }
+
+    private void markDeclaration() {
+        if (declarationStarts != null) {
+            declarationStarts.add(cursor);
+        }
+    }
+
+    /// Whether all the tokens were parsed
+    boolean atEnd() {
+        return tokens.type(cursor) == TokenTypes.EOF;
+    }
+
+    private TokenTypes lookAheadType() {
+        return tokens.type(cursor);
+    }
+
+    private String lookAheadLexeme() {
+        return tokens.lexeme(cursor);
+    }
+
+    private int lookAheadLine() {
+        return tokens.line(cursor);
+    }
+
+    private int lookAheadColumn() {
+        return tokens.column(cursor);
+    }
+
     public Program parseProgram() throws Exception {
         // parse the constants
         ArrayList<VariableDeclaration> constants = parseConstants();
@@ -77,7 +225,7 @@ public class Parser {
         // parse the function declarations
         ArrayList<FunctionDefinition> functions = parseFunctions();
 
-        return new Program(constants, records, globalVariables, functions, lookAheadSymbol.line, lookAheadSymbol.column);
+        return new Program(constants, records, globalVariables, functions, lookAheadLine(), lookAheadColumn());
     }
 
     public ArrayList<VariableDeclaration> parseConstants() throws Exception {
@@ -85,37 +233,47 @@ public class Parser {
 
         checkExpectedSymbolsConstantDef();
 
-        while (lookAheadSymbol.type == TokenTypes.FINAL) {
-            match(TokenTypes.FINAL);
-            VariableDeclaration constant = parseVariableDeclaration(
-                true,
-                false,
-                null,
-                false // technically constants are global but here globals are not constant
-            );
-            constants.add(constant);
+        while (lookAheadType() == TokenTypes.FINAL) {
+            markDeclaration();
+            try {
+                consume(TokenTypes.FINAL);
+                VariableDeclaration constant = parseVariableDeclaration(
+                    true,
+                    false,
+                    null,
+                    false // technically constants are global but here globals are not constant
+                );
+                constants.add(constant);
+            } catch (SyntaxErrorException e) {
+                recover(e, 0);
+            }
 
             checkExpectedSymbolsConstantDef();
         }
         return constants;
     }
 
-    private void checkExpectedSymbolsConstantDef() throws SyntaxErrorException {
-        switch (lookAheadSymbol.type) {
-            case FINAL, RECORD, IDENTIFIER, FUN, EOF -> {
-                // do nothing
-            }
-            default -> {
-                throw new SyntaxErrorException(
-                        "Syntax Error: Expected FINAL, RECORD, IDENTIFIER, FUN, or EOF but found " +
-                                lookAheadSymbol.lexeme +
-                                " of type " +
-                                lookAheadSymbol.type +
-                                " at line " +
-                                lookAheadSymbol.line +
-                                ", column " +
-                                lookAheadSymbol.column
-                );
+    private void checkExpectedSymbolsConstantDef() throws Exception {
+        // with diagnostics, the unexpected tokens are skipped until one is expected
+        while (true) {
+            switch (lookAheadType()) {
+                case FINAL, RECORD, IDENTIFIER, FUN, EOF -> {
+                    return;
+                }
+                default -> {
+                    recover(new SyntaxErrorException(
+                            "Syntax Error: Expected FINAL, RECORD, IDENTIFIER, FUN, or EOF but found " +
+                                    lookAheadLexeme() +
+                                    " of type " +
+                                    lookAheadType() +
+                                    " at line " +
+                                    lookAheadLine() +
+                                    ", column " +
+                                    lookAheadColumn(),
+                                    lookAheadLine(),
+                                    lookAheadColumn()
+                    ), 0);
+                }
             }
         }
     }
@@ -126,37 +284,47 @@ public class Parser {
 
         checkExpectedSymbolsGlobalVar();
 
-        while (lookAheadSymbol.type == TokenTypes.IDENTIFIER)  {
-            // VariableDeclaration -> "identifier" Type "=" Expression ";"
-            VariableDeclaration variable = parseVariableDeclaration(
-                false,
-                false,
-                null,
-                true
-            );
-            globalVariables.add(variable);
+        while (lookAheadType() == TokenTypes.IDENTIFIER)  {
+            markDeclaration();
+            try {
+                // VariableDeclaration -> "identifier" Type "=" Expression ";"
+                VariableDeclaration variable = parseVariableDeclaration(
+                    false,
+                    false,
+                    null,
+                    true
+                );
+                globalVariables.add(variable);
+            } catch (SyntaxErrorException e) {
+                recover(e, 0);
+            }
 
             checkExpectedSymbolsGlobalVar();
         }
         return globalVariables;
     }
 
-    private void checkExpectedSymbolsGlobalVar() throws SyntaxErrorException {
-        switch (lookAheadSymbol.type) {
-            case IDENTIFIER, FUN, EOF -> {
-                // do nothing
-            }
-            default -> {
-                throw new SyntaxErrorException(
-                        "Syntax Error: Expected IDENTIFIER, FUN, or EOF but found " +
-                        lookAheadSymbol.lexeme +
-                        " of type " +
-                        lookAheadSymbol.type +
-                        " at line " +
-                        lookAheadSymbol.line +
-                        ", column " +
-                        lookAheadSymbol.column
-                );
+    private void checkExpectedSymbolsGlobalVar() throws Exception {
+        // with diagnostics, the unexpected tokens are skipped until one is expected
+        while (true) {
+            switch (lookAheadType()) {
+                case IDENTIFIER, FUN, EOF -> {
+                    return;
+                }
+                default -> {
+                    recover(new SyntaxErrorException(
+                            "Syntax Error: Expected IDENTIFIER, FUN, or EOF but found " +
+                            lookAheadLexeme() +
+                            " of type " +
+                            lookAheadType() +
+                            " at line " +
+                            lookAheadLine() +
+                            ", column " +
+                            lookAheadColumn(),
+                            lookAheadLine(),
+                            lookAheadColumn()
+                    ), 0);
+                }
             }
         }
     }
@@ -178,11 +346,11 @@ public class Parser {
         Type type = parseType();
         // there might not be an assignment
 
-        if (lookAheadSymbol.type == TokenTypes.ASSIGN) {
-            match(TokenTypes.ASSIGN);
+        if (lookAheadType() == TokenTypes.ASSIGN) {
+            consume(TokenTypes.ASSIGN);
 
             Expression expression = parseExpression();
-            match(TokenTypes.SEMICOLON);
+            consume(TokenTypes.SEMICOLON);
             return new VariableDeclaration(
                 identifier,
                 type,
@@ -192,8 +360,8 @@ public class Parser {
                 identifier.line,
                 identifier.column
             );
-        } else if (lookAheadSymbol.type == TokenTypes.SEMICOLON) {
-            match(TokenTypes.SEMICOLON);
+        } else if (lookAheadType() == TokenTypes.SEMICOLON) {
+            consume(TokenTypes.SEMICOLON);
             return new VariableDeclaration(
                     identifier,
                     type,
@@ -206,20 +374,22 @@ public class Parser {
         } else {
             throw new SyntaxErrorException(
                 "Syntax Error: Expected '=' or ';' after variable declaration but found " +
-                lookAheadSymbol.lexeme +
+                lookAheadLexeme() +
                 " of type " +
-                lookAheadSymbol.type +
+                lookAheadType() +
                 " at line " +
-                lookAheadSymbol.line +
+                lookAheadLine() +
                 ", column " +
-                lookAheadSymbol.column
+                lookAheadColumn(),
+                lookAheadLine(),
+                lookAheadColumn()
             );
         }
     }
 
     public Type parseType() throws Exception {
         Symbol symbol =
-            switch (lookAheadSymbol.type) {
+            switch (lookAheadType()) {
                 case INT -> match(TokenTypes.INT);
                 case FLOAT -> match(TokenTypes.FLOAT);
                 case STRING -> match(TokenTypes.STRING);
@@ -232,17 +402,19 @@ public class Parser {
         if (symbol == null) {
             throw new SyntaxErrorException(
                 "Syntax Error: Expected a type but found " +
-                lookAheadSymbol.lexeme +
+                lookAheadLexeme() +
                 " of type " +
-                lookAheadSymbol.type +
+                lookAheadType() +
                 " at line " +
-                lookAheadSymbol.line +
+                lookAheadLine() +
                 ", column " +
-                lookAheadSymbol.column
+                lookAheadColumn(),
+                lookAheadLine(),
+                lookAheadColumn()
             );
         }
 
-        Type type = new Type(symbol, false, lookAheadSymbol.line, lookAheadSymbol.column);
+        Type type = new Type(symbol, false, lookAheadLine(), lookAheadColumn());
 
 		if (symbol.type == TokenTypes.INT || symbol.type == TokenTypes.FLOAT) {
             boolean isFloat = symbol.type == TokenTypes.FLOAT;
@@ -250,9 +422,9 @@ public class Parser {
         }
 
         // Check if the type is an array
-        if (lookAheadSymbol.type == TokenTypes.LEFT_SQUARE_BRACKET) {
-            match(TokenTypes.LEFT_SQUARE_BRACKET);
-            match(TokenTypes.RIGHT_SQUARE_BRACKET);
+        if (lookAheadType() == TokenTypes.LEFT_SQUARE_BRACKET) {
+            consume(TokenTypes.LEFT_SQUARE_BRACKET);
+            consume(TokenTypes.RIGHT_SQUARE_BRACKET);
             type.isList = true;
         }
 
@@ -275,58 +447,58 @@ public class Parser {
         //BinaryOperator -> "+" | "-" | "*" | "/" | "%" | "&&" | "||" | "==" | "!=" | "<" | ">" | "<=" | ">=" .
         //ConstVal -> "intval" | "floatval" | "stringval" | "true" | "false" .
 
-        boolean isUnaryOperator = false;
-        UnaryOperator operator = null;
-        if (
-            lookAheadSymbol.type == TokenTypes.NOT ||
-            lookAheadSymbol.type == TokenTypes.MINUS
-        ) {
-            // UnaryOperator -> "!" | "-"
-            Symbol unaryOperator = match(lookAheadSymbol.type);
-            operator = new UnaryOperator(unaryOperator, lookAheadSymbol.line, lookAheadSymbol.column);
-            isUnaryOperator = true;
-        }
-
-        // check for array expression
-        if (lookAheadSymbol.type == TokenTypes.ARRAY) {
-            // ArrayExpression -> "array" "[" "intval" "]" "of" Type ";" .
-            match(TokenTypes.ARRAY);
-            match(TokenTypes.LEFT_SQUARE_BRACKET);
-            // size expression
-            Expression sizeExpression = parseExpression();
-            match(TokenTypes.RIGHT_SQUARE_BRACKET);
-            match(TokenTypes.OF);
-            Type type = parseType();
-            return new ArrayExpression(sizeExpression, type, sizeExpression.line, sizeExpression.column);
-        }
-
-        Term term1 = parseTerm();
-        // if (((val) == (41)) && ((copyPoint(points)) == (p3))))
-        Term term = new ParenthesesTerm(term1, term1.line, term1.column);
-
-        if (isUnaryOperator) {
-            // If there was a unary operator, return a UnaryExpression
-            return new UnaryExpression(operator, term, term.line, term.column);
-        }
-
-        // Check for binary operators
-        if (
-            lookAheadSymbol.type == TokenTypes.AND ||
-            lookAheadSymbol.type == TokenTypes.OR ||
-            lookAheadSymbol.type == TokenTypes.PLUS ||
-            lookAheadSymbol.type == TokenTypes.MINUS ||
-            lookAheadSymbol.type == TokenTypes.MULTIPLY ||
-            lookAheadSymbol.type == TokenTypes.DIVIDE ||
-            lookAheadSymbol.type == TokenTypes.MODULO ||
-            lookAheadSymbol.type == TokenTypes.EQUAL_EQUAL ||
-            lookAheadSymbol.type == TokenTypes.NOT_EQUAL ||
-            lookAheadSymbol.type == TokenTypes.LESS_THAN ||
-            lookAheadSymbol.type == TokenTypes.GREATER_THAN ||
-            lookAheadSymbol.type == TokenTypes.LESS_THAN_EQUAL ||
-            lookAheadSymbol.type == TokenTypes.GREATER_THAN_EQUAL
-        ) {
+        // An operator chain is grouped two terms at a time, from the right: "a + b * c - d" is ((a + b) * (c - d)).
+        // Each iteration parses one group and its operator, the groups are linked once the end of the chain is reached,
+        // so that a long chain doesn't recurse once per group
+        ArrayList<Term> groups = null;
+        ArrayList<BinaryOperator> groupOperators = null;
+        Expression expression;
+        while (true) {
+            boolean isUnaryOperator = false;
+            UnaryOperator operator = null;
+            if (
+                lookAheadType() == TokenTypes.NOT ||
+                lookAheadType() == TokenTypes.MINUS
+            ) {
+                // UnaryOperator -> "!" | "-"
+                Symbol unaryOperator = match(lookAheadType());
+                operator = new UnaryOperator(unaryOperator, lookAheadLine(), lookAheadColumn());
+                isUnaryOperator = true;
+            }
+
+            // check for array expression
+            if (lookAheadType() == TokenTypes.ARRAY) {
+                // ArrayExpression -> "array" "[" "intval" "]" "of" Type ";" .
+                consume(TokenTypes.ARRAY);
+                consume(TokenTypes.LEFT_SQUARE_BRACKET);
+                // size expression
+                Expression sizeExpression = parseExpression();
+                consume(TokenTypes.RIGHT_SQUARE_BRACKET);
+                consume(TokenTypes.OF);
+                Type type = parseType();
+                expression = new ArrayExpression(sizeExpression, type, sizeExpression.line, sizeExpression.column);
+                break;
+            }
+
+            Term term1 = parseTerm();
+            // if (((val) == (41)) && ((copyPoint(points)) == (p3))))
+            Term term = new ParenthesesTerm(term1, term1.line, term1.column);
+
+            if (isUnaryOperator) {
+                // If there was a unary operator, return a UnaryExpression
+                expression = new UnaryExpression(operator, term, term.line, term.column);
+                break;
+            }
+
+            // Check for binary operators
+            if (!isBinaryOperator(lookAheadType())) {
+                // If no binary operator, return the term
+                expression = term;
+                break;
+            }
+
             // BinaryOperator -> "+" | "-" | "*" | "/" | "%" | "&&" | "||" | "==" | "!=" | "<" | ">" | "<=" | ">="
-            Symbol binaryOperator = match(lookAheadSymbol.type);
+            Symbol binaryOperator = match(lookAheadType());
 
             BinaryOperator binaryOp = new BinaryOperator(binaryOperator, term.line, term.column);
             Term rightTerm = new ParenthesesTerm(parseTerm(), binaryOp.line, binaryOp.column);
@@ -334,84 +506,80 @@ public class Parser {
             // construct a binary expression from what we already parsed
             BinaryExpression binaryExpression = new BinaryExpression(term, binaryOp, rightTerm, term.line, term.column);
 
-			// if we see an AND token or an OR token, this means that we might have a bool expression with no parentheses around them
-			// e.g. "if  (i+4 > 10 && found == false)", previously, this would have required parentheses around i+4 and also around the resulting term > 10
-			// e.g. "if ( ((i+4) > 10) && (found == false) )"
-			if (
-//					lookAheadSymbol.type == TokenTypes.AND ||
-//					lookAheadSymbol.type == TokenTypes.OR ||
-//					lookAheadSymbol.type == TokenTypes.GREATER_THAN ||
-//					lookAheadSymbol.type == TokenTypes.GREATER_THAN_EQUAL ||
-//					lookAheadSymbol.type == TokenTypes.LESS_THAN ||
-//					lookAheadSymbol.type == TokenTypes.LESS_THAN_EQUAL ||
-//					lookAheadSymbol.type == TokenTypes.EQUAL_EQUAL ||
-//					lookAheadSymbol.type == TokenTypes.NOT_EQUAL
-                    lookAheadSymbol.type == TokenTypes.AND ||
-                    lookAheadSymbol.type == TokenTypes.OR ||
-                    lookAheadSymbol.type == TokenTypes.PLUS ||
-                    lookAheadSymbol.type == TokenTypes.MINUS ||
-                    lookAheadSymbol.type == TokenTypes.MULTIPLY ||
-                    lookAheadSymbol.type == TokenTypes.DIVIDE ||
-                    lookAheadSymbol.type == TokenTypes.MODULO ||
-                    lookAheadSymbol.type == TokenTypes.EQUAL_EQUAL ||
-                    lookAheadSymbol.type == TokenTypes.NOT_EQUAL ||
-                    lookAheadSymbol.type == TokenTypes.LESS_THAN ||
-                    lookAheadSymbol.type == TokenTypes.GREATER_THAN ||
-                    lookAheadSymbol.type == TokenTypes.LESS_THAN_EQUAL ||
-                    lookAheadSymbol.type == TokenTypes.GREATER_THAN_EQUAL
-			) {
-                Term binOpTerm = new ParenthesesTerm(binaryExpression, term.line, term.column);
-                Symbol otherOp = match(lookAheadSymbol.type);
-                BinaryOperator otherBinOp = new BinaryOperator(otherOp, term.line, term.column);
-                Term rightRightTerm = new ParenthesesTerm(parseExpression(), term.line, term.column);
-                return new BinaryExpression(binOpTerm, otherBinOp, rightRightTerm, term.line, term.column);
+            // if we see an AND token or an OR token, this means that we might have a bool expression with no parentheses around them
+            // e.g. "if  (i+4 > 10 && found == false)", previously, this would have required parentheses around i+4 and also around the resulting term > 10
+            // e.g. "if ( ((i+4) > 10) && (found == false) )"
+            if (!isBinaryOperator(lookAheadType())) {
+                expression = binaryExpression;
+                break;
+            }
+
+            // the rest of the chain is the right operand of this group, it is parsed by the next iteration
+            if (groups == null) {
+                groups = new ArrayList<>();
+                groupOperators = new ArrayList<>();
             }
+            groups.add(new ParenthesesTerm(binaryExpression, term.line, term.column));
+            Symbol otherOp = match(lookAheadType());
+            groupOperators.add(new BinaryOperator(otherOp, term.line, term.column));
+        }
 
-            return binaryExpression;
+        if (groups != null) {
+            for (int i = groups.size() - 1; i >= 0; i--) {
+                Term group = groups.get(i);
+                Term rightRightTerm = new ParenthesesTerm(expression, group.line, group.column);
+                expression = new BinaryExpression(group, groupOperators.get(i), rightRightTerm, group.line, group.column);
+            }
         }
+        return expression;
+    }
 
-        // If no binary operator, return the term
-        return term;
+    private static boolean isBinaryOperator(TokenTypes type) {
+        return switch (type) {
+            case AND, OR, PLUS, MINUS, MULTIPLY, DIVIDE, MODULO, EQUAL_EQUAL, NOT_EQUAL,
+                 LESS_THAN, GREATER_THAN, LESS_THAN_EQUAL, GREATER_THAN_EQUAL -> true;
+            default -> false;
+        };
     }
 
     public Term parseTerm() throws Exception {
-        if (lookAheadSymbol.type == TokenTypes.LEFT_PAR) {
+        if (lookAheadType() == TokenTypes.LEFT_PAR) {
             // Term -> "(" Expression ")"
-            match(TokenTypes.LEFT_PAR);
+            consume(TokenTypes.LEFT_PAR);
             Expression expression = parseExpression();
-            match(TokenTypes.RIGHT_PAR);
+            consume(TokenTypes.RIGHT_PAR);
             return new ParenthesesTerm(expression, expression.line, expression.column);
-        } else if (lookAheadSymbol.type == TokenTypes.IDENTIFIER) {
+        } else if (lookAheadType() == TokenTypes.IDENTIFIER) {
             // IdentifierOrFunctionCall -> "identifier" IdentifierOrFunctionCallTail
-            Symbol identifier = match(lookAheadSymbol.type);
+            Symbol identifier = match(lookAheadType());
 
             // this can be a function call, or an access (identifier, record, array)
-            if (lookAheadSymbol.type == TokenTypes.LEFT_PAR) {
+            if (lookAheadType() == TokenTypes.LEFT_PAR) {
                 // IdentifierOrFunctionCallTail -> "(" ParamsCall ")"
                 return parseParamCall(identifier);
             } else {
                 // IdentifierOrFunctionCallTail -> ε
                 return parseAccess(true, identifier);
             }
-        } else if (lookAheadSymbol.type == TokenTypes.RECORD) {
+        } else if (lookAheadType() == TokenTypes.RECORD) {
             // Term -> NewRecord
             // RECORD is recordIdentifier in the grammar
             Symbol identifier = match(TokenTypes.RECORD);
-            match(TokenTypes.LEFT_PAR);
+            consume(TokenTypes.LEFT_PAR);
             ArrayList<ParamCall> params = parseParamsCall();
-            match(TokenTypes.RIGHT_PAR);
+            consume(TokenTypes.RIGHT_PAR);
             return new NewRecord(identifier, params, identifier.line, identifier.column);
         } else if (
-            lookAheadSymbol.type == TokenTypes.INT_LITERAL ||
-            lookAheadSymbol.type == TokenTypes.FLOAT_LITERAL ||
-            lookAheadSymbol.type == TokenTypes.STRING_LITERAL ||
-            lookAheadSymbol.type == TokenTypes.BOOL_TRUE ||
-            lookAheadSymbol.type == TokenTypes.BOOL_FALSE
+            lookAheadType() == TokenTypes.INT_LITERAL ||
+            lookAheadType() == TokenTypes.FLOAT_LITERAL ||
+            lookAheadType() == TokenTypes.STRING_LITERAL ||
+            lookAheadType() == TokenTypes.BOOL_TRUE ||
+            lookAheadType() == TokenTypes.BOOL_FALSE
         ) {
             // Term -> ConstVal
             // ConstVal -> "intval" | "floatval" | "boolval" | "stringval" | "true" | "false"
             Symbol constVal =
-                switch (lookAheadSymbol.type) {
+                switch (lookAheadType()) {
                     case INT_LITERAL -> match(TokenTypes.INT_LITERAL);
                     case FLOAT_LITERAL -> match(TokenTypes.FLOAT_LITERAL);
                     case STRING_LITERAL -> match(TokenTypes.STRING_LITERAL);
@@ -426,13 +594,15 @@ public class Parser {
         // If none of the above, throw an error
         throw new SyntaxErrorException(
             "Syntax Error: Expected Term but found " +
-            lookAheadSymbol.lexeme +
+            lookAheadLexeme() +
             " of type " +
-            lookAheadSymbol.type +
+            lookAheadType() +
             " at line " +
-            lookAheadSymbol.line +
+            lookAheadLine() +
             ", column " +
-            lookAheadSymbol.column
+            lookAheadColumn(),
+            lookAheadLine(),
+            lookAheadColumn()
         );
     }
 
@@ -440,13 +610,13 @@ public class Parser {
         ArrayList<ParamCall> params = new ArrayList<>();
         int paramIndex = 0;
 
-        if (lookAheadSymbol.type != TokenTypes.RIGHT_PAR) {
+        if (lookAheadType() != TokenTypes.RIGHT_PAR) {
             // ParamsCall -> Expression "," ParamsCall | Expression
             params.add(parseParam(paramIndex));
             paramIndex++;
 
-            while (lookAheadSymbol.type == TokenTypes.COMMA) {
-                match(TokenTypes.COMMA);
+            while (lookAheadType() == TokenTypes.COMMA) {
+                consume(TokenTypes.COMMA);
                 params.add(parseParam(paramIndex));
                 paramIndex++;
             }
@@ -472,10 +642,15 @@ public class Parser {
 
         ArrayList<RecordDefinition> records = new ArrayList<>();
 
-        while (lookAheadSymbol.type == TokenTypes.RECORD) {
-            // RecordDefinition -> "recordNameIdentifier" "rec" "{" RecordFields "}" .
-            RecordDefinition record = parseRecord();
-            records.add(record);
+        while (lookAheadType() == TokenTypes.RECORD) {
+            markDeclaration();
+            try {
+                // RecordDefinition -> "recordNameIdentifier" "rec" "{" RecordFields "}" .
+                RecordDefinition record = parseRecord();
+                records.add(record);
+            } catch (SyntaxErrorException e) {
+                recover(e, 0);
+            }
 
             checkExpectedTypesRecordDef();
         }
@@ -483,22 +658,27 @@ public class Parser {
         return records;
     }
 
-    private void checkExpectedTypesRecordDef() throws SyntaxErrorException {
-        switch (lookAheadSymbol.type) {
-            case RECORD, IDENTIFIER, FUN, EOF -> {
-                // do nothing
-            }
-            default -> {
-                throw new SyntaxErrorException(
-                        "Syntax Error: Expected RECORD, IDENTIFIER, FUN, or EOF but found " +
-                                lookAheadSymbol.lexeme +
-                                " of type " +
-                                lookAheadSymbol.type +
-                                " at line " +
-                                lookAheadSymbol.line +
-                                ", column " +
-                                lookAheadSymbol.column
-                );
+    private void checkExpectedTypesRecordDef() throws Exception {
+        // with diagnostics, the unexpected tokens are skipped until one is expected
+        while (true) {
+            switch (lookAheadType()) {
+                case RECORD, IDENTIFIER, FUN, EOF -> {
+                    return;
+                }
+                default -> {
+                    recover(new SyntaxErrorException(
+                            "Syntax Error: Expected RECORD, IDENTIFIER, FUN, or EOF but found " +
+                                    lookAheadLexeme() +
+                                    " of type " +
+                                    lookAheadType() +
+                                    " at line " +
+                                    lookAheadLine() +
+                                    ", column " +
+                                    lookAheadColumn(),
+                                    lookAheadLine(),
+                                    lookAheadColumn()
+                    ), 0);
+                }
             }
         }
     }
@@ -507,21 +687,21 @@ public class Parser {
         // RecordDefinition -> "recordNameIdentifier" "rec" "{" RecordFields "}" .
         // RECORD is the record identifier (starts with a capital letter)
         Symbol recordIdentifier = match(TokenTypes.RECORD); // match the record identifier
-        match(TokenTypes.REC); // REC is the keyword "rec"
-        match(TokenTypes.LEFT_BRACKET); // "{"
+        consume(TokenTypes.REC); // REC is the keyword "rec"
+        consume(TokenTypes.LEFT_BRACKET); // "{"
         ArrayList<RecordFieldDefinition> fields = new ArrayList<>();
         int fieldIndex = 0;
-        while (lookAheadSymbol.type != TokenTypes.RIGHT_BRACKET) {
+        while (lookAheadType() != TokenTypes.RIGHT_BRACKET) {
             RecordFieldDefinition field = parseRecordField(fieldIndex);
             fields.add(field);
 
             fieldIndex++;
 
-            if (lookAheadSymbol.type == TokenTypes.SEMICOLON) {
-                match(TokenTypes.SEMICOLON);
+            if (lookAheadType() == TokenTypes.SEMICOLON) {
+                consume(TokenTypes.SEMICOLON);
             }
         }
-        match(TokenTypes.RIGHT_BRACKET); // "}"
+        consume(TokenTypes.RIGHT_BRACKET); // "}"
         return new RecordDefinition(recordIdentifier, fields, recordIdentifier.line, recordIdentifier.column);
     }
 
@@ -543,30 +723,40 @@ public class Parser {
 
         checkExpectedSymbolsFunDef();
 
-        while (lookAheadSymbol.type == TokenTypes.FUN) {
-            functions.add(parseFunction());
+        while (lookAheadType() == TokenTypes.FUN) {
+            markDeclaration();
+            try {
+                functions.add(parseFunction());
+            } catch (SyntaxErrorException e) {
+                recover(e, 0);
+            }
 
             checkExpectedSymbolsFunDef();
         }
         return functions;
     }
 
-    private void checkExpectedSymbolsFunDef() throws SyntaxErrorException {
-        switch (lookAheadSymbol.type) {
-            case FUN, EOF -> {
-                // do nothing
-            }
-            default -> {
-                throw new SyntaxErrorException(
-                        "Syntax Error: Expected FUN, or EOF but found " +
-                                lookAheadSymbol.lexeme +
-                                " of type " +
-                                lookAheadSymbol.type +
-                                " at line " +
-                                lookAheadSymbol.line +
-                                ", column " +
-                                lookAheadSymbol.column
-                );
+    private void checkExpectedSymbolsFunDef() throws Exception {
+        // with diagnostics, the unexpected tokens are skipped until one is expected
+        while (true) {
+            switch (lookAheadType()) {
+                case FUN, EOF -> {
+                    return;
+                }
+                default -> {
+                    recover(new SyntaxErrorException(
+                            "Syntax Error: Expected FUN, or EOF but found " +
+                                    lookAheadLexeme() +
+                                    " of type " +
+                                    lookAheadType() +
+                                    " at line " +
+                                    lookAheadLine() +
+                                    ", column " +
+                                    lookAheadColumn(),
+                                    lookAheadLine(),
+                                    lookAheadColumn()
+                    ), 0);
+                }
             }
         }
     }
@@ -576,39 +766,71 @@ public class Parser {
         // NEW: FunctionDefinition -> "fun" InstanceRef "identifier" "(" Params ")" Type Block
         // InstanceRef ->  "(" "identifier" "recordNameIdentifier" ")" | .
 
-        match(TokenTypes.FUN);
+        consume(TokenTypes.FUN);
 
         boolean hasInstanceRef = false;
         Symbol instanceRefIdent = null;
         Type instanceRefType = null;
 
         // look for the InstanceRef (e.g., "(p Point)")
-        if (lookAheadSymbol.type == TokenTypes.LEFT_PAR) {
+        if (lookAheadType() == TokenTypes.LEFT_PAR) {
             hasInstanceRef = true;
-            match(TokenTypes.LEFT_PAR);
+            consume(TokenTypes.LEFT_PAR);
             instanceRefIdent = match(TokenTypes.IDENTIFIER); // match the record instance identifier (e.g., "p")
             instanceRefType = parseType(); // match the record type (e.g., "Point")
-            match(TokenTypes.RIGHT_PAR);
+            consume(TokenTypes.RIGHT_PAR);
 
         }
 
         Symbol identifier = match(TokenTypes.IDENTIFIER);
-        match(TokenTypes.LEFT_PAR);
+        consume(TokenTypes.LEFT_PAR);
         ArrayList<ParamDefinition> params = parseParamDefinitions();
-        match(TokenTypes.RIGHT_PAR);
+        consume(TokenTypes.RIGHT_PAR);
 
         Type returnType = null;
-        if (lookAheadSymbol.type != TokenTypes.LEFT_BRACKET) {
+        if (lookAheadType() != TokenTypes.LEFT_BRACKET) {
             returnType = parseType();
         }
-        Block block = parseBlock();
+        Block block = null;
+        int bodyStart = cursor;
+        if (lazyBodies) {
+            skipBlock();
+        } else {
+            block = parseBlock();
+        }
 
+        FunctionDefinition function;
         if (hasInstanceRef) {
-            return new FunctionDefinition(instanceRefIdent, instanceRefType, identifier, returnType, params, block, identifier.line, identifier.column);
+            function = new FunctionDefinition(instanceRefIdent, instanceRefType, identifier, returnType, params, block, identifier.line, identifier.column);
         } else {
-            return new FunctionDefinition(identifier, returnType, params, block, identifier.line, identifier.column);
+            function = new FunctionDefinition(identifier, returnType, params, block, identifier.line, identifier.column);
         }
+        if (lazyBodies) {
+            TokenBuffer bodyTokens = tokens;
+            function.setBodyParser(() -> {
+                Parser body = new Parser(bodyTokens, true);
+                body.cursor = bodyStart;
+                return body.parseBlock();
+            });
+        }
+        return function;
+    }
 
+    /// Move after the bracket that closes the block, without parsing it
+    private void skipBlock() throws Exception {
+        consume(TokenTypes.LEFT_BRACKET);
+        int depth = 1;
+        while (depth > 0) {
+            switch (lookAheadType()) {
+                case LEFT_BRACKET -> depth++;
+                case RIGHT_BRACKET -> depth--;
+                // the block is not closed
+                case EOF -> consume(TokenTypes.RIGHT_BRACKET);
+                default -> {
+                }
+            }
+            advance();
+        }
     }
 
     public ArrayList<ParamDefinition> parseParamDefinitions() throws Exception {
@@ -618,11 +840,11 @@ public class Parser {
 
         ArrayList<ParamDefinition> params = new ArrayList<>();
         int paramIndex = 0;
-        if (lookAheadSymbol.type != TokenTypes.RIGHT_PAR) {
+        if (lookAheadType() != TokenTypes.RIGHT_PAR) {
             params.add(parseParamDefinition(paramIndex));
             paramIndex++;
-            while (lookAheadSymbol.type == TokenTypes.COMMA) {
-                match(TokenTypes.COMMA);
+            while (lookAheadType() == TokenTypes.COMMA) {
+                consume(TokenTypes.COMMA);
                 params.add(parseParamDefinition(paramIndex));
                 paramIndex++;
             }
@@ -644,44 +866,64 @@ public class Parser {
         //ReturnStmt -> "return" ReturnTail .
         //ReturnTail -> ";" | Expression ";" .
 
-        match(TokenTypes.LEFT_BRACKET);
+        consume(TokenTypes.LEFT_BRACKET);
         ArrayList<Statement> statements = new ArrayList<>();
         ReturnStatement returnStatement = null;
 
-        while (lookAheadSymbol.type != TokenTypes.RIGHT_BRACKET) {
-            if (lookAheadSymbol.type == TokenTypes.RETURN) {
-                Symbol retSymbol = match(TokenTypes.RETURN);
-                if (lookAheadSymbol.type == TokenTypes.SEMICOLON) {
-                    match(TokenTypes.SEMICOLON);
-                    returnStatement = new ReturnStatement(null, retSymbol.line, retSymbol.column);
-                    break;
+        // the statements after a syntax error are still parsed, from the depth of the block
+        int depth = bracketDepth;
+        while (lookAheadType() != TokenTypes.RIGHT_BRACKET && lookAheadType() != TokenTypes.EOF) {
+            try {
+                if (lookAheadType() == TokenTypes.RETURN) {
+                    Symbol retSymbol = match(TokenTypes.RETURN);
+                    if (lookAheadType() == TokenTypes.SEMICOLON) {
+                        consume(TokenTypes.SEMICOLON);
+                        returnStatement = new ReturnStatement(null, retSymbol.line, retSymbol.column);
+                        break;
+                    }
+                    Expression returnExpression = parseExpression();
+                    consume(TokenTypes.SEMICOLON);
+                    returnStatement = new ReturnStatement(returnExpression, retSymbol.line, retSymbol.column);
+                } else {
+                    statements.add(parseStatement());
                 }
-                Expression returnExpression = parseExpression();
-                match(TokenTypes.SEMICOLON);
-                returnStatement = new ReturnStatement(returnExpression, retSymbol.line, retSymbol.column);
-            } else {
-                statements.add(parseStatement());
+            } catch (SyntaxErrorException e) {
+                recover(e, depth);
             }
         }
-        match(TokenTypes.RIGHT_BRACKET);
-        return new Block(statements, returnStatement, lookAheadSymbol.line, lookAheadSymbol.column);
+        consume(TokenTypes.RIGHT_BRACKET);
+        return new Block(statements, returnStatement, lookAheadLine(), lookAheadColumn());
     }
 
     public Statement parseStatement() throws Exception {
         // Stmt -> IfStmt | ForLoop | WhileLoop | FunctionDefinition | BaseStatement ";"
-        if (lookAheadSymbol.type == TokenTypes.IF) {
+        if (lookAheadType() == TokenTypes.IF) {
             return parseIfStatement();
-        } else if (lookAheadSymbol.type == TokenTypes.FOR) {
+        } else if (lookAheadType() == TokenTypes.FOR) {
             return parseForLoop();
-        } else if (lookAheadSymbol.type == TokenTypes.WHILE) {
+        } else if (lookAheadType() == TokenTypes.WHILE) {
             return parseWhileLoop();
-        } else if (lookAheadSymbol.type == TokenTypes.FUN) {
+        } else if (lookAheadType() == TokenTypes.FUN) {
             return parseFunction();
         } else {
             // BaseStatement -> VariableDeclaration | variableAssignment | RecordDefinition | free IdentifierAccess | Expression ";"
             Statement statement = parseBaseStatement();
-            if (lookAheadSymbol.type == TokenTypes.SEMICOLON) {
-                match(TokenTypes.SEMICOLON);
+            if (lookAheadType() == TokenTypes.SEMICOLON) {
+                consume(TokenTypes.SEMICOLON);
+            } else if (statement == null) {
+                // nothing was parsed, e.g., an operator at the start of the statement
+                throw new SyntaxErrorException(
+                    "Syntax Error: Expected a statement but found " +
+                    lookAheadLexeme() +
+                    " of type " +
+                    lookAheadType() +
+                    " at line " +
+                    lookAheadLine() +
+                    ", column " +
+                    lookAheadColumn(),
+                    lookAheadLine(),
+                    lookAheadColumn()
+                );
             }
             return statement;
         }
@@ -689,15 +931,15 @@ public class Parser {
 
     public IfStatement parseIfStatement() throws Exception {
         // IfStmt -> "if" "(" Expression ")" Block ElseStmt
-        match(TokenTypes.IF);
-        match(TokenTypes.LEFT_PAR);
+        consume(TokenTypes.IF);
+        consume(TokenTypes.LEFT_PAR);
         Expression condition = parseExpression();
-//        if (lookAheadSymbol.type != TokenTypes.RIGHT_PAR) {
-//            if (lookAheadSymbol.type == TokenTypes.AND || lookAheadSymbol.type == TokenTypes.OR) {
+//        if (lookAheadType() != TokenTypes.RIGHT_PAR) {
+//            if (lookAheadType() == TokenTypes.AND || lookAheadType() == TokenTypes.OR) {
 //
 //            }
 //        }
-        match(TokenTypes.RIGHT_PAR);
+        consume(TokenTypes.RIGHT_PAR);
         Block ifBlock = parseBlock();
         Block elseStatement = parseElseStatement();
         return new IfStatement(condition, ifBlock, elseStatement, condition.line, condition.column);
@@ -705,8 +947,8 @@ public class Parser {
 
     public Block parseElseStatement() throws Exception {
         // ElseStmt -> "else" Block | .
-        if (lookAheadSymbol.type == TokenTypes.ELSE) {
-            match(TokenTypes.ELSE);
+        if (lookAheadType() == TokenTypes.ELSE) {
+            consume(TokenTypes.ELSE);
             return parseBlock();
         }
         return null; // No else statement
@@ -721,10 +963,10 @@ public class Parser {
         // OLD
         // ForCondition -> "identifier" "," NumType "," NumType "," NumType .
         // NumType -> "int" | "float" .
-        match(TokenTypes.FOR);
-        match(TokenTypes.LEFT_PAR);
+        consume(TokenTypes.FOR);
+        consume(TokenTypes.LEFT_PAR);
         Symbol identifier = match(TokenTypes.IDENTIFIER);
-        match(TokenTypes.COMMA);
+        consume(TokenTypes.COMMA);
         // Parse the start, end, and step values, they could be int or float literals, or identifiers
 //        NumType startType = parseNumType();
 //        match(TokenTypes.COMMA);
@@ -733,35 +975,35 @@ public class Parser {
 //        NumType stepType = parseNumType();
 //        Symbol startType = parseNumLiteralOrIdent();
         Expression startExpr = parseExpression();
-        match(TokenTypes.COMMA);
+        consume(TokenTypes.COMMA);
 //        Symbol endType = parseNumLiteralOrIdent();
         Expression endExpr = parseExpression();
-        match(TokenTypes.COMMA);
+        consume(TokenTypes.COMMA);
 //        Symbol stepType = parseNumLiteralOrIdent();
         Expression stepExpr = parseExpression();
 //        // Check if the types are valid
 //        if (startType == null || endType == null || stepType == null) {
 //            throw new SyntaxErrorException(
 //                "Syntax Error: Expected int or float literal or identifier but found " +
-//                lookAheadSymbol.lexeme +
+//                lookAheadLexeme() +
 //                " of type " +
-//                lookAheadSymbol.type +
+//                lookAheadType() +
 //                " at line " +
-//                lookAheadSymbol.line +
+//                lookAheadLine() +
 //                ", column " +
-//                lookAheadSymbol.column
+//                lookAheadColumn()
 //            );
 //        }
 
 
-        match(TokenTypes.RIGHT_PAR);
+        consume(TokenTypes.RIGHT_PAR);
         Block block = parseBlock();
         return new ForLoop(identifier, startExpr, endExpr, stepExpr, block, identifier.line, identifier.column);
     }
 
     public Symbol parseNumLiteralOrIdent() throws Exception {
         // NumType -> "int" | "float"
-		return switch (lookAheadSymbol.type) {
+		return switch (lookAheadType()) {
 			case INT_LITERAL -> match(TokenTypes.INT_LITERAL);
 			case FLOAT_LITERAL -> match(TokenTypes.FLOAT_LITERAL);
 			case IDENTIFIER -> match(TokenTypes.IDENTIFIER);
@@ -771,10 +1013,10 @@ public class Parser {
 
     public WhileLoop parseWhileLoop() throws Exception {
         // WhileLoop -> "while" "(" Expression ")" Block .
-        match(TokenTypes.WHILE);
-        match(TokenTypes.LEFT_PAR);
+        consume(TokenTypes.WHILE);
+        consume(TokenTypes.LEFT_PAR);
         Expression condition = parseExpression();
-        match(TokenTypes.RIGHT_PAR);
+        consume(TokenTypes.RIGHT_PAR);
         Block block = parseBlock();
         return new WhileLoop(condition, block, condition.line, condition.column);
     }
@@ -798,16 +1040,16 @@ public class Parser {
         // RecordField -> "identifier" Type .
 
         // NOT LL(1)
-        if (lookAheadSymbol.type == TokenTypes.FINAL) {
+        if (lookAheadType() == TokenTypes.FINAL) {
             // Declaration (final or not)
             return parseVariableDeclaration(true, false, null, false);
-        } else if (lookAheadSymbol.type == TokenTypes.IDENTIFIER) {
+        } else if (lookAheadType() == TokenTypes.IDENTIFIER) {
             // VariableAssignment (using an Access) or non-constant declaration
             Symbol identifier = match(TokenTypes.IDENTIFIER);
 
             // If the lookahead is not an equal sign, then we have a non-constant declaration or a function call
-            if (lookAheadSymbol.type != TokenTypes.ASSIGN && lookAheadSymbol.type != TokenTypes.LEFT_SQUARE_BRACKET && lookAheadSymbol.type != TokenTypes.DOT) {
-                if (lookAheadSymbol.type == TokenTypes.LEFT_PAR) {
+            if (lookAheadType() != TokenTypes.ASSIGN && lookAheadType() != TokenTypes.LEFT_SQUARE_BRACKET && lookAheadType() != TokenTypes.DOT) {
+                if (lookAheadType() == TokenTypes.LEFT_PAR) {
                     // Function call
                     return parseParamCall(identifier);
                 }
@@ -824,15 +1066,15 @@ public class Parser {
                 return (FunctionCall) access;
             }
 
-            match(TokenTypes.ASSIGN);
+            consume(TokenTypes.ASSIGN);
 
             Expression expression = parseExpression();
             return new VariableAssignment((Access) access, expression, access.line, access.column);
-        } else if (lookAheadSymbol.type == TokenTypes.RECORD) {
+        } else if (lookAheadType() == TokenTypes.RECORD) {
             return parseRecord();
-        } else if (lookAheadSymbol.type == TokenTypes.FREE) {
+        } else if (lookAheadType() == TokenTypes.FREE) {
             // free IdentifierAccess
-            match(TokenTypes.FREE);
+            consume(TokenTypes.FREE);
             Access access = (Access) parseAccess(false, null);
 
             return new FreeStatement((IdentifierAccess) access, access.line, access.column);
@@ -842,14 +1084,14 @@ public class Parser {
     }
 
     public FunctionCall parseParamCall(Symbol identifier) throws Exception {
-        match(TokenTypes.LEFT_PAR);
-        if (lookAheadSymbol.type == TokenTypes.RIGHT_PAR) {
+        consume(TokenTypes.LEFT_PAR);
+        if (lookAheadType() == TokenTypes.RIGHT_PAR) {
             // empty params
-            match(TokenTypes.RIGHT_PAR);
+            consume(TokenTypes.RIGHT_PAR);
             return new FunctionCall(identifier, new ArrayList<>(), identifier.line, identifier.column);
         }
         ArrayList<ParamCall> params = parseParamsCall();
-        match(TokenTypes.RIGHT_PAR);
+        consume(TokenTypes.RIGHT_PAR);
         return new FunctionCall(identifier, params, identifier.line, identifier.column);
     }
 
@@ -869,23 +1111,23 @@ public class Parser {
 
         // Parse the access chain (array indices and field accesses)
         while (
-            lookAheadSymbol.type == TokenTypes.LEFT_SQUARE_BRACKET ||
-            lookAheadSymbol.type == TokenTypes.DOT
+            lookAheadType() == TokenTypes.LEFT_SQUARE_BRACKET ||
+            lookAheadType() == TokenTypes.DOT
         ) {
-            if (lookAheadSymbol.type == TokenTypes.LEFT_SQUARE_BRACKET) {
+            if (lookAheadType() == TokenTypes.LEFT_SQUARE_BRACKET) {
                 // Array access: [Expression]
-                match(TokenTypes.LEFT_SQUARE_BRACKET);
+                consume(TokenTypes.LEFT_SQUARE_BRACKET);
                 Expression indexExpr = parseExpression();
-                match(TokenTypes.RIGHT_SQUARE_BRACKET);
+                consume(TokenTypes.RIGHT_SQUARE_BRACKET);
 				assert access instanceof Access;
 
 				access = new ArrayAccess((Access) access, indexExpr, indexExpr.line, indexExpr.column);
             } else {
                 // Field access: .identifier
-                match(TokenTypes.DOT);
+                consume(TokenTypes.DOT);
                 Symbol fieldName = match(TokenTypes.IDENTIFIER);
 
-                if (lookAheadSymbol.type == TokenTypes.LEFT_PAR) {
+                if (lookAheadType() == TokenTypes.LEFT_PAR) {
                     // Method access on a record : (Expression)
                     FunctionCall functionCall = parseParamCall(fieldName);
 					assert access instanceof Access;
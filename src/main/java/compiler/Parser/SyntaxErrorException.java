@@ -1,8 +1,18 @@
 package compiler.Parser;
 
 public class SyntaxErrorException extends Exception {
+	// position of the token where the error was found, 0 when it isn't known
+	public final int line;
+	public final int column;
+
 	public SyntaxErrorException(String message) {
+		this(message, 0, 0);
+	}
+
+	public SyntaxErrorException(String message, int line, int column) {
 		super(message);
+		this.line = line;
+		this.column = column;
 //		super.printStackTrace();
 	}
 }
@@ -0,0 +1,209 @@
+package compiler.Runtime;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.InputMismatchException;
+import java.util.NoSuchElementException;
+
+/// Runtime support for the readInt, readFloat and readString builtins.
+/// The compiled programs call these static methods instead of creating a new Scanner for every read,
+/// so that the input stays buffered between calls and no regex is involved when parsing numbers.
+/// This class is copied next to the generated class files by the code generator.
+public final class StdIn {
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// a mantissa of at most that many digits and these powers of ten are exact floats, so one float division rounds like Float.parseFloat.
+	// Computing in double and casting to float would round twice
+	private static final int MAX_FAST_DIGITS = 7;
+	private static final float[] POWERS_OF_TEN = {
+			1e0f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f
+	};
+
+	private static InputStream input;
+	private static byte[] buffer;
+	private static int position;
+	private static int limit;
+
+	// holds the bytes of the current token
+	private static byte[] token = new byte[64];
+	private static int tokenLength;
+
+	private StdIn() {
+	}
+
+	/// Read the next whitespace delimited token and parse it as an int
+	public static int readInt() {
+		readToken();
+
+		int i = 0;
+		boolean negative = false;
+		if (token[0] == '-' || token[0] == '+') {
+			negative = token[0] == '-';
+			i++;
+		}
+		if (i == tokenLength) {
+			throw mismatch();
+		}
+
+		// accumulate negatively so that Integer.MIN_VALUE can be read as well
+		int value = 0;
+		for (; i < tokenLength; i++) {
+			int digit = token[i] - '0';
+			if (digit < 0 || digit > 9 || value < (Integer.MIN_VALUE + digit) / 10) {
+				throw mismatch();
+			}
+			value = value * 10 - digit;
+		}
+
+		if (!negative) {
+			if (value == Integer.MIN_VALUE) {
+				throw mismatch();
+			}
+			return -value;
+		}
+		return value;
+	}
+
+	/// Read the next whitespace delimited token and parse it as a float
+	public static float readFloat() {
+		readToken();
+
+		int i = 0;
+		boolean negative = false;
+		if (token[0] == '-' || token[0] == '+') {
+			negative = token[0] == '-';
+			i++;
+		}
+
+		long mantissa = 0;
+		int digits = 0;
+		int exponent = 0;
+		boolean seenDigit = false;
+
+		for (; i < tokenLength && isDigit(token[i]); i++) {
+			seenDigit = true;
+			if (mantissa != 0 || token[i] != '0') {
+				mantissa = mantissa * 10 + (token[i] - '0');
+				digits++;
+			}
+			if (digits > MAX_FAST_DIGITS) {
+				return slowParseFloat();
+			}
+		}
+
+		if (i < tokenLength && token[i] == '.') {
+			i++;
+			for (; i < tokenLength && isDigit(token[i]); i++) {
+				seenDigit = true;
+				if (mantissa != 0 || token[i] != '0') {
+					mantissa = mantissa * 10 + (token[i] - '0');
+					digits++;
+				}
+				exponent--;
+				if (digits > MAX_FAST_DIGITS) {
+					return slowParseFloat();
+				}
+			}
+		}
+
+		if (!seenDigit) {
+			// things like "NaN" or "Infinity"
+			return slowParseFloat();
+		}
+
+		if (i < tokenLength) {
+			if (token[i] != 'e' && token[i] != 'E') {
+				throw mismatch();
+			}
+			return slowParseFloat();
+		}
+
+		if (exponent < -POWERS_OF_TEN.length + 1) {
+			return slowParseFloat();
+		}
+		float value = mantissa;
+		if (exponent < 0) {
+			value /= POWERS_OF_TEN[-exponent];
+		}
+
+		return negative ? -value : value;
+	}
+
+	/// Read the next whitespace delimited token
+	public static String readString() {
+		readToken();
+		return new String(token, 0, tokenLength, StandardCharsets.UTF_8);
+	}
+
+	private static float slowParseFloat() {
+		try {
+			return Float.parseFloat(new String(token, 0, tokenLength, StandardCharsets.ISO_8859_1));
+		} catch (NumberFormatException e) {
+			throw mismatch();
+		}
+	}
+
+	/// Copy the next token in the token buffer, skipping the whitespaces before it
+	private static void readToken() {
+		int c = read();
+		while (c != -1 && isWhitespace(c)) {
+			c = read();
+		}
+		if (c == -1) {
+			throw new NoSuchElementException();
+		}
+
+		tokenLength = 0;
+		do {
+			if (tokenLength == token.length) {
+				byte[] larger = new byte[token.length * 2];
+				System.arraycopy(token, 0, larger, 0, tokenLength);
+				token = larger;
+			}
+			token[tokenLength++] = (byte) c;
+			c = read();
+		} while (c != -1 && !isWhitespace(c));
+	}
+
+	/// Read one byte, refilling the buffer when needed
+	private static int read() {
+		if (position == limit && !fill()) {
+			return -1;
+		}
+		return buffer[position++] & 0xff;
+	}
+
+	private static boolean fill() {
+		// like a terminal would, show what was written before waiting for the input
+		StdOut.flush();
+
+		if (buffer == null) {
+			// lazily bind to System.in so that the stream can still be replaced before the first read
+			buffer = new byte[BUFFER_SIZE];
+			input = System.in;
+		}
+
+		try {
+			int read = input.read(buffer, 0, buffer.length);
+			position = 0;
+			limit = Math.max(read, 0);
+			return read > 0;
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	private static boolean isWhitespace(int c) {
+		return c == ' ' || (c >= '\t' && c <= '\r') || (c >= 0x1c && c <= 0x1f);
+	}
+
+	private static boolean isDigit(byte c) {
+		return c >= '0' && c <= '9';
+	}
+
+	private static InputMismatchException mismatch() {
+		return new InputMismatchException("For input string: \"" + new String(token, 0, tokenLength, StandardCharsets.UTF_8) + "\"");
+	}
+}
@@ -0,0 +1,264 @@
+package compiler.Runtime;
+
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+
+/// Runtime support for the write, writeln, writeInt and writeFloat builtins.
+/// Everything is written in one reusable byte buffer that is only handed to System.out when it is full,
+/// before reading from the standard input, and when the program exits (normally or because of an exception).
+/// The methods mirror the print/println overloads of PrintStream so that the generated calls keep the same descriptors.
+/// This class is copied next to the generated class files by the code generator.
+public final class StdOut {
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	// Float.toString uses the scientific notation outside of this range
+	private static final float MIN_PLAIN_FLOAT = 1e-3f;
+	private static final float MAX_PLAIN_FLOAT = 1e7f;
+	// the products below stay exact in a double up to that many fraction digits
+	private static final int MAX_FRACTION_DIGITS = 8;
+	private static final long[] POWERS_OF_TEN = {
+			1L, 10L, 100L, 1_000L, 10_000L, 100_000L, 1_000_000L, 10_000_000L, 100_000_000L
+	};
+
+	private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+	private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+	private static final byte[] NULL = {'n', 'u', 'l', 'l'};
+	private static final byte[] MIN_INT = {'-', '2', '1', '4', '7', '4', '8', '3', '6', '4', '8'};
+	private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+	private static PrintStream output;
+	private static boolean isUtf8;
+	private static byte[] buffer;
+	private static int position;
+
+	private StdOut() {
+	}
+
+	public static void print(int value) {
+		ensureCapacity(11);
+		if (value == Integer.MIN_VALUE) {
+			System.arraycopy(MIN_INT, 0, buffer, position, MIN_INT.length);
+			position += MIN_INT.length;
+			return;
+		}
+		if (value < 0) {
+			buffer[position++] = '-';
+			value = -value;
+		}
+		writeDigits(value, digitCount(value));
+	}
+
+	public static void print(float value) {
+		if (!writePlainFloat(value)) {
+			// scientific notation, NaN, infinities and values that need more digits keep the exact Java formatting
+			print(Float.toString(value));
+		}
+	}
+
+	public static void print(boolean value) {
+		writeBytes(value ? TRUE : FALSE);
+	}
+
+	public static void print(String value) {
+		if (value == null) {
+			writeBytes(NULL);
+			return;
+		}
+
+		ensureCapacity(0);
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c >= 0x80) {
+				writeNonAscii(value, i);
+				return;
+			}
+			if (position == BUFFER_SIZE) {
+				flushBuffer();
+			}
+			buffer[position++] = (byte) c;
+		}
+	}
+
+	public static void print(Object value) {
+		print(String.valueOf(value));
+	}
+
+	public static void println(int value) {
+		print(value);
+		println();
+	}
+
+	public static void println(float value) {
+		print(value);
+		println();
+	}
+
+	public static void println(boolean value) {
+		print(value);
+		println();
+	}
+
+	public static void println(String value) {
+		print(value);
+		println();
+	}
+
+	public static void println(Object value) {
+		print(value);
+		println();
+	}
+
+	public static void println() {
+		writeBytes(LINE_SEPARATOR);
+	}
+
+	/// Hand everything that was written so far to System.out
+	public static void flush() {
+		if (buffer != null && position > 0) {
+			flushBuffer();
+			output.flush();
+		}
+	}
+
+	/// Write a float the same way Float.toString does, if it can be written without its scientific notation
+	/// with at most MAX_FRACTION_DIGITS digits after the dot, returns false otherwise
+	private static boolean writePlainFloat(float value) {
+		float abs = Math.abs(value);
+		boolean negative = Float.floatToRawIntBits(value) < 0;
+
+		if (abs == 0f) {
+			writeFloatDigits(negative, 0, 0, 1);
+			return true;
+		}
+		if (!(abs >= MIN_PLAIN_FLOAT && abs < MAX_PLAIN_FLOAT)) {
+			return false;
+		}
+
+		// every decimal strictly between these two bounds is read back as abs
+		double lower = ((double) abs + Math.nextDown(abs)) / 2;
+		double upper = ((double) abs + Math.nextUp(abs)) / 2;
+
+		// the shortest decimal is the one with the fewest fraction digits, and among those Java picks the closest one
+		for (int fractionDigits = 1; fractionDigits <= MAX_FRACTION_DIGITS; fractionDigits++) {
+			long scale = POWERS_OF_TEN[fractionDigits];
+			double scaled = abs * (double) scale;
+			long candidate = Math.round(scaled);
+
+			if (Math.abs(scaled - candidate) == 0.5) {
+				// ties are rare, let Float.toString break them
+				return false;
+			}
+
+			if (lower * scale < candidate && candidate < upper * scale) {
+				// drop the trailing zeros, but always keep one digit after the dot
+				while (fractionDigits > 1 && candidate % 10 == 0) {
+					candidate /= 10;
+					fractionDigits--;
+				}
+				writeFloatDigits(negative, candidate / POWERS_OF_TEN[fractionDigits], candidate % POWERS_OF_TEN[fractionDigits], fractionDigits);
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static void writeFloatDigits(boolean negative, long integerPart, long fraction, int fractionDigits) {
+		ensureCapacity(2 + 8 + MAX_FRACTION_DIGITS);
+		if (negative) {
+			buffer[position++] = '-';
+		}
+		writeDigits((int) integerPart, digitCount((int) integerPart));
+		buffer[position++] = '.';
+		writeDigits((int) fraction, fractionDigits);
+	}
+
+	/// Write the given non-negative number on exactly count digits, padding with zeros on the left
+	private static void writeDigits(int value, int count) {
+		int end = position + count;
+		for (int i = end - 1; i >= position; i--) {
+			buffer[i] = (byte) ('0' + value % 10);
+			value /= 10;
+		}
+		position = end;
+	}
+
+	private static int digitCount(int value) {
+		int count = 1;
+		while (value >= 10) {
+			value /= 10;
+			count++;
+		}
+		return count;
+	}
+
+	private static void writeBytes(byte[] bytes) {
+		ensureCapacity(bytes.length);
+		System.arraycopy(bytes, 0, buffer, position, bytes.length);
+		position += bytes.length;
+	}
+
+	/// Write the rest of a string that contains non ASCII characters, starting at the given index
+	private static void writeNonAscii(String value, int start) {
+		if (!isUtf8) {
+			// the stream encodes the rest of the string with its own charset, after what was written before it
+			flushBuffer();
+			output.print(value.substring(start));
+			return;
+		}
+
+		int length = value.length();
+		for (int i = start; i < length; i++) {
+			ensureCapacity(4);
+			int c = value.charAt(i);
+			if (Character.isHighSurrogate((char) c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				c = Character.toCodePoint((char) c, value.charAt(++i));
+			} else if (Character.isSurrogate((char) c)) {
+				c = '?'; // same replacement as the encoder of PrintStream
+			}
+
+			if (c < 0x80) {
+				buffer[position++] = (byte) c;
+			} else if (c < 0x800) {
+				buffer[position++] = (byte) (0xc0 | (c >> 6));
+				buffer[position++] = (byte) (0x80 | (c & 0x3f));
+			} else if (c < 0x10000) {
+				buffer[position++] = (byte) (0xe0 | (c >> 12));
+				buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				buffer[position++] = (byte) (0x80 | (c & 0x3f));
+			} else {
+				buffer[position++] = (byte) (0xf0 | (c >> 18));
+				buffer[position++] = (byte) (0x80 | ((c >> 12) & 0x3f));
+				buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+				buffer[position++] = (byte) (0x80 | (c & 0x3f));
+			}
+		}
+	}
+
+	/// Make sure that the buffer has room for the given number of bytes, flushing it if it doesn't
+	private static void ensureCapacity(int bytes) {
+		if (buffer == null) {
+			// lazily bind to System.out so that the stream can still be replaced before the first write
+			buffer = new byte[BUFFER_SIZE];
+			output = System.out;
+			isUtf8 = isUtf8(output);
+		} else if (position + bytes > BUFFER_SIZE) {
+			flushBuffer();
+		}
+	}
+
+	/// This class is compiled for Java 8, where the charset of a PrintStream can't be known (PrintStream.charset() is from Java 18),
+	/// the streams whose charset is unknown encode the non ASCII characters themselves
+	private static boolean isUtf8(PrintStream stream) {
+		try {
+			return StandardCharsets.UTF_8.equals(PrintStream.class.getMethod("charset").invoke(stream));
+		} catch (ReflectiveOperationException e) {
+			return false;
+		}
+	}
+
+	private static void flushBuffer() {
+		output.write(buffer, 0, position);
+		position = 0;
+	}
+}
@@ -6,4 +6,8 @@ public class SemanticException extends Exception {
 //        System.exit(2);
 //        super.printStackTrace();
     }
+
+    public SemanticException(String message, Throwable cause) {
+        super(message, cause);
+    }
 }
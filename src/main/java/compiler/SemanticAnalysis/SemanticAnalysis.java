@@ -1,5 +1,7 @@
 package compiler.SemanticAnalysis;
 
+import compiler.Diagnostics.Diagnostic.Code;
+import compiler.Diagnostics.Diagnostics;
 import compiler.Lexer.Symbol;
 import compiler.Lexer.TokenTypes;
 import compiler.Parser.ASTNodes.ASTNode;
@@ -15,16 +17,21 @@ import compiler.Parser.ASTNodes.Statements.Expressions.Terms.*;
 import compiler.Parser.ASTNodes.Statements.Statements.*;
 import compiler.Parser.ASTNodes.Types.NumType;
 import compiler.Parser.ASTNodes.Types.Type;
+import compiler.Parser.FlatAST;
 import compiler.SemanticAnalysis.Errors.*;
 import compiler.SemanticAnalysis.Types.ArraySemType;
 import compiler.SemanticAnalysis.Types.FunctionSemType;
 import compiler.SemanticAnalysis.Types.RecordSemType;
 import compiler.SemanticAnalysis.Types.SemType;
+import compiler.SemanticAnalysis.Types.TypeTable;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.LinkedHashMap;
+import java.util.concurrent.Callable;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.stream.IntStream;
 
 import static compiler.Lexer.TokenTypes.*;
 
@@ -35,42 +42,56 @@ public class SemanticAnalysis implements Visitor<SemType, SymbolTable> {
 
 	boolean hasVisitedMain = false;
 
-	SemType intType = new SemType("int");
-	SemType floatType = new SemType("float");
-	SemType numType = new SemType("num");
-	SemType numOrBoolType = new SemType("numOrBool");
-	SemType stringType = new SemType("string");
-	SemType boolType = new SemType("bool");
-	SemType voidType = new SemType("void");
-	SemType anyType = new SemType("any");
-	SemType recType = new SemType("rec");
+	SemType intType = SemType.INT;
+	SemType floatType = SemType.FLOAT;
+	SemType numType = SemType.NUM;
+	SemType numOrBoolType = SemType.NUM_OR_BOOL;
+	SemType stringType = SemType.STRING;
+	SemType boolType = SemType.BOOL;
+	SemType voidType = SemType.VOID;
+	SemType anyType = SemType.ANY;
+	SemType recType = SemType.REC;
+
+	// the record and function types of the program
+	TypeTable types = new TypeTable();
+
+	// below this many functions, the bodies are checked one after the other on the calling thread
+	private static final int PARALLEL_BODIES = 8;
+
+	// the errors are reported to it and the analysis goes on with the next statement or declaration, null to throw the first one
+	private Diagnostics diagnostics;
 
 	public SemanticAnalysis() {
 	}
 
-	public void analyze(ASTNode rootNode, boolean inTest) throws SemanticException {
+	/// Report the errors to the diagnostics instead of throwing the first one. The analysis goes on with the next statement or declaration,
+	/// and a variable declaration with an error still declares its variable, so that its uses aren't reported too
+	public void setDiagnostics(Diagnostics diagnostics) {
+		this.diagnostics = diagnostics;
+	}
+
+	public void analyze(ASTNode rootNode) throws SemanticException {
 		this.rootNode = rootNode;
+		analyze(() -> rootNode.accept(this, globalSymbolTable));
+	}
+
+	/// Analyze a flat AST, the types of its nodes are stored in it
+	public void analyze(FlatAST ast) throws SemanticException {
+		analyze(() -> ast.accept(this, globalSymbolTable));
+	}
+
+	private void analyze(Callable<SemType> root) throws SemanticException {
 		globalSymbolTable = new SymbolTable(null);
+		types = new TypeTable();
 
 		addPredefinedFunctions();
 
 		try {
-			rootNode.accept(this, globalSymbolTable);
+			root.call();
 		} catch (SemanticException e) {
-			if (inTest) {
-				// if we are in test mode, we don't want to exit the program
-				throw e;
-			}
-//			System.err.println("Semantic Analysis Error: " + e.getMessage());
-			e.printStackTrace();
-
-			System.exit(2); // 2 for semantic analysis
-		}
-		catch (Exception e) {
-			System.err.println("Unexpected error during semantic analysis of the program: " + e.getMessage());
-			e.printStackTrace();
-			System.exit(2);
-
+			throw e;
+		} catch (Exception e) {
+			throw new SemanticException("Unexpected error during semantic analysis of the program: " + e.getMessage(), e);
 		}
 	}
 
@@ -78,63 +99,63 @@ public class SemanticAnalysis implements Visitor<SemType, SymbolTable> {
 	private void addPredefinedFunctions() {
 		// add predefined functions to the symbol table
 		SemType[] paramTypesChr = {intType};
-		FunctionSemType chr = new FunctionSemType(stringType, paramTypesChr);
+		FunctionSemType chr = types.function(stringType, paramTypesChr);
 		globalSymbolTable.addSymbol("chr", chr);
 
 		// EXTRA FUNCTION ADDED
 		SemType[] paramTypesOrd = {stringType};
-		FunctionSemType ord = new FunctionSemType(intType, paramTypesOrd);
+		FunctionSemType ord = types.function(intType, paramTypesOrd);
 		globalSymbolTable.addSymbol("ord", ord);
 
 		// len function definition for strings
 		SemType[] paramTypesLenString = {stringType};
-		FunctionSemType len = new FunctionSemType(intType, paramTypesLenString);
+		FunctionSemType len = types.function(intType, paramTypesLenString);
 		globalSymbolTable.addSymbol("len_string", len);
 
 		// len function definition for arrays (of any SemType)
-		ArraySemType arrayType = new ArraySemType(anyType);
+		ArraySemType arrayType = ArraySemType.of(anyType);
 		SemType[] paramTypesLenArray = {arrayType};
-		FunctionSemType lenArray = new FunctionSemType(intType, paramTypesLenArray);
+		FunctionSemType lenArray = types.function(intType, paramTypesLenArray);
 		globalSymbolTable.addSymbol("len_array", lenArray);
 
 		// floor(float) -> int
 		SemType[] paramTypesFloor = {floatType};
-		FunctionSemType floor = new FunctionSemType(intType, paramTypesFloor);
+		FunctionSemType floor = types.function(intType, paramTypesFloor);
 		globalSymbolTable.addSymbol("floor", floor);
 
 		// readInt() -> int
 		SemType[] paramTypesReadInt = {};
-		FunctionSemType readInt = new FunctionSemType(intType, paramTypesReadInt);
+		FunctionSemType readInt = types.function(intType, paramTypesReadInt);
 		globalSymbolTable.addSymbol("readInt", readInt);
 
 		// readFloat() -> float
 		SemType[] paramTypesReadFloat = {};
-		FunctionSemType readFloat = new FunctionSemType(floatType, paramTypesReadFloat);
+		FunctionSemType readFloat = types.function(floatType, paramTypesReadFloat);
 		globalSymbolTable.addSymbol("readFloat", readFloat);
 
 		// readString() -> string
 		SemType[] paramTypesReadString = {};
-		FunctionSemType readString = new FunctionSemType(stringType, paramTypesReadString);
+		FunctionSemType readString = types.function(stringType, paramTypesReadString);
 		globalSymbolTable.addSymbol("readString", readString);
 
 		// writeInt(int) -> void
 		SemType[] paramTypesWriteInt = {intType};
-		FunctionSemType writeInt = new FunctionSemType(voidType, paramTypesWriteInt);
+		FunctionSemType writeInt = types.function(voidType, paramTypesWriteInt);
 		globalSymbolTable.addSymbol("writeInt", writeInt);
 
 		// writeFloat(float) -> void
 		SemType[] paramTypesWriteFloat = {floatType};
-		FunctionSemType writeFloat = new FunctionSemType(voidType, paramTypesWriteFloat);
+		FunctionSemType writeFloat = types.function(voidType, paramTypesWriteFloat);
 		globalSymbolTable.addSymbol("writeFloat", writeFloat);
 
 		// write(any) -> void
 		SemType[] paramTypesWrite = {anyType};
-		FunctionSemType write = new FunctionSemType(voidType, paramTypesWrite);
+		FunctionSemType write = types.function(voidType, paramTypesWrite);
 		globalSymbolTable.addSymbol("write", write);
 
 		// writeln(any) -> void
 		SemType[] paramTypesWriteln = {anyType};
-		FunctionSemType writeln = new FunctionSemType(voidType, paramTypesWriteln);
+		FunctionSemType writeln = types.function(voidType, paramTypesWriteln);
 		globalSymbolTable.addSymbol("writeln", writeln);
 	}
 
@@ -144,60 +165,47 @@ public class SemanticAnalysis implements Visitor<SemType, SymbolTable> {
 		ArrayList<VariableDeclaration> constants = program.getConstants();
 		for (VariableDeclaration constant : constants) {
 			// we don't need to check if the constant is defined as 'final', this is already done by the parser
-			constant.accept(this, table);
+			try {
+				constant.accept(this, table);
+			} catch (Exception e) {
+				recover(e, constant, table);
+			}
 		}
 
 		ArrayList<RecordDefinition> records = program.getRecords();
 		for (RecordDefinition record : records) {
-			SemType semType = record.accept(this, table);
-		}
-
-//		 after the record definitions
-		for (RecordDefinition record : records) {
-			for (RecordFieldDefinition field : record.getFields()) {
-				String fieldName = field.getIdentifier().lexeme;
-
-				if (field.semtype instanceof RecordSemType) {
-					// get the actual semtype with all the fields filled in from the local table
-					SemType fieldType = table.lookup(field.getType().symbol.lexeme);
-					if (fieldType != null) {
-						field.semtype = fieldType;
-					}
-				} else if (field.semtype instanceof ArraySemType arraySemType) {
-					// get the actual semtype with all the fields filled in from the local table
-					SemType fieldType = table.lookup(arraySemType.getElementSemType().type);
-					if (fieldType != null) {
-						field.semtype = fieldType;
-//						arraySemType.setElementSemType(fieldType);
-						arraySemType.elementSemType = fieldType;
-					}
-//					if (arraySemType.getElementSemType() instanceof RecordSemType recordSemType) {
-//						// get the actual semtype with all the fields filled in from the local table
-//						SemType fieldType = table.lookup(recordSemType.identifier);
-//
-//						if (fieldType != null) {
-//							field.semtype = fieldType;
-//							recordSemType.fields.replace(fieldName, fieldType);
-//						}
-//					}
-
-				}
-
+			try {
+				record.accept(this, table);
+			} catch (Exception e) {
+				recover(e, record, table);
 			}
 		}
-//
 
 		ArrayList<VariableDeclaration> globals = program.getGlobals();
 		for (VariableDeclaration global : globals) {
-			global.accept(this, table);
+			try {
+				global.accept(this, table);
+			} catch (Exception e) {
+				recover(e, global, table);
+			}
 		}
 
-		ArrayList<FunctionDefinition> functions = program.getFunctions();
-		for (FunctionDefinition function : functions) {
-			function.accept(this, table);
+		// the signatures are declared first so that the bodies, checked next, only read the global table
+		// the body of a function whose signature has an error isn't checked
+		ArrayList<FunctionDefinition> functions = new ArrayList<>();
+		for (FunctionDefinition function : program.getFunctions()) {
+			try {
+				declareFunction(function, table);
+				functions.add(function);
+			} catch (Exception e) {
+				recover(e, function, table);
+			}
 		}
+		checkFunctionBodies(functions, table);
 
-		if (!hasVisitedMain) {
+		if (!hasVisitedMain && diagnostics != null) {
+			diagnostics.warning(Code.NO_MAIN, "No main function was found in the program!", 0, 0);
+		} else if (!hasVisitedMain) {
 			Logger logger = Logger.getLogger(getClass().getName());
 			logger.setLevel(Level.WARNING);
 			logger.warning("\033[031mNo main function was found in the program!\033[0m");
@@ -299,7 +307,7 @@ public class SemanticAnalysis implements Visitor<SemType, SymbolTable> {
 		}
 
 		SemType elemSemType = getSemTypeFromASTNodeType(table, arrayExpression.getType());
-		SemType retType = new ArraySemType(elemSemType);
+		SemType retType = ArraySemType.of(elemSemType);
 
 		arrayExpression.semtype = retType;
 		return retType;
@@ -307,11 +315,35 @@ public class SemanticAnalysis implements Visitor<SemType, SymbolTable> {
 
 	@Override
 	public SemType visitBinaryExpression(BinaryExpression binaryExpression, SymbolTable table) throws Exception {
-		// check if the left and right expressions are of the same SemType
+		// the right term of an operator chain is the rest of the chain in parentheses (see Parser.parseExpression),
+		// the chain is checked in a loop so that a long one doesn't recurse once per operator.
+		// The terms are visited in the same order as with the recursion: the left terms from the start of the chain, then the last right term
+		ArrayDeque<BinaryExpression> chain = new ArrayDeque<>();
+		ArrayDeque<SemType> leftTypes = new ArrayDeque<>();
+		BinaryExpression current = binaryExpression;
+		while (true) {
+			leftTypes.push(current.getLeftTerm().accept(this, table));
+			chain.push(current);
+			if (!(current.getRightTerm() instanceof ParenthesesTerm parenthesesTerm && parenthesesTerm.getExpression() instanceof BinaryExpression rest)) {
+				break;
+			}
+			current = rest;
+		}
 
-		SemType leftType = binaryExpression.getLeftTerm().accept(this, table);
+		SemType rightType = current.getRightTerm().accept(this, table);
+		while (true) {
+			SemType type = checkBinaryExpression(chain.pop(), leftTypes.pop(), rightType, table);
+			if (chain.isEmpty()) {
+				return type;
+			}
+			// the parentheses around the rest of the chain have its type
+			chain.peek().getRightTerm().semtype = type;
+			rightType = type;
+		}
+	}
 
-		SemType rightType = binaryExpression.getRightTerm().accept(this, table);
+	private SemType checkBinaryExpression(BinaryExpression binaryExpression, SemType leftType, SemType rightType, SymbolTable table) throws Exception {
+		// check if the left and right expressions are of the same SemType
 
 		binaryExpression.getLeftTerm().semtype = leftType;
 		binaryExpression.getRightTerm().semtype = rightType;
@@ -321,11 +353,11 @@ public class SemanticAnalysis implements Visitor<SemType, SymbolTable> {
 			// if either of the types is a float, then we can convert the other type to a float
 			if (leftType.equals(floatType) && rightType.equals(intType)) {
 				rightType = floatType;
-				binaryExpression.getRightTerm().semtype.toConvert = true;
+				binaryExpression.getRightTerm().conversionNeeded = true;
 
 			} else if (rightType.equals(floatType) && leftType.equals(intType)) {
 				leftType = floatType;
-				binaryExpression.getLeftTerm().semtype.toConvert = true;
+				binaryExpression.getLeftTerm().conversionNeeded = true;
 
 //			} else if ((leftType.equals(stringType) && rightType.equals(numType)) || ((leftType.equals(numType) && rightType.equals(stringType))) {
 				// todo
@@ -458,15 +490,14 @@ public class SemanticAnalysis implements Visitor<SemType, SymbolTable> {
 	public SemType visitConstValue(ConstVal constVal, SymbolTable table) throws Exception {
 		Object objVal = constVal.getValue();
 
-		// create SemType from this constant value
-		String type = switch (constVal.getSymbol().type) {
-			case INT_LITERAL -> "int";
-			case FLOAT_LITERAL -> "float";
-			case STRING_LITERAL -> "string";
-			case BOOL_TRUE, BOOL_FALSE -> "bool";
+		// get the SemType of this constant value
+		SemType semType = switch (constVal.getSymbol().type) {
+			case INT_LITERAL -> intType;
+			case FLOAT_LITERAL -> floatType;
+			case STRING_LITERAL -> stringType;
+			case BOOL_TRUE, BOOL_FALSE -> boolType;
 			default -> null;
 		};
-		SemType semType = new SemType(type, true);
 
 		constVal.semtype = semType;
 		return semType;
@@ -515,7 +546,7 @@ public class SemanticAnalysis implements Visitor<SemType, SymbolTable> {
 			// if the args don't match  and the function is not defined with "any" as the type of its arguments
 			if (!argSemType.equals(paramCallSemType) && !argSemType.equals(anyType)) {
 				// the types didn't match, but if the expected type is a float and the given type is an int, we can convert it (here that means we keep going)
-				paramCall.getParamExpression().semtype.toConvert = true;
+				paramCall.getParamExpression().conversionNeeded = true;
 
 				// if we can't convert the type, we throw an error: here if it's not the convertable case, we throw
 				if (argSemType.equals(floatType) && paramCallSemType.equals(intType)) {
@@ -641,11 +672,11 @@ public class SemanticAnalysis implements Visitor<SemType, SymbolTable> {
 	@Override
 	public SemType visitType(Type type, SymbolTable table) throws Exception {
 		if (type.isList) {
-			ArraySemType typeSemType = new ArraySemType(new SemType(type.symbol.lexeme));
+			ArraySemType typeSemType = ArraySemType.of(SemType.named(type.symbol.lexeme));
 			type.semtype = typeSemType;
 			return typeSemType;
 		}
-		SemType typeSemType = new SemType(type.symbol.lexeme);
+		SemType typeSemType = SemType.named(type.symbol.lexeme);
 		type.semtype = typeSemType;
 		return typeSemType;
 	}
@@ -653,12 +684,12 @@ public class SemanticAnalysis implements Visitor<SemType, SymbolTable> {
 	@Override
 	public SemType visitNumType(NumType numType, SymbolTable table) throws Exception {
 		if (numType.isList) {
-			SemType arraySemType = new ArraySemType(new SemType(numType.symbol.lexeme));
+			SemType arraySemType = ArraySemType.of(SemType.named(numType.symbol.lexeme));
 			numType.semtype = arraySemType;
 			return arraySemType;
 		}
 
-		SemType semType = new SemType(numType.symbol.lexeme);
+		SemType semType = SemType.named(numType.symbol.lexeme);
 		numType.semtype = semType;
 		return semType;
 	}
@@ -796,18 +827,20 @@ public class SemanticAnalysis implements Visitor<SemType, SymbolTable> {
 
 	@Override
 	public SemType visitFunctionDefinition(FunctionDefinition functionDefinition, SymbolTable table) throws Exception {
+		declareFunction(functionDefinition, table);
+		checkFunctionBody(functionDefinition, table);
+		return functionDefinition.getRetSemType();
+	}
+
+	/// Resolve the signature of a function and add the function to the table, without checking its body
+	private void declareFunction(FunctionDefinition functionDefinition, SymbolTable table) throws Exception {
 		Symbol name = functionDefinition.getName();
 		if (name.lexeme.equals("main")) {
 			hasVisitedMain = true;
 		}
 
-		// create local table
-		SymbolTable localTable = new SymbolTable(table, name.lexeme);
-
 		if (functionDefinition.hasInstanceRef()) {
 			// e.g., "(p Point)"
-			// add the instanceRef to the symbol table
-
 			SemType instanceRefSemType = getSemTypeFromASTNodeType(table, functionDefinition.getInstanceRef());
 			functionDefinition.getInstanceRef().semtype = instanceRefSemType;
 
@@ -819,15 +852,12 @@ public class SemanticAnalysis implements Visitor<SemType, SymbolTable> {
 				// check that the type is a record already defined
 				throw new TypeError("The instance reference type " + functionDefinition.getInstanceRef().symbol.lexeme + " is not a record, at line " + functionDefinition.line + " and column " + functionDefinition.column);
 			}
-			localTable.addSymbol(functionDefinition.getInstanceName().lexeme, instanceRefSemType);
 		}
 
-		// add parameters to the local symbol table
+		// the types of the parameters are resolved before the function's scope is opened, the function itself is added to the enclosing scope
 		ArrayList<SemType> paramTypes = new ArrayList<>();
 		for (ParamDefinition param : functionDefinition.getParamDefinitions()){
-			SemType paramSemType = param.accept(this, localTable);
-
-			paramTypes.add(paramSemType);
+			paramTypes.add(getSemTypeFromASTNodeType(table, param.getType()));
 		}
 
 		functionDefinition.setParamTypes(paramTypes);
@@ -837,22 +867,88 @@ public class SemanticAnalysis implements Visitor<SemType, SymbolTable> {
 		SemType retSemType = getSemTypeFromASTNodeType(table, returnType);
 		functionDefinition.setRetSemType(retSemType);
 
-		FunctionSemType semType = new FunctionSemType(retSemType, paramTypes.toArray(new SemType[0]));
+		FunctionSemType semType = types.function(retSemType, paramTypes.toArray(new SemType[0]));
 		table.addSymbol(name.lexeme, semType);
+		functionDefinition.semtype = semType;
+	}
 
-		// check types of block
-		functionDefinition.getBlock().accept(this, localTable);
+	/// Check the body of a declared function. The table is only written to in the function's scope,
+	/// so the bodies of different functions can be checked at the same time on their own tables
+	private void checkFunctionBody(FunctionDefinition functionDefinition, SymbolTable table) throws Exception {
+		Symbol name = functionDefinition.getName();
+
+		// the instance and the parameters are bound in the function's scope, which is rolled back once the body is checked
+		table.enterScope(name.lexeme);
+		try {
+			if (functionDefinition.hasInstanceRef()) {
+				table.addSymbol(functionDefinition.getInstanceName().lexeme, functionDefinition.getInstanceRef().semtype);
+			}
+			for (ParamDefinition param : functionDefinition.getParamDefinitions()){
+				param.accept(this, table);
+			}
+
+			// check types of block
+			functionDefinition.getBody().accept(this, table);
+		} finally {
+			table.exitScope();
+		}
 
 		
         // check that all paths in the function return a value (if the function isn't void)
-        if (!retSemType.equals(voidType)) {
-            if (!hasReturnInAllPaths(functionDefinition.getBlock())) {
+        if (!functionDefinition.getRetSemType().equals(voidType)) {
+            if (!hasReturnInAllPaths(functionDefinition.getBody())) {
                 throw new ReturnError("Function '" + name.lexeme + "' has paths that don't return a value");
             }
         }
-		
-		functionDefinition.semtype = semType;
-		return retSemType;
+		// the body of a flat AST is dropped once its types are stored
+		functionDefinition.releaseBody();
+	}
+
+	/// Check the bodies of the declared functions, concurrently when there are enough of them.
+	/// Each body is checked on its own table on top of the global one, which is only read from,
+	/// and the first error in source order is thrown once all the bodies are checked
+	private void checkFunctionBodies(ArrayList<FunctionDefinition> functions, SymbolTable table) throws Exception {
+		Exception[] errors = new Exception[functions.size()];
+		IntStream bodies = IntStream.range(0, functions.size());
+		if (functions.size() >= PARALLEL_BODIES) {
+			// runs on the common fork-join pool
+			bodies = bodies.parallel();
+		}
+		bodies.forEach(i -> {
+			try {
+				checkFunctionBody(functions.get(i), new SymbolTable(table));
+			} catch (Exception e) {
+				errors[i] = e;
+			}
+		});
+
+		for (int i = 0; i < errors.length; i++) {
+			if (errors[i] != null) {
+				recover(errors[i], functions.get(i), table);
+			}
+		}
+	}
+
+	/// Report an error found in a statement or a declaration so that the analysis goes on with the next one, or throw it without diagnostics.
+	/// A variable whose declaration has an error is declared with the type it was declared with, if that type exists
+	private void recover(Exception error, ASTNode node, SymbolTable table) throws Exception {
+		if (diagnostics == null) {
+			throw error;
+		}
+		diagnostics.error(error, Code.SEMANTIC_ERROR, node.line, node.column);
+
+		if (node instanceof VariableDeclaration declaration && table.lookupSameScope(declaration.getName().lexeme) == null) {
+			try {
+				SemType declaredType = getSemTypeFromASTNodeType(table, declaration.getType());
+				if (declaration.isConstant()) {
+					table.addConstant(declaration.getName().lexeme, declaredType);
+				} else {
+					table.addSymbol(declaration.getName().lexeme, declaredType);
+				}
+			} catch (RecordError e) {
+				// the type doesn't exist either, the uses of the variable are reported
+			}
+		}
 	}
 	
 	private SemType getSemTypeFromASTNodeType(SymbolTable table, Type type) throws RecordError {
@@ -862,21 +958,21 @@ public class SemanticAnalysis implements Visitor<SemType, SymbolTable> {
 			if (type.symbol.type == RECORD) {
 				elemSemType = table.lookup(type.symbol.lexeme);
 				if (elemSemType == null) {
-					elemSemType = new RecordSemType(new LinkedHashMap<>(), type.symbol.lexeme);
+					elemSemType = types.record(type.symbol.lexeme);
 				}
 			} else {
-				elemSemType = new SemType(type.symbol.lexeme);
+				elemSemType = SemType.named(type.symbol.lexeme);
 			}
 
-			retSemType = new ArraySemType(elemSemType);
+			retSemType = ArraySemType.of(elemSemType);
 		} else if (type.symbol.type == RECORD) {
 			retSemType = table.lookup(type.symbol.lexeme);
 			if (retSemType == null) {
 //				throw new RecordError("The record type " + type.symbol.lexeme + " is not defined, at line " + type.line + " and column " + type.column);
-				retSemType = new RecordSemType(new LinkedHashMap<>(), type.symbol.lexeme);
+				retSemType = types.record(type.symbol.lexeme);
 			}
 		} else {
-			retSemType = new SemType(type.symbol.lexeme);
+			retSemType = SemType.named(type.symbol.lexeme);
 		}
 		return retSemType;
 	}
@@ -920,11 +1016,19 @@ public class SemanticAnalysis implements Visitor<SemType, SymbolTable> {
 	@Override
 	public SemType visitBlock(Block block, SymbolTable table) throws Exception {
 		for (Statement stmt : block.getStatements()) {
-			stmt.accept(this, table);
+			try {
+				stmt.accept(this, table);
+			} catch (Exception e) {
+				recover(e, stmt, table);
+			}
 		}
 		ReturnStatement returnStatement = (ReturnStatement) block.getReturnStatement();
 		if (returnStatement != null) {
-			returnStatement.accept(this, table);
+			try {
+				returnStatement.accept(this, table);
+			} catch (Exception e) {
+				recover(e, returnStatement, table);
+			}
 		}
 		return null;
 	}
@@ -975,8 +1079,6 @@ public class SemanticAnalysis implements Visitor<SemType, SymbolTable> {
 			fields.put(field.getIdentifier().lexeme, semType);
 		}
 
-		RecordSemType recordSemType = new RecordSemType(fields, recordDefinition.getIdentifier().lexeme);
-
 		// check that the new record identifier does not shadow any other identifier in the table (this includes other record, but also predefined functions)
 		SemType existingRecord = table.lookup(recordDefinition.getIdentifier().lexeme);
 		if (existingRecord != null) { // IF IT'S NOT NULL, then throw an error
@@ -989,6 +1091,9 @@ public class SemanticAnalysis implements Visitor<SemType, SymbolTable> {
 			}
 		}
 
+		// the uses of the record before its definition have the same type, which gets its fields here
+		RecordSemType recordSemType = types.record(recordDefinition.getIdentifier().lexeme);
+		recordSemType.fields.putAll(fields);
 		table.addSymbol(recordDefinition.getIdentifier().lexeme, recordSemType);
 
 		recordDefinition.semtype = recordSemType;
@@ -1049,13 +1154,17 @@ public class SemanticAnalysis implements Visitor<SemType, SymbolTable> {
 			throw new ScopeError("Something in the access chain at line " + variableAssignment.line + " is not defined, try not to define records with recursive fields (e.g., Record A { A a; } is not allowed), also try to define records in the right order");
 		}
 
+		// check that the variable is not a constant
+		if (variableAssignment.getAccess() instanceof IdentifierAccess identifierAccess && table.isConstant(identifierAccess.getIdentifier().lexeme)) {
+			throw new TypeError("Cannot assign to a constant variable " + variableAssignment.getAccess().toString() + " at line " + variableAssignment.line);
+		}
+
 		// and check that they match
 		if (!varType.equals(expressionType)) {
 
 			// the types didn't match, but if the expected type is a float and the given type is an int, we can convert it (here that means we keep going)
 			// if we can't convert the type, we throw an error: here if it's not the convertable case, we throw
 			if (varType.equals(floatType) && expressionType.equals(intType)) {
-				varType.toConvert = true;
 				variableAssignment.semtype = varType;
 				return null;
 			}
@@ -1073,11 +1182,6 @@ public class SemanticAnalysis implements Visitor<SemType, SymbolTable> {
 			throw new TypeError("Type of the variable '" + variableAssignment.getAccess().semtype + "' at line " + variableAssignment.line + " does not match the type of the expression '" + variableAssignment.getExpression().semtype + "'");
 		}
 
-		// then check that the variable is not a constant
-		if (varType.isConstant) {
-			throw new TypeError("Cannot assign to a constant variable " + variableAssignment.getAccess().toString() + " at line " + variableAssignment.line);
-		}
-
 		variableAssignment.semtype = varType;
 		return null;
 	}
@@ -1093,31 +1197,23 @@ public class SemanticAnalysis implements Visitor<SemType, SymbolTable> {
 		SemType semType;
 		if (!variableDeclaration.hasValue()) {
 			// if the variable is declared as a prototype
-//			semType = new SemType(type.symbol.lexeme, variableDeclaration.isConstant());
 			semType = getSemTypeFromASTNodeType(table, variableDeclaration.getType());
-			semType.setIsConstant(variableDeclaration.isConstant());
-			semType.setGlobal(variableDeclaration.isGlobal());
 		} else {
 			// a float = 3 + 7.0;
 			// or c float = 5;
 			semType = variableDeclaration.getValue().accept(this, table);
-			semType.setIsConstant(variableDeclaration.isConstant());
-			semType.setGlobal(variableDeclaration.isGlobal());
 
 			SemType declType = getSemTypeFromASTNodeType(table, type);
 			if (!declType.equals(semType)) {
-				if (declType.equals(floatType) && semType.equals(intType)) {
-//					variableDeclaration.conversionNeeded = true;
-					semType.toConvert = true;
-
-				}
-
 				throw new TypeError("Type of the variable " + name.lexeme + " ("+ declType +") at line " + variableDeclaration.line + " does not match the type of the expression " + semType);
 			}
 		}
 
-		table.addSymbol(name.lexeme, semType);
-
+		if (variableDeclaration.isConstant()) {
+			table.addConstant(name.lexeme, semType);
+		} else {
+			table.addSymbol(name.lexeme, semType);
+		}
 
 		variableDeclaration.semtype = semType;
 		return semType;
@@ -1,89 +1,256 @@
 package compiler.SemanticAnalysis;
 import compiler.SemanticAnalysis.Types.SemType;
 
-import java.util.HashMap;
+import java.util.Arrays;
 
+/// A flat symbol table: every name has a slot in one open addressing table, which points to the innermost binding of that name.
+/// The bindings are kept in the order they were made, each one pointing to the binding of the same name that it shadows,
+/// so a lookup is a single probe whatever the nesting depth, and leaving a scope rolls the bindings back to the mark made when it was entered.
+/// The parent table, if any, is an enclosing table that is only read from, e.g., the global table seen by the function bodies.
 public class SymbolTable {
+    private static final int NONE = -1;
+
     private final SymbolTable parent;
-    private final Integer scope;
-    private final HashMap<String, SemType> symbols;
-    private String localFunctionName;
+    private final int baseScope;
+
+    // open addressing table of the names, the names are never removed so the probing doesn't need tombstones
+    private String[] names = new String[32];
+    // the innermost binding of each name slot, NONE if the name isn't bound anymore
+    private int[] innermost = new int[32];
+    private int nameCount = 0;
+
+    // the bindings, in the order they were made
+    private int[] bindingSlots = new int[32];
+    private int[] shadowed = new int[32];
+    private int[] bindingScopes = new int[32];
+    private SemType[] bindingTypes = new SemType[32];
+    private boolean[] bindingConstants = new boolean[32];
+    private int bindingCount = 0;
+
+    // the first binding of each open scope (the marks), and the name of the function that scope is the body of
+    private int[] scopeMarks = new int[8];
+    private String[] scopeFunctionNames = new String[8];
+    private int depth = 0;
 
 
     public SymbolTable(SymbolTable parent) {
-        this.parent = parent;
-        this.scope = parent == null ? 0 : parent.scope + 1;
-        this.symbols = new HashMap<>();
+        this(parent, null);
     }
 
     public SymbolTable(SymbolTable parent, String localFunctionName) {
         this.parent = parent;
-        this.scope = parent == null ? 0 : parent.scope + 1;
-        this.symbols = new HashMap<>();
-        this.localFunctionName = localFunctionName;
+        this.baseScope = parent == null ? 0 : parent.getScope() + 1;
+        this.scopeFunctionNames[0] = localFunctionName;
     }
 
     public SymbolTable getParent() {
         return parent;
     }
 
+    /// Open a scope nested in the current one
+    public void enterScope() {
+        enterScope(null);
+    }
+
+    /// Open the scope of the body of a function, the return statements in it are checked against that function
+    public void enterScope(String functionName) {
+        if (++depth == scopeMarks.length) {
+            scopeMarks = Arrays.copyOf(scopeMarks, depth * 2);
+            scopeFunctionNames = Arrays.copyOf(scopeFunctionNames, depth * 2);
+        }
+        scopeMarks[depth] = bindingCount;
+        scopeFunctionNames[depth] = functionName;
+    }
+
+    /// Close the current scope, the names bound in it are unbound or point to the bindings they shadowed again
+    public void exitScope() {
+        if (depth == 0) {
+            throw new IllegalStateException("No scope to exit");
+        }
+        int mark = scopeMarks[depth];
+        for (int i = bindingCount - 1; i >= mark; i--) {
+            // a binding removed by removeSymbol isn't the innermost one anymore
+            if (innermost[bindingSlots[i]] == i) {
+                innermost[bindingSlots[i]] = shadowed[i];
+            }
+            bindingTypes[i] = null;
+        }
+        bindingCount = mark;
+        scopeFunctionNames[depth] = null;
+        depth--;
+    }
+
     public void addSymbol(String name, SemType node) {
-        symbols.put(name, node);
+        bind(name, node, false);
+    }
+
+    public void addConstant(String name, SemType node) {
+        bind(name, node, true);
+    }
+
+    private void bind(String name, SemType type, boolean constant) {
+        int slot = slotOf(name);
+        int binding = innermost[slot];
+        if (binding != NONE && bindingScopes[binding] == depth) {
+            // redefined in the same scope, the binding is replaced
+            bindingTypes[binding] = type;
+            bindingConstants[binding] = constant;
+            return;
+        }
+
+        if (bindingCount == bindingSlots.length) {
+            int capacity = bindingCount * 2;
+            bindingSlots = Arrays.copyOf(bindingSlots, capacity);
+            shadowed = Arrays.copyOf(shadowed, capacity);
+            bindingScopes = Arrays.copyOf(bindingScopes, capacity);
+            bindingTypes = Arrays.copyOf(bindingTypes, capacity);
+            bindingConstants = Arrays.copyOf(bindingConstants, capacity);
+        }
+        bindingSlots[bindingCount] = slot;
+        shadowed[bindingCount] = binding;
+        bindingScopes[bindingCount] = depth;
+        bindingTypes[bindingCount] = type;
+        bindingConstants[bindingCount] = constant;
+        innermost[slot] = bindingCount++;
+    }
+
+    /// Whether the symbol that lookup finds for that name is a constant
+    public boolean isConstant(String name) {
+        int binding = innermostBinding(name);
+        if (binding != NONE) {
+            return bindingConstants[binding];
+        }
+        return parent != null && parent.isConstant(name);
     }
 
     public SemType lookup(String name) {
-        SemType node = symbols.get(name);
-        if (node == null && parent != null) {
-            return parent.lookup(name);
+        int binding = innermostBinding(name);
+        if (binding != NONE) {
+            return bindingTypes[binding];
         }
-        return node;
+        return parent == null ? null : parent.lookup(name);
     }
 
     public SemType lookupSameScope(String name){
-        return symbols.get(name);
+        int binding = innermostBinding(name);
+        return binding != NONE && bindingScopes[binding] == depth ? bindingTypes[binding] : null;
     }
 
+    /// Unbind a name of the current scope, the binding it shadowed is visible again
     public void removeSymbol(String name) {
-        symbols.remove(name);
+        int slot = findSlot(name);
+        if (slot == NONE) {
+            return;
+        }
+        int binding = innermost[slot];
+        if (binding != NONE && bindingScopes[binding] == depth) {
+            innermost[slot] = shadowed[binding];
+        }
     }
 
     public Integer getScope() {
-        return scope;
+        return baseScope + depth;
     }
 
     public void setLocalFunctionName(String localFunctionName) {
-        this.localFunctionName = localFunctionName;
+        scopeFunctionNames[depth] = localFunctionName;
     }
 
+    /// The name of the function whose body is the innermost scope, or null outside of functions
     public String getLocalFunctionName() {
-        return localFunctionName;
+        for (int scope = depth; scope >= 0; scope--) {
+            if (scopeFunctionNames[scope] != null) {
+                return scopeFunctionNames[scope];
+            }
+        }
+        return null;
     }
 
-    // root new SymbolTable(null);
-    // for elem in root :
-    //     if elem is a function:
-    //          functionTable = new SymbolTable(root);
-    //          for param in elem.getParams():
-    //              functionTable.addSymbol(param.getName(), getType(param));
+    private int innermostBinding(String name) {
+        int slot = findSlot(name);
+        return slot == NONE ? NONE : innermost[slot];
+    }
 
-    //          for elem in elem.getBody():
-    //              if elem in an Expression:
-    //                  typeCheck(elem);
-    //              if elem is a variable:
-    //                  functionTable.addSymbol(elem.getName(), getType(elem));
+    private int findSlot(String name) {
+        int mask = names.length - 1;
+        for (int i = hash(name) & mask; names[i] != null; i = (i + 1) & mask) {
+            if (names[i] == name || names[i].equals(name)) {
+                return i;
+            }
+        }
+        return NONE;
+    }
 
-    //     addSymbol(elem.getName(), getType(elem));
+    private int slotOf(String name) {
+        int slot = findSlot(name);
+        if (slot != NONE) {
+            return slot;
+        }
 
-    // fun main(int x, int y)
+        // keep the table at most half full so the probe sequences stay short
+        if (2 * (nameCount + 1) > names.length) {
+            grow();
+        }
+        int mask = names.length - 1;
+        slot = hash(name) & mask;
+        while (names[slot] != null) {
+            slot = (slot + 1) & mask;
+        }
+        names[slot] = name;
+        innermost[slot] = NONE;
+        nameCount++;
+        return slot;
+    }
+
+    private void grow() {
+        String[] oldNames = names;
+        int[] oldInnermost = innermost;
+        names = new String[oldNames.length * 2];
+        innermost = new int[oldNames.length * 2];
+
+        // the slots of the names move, so the bindings are pointed to their new slot
+        int[] moved = new int[oldNames.length];
+        int mask = names.length - 1;
+        for (int old = 0; old < oldNames.length; old++) {
+            if (oldNames[old] == null) {
+                continue;
+            }
+            int slot = hash(oldNames[old]) & mask;
+            while (names[slot] != null) {
+                slot = (slot + 1) & mask;
+            }
+            names[slot] = oldNames[old];
+            innermost[slot] = oldInnermost[old];
+            moved[old] = slot;
+        }
+        for (int i = 0; i < bindingCount; i++) {
+            bindingSlots[i] = moved[bindingSlots[i]];
+        }
+    }
 
+    private static int hash(String name) {
+        int h = name.hashCode();
+        return h ^ (h >>> 16);
+    }
 
     @Override
     public String toString() {
+        StringBuilder symbols = new StringBuilder("{");
+        for (int slot = 0; slot < names.length; slot++) {
+            if (names[slot] != null && innermost[slot] != NONE) {
+                if (symbols.length() > 1) {
+                    symbols.append(", ");
+                }
+                symbols.append(names[slot]).append('=').append(bindingTypes[innermost[slot]]);
+            }
+        }
+        symbols.append('}');
+
         return "SymbolTable{" +
                 "parent=" + parent +
-                ", scope=" + scope +
-                ", symbols=" + symbols.toString() +
-                ", localFunctionName='" + localFunctionName + '\'' +
+                ", scope=" + getScope() +
+                ", symbols=" + symbols +
+                ", localFunctionName='" + getLocalFunctionName() + '\'' +
                 '}';
     }
 }
@@ -1,20 +1,35 @@
 package compiler.SemanticAnalysis.Types;
 
 public class ArraySemType extends SemType {
-	public SemType elementSemType;
+	public final SemType elementSemType;
 	int size;
 
 	public ArraySemType(SemType elementSemType, int size) {
-		super("array");
+		super("array", Kind.ARRAY);
 		this.elementSemType = elementSemType;
 		this.size = size;
 	}
 
 	public ArraySemType(SemType elementSemType) {
-		super("array");
+		super("array", Kind.ARRAY);
 		this.elementSemType = elementSemType;
 	}
 
+	/// The canonical type of the arrays of that element type, there is one per element type
+	public static ArraySemType of(SemType elementSemType) {
+		ArraySemType arrayType = elementSemType.arrayType;
+		if (arrayType == null) {
+			synchronized (elementSemType) {
+				arrayType = elementSemType.arrayType;
+				if (arrayType == null) {
+					arrayType = new ArraySemType(elementSemType);
+					elementSemType.arrayType = arrayType;
+				}
+			}
+		}
+		return arrayType;
+	}
+
 	public SemType getElementSemType() {
 		return elementSemType;
 	}
@@ -25,7 +40,6 @@ public class ArraySemType extends SemType {
 				"elementSemType=" + elementSemType +
 				", size=" + size +
 				", type='" + type + '\'' +
-				", isConstant=" + isConstant +
 				'}';
 	}
 
@@ -8,7 +8,7 @@ public class FunctionSemType extends SemType {
 
 	public FunctionSemType(SemType retType, SemType[] paramSemTypes) {
 		// this.type is the return type of the function
-		super("function");
+		super("function", Kind.FUNCTION);
 		this.retType = retType;
 		this.paramSemTypes = paramSemTypes;
 	}
@@ -24,8 +24,7 @@ public class FunctionSemType extends SemType {
 	@Override
 	public String toString() {
 		return "FunctionSemType{" +
-				"isConstant=" + isConstant +
-				", type='" + type + '\'' +
+				"type='" + type + '\'' +
 				", paramSemTypes=" + Arrays.toString(paramSemTypes) +
 				", retType=" + retType +
 				'}';
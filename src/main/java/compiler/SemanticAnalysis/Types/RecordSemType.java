@@ -3,7 +3,7 @@ package compiler.SemanticAnalysis.Types;
 import org.objectweb.asm.Type;
 
 import java.util.LinkedHashMap;
-import java.util.Objects;
+import java.util.Map;
 import java.util.TreeMap;
 import static org.objectweb.asm.Opcodes.*;
 
@@ -12,31 +12,38 @@ public class RecordSemType extends SemType {
 	public String identifier;
 
 	public RecordSemType(LinkedHashMap<String, SemType> fields, String identifier) {
-		super("rec");
+		super("rec", Kind.RECORD);
 		this.fields = fields;
 		this.identifier = identifier;
 	}
 
 	@Override
 	public String toString() {
+		// the fields that are records are printed by name, since a record can reference itself through its fields
+		StringBuilder fieldsString = new StringBuilder("{");
+		for (Map.Entry<String, SemType> field : fields.entrySet()) {
+			if (fieldsString.length() > 1) {
+				fieldsString.append(", ");
+			}
+			SemType fieldType = field.getValue();
+			fieldsString.append(field.getKey()).append('=').append(fieldType instanceof RecordSemType record ? record.identifier : fieldType);
+		}
 		return "RecordSemType{" +
 				"identifier="+identifier +
-				", fields=" + fields +
+				", fields=" + fieldsString.append('}') +
 				", type='" + type + '\'' +
 				'}';
 	}
 
+	/// The record types of an analysis are unique by name in its TypeTable, so they are compared by reference
 	@Override
 	public boolean equals(Object o) {
-		if (o == null || getClass() != o.getClass()) return false;
-		if (!super.equals(o)) return false;
-		RecordSemType that = (RecordSemType) o;
-		return Objects.equals(fields, that.fields) && Objects.equals(identifier, that.identifier);
+		return this == o;
 	}
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(super.hashCode(), fields, identifier);
+		return identifier.hashCode();
 	}
 
 	// fields.values == fields2.values [int int int] == [int int int]
@@ -1,91 +1,107 @@
 package compiler.SemanticAnalysis.Types;
 
 
-import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 
+/// The types are flyweights: the basic types are interned by name (SemType.INT, SemType.named("int"), ...),
+/// the array types by element type (ArraySemType.of), and the record and function types of an analysis by its TypeTable.
+/// The kind of a type is set when it is created, so the checks compare enums and references instead of the names.
+/// The types are shared by all the nodes that have them, so they don't hold any flag of a node.
 public class SemType {
 
-	public String type;
-	public Boolean isConstant = false;
-	public Boolean isGlobal = false;
-	public Boolean toConvert = false;
+	public enum Kind {
+		INT, FLOAT, NUM, NUM_OR_BOOL, STRING, BOOL, VOID, ANY, ARRAY, FUNCTION, RECORD,
+		// any other name, compared by name
+		NAMED
+	}
+
+	// declared before the constants below, which are interned in it
+	private static final ConcurrentHashMap<String, SemType> NAMED_TYPES = new ConcurrentHashMap<>();
+
+	public static final SemType INT = named("int");
+	public static final SemType FLOAT = named("float");
+	public static final SemType NUM = named("num");
+	public static final SemType NUM_OR_BOOL = named("numOrBool");
+	public static final SemType STRING = named("string");
+	public static final SemType BOOL = named("bool");
+	public static final SemType VOID = named("void");
+	public static final SemType ANY = named("any");
+	public static final SemType REC = named("rec");
+
+	public final String type;
+	public final Kind kind;
+	// the type of the arrays of this type, created by ArraySemType.of
+	volatile ArraySemType arrayType;
 
 	public SemType(String type) {
-		this.type = type;
+		this(type, kindOf(type));
 	}
 
-	public SemType(String type, Boolean isConstant) {
+	protected SemType(String type, Kind kind) {
 		this.type = type;
-		this.isConstant = isConstant;
+		this.kind = kind;
 	}
 
-	public String getType() {
-		return type;
-	}
-
-	@Override
-	public String toString() {
-//		return "SemType{" +
-//				"type='" + type + '\'' +
-//				", isConstant=" + isConstant +
-//				", isGlobal=" + isGlobal +
-//				", toConvert=" + toConvert +
-//				'}';
-		return type;
+	/// The canonical instance of the basic type with that name
+	public static SemType named(String type) {
+		SemType semType = NAMED_TYPES.get(type);
+		return semType != null ? semType : NAMED_TYPES.computeIfAbsent(type, SemType::new);
 	}
 
-	public Boolean getConstant() {
-		return isConstant;
+	private static Kind kindOf(String type) {
+		return switch (type) {
+			case "int" -> Kind.INT;
+			case "float" -> Kind.FLOAT;
+			case "num" -> Kind.NUM;
+			case "numOrBool" -> Kind.NUM_OR_BOOL;
+			case "string" -> Kind.STRING;
+			case "bool" -> Kind.BOOL;
+			case "void" -> Kind.VOID;
+			case "any" -> Kind.ANY;
+			case null, default -> Kind.NAMED;
+		};
 	}
 
-	public void setIsConstant(Boolean isConstant) {
-		this.isConstant = isConstant;
+	public String getType() {
+		return type;
 	}
 
-	public Boolean getGlobal() {
-		return isGlobal;
+	public Kind getKind() {
+		return kind;
 	}
 
-	public void setGlobal(Boolean global) {
-		isGlobal = global;
+	@Override
+	public String toString() {
+		return type;
 	}
 
 	@Override
 	public boolean equals(Object o) {
-		if (o == null || getClass() != o.getClass()) return false;
-		SemType semType = (SemType) o;
-
-		// ints can be made equivalent to floats, but not the opposite
-//		if (type.equals("int") && semType.type.equals("float")) {
-//			return true;
-//		}
-//
-//		// ints can be made equivalent to floats, but not the opposite
-//		if (type.equals("float") && semType.type.equals("int")) {
-//			return true;
-//		}
+		if (this == o) return true;
+		if (!(o instanceof SemType semType)) return false;
 
 		// ints and floats are equivalent to the num type
-		if ((type.equals("int")  || type.equals("float") || type.equals("num")) && semType.type.equals("num")) {
+		if (semType.kind == Kind.NUM && (kind == Kind.INT || kind == Kind.FLOAT)) {
 			return true;
 		}
 
-		return Objects.equals(type, semType.type);
+		// all the array types are equal, and so are all the function types
+		return kind == semType.kind && (kind != Kind.NAMED || type.equals(semType.type));
 	}
 
 	@Override
 	public int hashCode() {
-		return Objects.hash(type);
+		return kind == Kind.NAMED ? type.hashCode() : kind.ordinal();
 	}
 
 	// Inspired by the Norswap compiler https://github.com/norswap/sigh/blob/master/src/norswap/sigh/bytecode/TypeUtils.java#L97
 	public String fieldDescriptor () {
-		return switch (type) {
-			case "int" -> "I"; // int
-			case "bool" -> "Z"; // booleans
-			case "float" -> "F"; // float
-			case "void" -> "V"; // void
-			case "string" -> "Ljava/lang/String;";
+		return switch (kind) {
+			case INT -> "I"; // int
+			case BOOL -> "Z"; // booleans
+			case FLOAT -> "F"; // float
+			case VOID -> "V"; // void
+			case STRING -> "Ljava/lang/String;";
 			default -> throw new Error("Unknown type: " + type);
 		};
 	}
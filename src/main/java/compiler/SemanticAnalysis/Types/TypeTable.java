@@ -0,0 +1,47 @@
+package compiler.SemanticAnalysis.Types;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/// The record and function types of one analysis. A record name or a signature always gives the same instance,
+/// so these types are compared by reference like the basic types. A record is created empty the first time its name
+/// is reached, which can be before its definition, and its definition fills its fields.
+/// The function bodies are checked concurrently and can reach the records, so the table is thread safe.
+public final class TypeTable {
+	private final ConcurrentHashMap<String, RecordSemType> records = new ConcurrentHashMap<>();
+	private final ConcurrentHashMap<Signature, FunctionSemType> functions = new ConcurrentHashMap<>();
+
+	public RecordSemType record(String identifier) {
+		return records.computeIfAbsent(identifier, name -> new RecordSemType(new LinkedHashMap<>(), name));
+	}
+
+	public FunctionSemType function(SemType retType, SemType... paramSemTypes) {
+		SemType[] params = paramSemTypes.clone();
+		return functions.computeIfAbsent(new Signature(retType, params), signature -> new FunctionSemType(retType, params));
+	}
+
+	/// The types of a signature are canonical instances, so they are compared by reference
+	private record Signature(SemType retType, SemType[] paramSemTypes) {
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Signature that) || retType != that.retType || paramSemTypes.length != that.paramSemTypes.length) {
+				return false;
+			}
+			for (int i = 0; i < paramSemTypes.length; i++) {
+				if (paramSemTypes[i] != that.paramSemTypes[i]) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+		@Override
+		public int hashCode() {
+			int hash = System.identityHashCode(retType);
+			for (SemType param : paramSemTypes) {
+				hash = 31 * hash + System.identityHashCode(param);
+			}
+			return hash;
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package compiler.Server;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+/// Thin client of the compile server, it takes the same arguments as the compiler and exits with the compiler's exit code.
+/// It only depends on the JDK so that it starts fast, the actual compiler classes are loaded (and warm) in the server.
+///
+/// Usage: `CompileClient [--socket <path>] [--shutdown] <compiler arguments>`
+public class CompileClient {
+
+	public static void main(String[] args) {
+		Path socketPath = defaultSocketPath();
+		String command = CompileServer.COMPILE;
+
+		int first = 0;
+		while (first < args.length) {
+			if (args[first].equals("--socket") && first + 1 < args.length) {
+				socketPath = Path.of(args[first + 1]);
+				first += 2;
+			} else if (args[first].equals("--shutdown")) {
+				command = CompileServer.SHUTDOWN;
+				first++;
+			} else {
+				break;
+			}
+		}
+
+		try {
+			int exitCode = send(socketPath, command, Arrays.copyOfRange(args, first, args.length), System.err);
+			System.exit(exitCode);
+		} catch (IOException e) {
+			System.err.println("Could not reach the compile server at " + socketPath + ": " + e.getMessage());
+			System.exit(1);
+		}
+	}
+
+	/// Socket used when none is given, in a directory of the temporary directory that only its user can access,
+	/// the server creates it
+	public static Path defaultSocketPath() {
+		return Path.of(System.getProperty("java.io.tmpdir"), "lang-compiler-" + System.getProperty("user.name"), "compiler.sock");
+	}
+
+	/// Ask the server to compile a file, the diagnostics are copied to the given stream and the exit code of the compiler is returned
+	public static int compile(Path socketPath, String[] args, OutputStream diagnostics) throws IOException {
+		return send(socketPath, CompileServer.COMPILE, args, diagnostics);
+	}
+
+	private static int send(Path socketPath, String command, String[] args, OutputStream diagnostics) throws IOException {
+		try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+			channel.connect(UnixDomainSocketAddress.of(socketPath));
+
+			DataOutputStream output = new DataOutputStream(Channels.newOutputStream(channel));
+			output.writeUTF(command);
+			output.writeUTF(Path.of("").toAbsolutePath().toString());
+			output.writeInt(args.length);
+			for (String arg : args) {
+				output.writeUTF(arg);
+			}
+			output.flush();
+
+			DataInputStream input = new DataInputStream(Channels.newInputStream(channel));
+			int exitCode = input.readInt();
+			byte[] diagnosticsBytes = new byte[input.readInt()];
+			input.readFully(diagnosticsBytes);
+			diagnostics.write(diagnosticsBytes);
+			diagnostics.flush();
+			return exitCode;
+		}
+	}
+}
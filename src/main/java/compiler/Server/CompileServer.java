@@ -0,0 +1,216 @@
+package compiler.Server;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.ParameterException;
+import compiler.Compiler;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/// Long-running compiler that accepts compile requests on a Unix domain socket, so that the JVM startup, the class loading
+/// and the JIT warm-up are only paid once for many compilations.
+///
+/// Protocol (DataInput/DataOutput encoding), one request per connection:
+/// - request: the command (COMPILE or SHUTDOWN), the working directory of the client, the number of arguments and the arguments,
+///   i.e., the same arguments as the compiler's command line
+/// - response: the exit code of the compiler, then the length and the UTF-8 bytes of the diagnostics
+public class CompileServer implements AutoCloseable {
+	public static final String COMPILE = "compile";
+	public static final String SHUTDOWN = "shutdown";
+
+	private final Path socketPath;
+	private final ExecutorService workers;
+	private ServerSocketChannel serverChannel;
+	private Thread acceptThread;
+
+	public CompileServer(Path socketPath) {
+		this.socketPath = socketPath;
+		// the compilations are independent, so they can run on all the cores
+		this.workers = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+	}
+
+	public static void main(String[] args) throws Exception {
+		Path socketPath = args.length > 0 ? Path.of(args[0]) : CompileClient.defaultSocketPath();
+
+		CompileServer server = new CompileServer(socketPath);
+		Runtime.getRuntime().addShutdownHook(new Thread(server::close));
+		server.start();
+		System.err.println("Compile server listening on " + socketPath);
+		server.acceptThread.join();
+	}
+
+	/// Bind the socket and start accepting the requests in the background.
+	/// Fails if another server already listens on that socket. Only the owner of the server can connect to it,
+	/// since the files are compiled and written with the rights of the server
+	public void start() throws IOException {
+		secureDirectory(socketPath.toAbsolutePath().getParent());
+		if (Files.exists(socketPath)) {
+			if (isListening(socketPath)) {
+				throw new IOException("A compile server is already listening on " + socketPath);
+			}
+			// a previous server that crashed leaves its socket file behind
+			Files.delete(socketPath);
+		}
+
+		ServerSocketChannel channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+		try {
+			channel.bind(UnixDomainSocketAddress.of(socketPath));
+		} catch (IOException e) {
+			channel.close();
+			throw e;
+		}
+		// from now on the socket file is this server's, and close deletes it
+		serverChannel = channel;
+		if (isPosix()) {
+			Files.setPosixFilePermissions(socketPath, PosixFilePermissions.fromString("rw-------"));
+		}
+
+		acceptThread = new Thread(this::acceptConnections, "compile-server");
+		acceptThread.start();
+	}
+
+	/// Create the directory of the socket for the owner only if it doesn't exist. An existing one must belong to the owner of the server
+	/// or to root (e.g., the temporary directory), otherwise its owner could replace the socket with one of their own
+	private static void secureDirectory(Path directory) throws IOException {
+		if (!isPosix()) {
+			Files.createDirectories(directory);
+			return;
+		}
+		if (Files.notExists(directory)) {
+			Files.createDirectories(directory, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+			return;
+		}
+		String owner = Files.getOwner(directory).getName();
+		if (!owner.equals(System.getProperty("user.name")) && !owner.equals("root")) {
+			throw new IOException("The directory of the socket " + directory + " belongs to another user (" + owner + ")");
+		}
+	}
+
+	private static boolean isPosix() {
+		return FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+	}
+
+	/// Whether a server accepts the connections on that socket
+	private static boolean isListening(Path socketPath) {
+		try (SocketChannel channel = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+			channel.connect(UnixDomainSocketAddress.of(socketPath));
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	private void acceptConnections() {
+		while (serverChannel.isOpen()) {
+			try {
+				SocketChannel channel = serverChannel.accept();
+				workers.execute(() -> handleConnection(channel));
+			} catch (IOException e) {
+				// the channel was closed by a shutdown request
+				break;
+			}
+		}
+	}
+
+	private void handleConnection(SocketChannel channel) {
+		try (channel) {
+			DataInputStream input = new DataInputStream(Channels.newInputStream(channel));
+			DataOutputStream output = new DataOutputStream(Channels.newOutputStream(channel));
+
+			String command = input.readUTF();
+			String workingDirectory = input.readUTF();
+			String[] args = new String[input.readInt()];
+			for (int i = 0; i < args.length; i++) {
+				args[i] = input.readUTF();
+			}
+
+			ByteArrayOutputStream diagnosticsBytes = new ByteArrayOutputStream();
+			PrintStream diagnostics = new PrintStream(diagnosticsBytes, true, StandardCharsets.UTF_8);
+			int exitCode;
+			if (command.equals(SHUTDOWN)) {
+				exitCode = 0;
+			} else if (command.equals(COMPILE)) {
+				exitCode = compile(Path.of(workingDirectory), args, diagnostics);
+			} else {
+				diagnostics.println("Unknown command: " + command);
+				exitCode = 1;
+			}
+
+			byte[] diagnosticsArray = diagnosticsBytes.toByteArray();
+			output.writeInt(exitCode);
+			output.writeInt(diagnosticsArray.length);
+			output.write(diagnosticsArray);
+			output.flush();
+
+			if (command.equals(SHUTDOWN)) {
+				close();
+			}
+		} catch (IOException e) {
+			// the client went away, there is nobody to report the error to
+		}
+	}
+
+	/// Compile one file with the given command line arguments, the relative paths are resolved against the working directory of the client
+	static int compile(Path workingDirectory, String[] args, PrintStream diagnostics) {
+		Compiler compiler = new Compiler();
+		try {
+			JCommander.newBuilder()
+					.addObject(compiler)
+					.build()
+					.parse(args);
+		} catch (ParameterException e) {
+			diagnostics.println(e.getMessage());
+			return 1;
+		}
+
+		if (compiler.module != null || compiler.runInProcess) {
+			diagnostics.println("The compile server only generates class files, run the compiler directly to use --module or --run");
+			return 1;
+		}
+
+		compiler.file = workingDirectory.resolve(compiler.file).toString();
+		if (compiler.out != null) {
+			compiler.out = workingDirectory.resolve(compiler.out).toString();
+		}
+		if (compiler.cacheDir != null) {
+			compiler.cacheDir = workingDirectory.resolve(compiler.cacheDir).toString();
+		}
+
+		try {
+			return compiler.compile(diagnostics);
+		} catch (RuntimeException | StackOverflowError e) {
+			// a bug in the compiler must not take the server down with it
+			e.printStackTrace(diagnostics);
+			return 1;
+		}
+	}
+
+	@Override
+	public void close() {
+		try {
+			// the socket file is left alone if this server never bound it, e.g., because another server listens on it
+			if (serverChannel != null) {
+				serverChannel.close();
+				Files.deleteIfExists(socketPath);
+			}
+		} catch (IOException e) {
+			// nothing left to clean up
+		}
+		workers.shutdown();
+	}
+}
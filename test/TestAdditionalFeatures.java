@@ -1,7 +1,12 @@
 import compiler.Compiler;
 import static org.junit.Assert.*;
 import org.junit.Test;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.stream.Collectors;
 
 
 public class TestAdditionalFeatures {
@@ -639,42 +644,31 @@ public class TestAdditionalFeatures {
 	private void assertOutputEquals(String program, String expected) throws Exception {
 		File tempFile = File.createTempFile("test", ".lang");
 		tempFile.deleteOnExit();
+		Files.writeString(tempFile.toPath(), program);
 
-		java.io.FileWriter writer = new java.io.FileWriter(tempFile);
-		writer.write(program);
-		writer.close();
-
-		// run the compiler
 		Compiler compiler = new compiler.Compiler();
-		// set the arguments ourselves, this is kinda shitty but it works...
 		compiler.file = tempFile.getAbsolutePath();
-		compiler.out = tempFile.getAbsolutePath().replace(".lang", ".class");
-
-		compiler.run();
-
-//        System.out.println("tempFile.getParent() = " + tempFile.getParent());
-		String className = tempFile.getName().replace(".lang", "");
-//		className = className.substring(0, 1).toUpperCase() + className.substring(1);
 
-
-		// execute the compiled class and capture output
-//        Process process = Runtime.getRuntime().exec("java -cp " + tempFile.getParent() + " " + className);
-		ProcessBuilder processBuilder = new ProcessBuilder("java", "-cp", tempFile.getParent(), className);
-		processBuilder.redirectErrorStream(true); // redirect error stream to output stream
-		Process process = processBuilder.start();
-
-		java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.InputStreamReader(process.getInputStream()));
-		StringBuilder output = new StringBuilder();
-		String line;
-		while ((line = reader.readLine()) != null) {
-			output.append(line).append("\n");
-		}
-		// wait for the process to finish
-		process.waitFor();
+		// run the program in this JVM and capture its output
+		ByteArrayOutputStream outputBytes = new ByteArrayOutputStream();
+		PrintStream stdout = System.out;
+		System.setOut(new PrintStream(outputBytes, true, StandardCharsets.UTF_8));
+		try {
+			compiler.runInMemory();
+		} catch (Throwable e) {
+			throw new AssertionError("The program crashed, output: " + outputBytes.toString(StandardCharsets.UTF_8), e);
+		} finally {
+			System.setOut(stdout);
+		}
+
+		// every line ends with a newline, like when the output of a process is read line by line
+		String output = outputBytes.toString(StandardCharsets.UTF_8).lines()
+				.map(line -> line + "\n")
+				.collect(Collectors.joining());
 		System.out.println("output = " + output);
 
 		// verify output
-		assertEquals(expected, output.toString());
+		assertEquals(expected, output);
 	}
 
 }
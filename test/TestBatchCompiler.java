@@ -0,0 +1,126 @@
+import static org.junit.Assert.*;
+
+import compiler.BatchCompiler;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class TestBatchCompiler {
+
+    @Test
+    public void testCompileDirectory() throws Exception {
+        Path sources = Files.createTempDirectory("batch");
+        Files.createDirectory(sources.resolve("nested"));
+        for (int i = 0; i < 20; i++) {
+            Path directory = i % 2 == 0 ? sources : sources.resolve("nested");
+            Files.writeString(directory.resolve("prog" + i + ".lang"), "fun main() {\n    writeln(" + i + ");\n}\n");
+        }
+        Files.writeString(sources.resolve("notes.txt"), "not a source file");
+        Path classes = Files.createTempDirectory("classes");
+
+        BatchCompiler batchCompiler = new BatchCompiler();
+        batchCompiler.paths = List.of(sources.toString());
+        batchCompiler.outDir = classes.toString();
+        batchCompiler.threads = 4;
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+        int exitCode = batchCompiler.run(new PrintStream(output), new PrintStream(diagnostics));
+
+        assertEquals(0, exitCode);
+        assertEquals("", diagnostics.toString(StandardCharsets.UTF_8));
+        assertTrue(output.toString(StandardCharsets.UTF_8).startsWith("Compiled 20 files (60 lines)"));
+        for (int i = 0; i < 20; i++) {
+            Path directory = i % 2 == 0 ? classes : classes.resolve("nested");
+            assertTrue(Files.exists(directory.resolve("prog" + i + ".class")));
+        }
+    }
+
+    @Test
+    public void testSameNamesInDifferentDirectories() throws Exception {
+        Path sources = Files.createTempDirectory("batch");
+        for (String directory : List.of("a", "b")) {
+            Files.createDirectory(sources.resolve(directory));
+            Files.writeString(sources.resolve(directory).resolve("prog.lang"),
+                    "Point rec {\n    x int;\n}\nfun main() {\n    writeln(\"" + directory + "\");\n}\n");
+        }
+        Path classes = Files.createTempDirectory("classes");
+
+        BatchCompiler batchCompiler = new BatchCompiler();
+        batchCompiler.paths = List.of(sources.toString());
+        batchCompiler.outDir = classes.toString();
+        batchCompiler.threads = 2;
+        ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+        int exitCode = batchCompiler.run(new PrintStream(new ByteArrayOutputStream()), new PrintStream(diagnostics));
+
+        assertEquals(diagnostics.toString(StandardCharsets.UTF_8), 0, exitCode);
+        for (String directory : List.of("a", "b")) {
+            assertTrue(Files.exists(classes.resolve(directory).resolve("prog.class")));
+            assertTrue(Files.exists(classes.resolve(directory).resolve("Point.class")));
+        }
+    }
+
+    @Test
+    public void testCollidingClassFilesAreRejected() throws Exception {
+        Path sources = Files.createTempDirectory("batch");
+        Path first = sources.resolve("first.lang");
+        Files.writeString(first, "Point rec {\n    x int;\n}\nfun main() {\n    writeln(1);\n}\n");
+        Path second = sources.resolve("second.lang");
+        Files.writeString(second, "Point rec {\n    x string;\n}\nfun main() {\n    writeln(2);\n}\n");
+        // same name as the first one, given as an argument it goes in the output directory too
+        Files.createDirectory(sources.resolve("other"));
+        Path third = sources.resolve("other").resolve("first.lang");
+        Files.writeString(third, "fun main() {\n    writeln(3);\n}\n");
+        Path classes = Files.createTempDirectory("classes");
+
+        BatchCompiler batchCompiler = new BatchCompiler();
+        batchCompiler.outDir = classes.toString();
+        batchCompiler.threads = 3;
+        List<BatchCompiler.FileResult> results = batchCompiler.compileAll(List.of(source(first), source(second), source(third)));
+
+        // the first file keeps its classes, the files that would overwrite them fail
+        assertEquals(0, results.get(0).exitCode());
+        assertEquals(3, results.get(1).exitCode());
+        assertTrue(results.get(1).diagnostics().contains("error[OutputError]"));
+        assertTrue(results.get(1).diagnostics().contains(first.toString()));
+        assertEquals(3, results.get(2).exitCode());
+        assertFalse(Files.exists(classes.resolve("second.class")));
+        assertTrue(Files.exists(classes.resolve("first.class")));
+        assertTrue(Files.exists(classes.resolve("Point.class")));
+        // the runtime classes are the same for every file, they don't collide
+        assertTrue(Files.exists(classes.resolve("compiler/Runtime/StdOut.class")));
+        assertEquals(6, results.get(0).lines());
+    }
+
+    @Test
+    public void testFailuresDoNotStopTheBatch() throws Exception {
+        Path sources = Files.createTempDirectory("batch");
+        Path good = sources.resolve("good.lang");
+        Files.writeString(good, "fun main() { writeln(1); }");
+        Path syntaxError = sources.resolve("syntax.lang");
+        Files.writeString(syntaxError, "fun main() { x int = ; }");
+        Path typeError = sources.resolve("types.lang");
+        Files.writeString(typeError, "fun main() { x int = \"text\"; }");
+
+        BatchCompiler batchCompiler = new BatchCompiler();
+        batchCompiler.threads = 2;
+        List<BatchCompiler.FileResult> results = batchCompiler.compileAll(List.of(source(syntaxError), source(good), source(typeError)));
+
+        assertEquals(3, results.size());
+        assertEquals(syntaxError, results.get(0).file());
+        assertEquals(1, results.get(0).exitCode());
+        assertTrue(results.get(0).diagnostics().contains("Syntax Error"));
+        assertEquals(0, results.get(1).exitCode());
+        assertEquals(2, results.get(2).exitCode());
+        assertTrue(Files.exists(sources.resolve("good.class")));
+    }
+
+    private static BatchCompiler.Source source(Path file) {
+        return new BatchCompiler.Source(file, Path.of(""));
+    }
+}
@@ -1,7 +1,27 @@
 import static org.junit.Assert.*;
+import compiler.CodeGen.CodeGen;
 import compiler.Compiler;
+import compiler.Generator.ProgramGenerator;
+import compiler.Lexer.Lexer;
+import compiler.Parser.ASTNodes.Program;
+import compiler.Parser.ASTNodes.Statements.Statements.FunctionDefinition;
+import compiler.Parser.FlatAST;
+import compiler.Parser.Parser;
+import compiler.SemanticAnalysis.SemanticAnalysis;
 import org.junit.Test;
+import org.objectweb.asm.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.InputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Collectors;
 
 public class TestCodeGeneration {
 
@@ -1082,6 +1102,27 @@ public class TestCodeGeneration {
         assertOutputEqualsWithInput(program, "3.14\n", expectedOutput);
     }
 
+    @Test
+    public void testReadFloatRoundsLikeParseFloat() throws Exception {
+        String program = """
+        fun main() {
+            writeln(readFloat());
+            writeln(readFloat());
+            writeln(readFloat());
+            writeln(readFloat());
+        }
+        """;
+        // the first two used to be rounded to a double and then to a float
+        String input = "0.231806181371212 0.0164795508608222 -1234.567 0.00000000001\n";
+        String expectedOutput = """
+        0.23180617
+        0.01647955
+        -1234.567
+        1.0E-11
+        """;
+        assertOutputEqualsWithInput(program, input, expectedOutput);
+    }
+
     @Test
     public void testReadString() throws Exception {
         String program = """
@@ -1148,6 +1189,258 @@ public class TestCodeGeneration {
         assertOutputEquals(program, expectedOutput);
     }
 
+    @Test
+    public void testBooleanEquality() throws Exception {
+        String program = """
+        fun main() {
+            t bool = true;
+            f bool = false;
+            writeln(t == f);
+            writeln(t != f);
+            writeln(f == f);
+        }
+        """;
+        assertOutputEquals(program, "false\ntrue\ntrue\n");
+    }
+
+    @Test
+    public void testFloatComparisons() throws Exception {
+        String program = """
+        fun main() {
+            a float = 2.0;
+            b float = 2.0;
+            nan float = 0.0 / 0.0;
+            writeln(a >= b);
+            writeln(a > b);
+            writeln(nan > a);
+            writeln(nan >= a);
+            writeln(nan < a);
+        }
+        """;
+        assertOutputEquals(program, "true\nfalse\nfalse\nfalse\nfalse\n");
+    }
+
+    @Test
+    public void testFoldedConstants() throws Exception {
+        String program = """
+        final size int = 4 * 2;
+        final greeting string = "Hello" + " " + "world";
+        final half float = 5.0 / 2;
+        fun main() {
+            a int[] = array[size] of int;
+            writeln(len(a));
+            writeln(greeting);
+            writeln(half);
+            i int;
+            s int = 0;
+            for (i, 0, 100000, 50000 * 2) {
+                s = s + 1;
+            }
+            writeln(s);
+        }
+        """;
+        assertOutputEquals(program, "8\nHello world\n2.5\n1\n");
+    }
+
+    @Test
+    public void testLiteralConstantsAreConstantValues() throws Exception {
+        String program = """
+        final i int = 42;
+        final f float = 1.5;
+        final b bool = true;
+        final s string = "Hello";
+        final l int = len("abc");
+        fun main() {
+            writeln(i);
+            writeln(f);
+            writeln(b);
+            writeln(s);
+            writeln(l);
+        }
+        """;
+        // without the folding, to check that the uses of the constants are inlined by the code generator
+        File classFile = compile(program, false);
+
+        Map<String, Object> fieldValues = new HashMap<>();
+        int[] putStaticCount = {0};
+        int[] getStaticCount = {0};
+        new ClassReader(Files.readAllBytes(classFile.toPath())).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+                fieldValues.put(name, value);
+                return null;
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                return new MethodVisitor(Opcodes.ASM9) {
+                    @Override
+                    public void visitFieldInsn(int opcode, String owner, String fieldName, String fieldDescriptor) {
+                        if (opcode == Opcodes.PUTSTATIC) {
+                            putStaticCount[0]++;
+                        } else if (opcode == Opcodes.GETSTATIC && !owner.equals("java/lang/System")) {
+                            getStaticCount[0]++;
+                        }
+                    }
+                };
+            }
+        }, 0);
+
+        assertEquals(42, fieldValues.get("i"));
+        assertEquals(1.5f, fieldValues.get("f"));
+        assertEquals(1, fieldValues.get("b"));
+        assertEquals("Hello", fieldValues.get("s"));
+        // only the constant that isn't a literal is still initialized and read from the field
+        assertNull(fieldValues.get("l"));
+        assertEquals(1, putStaticCount[0]);
+        assertEquals(1, getStaticCount[0]);
+
+        assertOutputEquals(program, "42\n1.5\ntrue\nHello\n3\n");
+    }
+
+    @Test
+    public void testRunInMemoryMatchesClassFiles() throws Exception {
+        String program = """
+        Point rec {
+            x int;
+            y int;
+        }
+
+        fun main() {
+            n int = readInt();
+            p Point = Point(n, n * 2);
+            write("Sum: ");
+            writeln(p.x + p.y);
+        }
+        """;
+        String expectedOutput = "Sum: 9" + System.lineSeparator();
+        // the class files, the record class and the runtime classes written on disk must behave like the in memory ones
+        assertEquals(expectedOutput, runClassFiles(program, "3\n"));
+        assertOutputEqualsWithInput(program, "3\n", "Sum: 9\n");
+    }
+
+    @Test
+    public void testRunInMemoryDoesNotWriteClassFiles() throws Exception {
+        File tempFile = File.createTempFile("test", ".lang");
+        tempFile.deleteOnExit();
+        Files.writeString(tempFile.toPath(), "fun main() { writeln(1); }");
+
+        Compiler compiler = new compiler.Compiler();
+        compiler.file = tempFile.getAbsolutePath();
+        Map<String, byte[]> classes = compiler.compileInMemory();
+
+        String className = tempFile.getName().replace(".lang", "");
+        assertEquals(className, compiler.getClassName());
+        assertTrue(classes.containsKey(className));
+        assertTrue(classes.containsKey("compiler.Runtime.StdOut"));
+        assertFalse(new File(tempFile.getParent(), className + ".class").exists());
+    }
+
+    @Test
+    public void testRuntimeClassesTargetTheSameJavaVersion() throws Exception {
+        File tempFile = File.createTempFile("test", ".lang");
+        tempFile.deleteOnExit();
+        Files.writeString(tempFile.toPath(), "fun main() { writeln(readInt()); }");
+
+        Compiler compiler = new compiler.Compiler();
+        compiler.file = tempFile.getAbsolutePath();
+        Map<String, byte[]> classes = compiler.compileInMemory();
+
+        // the runtime classes are shipped with the program, so they must run on the same JVMs as the generated classes (Java 8)
+        assertTrue(classes.containsKey("compiler.Runtime.StdIn"));
+        for (Map.Entry<String, byte[]> entry : classes.entrySet()) {
+            byte[] bytes = entry.getValue();
+            int majorVersion = ((bytes[6] & 0xff) << 8) | (bytes[7] & 0xff);
+            assertEquals(entry.getKey(), 52, majorVersion);
+        }
+    }
+
+    @Test
+    public void testFlatASTGeneratesTheSameClasses() throws Exception {
+        ProgramGenerator generator = new ProgramGenerator();
+        generator.functions = 10;
+        for (long seed = 1; seed <= 5; seed++) {
+            generator.seed = seed;
+            String source = generator.generate();
+
+            Program program = new Parser(new Lexer(new StringReader(source)).tokenize()).parseProgram();
+            new SemanticAnalysis().analyze(program);
+            Map<String, byte[]> expected = new CodeGen("", "Main").generateClasses(program);
+
+            FlatAST flat = FlatAST.of(new Parser(new Lexer(new StringReader(source)).tokenize(), true).parseProgram());
+            new SemanticAnalysis().analyze(flat);
+            Map<String, byte[]> classes = new CodeGen("", "Main").generateClasses(flat);
+
+            assertEquals(expected.keySet(), classes.keySet());
+            for (String name : expected.keySet()) {
+                assertArrayEquals("seed " + seed + ", class " + name, expected.get(name), classes.get(name));
+            }
+        }
+    }
+
+    @Test
+    public void testFlatASTPassesReleaseTheBodies() throws Exception {
+        ProgramGenerator generator = new ProgramGenerator();
+        generator.functions = 40;
+        String source = generator.generate();
+        Program expectedProgram = new Parser(new Lexer(new StringReader(source)).tokenize()).parseProgram();
+        new SemanticAnalysis().analyze(expectedProgram);
+        Map<String, byte[]> expected = new CodeGen("", "Main").generateClasses(expectedProgram);
+
+        // each body is dropped once a pass is done with it, its types are stored in the flat AST before
+        FlatAST flat = FlatAST.of(new Parser(new Lexer(new StringReader(source)).tokenize(), true).parseProgram());
+        Program program = flat.program();
+        new SemanticAnalysis().analyze(program);
+        for (FunctionDefinition function : program.getFunctions()) {
+            assertFalse(function.getName().lexeme, function.isBodyParsed());
+        }
+        Map<String, byte[]> classes = new CodeGen("", "Main").generateClasses(program);
+        for (FunctionDefinition function : program.getFunctions()) {
+            assertFalse(function.getName().lexeme, function.isBodyParsed());
+        }
+
+        assertEquals(expected.keySet(), classes.keySet());
+        for (String name : expected.keySet()) {
+            assertArrayEquals(name, expected.get(name), classes.get(name));
+        }
+    }
+
+    @Test
+    public void testLongOperatorChainCompilesAndRuns() throws Exception {
+        // the groups of two terms are (a + k), the constant k is folded but not the groups
+        int terms = 5000;
+        StringBuilder chain = new StringBuilder("a");
+        for (int i = 1; i < terms; i++) {
+            chain.append(i % 2 == 0 ? " + a" : " + k");
+        }
+        String program = "final k int = 1;\nfun main() {\n    a int = 2;\n    x int = " + chain + ";\n    writeln(x);\n}\n";
+        String expected = (terms / 2) * 3 + "\n";
+
+        assertOutputEqualsWithInput(program, null, true, expected);
+        assertOutputEqualsWithInput(program, null, false, expected);
+    }
+
+    @Test
+    public void testParallelFunctionsGenerateTheSameClasses() throws Exception {
+        ProgramGenerator generator = new ProgramGenerator();
+        generator.functions = 40;
+        for (long seed = 1; seed <= 5; seed++) {
+            generator.seed = seed;
+            Program program = new Parser(new Lexer(new StringReader(generator.generate())).tokenize()).parseProgram();
+            new SemanticAnalysis().analyze(program);
+
+            CodeGen sequential = new CodeGen("", "Main");
+            sequential.setParallelFunctions(false);
+            Map<String, byte[]> expected = sequential.generateClasses(program);
+            Map<String, byte[]> classes = new CodeGen("", "Main").generateClasses(program);
+
+            assertEquals(expected.keySet(), classes.keySet());
+            for (String name : expected.keySet()) {
+                assertArrayEquals("seed " + seed + ", class " + name, expected.get(name), classes.get(name));
+            }
+        }
+    }
+
 // test template:
 //    @Test
 //    public void test() throws Exception {
@@ -1162,55 +1455,69 @@ public class TestCodeGeneration {
 //        assertOutputEquals(program, expectedOutput);
 //    }
 
-    /// Helper method that compiles a program runs it and checks the output with the expected output
-    private void assertOutputEquals(String program, String expected) throws Exception {
+    /// Helper method that compiles a program and returns the generated class file
+    private File compile(String program, boolean constantFolding) throws Exception {
         File tempFile = File.createTempFile("test", ".lang");
         tempFile.deleteOnExit();
-        
-        java.io.FileWriter writer = new java.io.FileWriter(tempFile);
-        writer.write(program);
-        writer.close();
-        
-        // run the compiler
+        Files.writeString(tempFile.toPath(), program);
+
         Compiler compiler = new compiler.Compiler();
-        // set the arguments ourselves, this is kinda shitty but it works...
         compiler.file = tempFile.getAbsolutePath();
         compiler.out = tempFile.getAbsolutePath().replace(".lang", ".class");
-
+        compiler.noConstantFolding = !constantFolding;
         compiler.run();
 
-//        System.out.println("tempFile.getParent() = " + tempFile.getParent());
-        String className = tempFile.getName().replace(".lang", "");
-//        className = className.substring(0, 1).toUpperCase() + className.substring(1);
+        return new File(compiler.out);
+    }
 
-        
-        // execute the compiled class and capture output
-//        Process process = Runtime.getRuntime().exec("java -cp " + tempFile.getParent() + " " + className);
-        ProcessBuilder processBuilder = new ProcessBuilder("java", "-cp", tempFile.getParent(), className);
-        processBuilder.redirectErrorStream(true); // redirect error stream to output stream
-        Process process = processBuilder.start();
+    /// Helper method that compiles a program runs it and checks the output with the expected output
+    private void assertOutputEquals(String program, String expected) throws Exception {
+        assertOutputEqualsWithInput(program, null, expected);
+    }
 
-        java.io.BufferedReader reader = new java.io.BufferedReader(new java.io.InputStreamReader(process.getInputStream()));
-        StringBuilder output = new StringBuilder();
-        String line;
-        while ((line = reader.readLine()) != null) {
-            output.append(line).append("\n");
-        }
-        // wait for the process to finish
-        process.waitFor();
+    private void assertOutputEqualsWithInput(String program, String input, String expected) throws Exception {
+        assertOutputEqualsWithInput(program, input, true, expected);
+    }
+
+    private void assertOutputEqualsWithInput(String program, String input, boolean constantFolding, String expected) throws Exception {
+        File tempFile = File.createTempFile("test", ".lang");
+        tempFile.deleteOnExit();
+        Files.writeString(tempFile.toPath(), program);
+
+        Compiler compiler = new compiler.Compiler();
+        compiler.file = tempFile.getAbsolutePath();
+        compiler.noConstantFolding = !constantFolding;
+
+        // run the program in this JVM, with the standard streams replaced by in memory ones
+        ByteArrayOutputStream outputBytes = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        InputStream stdin = System.in;
+        System.setOut(new PrintStream(outputBytes, true, StandardCharsets.UTF_8));
+        System.setIn(new ByteArrayInputStream(input == null ? new byte[0] : input.getBytes(StandardCharsets.UTF_8)));
+        try {
+            compiler.runInMemory();
+        } catch (Throwable e) {
+            throw new AssertionError("The program crashed, output: " + outputBytes.toString(StandardCharsets.UTF_8), e);
+        } finally {
+            System.setOut(stdout);
+            System.setIn(stdin);
+        }
+
+        // every line ends with a newline, like when the output of a process is read line by line
+        String output = outputBytes.toString(StandardCharsets.UTF_8).lines()
+                .map(line -> line + "\n")
+                .collect(Collectors.joining());
         System.out.println("output = " + output);
 
         // verify output
-        assertEquals(expected, output.toString());
+        assertEquals(expected, output);
     }
 
-    private void assertOutputEqualsWithInput(String program, String input, String expected) throws Exception {
+    /// Helper method that compiles a program to class files, runs them with the java launcher and returns the output
+    private String runClassFiles(String program, String input) throws Exception {
         File tempFile = File.createTempFile("test", ".lang");
         tempFile.deleteOnExit();
-
-        java.io.FileWriter writer = new java.io.FileWriter(tempFile);
-        writer.write(program);
-        writer.close();
+        Files.writeString(tempFile.toPath(), program);
 
         // run the compiler
         Compiler compiler = new compiler.Compiler();
@@ -1219,7 +1526,6 @@ public class TestCodeGeneration {
         compiler.run();
 
         String className = tempFile.getName().replace(".lang", "");
-//        className = className.substring(0, 1).toUpperCase() + className.substring(1);
 
         // execute the compiled class with input
         ProcessBuilder processBuilder = new ProcessBuilder("java", "-cp", tempFile.getParent(), className);
@@ -1227,27 +1533,15 @@ public class TestCodeGeneration {
         Process process = processBuilder.start();
 
         // write input to the process
-        if (input != null && !input.isEmpty()) {
-            java.io.OutputStream stdin = process.getOutputStream();
-            stdin.write(input.getBytes());
-            stdin.flush();
-            stdin.close();
+        try (java.io.OutputStream processInput = process.getOutputStream()) {
+            if (input != null) {
+                processInput.write(input.getBytes(StandardCharsets.UTF_8));
+            }
         }
 
         // read the output
-        java.io.BufferedReader reader = new java.io.BufferedReader(
-                new java.io.InputStreamReader(process.getInputStream()));
-        StringBuilder output = new StringBuilder();
-        String line;
-        while ((line = reader.readLine()) != null) {
-            output.append(line).append("\n");
-        }
-
-        // wait for the process to finish
+        String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
         process.waitFor();
-        System.out.println("output = " + output);
-
-        // verify output
-        assertEquals(expected, output.toString());
+        return output;
     }
 }
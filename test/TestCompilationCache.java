@@ -0,0 +1,225 @@
+import static org.junit.Assert.*;
+
+import compiler.Cache.CompilationCache;
+import compiler.Compiler;
+import compiler.Generator.ProgramGenerator;
+import compiler.Lexer.Lexer;
+import compiler.Parser.ASTNodes.Program;
+import compiler.Parser.FlatAST;
+import compiler.Parser.Parser;
+import compiler.SemanticAnalysis.SemanticAnalysis;
+import compiler.SemanticAnalysis.Types.ArraySemType;
+import compiler.SemanticAnalysis.Types.RecordSemType;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.stream.Stream;
+
+public class TestCompilationCache {
+
+    @Test
+    public void testUnchangedSourceIsRestoredFromTheCache() throws Exception {
+        Path directory = Files.createTempDirectory("cache");
+        Path source = directory.resolve("prog.lang");
+        Files.writeString(source, """
+                Point rec {
+                    x int;
+                }
+                fun main() {
+                    p Point = Point(1);
+                    writeln(p.x);
+                }
+                """);
+        Path cacheDir = directory.resolve("cache");
+        CompilationCache cache = CompilationCache.open(cacheDir, 1024 * 1024);
+
+        assertEquals(0, compile(source, cacheDir, false));
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        byte[] mainClass = Files.readAllBytes(directory.resolve("prog.class"));
+        byte[] recordClass = Files.readAllBytes(directory.resolve("Point.class"));
+
+        // the classes are restored from the cache
+        Files.delete(directory.resolve("prog.class"));
+        Files.delete(directory.resolve("Point.class"));
+        assertEquals(0, compile(source, cacheDir, false));
+        assertEquals(1, cache.getHits());
+        assertArrayEquals(mainClass, Files.readAllBytes(directory.resolve("prog.class")));
+        assertArrayEquals(recordClass, Files.readAllBytes(directory.resolve("Point.class")));
+
+        // a different flag or a different source is a miss
+        assertEquals(0, compile(source, cacheDir, true));
+        assertEquals(1, cache.getHits());
+        Files.writeString(source, "fun main() { writeln(2); }");
+        assertEquals(0, compile(source, cacheDir, false));
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+    }
+
+    @Test
+    public void testErrorsAreNotCached() throws Exception {
+        Path directory = Files.createTempDirectory("cache");
+        Path source = directory.resolve("bad.lang");
+        Files.writeString(source, "fun main() { x int = \"text\"; }");
+        Path cacheDir = directory.resolve("cache");
+
+        assertEquals(2, compile(source, cacheDir, false));
+        assertEquals(2, compile(source, cacheDir, false));
+        assertEquals(0, CompilationCache.open(cacheDir, 1024 * 1024).getHits());
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEntriesAreEvicted() throws Exception {
+        Path cacheDir = Files.createTempDirectory("cache");
+        byte[] classBytes = new byte[1000];
+        CompilationCache cache = new CompilationCache(cacheDir, 2500);
+
+        cache.put("first", Map.of("A", classBytes));
+        setLastUsed(cacheDir.resolve("first.classes"), 1000);
+        cache.put("second", Map.of("B", classBytes));
+        setLastUsed(cacheDir.resolve("second.classes"), 2000);
+        // using the first entry makes the second one the least recently used
+        assertNotNull(cache.get("first"));
+        cache.put("third", Map.of("C", classBytes));
+
+        assertNotNull(cache.get("first"));
+        assertNull(cache.get("second"));
+        assertArrayEquals(classBytes, cache.get("third").get("C"));
+        try (Stream<Path> entries = Files.list(cacheDir)) {
+            assertEquals(2, entries.count());
+        }
+    }
+
+    @Test
+    public void testOpeningAgainChangesTheMaximumSize() throws Exception {
+        Path cacheDir = Files.createTempDirectory("cache");
+        byte[] classBytes = new byte[1000];
+        CompilationCache cache = CompilationCache.open(cacheDir, 1024 * 1024);
+        cache.put("first", Map.of("A", classBytes));
+        setLastUsed(cacheDir.resolve("first.classes"), 1000);
+        cache.put("second", Map.of("B", classBytes));
+        setLastUsed(cacheDir.resolve("second.classes"), 2000);
+
+        // e.g., a later compilation of the server with a smaller --cache-size
+        assertSame(cache, CompilationCache.open(cacheDir, 2500));
+        cache.put("third", Map.of("C", classBytes));
+
+        assertNull(cache.get("first"));
+        assertNotNull(cache.get("second"));
+        assertNotNull(cache.get("third"));
+    }
+
+    @Test
+    public void testCorruptedEntryIsAMiss() throws Exception {
+        Path cacheDir = Files.createTempDirectory("cache");
+        CompilationCache cache = new CompilationCache(cacheDir, 1024 * 1024);
+
+        cache.put("entry", Map.of("A", new byte[100]));
+        byte[] bytes = Files.readAllBytes(cacheDir.resolve("entry.classes"));
+        Files.write(cacheDir.resolve("entry.classes"), Arrays.copyOf(bytes, bytes.length / 2));
+
+        assertNull(cache.get("entry"));
+        assertFalse(Files.exists(cacheDir.resolve("entry.classes")));
+    }
+
+    @Test
+    public void testTypedTreeIsReadFromTheCache() throws Exception {
+        Path directory = Files.createTempDirectory("cache");
+        Path source = directory.resolve("tree.lang");
+        String program = """
+                Point rec {
+                    x int;
+                    tags string[];
+                }
+                fun (p Point) shift(d int) int {
+                    return p.x + d;
+                }
+                fun main() {
+                    p Point = Point(2, array [3] of string);
+                    writeln(p.shift(1));
+                }
+                """;
+        Files.writeString(source, program);
+        Path cacheDir = directory.resolve("cache");
+        CompilationCache cache = CompilationCache.open(cacheDir, 1024 * 1024);
+
+        assertEquals(0, compile(source, cacheDir, false));
+        String key = CompilationCache.treeKey(Files.readAllBytes(source));
+        FlatAST tree = cache.getTree(key);
+        assertNotNull(tree);
+        Program parsed = new Parser(new Lexer(new StringReader(program))).parseProgram();
+        assertEquals(parsed.prettyPrint(0), tree.decode().prettyPrint(0));
+        Program decoded = tree.decode();
+        RecordSemType point = (RecordSemType) decoded.getFunctions().getFirst().getInstanceRef().semtype;
+        assertEquals("Point", point.identifier);
+        assertEquals("string", ((ArraySemType) point.fields.get("tags")).getElementSemType().type);
+
+        // the tree of another source stored under the key of this one shows that the tree is not analyzed again
+        Path other = directory.resolve("other.lang");
+        Files.writeString(other, "fun main() { writeln(42); }");
+        assertEquals(0, compile(other, cacheDir, false));
+        Files.copy(cacheDir.resolve(CompilationCache.treeKey(Files.readAllBytes(other)) + ".ast"), cacheDir.resolve(key + ".ast"),
+                StandardCopyOption.REPLACE_EXISTING);
+        Files.delete(directory.resolve("Point.class"));
+        assertEquals(0, compile(source, cacheDir, true));
+        assertFalse(Files.exists(directory.resolve("Point.class")));
+    }
+
+    @Test
+    public void testCorruptedTreeIsAMiss() throws Exception {
+        Path cacheDir = Files.createTempDirectory("cache");
+        CompilationCache cache = new CompilationCache(cacheDir, 1024 * 1024);
+
+        Program program = new Parser(new Lexer(new StringReader("x int = 1;\nfun main() {\n    writeln(x);\n}\n"))).parseProgram();
+        cache.putTree("entry", FlatAST.of(program));
+        Path entry = cacheDir.resolve("entry.ast");
+        byte[] bytes = Files.readAllBytes(entry);
+        assertNotNull(cache.getTree("entry"));
+        Files.write(entry, Arrays.copyOf(bytes, bytes.length - 1));
+
+        assertNull(cache.getTree("entry"));
+        assertFalse(Files.exists(entry));
+    }
+
+    @Test
+    public void testTreeEntryIsCompact() throws Exception {
+        Path cacheDir = Files.createTempDirectory("cache");
+        CompilationCache cache = new CompilationCache(cacheDir, 64 * 1024 * 1024);
+        ProgramGenerator generator = new ProgramGenerator();
+        generator.lines = 5000;
+        Program program = new Parser(new Lexer(new StringReader(generator.generate()))).parseProgram();
+        new SemanticAnalysis().analyze(program);
+
+        FlatAST tree = FlatAST.of(program);
+        cache.putTree("entry", tree);
+        // the numbers are varints, most nodes take less than 10 bytes instead of the 19 of the arrays
+        long bytes = Files.size(cacheDir.resolve("entry.ast"));
+        assertTrue(bytes + " bytes for " + tree.size() + " nodes", bytes < 10L * tree.size());
+
+        Program decoded = cache.getTree("entry").decode();
+        assertEquals(program.prettyPrint(0), decoded.prettyPrint(0));
+        for (int i = 0; i < program.getFunctions().size(); i++) {
+            assertEquals(program.getFunctions().get(i).semtype.toString(), decoded.getFunctions().get(i).semtype.toString());
+        }
+    }
+
+    private void setLastUsed(Path entry, long millis) throws Exception {
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(millis));
+    }
+
+    private int compile(Path source, Path cacheDir, boolean noConstantFolding) {
+        Compiler compiler = new Compiler();
+        compiler.file = source.toString();
+        compiler.cacheDir = cacheDir.toString();
+        compiler.noConstantFolding = noConstantFolding;
+        return compiler.compile(new PrintStream(new ByteArrayOutputStream()));
+    }
+}
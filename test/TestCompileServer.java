@@ -0,0 +1,132 @@
+import static org.junit.Assert.*;
+
+import compiler.Server.CompileClient;
+import compiler.Server.CompileServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+public class TestCompileServer {
+    private Path directory;
+    private Path socketPath;
+    private CompileServer server;
+
+    @Before
+    public void startServer() throws Exception {
+        directory = Files.createTempDirectory("server");
+        socketPath = directory.resolve("compiler.sock");
+        server = new CompileServer(socketPath);
+        server.start();
+    }
+
+    @After
+    public void stopServer() {
+        server.close();
+    }
+
+    @Test
+    public void testCompileWritesClassFile() throws Exception {
+        Path source = directory.resolve("hello.lang");
+        Files.writeString(source, "fun main() { writeln(\"Hello\"); }");
+        Path classFile = directory.resolve("hello.class");
+
+        ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+        int exitCode = CompileClient.compile(socketPath, new String[]{source.toString(), "-o", classFile.toString()}, diagnostics);
+
+        assertEquals(0, exitCode);
+        assertEquals("", diagnostics.toString(StandardCharsets.UTF_8));
+        assertTrue(Files.exists(classFile));
+    }
+
+    @Test
+    public void testErrorsAreReportedWithoutStoppingTheServer() throws Exception {
+        Path syntaxError = directory.resolve("syntax.lang");
+        Files.writeString(syntaxError, "fun main() { x int = ; }");
+        Path typeError = directory.resolve("types.lang");
+        Files.writeString(typeError, "fun main() { x int = \"text\"; }");
+
+        ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+        assertEquals(1, CompileClient.compile(socketPath, new String[]{syntaxError.toString()}, diagnostics));
+        assertTrue(diagnostics.toString(StandardCharsets.UTF_8).contains("Syntax Error"));
+
+        diagnostics.reset();
+        assertEquals(2, CompileClient.compile(socketPath, new String[]{typeError.toString()}, diagnostics));
+        assertTrue(diagnostics.toString(StandardCharsets.UTF_8).contains("TypeError"));
+
+        diagnostics.reset();
+        assertEquals(1, CompileClient.compile(socketPath, new String[]{directory.resolve("missing.lang").toString()}, diagnostics));
+
+        // the server is still alive
+        Path source = directory.resolve("ok.lang");
+        Files.writeString(source, "fun main() { writeln(1); }");
+        assertEquals(0, CompileClient.compile(socketPath, new String[]{source.toString()}, diagnostics));
+        assertTrue(new File(directory.toFile(), "ok.class").exists());
+    }
+
+    @Test
+    public void testUnsupportedFlagsAreRejected() throws Exception {
+        Path source = directory.resolve("run.lang");
+        Files.writeString(source, "fun main() { writeln(1); }");
+
+        ByteArrayOutputStream diagnostics = new ByteArrayOutputStream();
+        assertEquals(1, CompileClient.compile(socketPath, new String[]{source.toString(), "--run"}, diagnostics));
+        assertEquals(1, CompileClient.compile(socketPath, new String[]{"--unknown-flag"}, diagnostics));
+    }
+
+    @Test
+    public void testRunningServerIsNotTakenOver() throws Exception {
+        CompileServer second = new CompileServer(socketPath);
+        try {
+            second.start();
+            fail("Expected the second server to refuse the socket of the running one");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("already listening"));
+        } finally {
+            second.close();
+        }
+
+        // the first server still has its socket
+        Path source = directory.resolve("still.lang");
+        Files.writeString(source, "fun main() { writeln(1); }");
+        assertEquals(0, CompileClient.compile(socketPath, new String[]{source.toString()}, new ByteArrayOutputStream()));
+    }
+
+    @Test
+    public void testSocketIsOwnerOnly() throws Exception {
+        assertEquals("rw-------", PosixFilePermissions.toString(Files.getPosixFilePermissions(socketPath)));
+
+        // the missing directories of the socket are created for the owner only
+        server.close();
+        Path nested = directory.resolve("sockets").resolve("compiler.sock");
+        server = new CompileServer(nested);
+        server.start();
+        assertEquals("rwx------", PosixFilePermissions.toString(Files.getPosixFilePermissions(nested.getParent())));
+    }
+
+    @Test
+    public void testStaleSocketIsReplaced() throws Exception {
+        server.close();
+        // a server that crashed leaves its socket file behind, nobody listens on it
+        try (ServerSocketChannel crashed = ServerSocketChannel.open(StandardProtocolFamily.UNIX)) {
+            crashed.bind(UnixDomainSocketAddress.of(socketPath));
+        }
+        assertTrue(Files.exists(socketPath));
+
+        server = new CompileServer(socketPath);
+        server.start();
+        Path source = directory.resolve("stale.lang");
+        Files.writeString(source, "fun main() { writeln(1); }");
+        assertEquals(0, CompileClient.compile(socketPath, new String[]{source.toString()}, new ByteArrayOutputStream()));
+    }
+}
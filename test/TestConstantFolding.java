@@ -0,0 +1,199 @@
+import static org.junit.Assert.*;
+
+import compiler.Lexer.Lexer;
+import compiler.Optimization.ConstantFolding;
+import compiler.Parser.ASTNodes.Program;
+import compiler.Parser.ASTNodes.Statements.Expressions.Access.IdentifierAccess;
+import compiler.Parser.ASTNodes.Statements.Expressions.Expressions.BinaryExpression;
+import compiler.Parser.ASTNodes.Statements.Expressions.Expressions.Expression;
+import compiler.Parser.ASTNodes.Statements.Expressions.Terms.ConstVal;
+import compiler.Parser.ASTNodes.Statements.Expressions.Terms.FunctionCall;
+import compiler.Parser.ASTNodes.Statements.Expressions.Terms.ParenthesesTerm;
+import compiler.Parser.ASTNodes.Statements.Statements.FunctionDefinition;
+import compiler.Parser.ASTNodes.Statements.Statements.ReturnStatement;
+import compiler.Parser.ASTNodes.Statements.Statements.VariableDeclaration;
+import compiler.Parser.Parser;
+import compiler.SemanticAnalysis.SemanticAnalysis;
+import org.junit.Test;
+
+import java.io.StringReader;
+
+public class TestConstantFolding {
+
+    @Test
+    public void testIntArithmetic() throws Exception {
+        Program program = optimize("fun main() { x int = (2 * 3) + (10 % 4); }");
+        assertConstant(8, firstDeclarationValue(program));
+    }
+
+    @Test
+    public void testIntOverflowWrapsAround() throws Exception {
+        Program program = optimize("fun main() { x int = 2147483647 + 1; }");
+        assertConstant(Integer.MIN_VALUE, firstDeclarationValue(program));
+    }
+
+    @Test
+    public void testIntIsPromotedToFloat() throws Exception {
+        Program program = optimize("fun main() { x float = 1 + 2.5; }");
+        assertConstant(3.5f, firstDeclarationValue(program));
+    }
+
+    @Test
+    public void testIntDivisionByZeroIsNotFolded() throws Exception {
+        Program program = optimize("fun main() { x int = 1 / 0; y int = 1 % 0; }");
+        FunctionDefinition main = program.getFunctions().getFirst();
+
+        assertTrue(((VariableDeclaration) main.getBlock().getStatements().get(0)).getValue() instanceof BinaryExpression);
+        assertTrue(((VariableDeclaration) main.getBlock().getStatements().get(1)).getValue() instanceof BinaryExpression);
+    }
+
+    @Test
+    public void testFloatDivisionByZero() throws Exception {
+        Program program = optimize("fun main() { x float = 1.0 / 0; }");
+        assertConstant(Float.POSITIVE_INFINITY, firstDeclarationValue(program));
+    }
+
+    @Test
+    public void testComparisons() throws Exception {
+        Program program = optimize("fun main() { a bool = 3 < 2.5; b bool = 2.0 >= 2; c bool = true == false; d bool = \"ab\" != (\"a\" + \"b\"); }");
+        FunctionDefinition main = program.getFunctions().getFirst();
+
+        assertConstant(false, ((VariableDeclaration) main.getBlock().getStatements().get(0)).getValue());
+        assertConstant(true, ((VariableDeclaration) main.getBlock().getStatements().get(1)).getValue());
+        assertConstant(false, ((VariableDeclaration) main.getBlock().getStatements().get(2)).getValue());
+        assertConstant(false, ((VariableDeclaration) main.getBlock().getStatements().get(3)).getValue());
+    }
+
+    @Test
+    public void testUnaryOperators() throws Exception {
+        Program program = optimize("fun main() { x int = -(3 * 4); b bool = !(1 == 2); }");
+        FunctionDefinition main = program.getFunctions().getFirst();
+
+        assertConstant(-12, ((VariableDeclaration) main.getBlock().getStatements().get(0)).getValue());
+        assertConstant(true, ((VariableDeclaration) main.getBlock().getStatements().get(1)).getValue());
+    }
+
+    @Test
+    public void testStringConcatenation() throws Exception {
+        Program program = optimize("fun main() { s string = \"Hello\" + \", \" + \"world\"; }");
+        assertConstant("Hello, world", firstDeclarationValue(program));
+    }
+
+    @Test
+    public void testConstantPropagation() throws Exception {
+        String input = """
+                final a int = 6;
+                final b int = a * 7;
+                fun main() int {
+                    return b + 1;
+                }
+                """;
+        Program program = optimize(input);
+
+        assertConstant(42, program.getConstants().get(1).getValue());
+        ReturnStatement returnStatement = (ReturnStatement) program.getFunctions().getFirst().getBlock().getReturnStatement();
+        assertConstant(43, returnStatement.getExpression());
+    }
+
+    @Test
+    public void testShadowedConstantIsNotPropagated() throws Exception {
+        String input = """
+                final a int = 6;
+                fun f(a int) int {
+                    return a + 1;
+                }
+                fun main() {
+                    x int = a + 1;
+                    a int = 2;
+                    y int = a + 1;
+                }
+                """;
+        Program program = optimize(input);
+
+        ReturnStatement returnStatement = (ReturnStatement) program.getFunctions().get(0).getBlock().getReturnStatement();
+        assertTrue(returnStatement.getExpression() instanceof BinaryExpression);
+
+        FunctionDefinition main = program.getFunctions().get(1);
+        // the local variable only shadows the constant after its declaration
+        assertConstant(7, ((VariableDeclaration) main.getBlock().getStatements().get(0)).getValue());
+        assertTrue(((VariableDeclaration) main.getBlock().getStatements().get(2)).getValue() instanceof BinaryExpression);
+    }
+
+    @Test
+    public void testNonConstantInitializerIsNotPropagated() throws Exception {
+        String input = """
+                final a int = readInt();
+                fun main() {
+                    x int = a + 1;
+                }
+                """;
+        Program program = optimize(input);
+        assertTrue(firstDeclarationValue(program) instanceof BinaryExpression);
+    }
+
+    @Test
+    public void testBooleanShortCircuits() throws Exception {
+        String input = """
+                fun f() bool {
+                    return true;
+                }
+                fun main() {
+                    a bool = true && f();
+                    b bool = false && f();
+                    c bool = f() || false;
+                    d bool = f() && false;
+                    x bool = f();
+                    e bool = x || true;
+                }
+                """;
+        Program program = optimize(input);
+        FunctionDefinition main = program.getFunctions().get(1);
+
+        assertTrue(unwrap(((VariableDeclaration) main.getBlock().getStatements().get(0)).getValue()) instanceof FunctionCall);
+        assertConstant(false, ((VariableDeclaration) main.getBlock().getStatements().get(1)).getValue());
+        assertTrue(unwrap(((VariableDeclaration) main.getBlock().getStatements().get(2)).getValue()) instanceof FunctionCall);
+        // f() must still be called
+        assertTrue(((VariableDeclaration) main.getBlock().getStatements().get(3)).getValue() instanceof BinaryExpression);
+        assertConstant(true, ((VariableDeclaration) main.getBlock().getStatements().get(5)).getValue());
+    }
+
+    @Test
+    public void testVariablesAreNotFolded() throws Exception {
+        Program program = optimize("fun main() { x int = 1; y int = x + 1; }");
+        FunctionDefinition main = program.getFunctions().getFirst();
+
+        BinaryExpression value = (BinaryExpression) ((VariableDeclaration) main.getBlock().getStatements().get(1)).getValue();
+        assertTrue(unwrap(value.getLeftTerm()) instanceof IdentifierAccess);
+    }
+
+    private Expression firstDeclarationValue(Program program) {
+        return ((VariableDeclaration) program.getFunctions().getLast().getBlock().getStatements().getFirst()).getValue();
+    }
+
+    /// The parser wraps the terms of the expressions in parentheses
+    private Expression unwrap(Expression expression) {
+        while (expression instanceof ParenthesesTerm parenthesesTerm) {
+            expression = parenthesesTerm.getExpression();
+        }
+        return expression;
+    }
+
+    private void assertConstant(Object expected, Expression expression) {
+        assertTrue("Expected a constant but got " + expression, expression instanceof ConstVal);
+        assertEquals(expected, ((ConstVal) expression).getValue());
+    }
+
+    /// Helper method that parses, analyzes and optimizes a program
+    private Program optimize(String input) throws Exception {
+        Lexer lexer = new Lexer(new StringReader(input));
+        Parser parser = new Parser(lexer);
+        Program program = (Program) parser.getAST();
+
+        SemanticAnalysis semanticAnalysis = new SemanticAnalysis();
+        semanticAnalysis.analyze(program);
+
+        ConstantFolding constantFolding = new ConstantFolding();
+        constantFolding.optimize(program);
+        return program;
+    }
+}
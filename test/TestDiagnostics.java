@@ -0,0 +1,179 @@
+import static org.junit.Assert.*;
+
+import compiler.CompilationResult;
+import compiler.Compiler;
+import compiler.Diagnostics.Diagnostic;
+import compiler.Diagnostics.Diagnostic.Code;
+import compiler.Diagnostics.Diagnostics;
+import compiler.Lexer.Lexer;
+import compiler.Parser.ASTNodes.Program;
+import compiler.Parser.Parser;
+import compiler.Parser.SyntaxErrorException;
+import compiler.SemanticAnalysis.SemanticAnalysis;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class TestDiagnostics {
+
+    @Test
+    public void testParserReportsEverySyntaxError() throws Exception {
+        String source = """
+                fun main() {
+                    x int = 3 +;
+                    y int = * 2;
+                    writeInt(x);
+                }
+                fun f( int {
+                }
+                fun g() int {
+                    return 1;
+                }
+                """;
+        Diagnostics diagnostics = new Diagnostics();
+        Parser parser = new Parser(new Lexer(new StringReader(source)));
+        parser.setDiagnostics(diagnostics);
+        Program program = parser.parseProgram();
+
+        List<Diagnostic> errors = diagnostics.getDiagnostics();
+        assertEquals(3, errors.size());
+        assertEquals(2, errors.get(0).line());
+        assertEquals(3, errors.get(1).line());
+        assertEquals(6, errors.get(2).line());
+        for (Diagnostic error : errors) {
+            assertEquals(Code.SYNTAX_ERROR, error.code());
+        }
+        // the function after the errors is still parsed
+        assertEquals("g", program.getFunctions().getLast().getName().lexeme);
+    }
+
+    @Test
+    public void testParserWithoutDiagnosticsStopsAtTheFirstError() throws Exception {
+        Parser parser = new Parser(new Lexer(new StringReader("fun main() {\n    x int = 3 +;\n}\n")));
+        try {
+            parser.parseProgram();
+            fail("Expected a syntax error");
+        } catch (SyntaxErrorException e) {
+            assertEquals(2, e.line);
+        }
+    }
+
+    @Test
+    public void testStrayOperatorIsAnErrorInsteadOfAnEndlessLoop() throws Exception {
+        Diagnostics diagnostics = new Diagnostics();
+        Parser parser = new Parser(new Lexer(new StringReader("fun main() {\n    + ;\n}\n")));
+        parser.setDiagnostics(diagnostics);
+        parser.parseProgram();
+
+        assertEquals(1, diagnostics.getErrorCount());
+        assertEquals(2, diagnostics.getDiagnostics().getFirst().line());
+    }
+
+    @Test
+    public void testAnalysisReportsEverySemanticError() throws Exception {
+        String source = """
+                fun main() {
+                    x int = "a";
+                    b bool = 3;
+                    writeInt(zz);
+                    writeInt(x);
+                }
+                fun g() int {
+                    return "s";
+                }
+                """;
+        Diagnostics diagnostics = new Diagnostics();
+        SemanticAnalysis analysis = new SemanticAnalysis();
+        analysis.setDiagnostics(diagnostics);
+        analysis.analyze(new Parser(new Lexer(new StringReader(source))).parseProgram());
+
+        // x is still declared after its error, so its use isn't one
+        List<Diagnostic> errors = diagnostics.getDiagnostics();
+        assertEquals(4, errors.size());
+        assertEquals(Code.TYPE_ERROR, errors.get(0).code());
+        assertEquals(2, errors.get(0).line());
+        assertEquals(Code.TYPE_ERROR, errors.get(1).code());
+        assertEquals(3, errors.get(1).line());
+        assertEquals(Code.SCOPE_ERROR, errors.get(2).code());
+        assertEquals(4, errors.get(2).line());
+        assertEquals(Code.RETURN_ERROR, errors.get(3).code());
+        assertEquals(8, errors.get(3).line());
+        assertEquals(2, diagnostics.exitCode());
+    }
+
+    @Test
+    public void testCompilationResult() throws Exception {
+        Path directory = Files.createTempDirectory("diagnostics");
+        Path source = directory.resolve("prog.lang");
+        Files.writeString(source, "fun main() {\n    x int = true;\n    y string = 1;\n}\n");
+
+        CompilationResult result = compiler(source).compile();
+        assertFalse(result.isSuccess());
+        assertEquals(2, result.exitCode());
+        assertNull(result.classes());
+        assertEquals(2, result.diagnostics().size());
+        Diagnostic first = result.diagnostics().getFirst();
+        assertEquals(Code.TYPE_ERROR, first.code());
+        assertEquals(2, first.line());
+        assertEquals(5, first.column());
+        assertFalse(Files.exists(directory.resolve("prog.class")));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertEquals(2, compiler(source).compile(new PrintStream(output, true)));
+        assertTrue(output.toString().startsWith(source + ":2:5: error[TypeError]: "));
+
+        Files.writeString(source, "fun main() {\n    writeInt(1);\n}\n");
+        result = compiler(source).compile();
+        assertTrue(result.isSuccess());
+        assertTrue(result.diagnostics().isEmpty());
+        assertTrue(result.classes().containsKey("prog"));
+        assertTrue(Files.exists(directory.resolve("prog.class")));
+    }
+
+    @Test
+    public void testLexicalErrorHasItsPosition() throws Exception {
+        Path directory = Files.createTempDirectory("diagnostics");
+        Path source = directory.resolve("prog.lang");
+        Files.writeString(source, "fun main() {\n    b bool = true & false;\n}\n");
+
+        CompilationResult result = compiler(source).compile();
+        assertEquals(1, result.exitCode());
+        Diagnostic error = result.diagnostics().getFirst();
+        assertEquals(Code.LEXICAL_ERROR, error.code());
+        assertEquals(2, error.line());
+        assertTrue(error.column() > 0);
+        assertTrue(error.format(source.toString()).startsWith(source + ":2:" + error.column() + ": error[LexicalError]: "));
+    }
+
+    @Test
+    public void testTooDeeplyNestedProgramIsAnError() throws Exception {
+        Path directory = Files.createTempDirectory("diagnostics");
+        Path source = directory.resolve("prog.lang");
+        int depth = 200000;
+        Files.writeString(source, "fun main() {\n    x int = " + "(".repeat(depth) + "1" + ")".repeat(depth) + ";\n}\n");
+
+        // the stack overflow of the parser doesn't escape the compiler
+        CompilationResult result = compiler(source).compile();
+        assertEquals(1, result.exitCode());
+        assertEquals(Code.SYNTAX_ERROR, result.diagnostics().getFirst().code());
+        assertFalse(Files.exists(directory.resolve("prog.class")));
+    }
+
+    @Test
+    public void testMissingFile() {
+        CompilationResult result = compiler(Path.of("does_not_exist.lang")).compile();
+        assertEquals(1, result.exitCode());
+        assertEquals(Code.IO_ERROR, result.diagnostics().getFirst().code());
+    }
+
+    private Compiler compiler(Path source) {
+        Compiler compiler = new Compiler();
+        compiler.file = source.toString();
+        return compiler;
+    }
+}
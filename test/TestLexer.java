@@ -3,6 +3,11 @@ import static org.junit.Assert.*;
 import compiler.Parser.Parser;
 import org.junit.Test;
 import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ForkJoinPool;
 import compiler.Lexer.*;
 
 public class TestLexer {
@@ -568,4 +573,197 @@ public class TestLexer {
         assertEquals(TokenTypes.RIGHT_BRACKET, symbol.type);
         assertEquals("}", symbol.lexeme);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testLexemesAcrossBufferRefills() throws Exception {
+        // longer than the lexer's buffer, and the lexemes cross the refills
+        String identifier = "a".repeat(100_000);
+        String string = "b".repeat(70_000);
+        StringBuilder input = new StringBuilder();
+        for (int i = 0; i < 20_000; i++) {
+            input.append("x1 = 2.5;\n");
+        }
+        input.append(identifier).append(" \"").append(string).append("\" 12.75");
+        Lexer lexer = new Lexer(new StringReader(input.toString()));
+
+        for (int i = 0; i < 20_000; i++) {
+            Symbol symbol = lexer.getNextSymbol();
+            assertEquals("x1", symbol.lexeme);
+            assertEquals(i + 1, symbol.line);
+            assertEquals(1, symbol.column);
+            assertEquals(TokenTypes.ASSIGN, lexer.getNextSymbol().type);
+            symbol = lexer.getNextSymbol();
+            assertEquals(2.5f, symbol.value);
+            assertEquals(TokenTypes.SEMICOLON, lexer.getNextSymbol().type);
+        }
+
+        Symbol symbol = lexer.getNextSymbol();
+        assertEquals(TokenTypes.IDENTIFIER, symbol.type);
+        assertEquals(identifier, symbol.lexeme);
+
+        symbol = lexer.getNextSymbol();
+        assertEquals(TokenTypes.STRING_LITERAL, symbol.type);
+        assertEquals(string, symbol.value);
+
+        symbol = lexer.getNextSymbol();
+        assertEquals(TokenTypes.FLOAT_LITERAL, symbol.type);
+        assertEquals(12.75f, symbol.value);
+
+        assertEquals(TokenTypes.EOF, lexer.getNextSymbol().type);
+
+        // a float without a leading 0 where the refill happens between the dot and the digits
+        lexer = new Lexer(new StringReader(" ".repeat((1 << 16) - 1) + ".5"));
+        symbol = lexer.getNextSymbol();
+        assertEquals(TokenTypes.FLOAT_LITERAL, symbol.type);
+        assertEquals(0.5f, symbol.value);
+    }
+
+    @Test
+    public void testUtf8BytesLexLikeTheReader() throws Exception {
+        String source = "x string = \"h\u00e9llo \u20ac \ud83d\ude00\";\n\u00e9t\u00e9 = .25 $ \u20ac\n  Point(1, 2) <= y;";
+        Lexer reader = new Lexer(new StringReader(source));
+        Lexer bytes = new Lexer(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)));
+        assertSameSymbols(reader, bytes);
+    }
+
+    @Test
+    public void testMappedFile() throws Exception {
+        // larger than the mapping threshold
+        StringBuilder source = new StringBuilder();
+        for (int i = 0; i < 100_000; i++) {
+            source.append("v").append(i).append(" = \"\u00e9\" + 1.5;\n");
+        }
+        Path file = Files.createTempFile("mapped", ".lang");
+        file.toFile().deleteOnExit();
+        Files.writeString(file, source);
+
+        assertSameSymbols(new Lexer(new StringReader(source.toString())), Lexer.open(file));
+    }
+
+    private void assertSameSymbols(Lexer expected, TokenBuffer actual) throws Exception {
+        for (int i = 0; i < actual.size(); i++) {
+            Symbol symbol = expected.getNextSymbol();
+            Symbol other = actual.symbol(i);
+            assertEquals(symbol.type, other.type);
+            assertEquals(symbol.lexeme, other.lexeme);
+            assertEquals(symbol.value, other.value);
+            assertEquals(symbol.line, other.line);
+            assertEquals(symbol.column, other.column);
+        }
+        assertEquals(TokenTypes.EOF, actual.type(actual.size() - 1));
+    }
+
+    private void assertSameSymbols(Lexer expected, Lexer actual) throws Exception {
+        Symbol symbol;
+        do {
+            symbol = expected.getNextSymbol();
+            Symbol other = actual.getNextSymbol();
+            assertEquals(symbol.type, other.type);
+            assertEquals(symbol.lexeme, other.lexeme);
+            assertEquals(symbol.value, other.value);
+            assertEquals(symbol.line, other.line);
+            assertEquals(symbol.column, other.column);
+        } while (symbol.type != TokenTypes.EOF);
+    }
+
+    @Test
+    public void testIdentifiersAreInterned() throws Exception {
+        String source = "count int = count + counter; Point Point fortune for\u00e9 for\u00e9 if iff";
+        for (Lexer lexer : new Lexer[]{
+                new Lexer(new StringReader(source)),
+                new Lexer(ByteBuffer.wrap(source.getBytes(StandardCharsets.UTF_8)))}) {
+            Symbol first = lexer.getNextSymbol();
+            assertEquals(TokenTypes.INT, lexer.getNextSymbol().type);
+            assertEquals(TokenTypes.ASSIGN, lexer.getNextSymbol().type);
+            Symbol second = lexer.getNextSymbol();
+            assertEquals("count", second.lexeme);
+            assertSame(first.lexeme, second.lexeme);
+            assertEquals(TokenTypes.PLUS, lexer.getNextSymbol().type);
+            assertEquals("counter", lexer.getNextSymbol().lexeme);
+            assertEquals(TokenTypes.SEMICOLON, lexer.getNextSymbol().type);
+
+            Symbol record = lexer.getNextSymbol();
+            assertEquals(TokenTypes.RECORD, record.type);
+            assertSame(record.lexeme, lexer.getNextSymbol().lexeme);
+
+            // words that start like a keyword are identifiers
+            assertEquals(TokenTypes.IDENTIFIER, lexer.getNextSymbol().type);
+            Symbol nonAscii = lexer.getNextSymbol();
+            assertEquals(TokenTypes.IDENTIFIER, nonAscii.type);
+            assertEquals("for\u00e9", nonAscii.lexeme);
+            assertSame(nonAscii.lexeme, lexer.getNextSymbol().lexeme);
+            assertEquals(TokenTypes.IF, lexer.getNextSymbol().type);
+            assertEquals(TokenTypes.IDENTIFIER, lexer.getNextSymbol().type);
+            assertEquals(TokenTypes.EOF, lexer.getNextSymbol().type);
+        }
+    }
+
+    @Test
+    public void testTokenBufferSymbols() throws Exception {
+        String source = "final x float = 007 + .50 * y; s string = \"text\"; b bool = true != false; P rec { }";
+        TokenBuffer tokens = new Lexer(new StringReader(source)).tokenize();
+        assertNull(tokens.getError());
+        assertSameSymbols(new Lexer(new StringReader(source)), tokens);
+        // the float literals are stored as their value, and get the lexeme of their value
+        assertEquals(TokenTypes.FLOAT_LITERAL, tokens.type(6));
+        assertEquals(0.5f, tokens.value(6));
+        assertEquals("0.5", tokens.lexeme(6));
+
+        tokens = new Lexer(new StringReader("a = 1; b = \"unterminated")).tokenize();
+        assertEquals(6, tokens.size());
+        assertEquals(TokenTypes.ASSIGN, tokens.type(5));
+        assertNotNull(tokens.getError());
+    }
+
+    @Test
+    public void testParallelLexingMatchesTheLexer() throws Exception {
+        StringBuilder source = new StringBuilder("$ comment\n");
+        for (int i = 0; i < 3000; i++) {
+            source.append("v").append(i % 50).append(" float = \"s\u00e9 ").append(i).append("\" + 0").append(i).append(".5; $ \u20ac\n");
+            if (i % 7 == 0) {
+                source.append("\n   \t\n  Point(1 <= 2 == 3)\n");
+            }
+        }
+        source.append("last");
+        byte[] bytes = source.toString().getBytes(StandardCharsets.UTF_8);
+        TokenBuffer expected = new Lexer(ByteBuffer.wrap(bytes)).tokenize();
+
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            for (int chunkSize : new int[]{1, 100, 4096, bytes.length}) {
+                TokenBuffer tokens = new ParallelLexer(pool, chunkSize).tokenize(ByteBuffer.wrap(bytes));
+                assertSameTokens(expected, tokens);
+                assertNull(tokens.getError());
+                // the lexers of the chunks share the names
+                int lastV0 = tokens.size() - 1;
+                while (!tokens.lexeme(lastV0).equals("v0")) {
+                    lastV0--;
+                }
+                assertTrue(tokens.line(lastV0) > 3000);
+                assertSame(tokens.lexeme(0), tokens.lexeme(lastV0));
+            }
+
+            // the first lexical error, with the line of the whole source
+            String withErrors = source.toString().replace("\u00e9 2000\"", "\u00e9 2000\" & ").replace("\u00e9 2500\"", "\u00e9 2500\" #");
+            bytes = withErrors.getBytes(StandardCharsets.UTF_8);
+            expected = new Lexer(ByteBuffer.wrap(bytes)).tokenize();
+            TokenBuffer tokens = new ParallelLexer(pool, 1000).tokenize(ByteBuffer.wrap(bytes));
+            assertSameTokens(expected, tokens);
+            assertTrue(expected.getError().getMessage().startsWith("Unexpected '&'"));
+            assertEquals(expected.getError().getMessage(), tokens.getError().getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    private void assertSameTokens(TokenBuffer expected, TokenBuffer actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.type(i), actual.type(i));
+            assertEquals(expected.lexeme(i), actual.lexeme(i));
+            assertEquals(expected.value(i), actual.value(i));
+            assertEquals(expected.line(i), actual.line(i));
+            assertEquals(expected.column(i), actual.column(i));
+        }
+    }
+}
@@ -3,16 +3,24 @@ import static org.junit.Assert.*;
 import compiler.Parser.ASTNodes.Statements.Statements.*;
 import compiler.Parser.ASTNodes.Types.NumType;
 import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
 import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
 import java.util.ArrayList;
 
+import compiler.CodeGen.CodeGen;
+import compiler.CodeGen.ProgramClassLoader;
 import compiler.Lexer.*;
+import compiler.Optimization.ConstantFolding;
 import compiler.Parser.*;
 import compiler.Parser.ASTNodes.*;
 import compiler.Parser.ASTNodes.Statements.Expressions.Expressions.*;
 import compiler.Parser.ASTNodes.Statements.Expressions.Terms.*;
 import compiler.Parser.ASTNodes.Statements.Expressions.Access.*;
 import compiler.Parser.ASTNodes.Statements.Expressions.Operators.*;
+import compiler.SemanticAnalysis.SemanticAnalysis;
 
 
 public class TestParser {
@@ -1224,4 +1232,353 @@ public class TestParser {
         Parser parser = new Parser(lexer);
         parser.parseProgram();
     }
+
+    @Test
+    public void testTokenBufferGivesTheSameTree() throws Exception {
+        StringBuilder input = new StringBuilder("final n int = 007;\nPoint rec {\n    x float;\n}\n");
+        // more tokens than the window of tokens the parser lexes at a time
+        input.append("fun main() {\n    p Point = Point(1.5);\n");
+        for (int i = 0; i < 2000; i++) {
+            input.append("    v").append(i).append(" float = (2.50 * 3.0) + p.x;\n");
+        }
+        input.append("    writeln(\"done\" + true);\n}\n");
+
+        Parser streamed = new Parser(new Lexer(new StringReader(input.toString())));
+        Parser buffered = new Parser(new Lexer(new StringReader(input.toString())).tokenize());
+        assertEquals(streamed.getAST().prettyPrint(0), buffered.getAST().prettyPrint(0));
+    }
+
+    @Test
+    public void testLexicalErrorIsThrownWhenTheParserReachesIt() throws Exception {
+        // the syntax error comes before the lexical error
+        String input = """
+                fun main() {
+                    x int = ;
+                    y int = 1 & 2;
+                }
+                """;
+
+        TokenBuffer tokens = new Lexer(new StringReader(input)).tokenize();
+        assertNotNull(tokens.getError());
+        try {
+            new Parser(tokens).parseProgram();
+            fail("Expected a syntax error");
+        } catch (SyntaxErrorException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("line 2"));
+        }
+
+        try {
+            new Parser(new Lexer(new StringReader("fun main() { y int = 1 & 2; }"))).parseProgram();
+            fail("Expected a lexical error");
+        } catch (SyntaxErrorException e) {
+            fail("Expected a lexical error");
+        } catch (Exception e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Unexpected '&'"));
+        }
+    }
+
+    private static final String INCREMENTAL_SOURCE = """
+            final n int = 7;
+            Point rec {
+                x int;
+            }
+            total int = 0;
+            fun square(v int) int {
+                return v * v;
+            }
+            fun main() {
+                p Point = Point(2);
+                writeInt(square(p.x));
+            }
+            """;
+
+    @Test
+    public void testIncrementalEditReparsesOneDeclaration() throws Exception {
+        IncrementalParser parser = new IncrementalParser(INCREMENTAL_SOURCE);
+        Program before = parser.getProgram();
+
+        // v * v -> v * v + 1
+        int offset = INCREMENTAL_SOURCE.indexOf("v * v") + 5;
+        Program program = parser.edit(offset, 0, " + 1");
+        assertEquals(1, parser.getFullParses());
+        assertSameParse(parser);
+        // the nodes of the previous AST aren't reused, the passes may have rewritten them
+        assertNotSame(before.getFunctions().get(1), program.getFunctions().get(1));
+        assertNotSame(before.getRecords().getFirst(), program.getRecords().getFirst());
+
+        // one line more in square moves main
+        program = parser.edit(parser.getSource().indexOf("return"), 0, "w int = v;\n    ");
+        assertEquals(1, parser.getFullParses());
+        assertSameParse(parser);
+        assertEquals(10, program.getFunctions().get(1).line);
+
+        // a constant, a record field, and a global, then a new function after main
+        parser.edit(parser.getSource().indexOf("7"), 1, "42");
+        parser.edit(parser.getSource().indexOf("x int"), 0, "y float;\n    ");
+        parser.edit(parser.getSource().indexOf("0;"), 1, "n");
+        program = parser.edit(parser.getSource().length(), 0, "fun unused() {\n}\n");
+        assertEquals(1, parser.getFullParses());
+        assertSameParse(parser);
+        assertEquals(3, program.getFunctions().size());
+    }
+
+    @Test
+    public void testIncrementalNewlineMovesTheLaterDeclarations() throws Exception {
+        IncrementalParser parser = new IncrementalParser(INCREMENTAL_SOURCE);
+
+        // a line break in the constant moves every declaration after it one line down
+        Program program = parser.edit(INCREMENTAL_SOURCE.indexOf("= 7"), 0, "\n   ");
+        assertEquals(1, parser.getFullParses());
+        assertSameParse(parser);
+        assertEquals(10, program.getFunctions().get(1).getName().line);
+        assertEquals(10, program.getFunctions().get(1).getReturnType().line);
+        assertSameLines(parser);
+
+        // and removing it moves them back up
+        program = parser.edit(parser.getSource().indexOf("\n   ="), 4, "");
+        assertEquals(INCREMENTAL_SOURCE, parser.getSource());
+        assertEquals(1, parser.getFullParses());
+        assertEquals(9, program.getFunctions().get(1).getName().line);
+        assertSameLines(parser);
+    }
+
+    @Test
+    public void testIncrementalEditAfterACompilation() throws Throwable {
+        // the analysis and the folding rewrite the AST, the use of k in main becomes the value 1
+        String source = "final k int = 1;\nfun main() {\n    writeln(k);\n}\n";
+        IncrementalParser parser = new IncrementalParser(source);
+        assertEquals("1\n", run(parser.getProgram()));
+
+        Program program = parser.edit(source.indexOf("1"), 1, "2");
+        assertEquals(1, parser.getFullParses());
+        assertEquals("2\n", run(program));
+    }
+
+    /// Analyze, fold and generate a program like the compiler does, and return what it prints
+    private static String run(Program program) throws Throwable {
+        new SemanticAnalysis().analyze(program);
+        new ConstantFolding().optimize(program);
+        Map<String, byte[]> classes = new CodeGen("", "Main").generateClasses(program);
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+        try {
+            new ProgramClassLoader(classes).runMain("Main", new String[0]);
+        } finally {
+            System.setOut(stdout);
+        }
+        return output.toString(StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void testIncrementalEditFallsBackToAFullParse() throws Exception {
+        IncrementalParser parser = new IncrementalParser(INCREMENTAL_SOURCE);
+
+        // an edit over two declarations
+        int start = INCREMENTAL_SOURCE.indexOf("return");
+        parser.edit(start, INCREMENTAL_SOURCE.indexOf("writeInt") - start, "return 1;\n}\nfun main() {\n    ");
+        assertEquals(2, parser.getFullParses());
+        assertSameParse(parser);
+
+        // an unclosed block, then the brace is put back
+        int brace = parser.getSource().indexOf("}");
+        try {
+            parser.edit(brace, 1, "");
+            fail("Expected a syntax error");
+        } catch (SyntaxErrorException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Syntax Error"));
+        }
+        parser.edit(brace, 0, "}");
+        assertSameParse(parser);
+
+        // a global variable that becomes a function
+        try {
+            parser.edit(parser.getSource().indexOf("total"), 0, "fun ");
+            fail("Expected a syntax error");
+        } catch (SyntaxErrorException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("line 5"));
+        }
+    }
+
+    @Test
+    public void testLazyBodiesGiveTheSameTree() throws Exception {
+        String input = INCREMENTAL_SOURCE + """
+                fun outer(n int) int {
+                    fun inner(m int) int {
+                        if (m > 0) {
+                            return m;
+                        }
+                        return 0;
+                    }
+                    return inner(n);
+                }
+                """;
+
+        Program lazy = new Parser(new Lexer(new StringReader(input)).tokenize(), true).parseProgram();
+        FunctionDefinition outer = lazy.getFunctions().get(2);
+        assertEquals("outer", outer.getName().lexeme);
+        assertEquals(1, outer.getParamDefinitions().size());
+        assertFalse(outer.isBodyParsed());
+
+        Program eager = new Parser(new Lexer(new StringReader(input))).parseProgram();
+        assertEquals(eager.prettyPrint(0), lazy.prettyPrint(0));
+        assertTrue(outer.isBodyParsed());
+        assertEquals(eager.getFunctions().get(2).getBlock().line, outer.getBlock().line);
+        assertEquals(eager.getFunctions().get(2).getBlock().column, outer.getBlock().column);
+    }
+
+    @Test
+    public void testSyntaxErrorInALazyBodyIsThrownByGetBody() throws Exception {
+        String input = """
+                fun main() {
+                    x int = ;
+                }
+                fun other() {
+                }
+                """;
+
+        Program program = new Parser(new Lexer(new StringReader(input)).tokenize(), true).parseProgram();
+        assertEquals(2, program.getFunctions().size());
+        try {
+            program.getFunctions().getFirst().getBody();
+            fail("Expected a syntax error");
+        } catch (SyntaxErrorException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("line 2"));
+        }
+        assertNotNull(program.getFunctions().get(1).getBody());
+
+        try {
+            new Parser(new Lexer(new StringReader("fun main() {\n    x int = 1;\n")).tokenize(), true).parseProgram();
+            fail("Expected a syntax error");
+        } catch (SyntaxErrorException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Syntax Error: Expected RIGHT_BRACKET but found EOF"));
+        }
+    }
+
+    @Test
+    public void testLongOperatorChainDoesNotOverflowTheStack() throws Exception {
+        // the chain is grouped two terms at a time, each group is the left operand of the rest of the chain
+        int terms = 20000;
+        StringBuilder input = new StringBuilder("x int = 0");
+        for (int i = 1; i < terms; i++) {
+            input.append(i % 2 == 0 ? " * " : " + ").append(i);
+        }
+        input.append(";\nfun main() {\n}\n");
+
+        Program program = new Parser(new Lexer(new StringReader(input.toString())).tokenize()).parseProgram();
+        Expression expression = program.getGlobals().getFirst().getValue();
+        int groups = 1;
+        while (((BinaryExpression) expression).getLeftTerm() instanceof ParenthesesTerm left && left.getExpression() instanceof BinaryExpression) {
+            BinaryExpression chain = (BinaryExpression) expression;
+            assertEquals("*", chain.getOperator().getSymbol().lexeme);
+            expression = ((ParenthesesTerm) chain.getRightTerm()).getExpression();
+            groups++;
+        }
+        assertEquals(terms / 2, groups);
+        assertEquals("+", ((BinaryExpression) expression).getOperator().getSymbol().lexeme);
+    }
+
+    private static final String FLAT_SOURCE = """
+            final n int = 7;
+            Point rec {
+                x int;
+                tags string[];
+            }
+            total float = 1.5;
+            fun (p Point) shift(d int) int {
+                return p.x + d;
+            }
+            fun count(values int[]) int {
+                c int = 0;
+                while (c < len(values)) {
+                    total = total * 2.0;
+                    c = c + 1;
+                }
+                return c;
+            }
+            fun main() {
+                p Point = Point(2, array [3] of string);
+                values int[] = array [n] of int;
+                i int;
+                for (i, 0, 6, 1) {
+                    if (i > 2 && !(i == 4)) {
+                        values[i] = -i;
+                    } else {
+                        values[i] = i * 2;
+                    }
+                }
+                while (p.x < 10) {
+                    p.x = p.shift(1);
+                }
+                writeInt(count(values));
+                writeln("done");
+                free values;
+            }
+            """;
+
+    @Test
+    public void testFlatASTDecodesTheSameTree() throws Exception {
+        Program program = new Parser(new Lexer(new StringReader(FLAT_SOURCE)).tokenize()).parseProgram();
+        FlatAST flat = FlatAST.of(program);
+        Program decoded = flat.decode();
+        assertEquals(program.prettyPrint(0), decoded.prettyPrint(0));
+        FunctionDefinition main = program.getFunctions().get(2);
+        assertEquals(main.line, decoded.getFunctions().get(2).line);
+        assertEquals(main.getBlock().column, decoded.getFunctions().get(2).getBlock().column);
+        assertEquals("p", decoded.getFunctions().getFirst().getInstanceName().lexeme);
+
+        // the cursor moves on the encoded nodes: the program, then its constant
+        FlatAST.Cursor cursor = flat.cursor();
+        assertEquals(FlatAST.Kind.PROGRAM, cursor.kind());
+        assertTrue(cursor.firstChild());
+        assertEquals(FlatAST.Kind.DECLARATION, cursor.kind());
+        assertEquals("n", cursor.symbol().lexeme);
+        assertEquals(1, cursor.line());
+        assertTrue(cursor.nextSibling());
+        assertEquals(FlatAST.Kind.RECORD, cursor.kind());
+        assertEquals("Point", cursor.symbol().lexeme);
+        assertEquals(2, cursor.childCount());
+        assertTrue(cursor.parent());
+        assertFalse(cursor.parent());
+
+        // the bodies of the lazy program are only decoded when they are needed
+        Program lazy = flat.program();
+        assertFalse(lazy.getFunctions().get(2).isBodyParsed());
+        assertEquals(program.prettyPrint(0), lazy.prettyPrint(0));
+        assertTrue(lazy.getFunctions().get(2).isBodyParsed());
+    }
+
+    /// The lines of the statements of main and of their symbols are the ones of a full parse
+    private void assertSameLines(IncrementalParser parser) throws Exception {
+        Program expected = new Parser(new Lexer(new StringReader(parser.getSource()))).parseProgram();
+        FunctionDefinition expectedMain = expected.getFunctions().get(1);
+        FunctionDefinition main = parser.getProgram().getFunctions().get(1);
+        assertEquals(expectedMain.getName().line, main.getName().line);
+        for (int i = 0; i < expectedMain.getBlock().getStatements().size(); i++) {
+            assertEquals(expectedMain.getBlock().getStatements().get(i).line, main.getBlock().getStatements().get(i).line);
+        }
+        VariableDeclaration expectedPoint = (VariableDeclaration) expectedMain.getBlock().getStatements().getFirst();
+        VariableDeclaration point = (VariableDeclaration) main.getBlock().getStatements().getFirst();
+        assertEquals(expectedPoint.getName().line, point.getName().line);
+        assertEquals(expectedPoint.getType().getSymbol().line, point.getType().getSymbol().line);
+    }
+
+    private void assertSameParse(IncrementalParser parser) throws Exception {
+        TokenBuffer tokens = new Lexer(new StringReader(parser.getSource())).tokenize();
+        assertEquals(tokens.size(), parser.getTokens().size());
+        for (int i = 0; i < tokens.size(); i++) {
+            assertEquals(tokens.symbol(i).toString(), parser.getTokens().symbol(i).toString());
+        }
+
+        Program program = new Parser(tokens).parseProgram();
+        assertEquals(program.prettyPrint(0), parser.getProgram().prettyPrint(0));
+        for (int i = 0; i < program.getFunctions().size(); i++) {
+            FunctionDefinition expected = program.getFunctions().get(i);
+            FunctionDefinition function = parser.getProgram().getFunctions().get(i);
+            assertEquals(expected.line, function.line);
+            assertEquals(expected.getBlock().line, function.getBlock().line);
+            assertEquals(expected.getBlock().column, function.getBlock().column);
+        }
+    }
 }
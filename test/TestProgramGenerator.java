@@ -0,0 +1,94 @@
+import static org.junit.Assert.*;
+
+import compiler.CodeGen.ProgramClassLoader;
+import compiler.Compiler;
+import compiler.Generator.ProgramGenerator;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class TestProgramGenerator {
+
+    @Test
+    public void testDefaultProgramCompilesAndRuns() throws Throwable {
+        ProgramGenerator generator = new ProgramGenerator();
+        generator.functions = 30;
+        assertRuns(generator.generate());
+    }
+
+    @Test
+    public void testEdgeConfigurationsCompileAndRun() throws Throwable {
+        ProgramGenerator noRecordsOrGlobals = new ProgramGenerator();
+        noRecordsOrGlobals.functions = 10;
+        noRecordsOrGlobals.records = 0;
+        noRecordsOrGlobals.globals = 0;
+        assertRuns(noRecordsOrGlobals.generate());
+
+        ProgramGenerator flat = new ProgramGenerator();
+        flat.functions = 10;
+        flat.depth = 0;
+        flat.expressionSize = 1;
+        assertRuns(flat.generate());
+
+        ProgramGenerator deep = new ProgramGenerator();
+        deep.functions = 3;
+        deep.depth = 5;
+        deep.blockSize = 3;
+        deep.expressionSize = 30;
+        assertRuns(deep.generate());
+
+        ProgramGenerator empty = new ProgramGenerator();
+        empty.functions = 0;
+        assertRuns(empty.generate());
+    }
+
+    @Test
+    public void testSameSeedSameProgram() {
+        ProgramGenerator generator = new ProgramGenerator();
+        generator.functions = 20;
+        String first = generator.generate();
+        assertEquals(first, generator.generate());
+
+        generator.seed = 7;
+        assertNotEquals(first, generator.generate());
+    }
+
+    @Test
+    public void testLineTarget() throws Exception {
+        ProgramGenerator generator = new ProgramGenerator();
+        generator.lines = 20_000;
+        StringWriter output = new StringWriter();
+        long lines = generator.generate(output);
+
+        assertEquals(output.toString().lines().count(), lines);
+        assertTrue("Too few lines: " + lines, lines >= 20_000);
+        // the last function can overshoot the target a bit
+        assertTrue("Too many lines: " + lines, lines < 21_000);
+    }
+
+    private void assertRuns(String program) throws Throwable {
+        File tempFile = File.createTempFile("generated", ".lang");
+        tempFile.deleteOnExit();
+        Files.writeString(tempFile.toPath(), program);
+
+        Compiler compiler = new Compiler();
+        compiler.file = tempFile.getAbsolutePath();
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(output, true, StandardCharsets.UTF_8));
+        try {
+            new ProgramClassLoader(compiler.compileInMemory()).runMain(compiler.getClassName(), new String[0]);
+        } finally {
+            System.setOut(stdout);
+        }
+
+        // main prints the result of the call chain
+        assertTrue(output.toString(StandardCharsets.UTF_8).trim().matches("-?\\d+"));
+    }
+}
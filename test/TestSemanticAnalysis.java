@@ -724,7 +724,14 @@ public class TestSemanticAnalysis {
         SemanticAnalysis semanticAnalysis = new SemanticAnalysis();
         try {
             SemType recSemType = semanticAnalysis.visitRecordDefinition(recordDef, symbolTable);
-            assertEquals("Expected type to be Person", expectedSemType, recSemType);
+            // the record types are unique by name in an analysis and compared by reference, so the fields are compared one by one
+            assertTrue("Expected type to be Person", recSemType instanceof RecordSemType);
+            RecordSemType person = (RecordSemType) recSemType;
+            assertEquals(((RecordSemType) expectedSemType).identifier, person.identifier);
+            assertEquals(new ArrayList<>(recordFields2.keySet()), new ArrayList<>(person.fields.keySet()));
+            assertEquals(recordFields2.get("name"), person.fields.get("name"));
+            assertEquals("Point", ((RecordSemType) person.fields.get("location")).identifier);
+            assertEquals(recordFields2.get("history"), person.fields.get("history"));
         } catch (Exception e) {
             e.printStackTrace();
             fail("Semantic analysis failed: " + e.getMessage());
@@ -1154,7 +1161,10 @@ public class TestSemanticAnalysis {
         try {
             SemanticAnalysis semanticAnalysis = new SemanticAnalysis();
             SemType resultSemType = semanticAnalysis.visitRecordDefinition(recordDefinition, symbolTable);
-            assertEquals("Expected type to be Point", recordSemType, resultSemType);
+            assertTrue("Expected type to be Point", resultSemType instanceof RecordSemType);
+            assertEquals(recordSemType.identifier, ((RecordSemType) resultSemType).identifier);
+            assertEquals(recordSemType.fields, ((RecordSemType) resultSemType).fields);
+            assertSame(resultSemType, symbolTable.lookup("Point"));
         } catch (Exception e) {
             e.printStackTrace();
             fail("Semantic analysis failed: " + e.getMessage());
@@ -1243,9 +1253,9 @@ public class TestSemanticAnalysis {
     public void testAssigningToConst() throws Exception {
         // x = 5
         // but x is a constant
-        SemType constIntType = new SemType("int", true);
+        SemType constIntType = new SemType("int");
         SymbolTable symbolTable = new SymbolTable(null);
-        symbolTable.addSymbol("x", constIntType);
+        symbolTable.addConstant("x", constIntType);
 
         Symbol intSymbol = new Symbol(TokenTypes.INT_LITERAL, "5", 0, 0, 5);
         ConstVal constVal = new ConstVal(5, intSymbol, 0, 0);
@@ -1324,7 +1334,7 @@ public class TestSemanticAnalysis {
             SemType resType = semanticAnalysis.visitVariableDeclaration(variableDeclaration, symbolTable);
             assertEquals("Expected type to be int", intType, resType);
             assertNotNull("Expected symbol to be added to symbol table", symbolTable.lookup("x"));
-            assertTrue("Expected symbol to be constant", resType.isConstant);
+            assertTrue("Expected symbol to be constant", symbolTable.isConstant("x"));
         } catch (Exception e) {
             e.printStackTrace();
             fail("Semantic analysis failed: " + e.getMessage());
@@ -1348,7 +1358,7 @@ public class TestSemanticAnalysis {
             SemType resType = semanticAnalysis.visitVariableDeclaration(variableDeclaration, symbolTable);
             assertEquals("Expected type to be int", intType, resType);
             assertNotNull("Expected symbol to be added to symbol table", symbolTable.lookup("x"));
-            assertFalse("Expected symbol to not be constant", resType.isConstant);
+            assertFalse("Expected symbol to not be constant", symbolTable.isConstant("x"));
         } catch (Exception e) {
             e.printStackTrace();
             fail("Semantic analysis failed: " + e.getMessage());
@@ -1368,7 +1378,7 @@ public class TestSemanticAnalysis {
             SemType resType = semanticAnalysis.visitVariableDeclaration(variableDeclaration, symbolTable);
             assertEquals("Expected type to be string", stringType, resType);
             assertNotNull("Expected symbol to be added to symbol table", symbolTable.lookup("x"));
-            assertFalse("Expected symbol to not be constant", resType.isConstant);
+            assertFalse("Expected symbol to not be constant", symbolTable.isConstant("x"));
         } catch (Exception e) {
             e.printStackTrace();
             fail("Semantic analysis failed: " + e.getMessage());
@@ -1398,7 +1408,7 @@ public class TestSemanticAnalysis {
         // final i int is defined in the global scope
         // we'll define a var i int in a local scope
         SymbolTable globalTable = new SymbolTable(null);
-        globalTable.addSymbol("i", new SemType("int", true));
+        globalTable.addConstant("i", new SemType("int"));
         SymbolTable localTable = new SymbolTable(globalTable);
         SemType intType = new SemType("int");
 
@@ -1418,6 +1428,35 @@ public class TestSemanticAnalysis {
         }
     }
 
+    @Test
+    public void testScopesShadowAndRollBack() {
+        SymbolTable table = new SymbolTable(null);
+        table.addConstant("i", SemType.INT);
+        table.addSymbol("s", SemType.STRING);
+
+        table.enterScope("f");
+        assertEquals(Integer.valueOf(1), table.getScope());
+        assertEquals("f", table.getLocalFunctionName());
+        assertNull("Expected i not to be defined in the function's scope", table.lookupSameScope("i"));
+        table.addSymbol("i", SemType.FLOAT);
+        assertSame(SemType.FLOAT, table.lookup("i"));
+        assertFalse("Expected the local i not to be a constant", table.isConstant("i"));
+        assertSame(SemType.STRING, table.lookup("s"));
+
+        // freeing the local i makes the global one visible again
+        table.removeSymbol("i");
+        assertSame(SemType.INT, table.lookup("i"));
+        table.addSymbol("i", SemType.BOOL);
+        table.addSymbol("x", SemType.INT);
+        table.exitScope();
+
+        assertEquals(Integer.valueOf(0), table.getScope());
+        assertNull(table.getLocalFunctionName());
+        assertSame(SemType.INT, table.lookup("i"));
+        assertTrue("Expected the global i to be a constant", table.isConstant("i"));
+        assertNull("Expected x to be out of scope", table.lookup("x"));
+    }
+
     @Test
     public void testNoReturnsInCertainPaths() throws Exception {
         // testing the cases where the function does not return a value in every path
@@ -1441,11 +1480,69 @@ public class TestSemanticAnalysis {
             ASTNode node = parser.getAST();
             SemanticAnalysis semanticAnalysis = new SemanticAnalysis();
 
-            semanticAnalysis.analyze(node, true);
+            semanticAnalysis.analyze(node);
             fail("Expected a ReturnError to be thrown");
         } catch (ReturnError e) {
             // expected
         }
 
     }
+
+    @Test
+    public void testFunctionBodiesCheckedAfterAllSignatures() throws Exception {
+        // enough functions for the bodies to be checked concurrently, the first one calls the last one
+        StringBuilder input = new StringBuilder("fun main() {\n    writeInt(f11(1));\n}\n");
+        for (int i = 0; i < 12; i++) {
+            input.append("fun f").append(i).append("(x int) int {\n    return x + ").append(i).append(";\n}\n");
+        }
+
+        SemanticAnalysis semanticAnalysis = new SemanticAnalysis();
+        semanticAnalysis.analyze(new Parser(new Lexer(new StringReader(input.toString()))).getAST());
+
+        // the error of the first function in source order is the one thrown
+        String errors = input.toString()
+                .replace("return x + 3;", "x = \"3\";\n    return x;")
+                .replace("return x + 7;", "x = 7;");
+        try {
+            semanticAnalysis.analyze(new Parser(new Lexer(new StringReader(errors))).getAST());
+            fail("Expected a TypeError to be thrown");
+        } catch (TypeError e) {
+            // expected, f7 doesn't return in all paths but comes after f3
+        }
+    }
+
+    @Test
+    public void testTypesAreShared() throws Exception {
+        String input = """
+                Node rec {
+                    v int;
+                    next Node;
+                    values int[];
+                }
+
+                fun sum(n Node, f float) float {
+                    counts int[] = array [3] of int;
+                    x int = n.v;
+                    y float = f + x;
+                    return x + y;
+                }
+                """;
+
+        Program program = (Program) new Parser(new Lexer(new StringReader(input))).getAST();
+        new SemanticAnalysis().analyze(program);
+
+        RecordSemType node = (RecordSemType) program.getRecords().getFirst().semtype;
+        FunctionDefinition sum = program.getFunctions().getFirst();
+        assertSame("Expected the field to have the type of its record", node, node.fields.get("next"));
+        assertSame("Expected the parameter to have the type of the record", node, sum.getParamTypes().getFirst());
+        assertSame("Expected one type for the arrays of ints", node.fields.get("values"), sum.getBlock().getStatements().getFirst().semtype);
+        assertSame("Expected the int type", SemType.INT, node.fields.get("v"));
+
+        // the int variable is converted to a float in the first sum only, and its type is the one of all the ints
+        BinaryExpression first = (BinaryExpression) ((VariableDeclaration) sum.getBlock().getStatements().get(2)).getValue();
+        BinaryExpression second = (BinaryExpression) ((ReturnStatement) sum.getBlock().getReturnStatement()).getExpression();
+        assertTrue("Expected the int to be converted", first.getRightTerm().conversionNeeded);
+        assertFalse("Expected the float not to be converted", first.getLeftTerm().conversionNeeded);
+        assertTrue("Expected the int to be converted", second.getLeftTerm().conversionNeeded);
+    }
 }